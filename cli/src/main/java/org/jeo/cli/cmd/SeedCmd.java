@@ -0,0 +1,85 @@
+package org.jeo.cli.cmd;
+
+import java.util.List;
+
+import jline.console.ConsoleReader;
+
+import org.jeo.cli.ConsoleProgress;
+import org.jeo.cli.JeoCLI;
+import org.jeo.data.Disposable;
+import org.jeo.data.Drivers;
+import org.jeo.data.TileSeeder;
+import org.jeo.data.TileSet;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.vividsolutions.jts.geom.Envelope;
+
+@Parameters(commandNames="seed", commandDescription="Seeds a tile set from another tile set")
+public class SeedCmd extends JeoCmd {
+
+    @Parameter(description="source target", arity = 2, required=true)
+    List<String> datas;
+
+    @Parameter(names = {"-b", "--bbox"}, description = "Bounding box (xmin,ymin,xmax,ymax)")
+    Envelope bbox;
+
+    @Parameter(names = {"-z", "--min-zoom"}, description = "Minimum zoom level to seed")
+    Integer minZoom;
+
+    @Parameter(names = {"-Z", "--max-zoom"}, description = "Maximum zoom level to seed")
+    Integer maxZoom;
+
+    @Parameter(names = {"-t", "--threads"}, description = "Number of threads generating tiles")
+    Integer threads = Runtime.getRuntime().availableProcessors();
+
+    @Override
+    protected void doCommand(JeoCLI cli) throws Exception {
+        TileSet src = openTileSet(datas.get(0));
+        TileSet dest = openTileSet(datas.get(1));
+
+        TileSeeder seeder = new TileSeeder(src, dest).bounds(bbox).zoom(minZoom, maxZoom)
+            .threads(threads);
+
+        long total = seeder.count();
+        if (total == 0) {
+            cli.getConsole().println("No tiles to seed");
+            return;
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many tiles to seed: " + total);
+        }
+
+        final ConsoleProgress progress = new ConsoleProgress(cli.getConsole(), (int) total);
+        final double[] rate = new double[1];
+
+        long start = System.currentTimeMillis();
+        long written = seeder.progress(new TileSeeder.Progress() {
+            long last = 0;
+
+            @Override
+            public void progress(long count, long total, double r) {
+                progress.progress((int) (count - last));
+                last = count;
+                rate[0] = r;
+            }
+        }).seed();
+        long time = System.currentTimeMillis() - start;
+
+        ConsoleReader console = cli.getConsole();
+        console.println();
+        console.println(String.format("Wrote %d of %d tiles in %.1fs (%.1f tiles/s)",
+            written, total, time / 1000d, rate[0]));
+    }
+
+    TileSet openTileSet(String data) throws Exception {
+        Object obj = Drivers.open(parseDataURI(data));
+        if (!(obj instanceof TileSet)) {
+            if (obj instanceof Disposable) {
+                open((Disposable) obj);
+            }
+            throw new IllegalArgumentException(data + " is not a tile set");
+        }
+        return open((TileSet) obj);
+    }
+}
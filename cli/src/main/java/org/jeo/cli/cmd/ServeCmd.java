@@ -8,6 +8,7 @@ import jline.console.ConsoleReader;
 import org.jeo.cli.JeoCLI;
 import org.jeo.data.DirectoryRegistry;
 import org.jeo.nano.NanoJeoServer;
+import org.jeo.nano.ServerOpts;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
@@ -21,6 +22,18 @@ public class ServeCmd extends JeoCmd {
     @Parameter(names = {"-p", "-port" }, description="Port to listen on")
     Integer port = 8000;
 
+    @Parameter(names = {"-t", "-threads" }, 
+        description="Maximum number of threads serving requests")
+    Integer threads;
+
+    @Parameter(names = {"-q", "-queue" }, 
+        description="Maximum number of connections waiting for a thread, further ones are refused")
+    Integer queue;
+
+    @Parameter(names = {"-k", "-keep-alive" }, 
+        description="Keep alive timeout for idle connections in milliseconds, 0 to disable")
+    Integer keepAlive;
+
     @Override
     protected void doCommand(JeoCLI cli) throws Exception {
         ConsoleReader console = cli.getConsole();
@@ -29,7 +42,18 @@ public class ServeCmd extends JeoCmd {
         console.flush();
 
         DirectoryRegistry registry = new DirectoryRegistry(new File(reg.get(0)));
-        NanoJeoServer server = new NanoJeoServer(port, null, registry);
+        ServerOpts opts = new ServerOpts();
+        if (threads != null) {
+            opts.maxThreads(threads);
+        }
+        if (queue != null) {
+            opts.maxQueued(queue);
+        }
+        if (keepAlive != null) {
+            opts.keepAliveTimeout(keepAlive);
+        }
+
+        NanoJeoServer server = new NanoJeoServer(port, null, registry, opts);
         server.join();
 
     }
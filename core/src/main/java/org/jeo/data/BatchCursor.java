@@ -0,0 +1,82 @@
+package org.jeo.data;
+
+import java.io.IOException;
+
+import org.jeo.feature.Feature;
+import org.jeo.feature.FeatureBatch;
+import org.jeo.feature.Schema;
+
+/**
+ * Cursor that can additionally read features a {@link FeatureBatch} at a time.
+ * <p>
+ * Reading batches avoids creating an object per feature. Formats able to decode their contents
+ * directly into the columns of a batch should override {@link #next(FeatureBatch)}, the default
+ * implementation simply adds the features returned by {@link #next()} to the batch.
+ * </p>
+ * <p>
+ * Example usage:
+ * <pre>
+ * BatchCursor c = ...;
+ * FeatureBatch batch = c.newBatch();
+ * try {
+ *   while (c.next(batch)) {
+ *     doSomethingWith(batch);
+ *   }
+ * }
+ * finally {
+ *   c.close();
+ * }
+ * </pre>
+ * </p>
+ * <p>
+ * Applications should read a cursor either a feature or a batch at a time, mixing the two is not
+ * supported.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+public abstract class BatchCursor extends Cursor<Feature> {
+
+    /**
+     * Default number of features in a batch.
+     */
+    public static final int BATCH_SIZE = 1024;
+
+    protected BatchCursor() {
+        super();
+    }
+
+    protected BatchCursor(Mode mode) {
+        super(mode);
+    }
+
+    /**
+     * The schema of features read by the cursor.
+     */
+    public abstract Schema schema() throws IOException;
+
+    /**
+     * Creates a new batch for the cursor, of {@link #BATCH_SIZE} features.
+     */
+    public FeatureBatch newBatch() throws IOException {
+        return new FeatureBatch(schema(), BATCH_SIZE);
+    }
+
+    /**
+     * Reads the next batch of features.
+     * <p>
+     * The batch is cleared and then filled with up to {@link FeatureBatch#capacity()} features.
+     * The batch should have been created with {@link #newBatch()}, or otherwise have the schema
+     * of the cursor.
+     * </p>
+     * @param batch The batch to fill.
+     *
+     * @return <tt>true</tt> if any features were read, <tt>false</tt> if the cursor is exhausted.
+     */
+    public boolean next(FeatureBatch batch) throws IOException {
+        batch.clear();
+        while (!batch.isFull() && hasNext()) {
+            batch.add(next());
+        }
+        return !batch.isEmpty();
+    }
+}
@@ -0,0 +1,113 @@
+package org.jeo.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Driver registry that caches the drivers of another registry.
+ * <p>
+ * The drivers of the underlying registry are listed once, on first use, along with an index of
+ * drivers by name and alias. Aliases include the file extensions handled by file based drivers,
+ * which makes the index serve file lookups as well. Lookups are case-insensitive.
+ * </p>
+ * <p>
+ * This class is thread safe. The cached drivers are replaced wholesale by {@link #reload()},
+ * lookups in progress see either the old or the new set of drivers.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class CachedDriverRegistry implements DriverRegistry {
+
+    /**
+     * Snapshot of the drivers of the underlying registry.
+     */
+    static class Index {
+        final List<Driver<?>> drivers;
+        final Map<String,Driver<?>> byName;
+
+        Index(Iterator<Driver<?>> it) {
+            List<Driver<?>> drivers = new ArrayList<Driver<?>>();
+            Map<String,Driver<?>> byName = new HashMap<String, Driver<?>>();
+
+            while (it.hasNext()) {
+                Driver<?> d = it.next();
+                drivers.add(d);
+
+                // first driver registered under a name wins, as with a linear search
+                put(d.getName(), d, byName);
+                if (d.getAliases() != null) {
+                    for (String alias : d.getAliases()) {
+                        put(alias, d, byName);
+                    }
+                }
+            }
+
+            this.drivers = Collections.unmodifiableList(drivers);
+            this.byName = byName;
+        }
+
+        void put(String name, Driver<?> d, Map<String,Driver<?>> byName) {
+            if (name != null) {
+                String key = name.toLowerCase();
+                if (!byName.containsKey(key)) {
+                    byName.put(key, d);
+                }
+            }
+        }
+    }
+
+    DriverRegistry registry;
+    volatile Index index;
+
+    /**
+     * Creates a cache for the specified driver registry.
+     */
+    public CachedDriverRegistry(DriverRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * The underlying driver registry.
+     */
+    public DriverRegistry getRegistry() {
+        return registry;
+    }
+
+    @Override
+    public Iterator<Driver<?>> list() {
+        return index().drivers.iterator();
+    }
+
+    /**
+     * Looks up a driver by name or alias.
+     *
+     * @return The matching driver, or <code>null</code> if no match was found.
+     */
+    public Driver<?> find(String name) {
+        return name != null ? index().byName.get(name.toLowerCase()) : null;
+    }
+
+    /**
+     * Discards the cached drivers, the underlying registry is listed again on next use.
+     */
+    public void reload() {
+        index = null;
+    }
+
+    Index index() {
+        Index i = index;
+        if (i == null) {
+            synchronized (this) {
+                i = index;
+                if (i == null) {
+                    index = i = new Index(registry.list());
+                }
+            }
+        }
+        return i;
+    }
+}
@@ -0,0 +1,146 @@
+package org.jeo.data;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.jeo.util.Key;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Tile set wrapper that reads single tiles through a {@link TileCache}.
+ * <p>
+ * Range reads with {@link #read(long, long, long, long, long, long)} are passed through to the
+ * underlying tile set uncached. Writes are passed through and invalidate the affected tiles.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class CachedTileSet implements TileSet {
+
+    TileSet tiles;
+    TileCache cache;
+    String key;
+
+    /**
+     * Creates a cached tile set keyed by the name of the underlying tile set.
+     */
+    public CachedTileSet(TileSet tiles, TileCache cache) {
+        this(tiles, cache, tiles.getName());
+    }
+
+    /**
+     * Creates a cached tile set.
+     *
+     * @param tiles The underlying tile set.
+     * @param cache The tile cache, possibly shared with other tile sets.
+     * @param key Key uniquely identifying the tile set among those sharing the cache.
+     */
+    public CachedTileSet(TileSet tiles, TileCache cache, String key) {
+        this.tiles = tiles;
+        this.cache = cache;
+        this.key = key;
+    }
+
+    /**
+     * The underlying tile set.
+     */
+    public TileSet getTileSet() {
+        return tiles;
+    }
+
+    /**
+     * The tile cache.
+     */
+    public TileCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the MD5 digest of the data of a tile read from this tile set, without hashing the
+     * data again while the tile stays cached.
+     *
+     * @return The digest, or <code>null</code> if the tile is no longer cached.
+     *
+     * @see TileCache#digest(String, Tile)
+     */
+    public byte[] digest(Tile t) {
+        return cache.digest(key, t);
+    }
+
+    @Override
+    public Driver<?> getDriver() {
+        return tiles.getDriver();
+    }
+
+    @Override
+    public Map<Key<?>, Object> getDriverOptions() {
+        return tiles.getDriverOptions();
+    }
+
+    @Override
+    public String getName() {
+        return tiles.getName();
+    }
+
+    @Override
+    public String getTitle() {
+        return tiles.getTitle();
+    }
+
+    @Override
+    public String getDescription() {
+        return tiles.getDescription();
+    }
+
+    @Override
+    public CoordinateReferenceSystem getCRS() throws IOException {
+        return tiles.getCRS();
+    }
+
+    @Override
+    public Envelope bounds() throws IOException {
+        return tiles.bounds();
+    }
+
+    @Override
+    public TilePyramid getPyramid() throws IOException {
+        return tiles.getPyramid();
+    }
+
+    @Override
+    public Tile read(long z, long x, long y) throws IOException {
+        return cache.get(key, tiles, z, x, y);
+    }
+
+    @Override
+    public Cursor<Tile> read(long z1, long z2, long x1, long x2, long y1, long y2)
+        throws IOException {
+        return tiles.read(z1, z2, x1, x2, y1, y2);
+    }
+
+    @Override
+    public void put(Tile t) throws IOException {
+        try {
+            tiles.put(t);
+        }
+        finally {
+            cache.invalidate(key, t.getZ(), t.getX(), t.getY());
+        }
+    }
+
+    @Override
+    public long putAll(Cursor<Tile> cursor) throws IOException {
+        try {
+            return tiles.putAll(cursor);
+        }
+        finally {
+            cache.invalidate(key);
+        }
+    }
+
+    @Override
+    public void close() {
+        tiles.close();
+    }
+}
@@ -3,21 +3,32 @@ package org.jeo.data;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.jeo.feature.Feature;
+import org.jeo.feature.FeatureBatch;
 import org.jeo.feature.FeatureWrapper;
+import org.jeo.feature.Field;
+import org.jeo.feature.Schema;
 import org.jeo.filter.Filter;
+import org.jeo.filter.FilterCompiler;
 import org.jeo.proj.Proj;
 import org.osgeo.proj4j.CoordinateReferenceSystem;
 import org.osgeo.proj4j.CoordinateTransform;
 
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygonal;
+import com.vividsolutions.jts.simplify.DouglasPeuckerSimplifier;
+import com.vividsolutions.jts.simplify.TopologyPreservingSimplifier;
 
 /**
  * Utility class for {@link Cursor} objects.
@@ -28,8 +39,14 @@ public class Cursors {
 
     /**
      * Returns the number of results in the cursor.
+     * <p>
+     * A {@link BatchCursor} is read a batch at a time.
+     * </p>
      */
     public static <T> int size(Cursor<T> cursor) throws IOException {
+        if (cursor instanceof BatchCursor) {
+            return size((BatchCursor) cursor);
+        }
         try {
             int count = 0;
             while(cursor.hasNext()) {
@@ -43,10 +60,31 @@ public class Cursors {
         }
     }
 
+    static int size(BatchCursor cursor) throws IOException {
+        try {
+            int count = 0;
+            FeatureBatch batch = cursor.newBatch();
+            while (cursor.next(batch)) {
+                count += batch.size();
+            }
+            return count;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
     /**
      * Returns the aggregated spatial extent of results in the cursor.
+     * <p>
+     * A {@link BatchCursor} is read a batch at a time, using the envelopes stored by the batch 
+     * rather than those of the individual geometries.
+     * </p>
      */
     public static <T> Envelope extent(Cursor<T> cursor) throws IOException {
+        if (cursor instanceof BatchCursor) {
+            return extent((BatchCursor) cursor);
+        }
         try {
             Envelope extent = new Envelope();
             for (T obj : cursor) {
@@ -62,6 +100,23 @@ public class Cursors {
         }
     }
 
+    static Envelope extent(BatchCursor cursor) throws IOException {
+        try {
+            Envelope extent = new Envelope();
+            FeatureBatch batch = cursor.newBatch();
+            while (cursor.next(batch)) {
+                Envelope e = batch.extent();
+                if (!e.isNull()) {
+                    extent.expandToInclude(e);
+                }
+            }
+            return extent;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
     /**
      * Returns an {@link Iterator} for a cursor object.
      * <p>
@@ -416,7 +471,120 @@ public class Cursors {
         }
     }
 
+    /**
+     * Simplifies the geometries of the features in a cursor.
+     * <p>
+     * Polygonal geometries are simplified with a topology preserving simplifier so that rings 
+     * don't collapse or self intersect, other geometries are simplified with the Douglas-Peucker
+     * algorithm. Points are left as is. The simplified geometries of each feature are computed 
+     * lazily and cached so that repeated access does not simplify the geometry again.
+     * </p>
+     * @param cursor The cursor to wrap, must be a cursor of {@link Feature} objects.
+     * @param tolerance The simplification distance tolerance, in units of the feature crs.
+     */
+    public static <T> Cursor<T> simplify(Cursor<T> cursor, double tolerance) {
+        return new SimplifyCursor(cursor, tolerance);
+    }
+
+    private static class SimplifyCursor<T extends Feature> extends CursorWrapper<T> {
+
+        double tolerance;
+
+        SimplifyCursor(Cursor<T> delegate, double tolerance) {
+            super(delegate);
+            if (tolerance < 0) {
+                throw new IllegalArgumentException("tolerance must not be negative");
+            }
+            this.tolerance = tolerance;
+        }
+
+        @Override
+        public T next() throws IOException {
+            T next = super.next();
+            return next != null ? (T) new SimplifyFeature(next, tolerance) : null;
+        }
+    }
+
+    private static class SimplifyFeature extends FeatureWrapper {
+
+        double tolerance;
+
+        /** original geometry -> simplified geometry */
+        Map<Geometry,Geometry> cache;
+
+        SimplifyFeature(Feature delegate, double tolerance) {
+            super(delegate);
+            this.tolerance = tolerance;
+        }
+
+        @Override
+        public Geometry geometry() {
+            Geometry g = super.geometry();
+            return g != null ? simplify(g) : null;
+        }
+
+        @Override
+        public Object get(String key) {
+            Object obj = super.get(key);
+            if (obj instanceof Geometry) {
+                obj = simplify((Geometry)obj);
+            }
+            return obj;
+        }
+
+        public List<Object> list() {
+            List<Object> l = new ArrayList<Object>(delegate.list());
+            for (int i = 0; i < l.size(); i++) {
+                Object obj = l.get(i);
+                if (obj instanceof Geometry) {
+                    l.set(i, simplify((Geometry) obj));
+                }
+            }
+            return l;
+        }
+
+        public Map<String,Object> map() {
+            LinkedHashMap<String,Object> m = new LinkedHashMap<String,Object>(delegate.map());
+            for (Map.Entry<String, Object> e : m.entrySet()) {
+                Object obj = e.getValue();
+                if (obj instanceof Geometry) {
+                    e.setValue(simplify((Geometry)obj));
+                }
+            }
+            return m;
+        }
+
+        Geometry simplify(Geometry g) {
+            if (g instanceof Point || g instanceof MultiPoint || tolerance == 0) {
+                return g;
+            }
+
+            if (cache == null) {
+                cache = new IdentityHashMap<Geometry, Geometry>(2);
+            }
+
+            Geometry simplified = cache.get(g);
+            if (simplified == null) {
+                simplified = g instanceof Polygonal ? 
+                    TopologyPreservingSimplifier.simplify(g, tolerance) : 
+                    DouglasPeuckerSimplifier.simplify(g, tolerance);
+                cache.put(g, simplified);
+            }
+            return simplified;
+        }
+    }
+
+    /**
+     * Filters the objects of a cursor to those whose envelope intersects a bounding box.
+     * <p>
+     * When <tt>cursor</tt> is a {@link BatchCursor} the returned cursor is also a 
+     * {@link BatchCursor}.
+     * </p>
+     */
     public static <T> Cursor<T> intersects(Cursor<T> cursor, Envelope bbox) {
+        if (cursor instanceof BatchCursor) {
+            return (Cursor) new BatchIntersectCursor((BatchCursor) cursor, bbox);
+        }
         return new IntersectCursor<T>(cursor, bbox);
     }
 
@@ -453,13 +621,62 @@ public class Cursors {
         }
     }
 
+    /**
+     * Default maximum number of features held in memory by {@link #sort(Cursor, List)} before 
+     * spilling to disk.
+     */
+    public static final int SORT_BUFFER_SIZE = 10000;
+
+    /**
+     * Sorts the features in a cursor.
+     * <p>
+     * This method buffers up to {@link #SORT_BUFFER_SIZE} features in memory before spilling 
+     * sorted runs to temporary files.
+     * </p>
+     * @see #sort(Cursor, List, int)
+     */
+    public static <T> Cursor<T> sort(Cursor<T> cursor, List<Sort> sort) {
+        return sort(cursor, sort, SORT_BUFFER_SIZE);
+    }
+
+    /**
+     * Sorts the features in a cursor.
+     * <p>
+     * Features are sorted in memory up to <tt>bufferSize</tt> features. Beyond that sorted runs 
+     * of features are spilled to temporary files that are merged as the returned cursor is read.
+     * Temporary files are removed when the cursor is exhausted or closed.
+     * </p>
+     * @param cursor The cursor to sort, must be a read only cursor of {@link Feature} objects.
+     * @param sort The sort criteria.
+     * @param bufferSize The maximum number of features to hold in memory.
+     */
+    public static <T> Cursor<T> sort(Cursor<T> cursor, List<Sort> sort, int bufferSize) {
+        return new SortCursor<T>(cursor, sort, bufferSize);
+    }
+
+    /**
+     * Filters the objects of a cursor.
+     * <p>
+     * The filter is compiled with {@link FilterCompiler} against the schema of the first
+     * {@link Feature} read from the cursor.
+     * </p>
+     * <p>
+     * When <tt>cursor</tt> is a {@link BatchCursor} the returned cursor is also a 
+     * {@link BatchCursor}, that evaluates the filter against views of the batch rows, compiled
+     * against the schema of each batch.
+     * </p>
+     */
     public static <T> Cursor<T> filter(Cursor<T> cursor, Filter filter) {
+        if (cursor instanceof BatchCursor) {
+            return (Cursor) new BatchFilterCursor((BatchCursor) cursor, filter);
+        }
         return new FilterCursor(cursor, filter);
     }
 
     private static class FilterCursor<T> extends CursorWrapper<T> {
 
         Filter filter;
+        boolean compiled;
         T next;
 
         FilterCursor(Cursor<T> delegate, Filter filter) {
@@ -471,6 +688,11 @@ public class Cursors {
         public boolean hasNext() throws IOException {
             while(delegate.hasNext() && next == null) {
                 T obj = delegate.next();
+                if (!compiled) {
+                    filter = FilterCompiler.compile(filter,
+                        obj instanceof Feature ? ((Feature) obj).schema() : null);
+                    compiled = true;
+                }
                 if (filter.apply(obj)) {
                     next = obj;
                 }
@@ -487,6 +709,215 @@ public class Cursors {
     
     }
 
+    /**
+     * Batch cursor retaining the features of a delegate that match a condition.
+     * <p>
+     * When read a feature at a time the features come from a regular wrapper of the delegate. 
+     * When read a batch at a time the rows of each batch from the delegate that don't match are
+     * removed, and empty batches skipped.
+     * </p>
+     */
+    private static abstract class BatchFilterCursorBase extends BatchCursor {
+
+        BatchCursor delegate;
+        Cursor<Feature> features;
+        boolean[] keep;
+
+        BatchFilterCursorBase(BatchCursor delegate, Cursor<Feature> features) {
+            super(delegate.getMode());
+            this.delegate = delegate;
+            this.features = features;
+        }
+
+        @Override
+        public Schema schema() throws IOException {
+            return delegate.schema();
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return features.hasNext();
+        }
+
+        @Override
+        public Feature next() throws IOException {
+            return features.next();
+        }
+
+        @Override
+        public void write() throws IOException {
+            features.write();
+        }
+
+        @Override
+        public void remove() throws IOException {
+            features.remove();
+        }
+
+        @Override
+        public boolean next(FeatureBatch batch) throws IOException {
+            while (delegate.next(batch)) {
+                if (keep == null || keep.length < batch.size()) {
+                    keep = new boolean[batch.capacity()];
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    keep[i] = accept(batch, i);
+                }
+                if (batch.retain(keep) > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        abstract boolean accept(FeatureBatch batch, int row);
+
+        @Override
+        public void close() throws IOException {
+            features.close();
+        }
+    }
+
+    private static class BatchFilterCursor extends BatchFilterCursorBase {
+
+        Filter filter;
+
+        /** filter compiled against the schema of the last batch */
+        Filter compiled;
+        Schema schema;
+
+        BatchFilterCursor(BatchCursor delegate, Filter filter) {
+            super(delegate, new FilterCursor<Feature>(delegate, filter));
+            this.filter = filter;
+        }
+
+        @Override
+        boolean accept(FeatureBatch batch, int row) {
+            if (compiled == null || schema != batch.schema()) {
+                // properties bound to column positions, read directly from the rows
+                schema = batch.schema();
+                compiled = FilterCompiler.compile(filter, schema);
+            }
+            return compiled.apply(batch.view(row));
+        }
+    }
+
+    private static class BatchIntersectCursor extends BatchFilterCursorBase {
+
+        Envelope bbox;
+
+        BatchIntersectCursor(BatchCursor delegate, Envelope bbox) {
+            super(delegate, new IntersectCursor<Feature>(delegate, bbox));
+            this.bbox = bbox;
+        }
+
+        @Override
+        boolean accept(FeatureBatch batch, int row) {
+            return batch.intersects(row, bbox);
+        }
+    }
+
+    /**
+     * Restricts the features of a cursor to a specified set of fields.
+     * <p>
+     * Features returned from the cursor have a schema containing only the specified fields, in 
+     * the specified order. Fields that don't exist in the original feature evaluate to 
+     * <code>null</code>. 
+     * </p>
+     * @param cursor The cursor to wrap, must be a cursor of {@link Feature} objects.
+     * @param fields The names of the fields to select.
+     */
+    public static <T> Cursor<T> select(Cursor<T> cursor, List<String> fields) {
+        return new SelectCursor(cursor, fields);
+    }
+
+    private static class SelectCursor<T extends Feature> extends CursorWrapper<T> {
+
+        List<String> fields;
+
+        /** last schema seen, and its projection */
+        Schema schema, selected;
+
+        SelectCursor(Cursor<T> delegate, List<String> fields) {
+            super(delegate);
+            this.fields = fields;
+        }
+
+        @Override
+        public T next() throws IOException {
+            T next = super.next();
+            if (next == null) {
+                return null;
+            }
+
+            Schema s = next.schema();
+            if (s != schema) {
+                schema = s;
+                selected = select(s);
+            }
+            return (T) new SelectFeature(next, selected);
+        }
+
+        Schema select(Schema schema) {
+            List<Field> flds = new ArrayList<Field>(fields.size());
+            for (String name : fields) {
+                Field fld = schema.field(name);
+                flds.add(fld != null ? fld : new Field(name, Object.class));
+            }
+            return new Schema(schema.getName(), flds);
+        }
+    }
+
+    private static class SelectFeature extends FeatureWrapper {
+
+        Schema schema;
+
+        SelectFeature(Feature delegate, Schema schema) {
+            super(delegate);
+            this.schema = schema;
+        }
+
+        @Override
+        public Schema schema() {
+            return schema;
+        }
+
+        @Override
+        public Object get(String key) {
+            return schema.indexOf(key) != -1 ? super.get(key) : null;
+        }
+
+        @Override
+        public Geometry geometry() {
+            Field g = schema.geometry();
+            return g != null ? (Geometry) super.get(g.getName()) : null;
+        }
+
+        @Override
+        public CoordinateReferenceSystem crs() {
+            CoordinateReferenceSystem crs = getCRS();
+            return crs != null ? crs : schema.crs();
+        }
+
+        @Override
+        public List<Object> list() {
+            List<Object> list = new ArrayList<Object>(schema.size());
+            for (Field f : schema) {
+                list.add(super.get(f.getName()));
+            }
+            return Collections.unmodifiableList(list);
+        }
+
+        @Override
+        public Map<String, Object> map() {
+            Map<String,Object> map = new LinkedHashMap<String, Object>();
+            for (Field f : schema) {
+                map.put(f.getName(), super.get(f.getName()));
+            }
+            return Collections.unmodifiableMap(map);
+        }
+    }
+
     static Envelope envelope(Object obj) {
         Geometry g = null;
         if (obj instanceof Geometry) {
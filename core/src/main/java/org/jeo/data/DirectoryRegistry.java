@@ -3,20 +3,59 @@ package org.jeo.data;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedHashSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jeo.data.mem.MemWorkspace;
+import org.jeo.feature.Feature;
+import org.jeo.feature.Schema;
+import org.jeo.util.Key;
 import org.jeo.util.Util;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.Envelope;
 
 /**
  * A registry that loads workspaces from files in a specified directory.
- *  
+ * <p>
+ * The directory is scanned once and the resulting index of files reused until the contents of
+ * the directory change, which is detected from the modification time of the directory. Files
+ * added, removed or renamed are picked up on the next call to {@link #list()} or
+ * {@link #get(String)} without listing the directory on every call.
+ * </p>
+ * <p>
+ * Objects returned from {@link #get(String)} are kept open and shared between callers, up to
+ * {@link #getCacheSize()} objects. They are owned by the registry, and closed when evicted to
+ * make room for others, when their file is removed from the directory, or when the registry is
+ * closed. Closing a workspace or dataset obtained from this registry has no effect.
+ * </p>
+ * <p>
+ * Opened objects are reference counted: calls in progress on them, and cursors opened on their
+ * datasets, keep them open until they complete even if they are evicted in the meantime.
+ * </p>
  * @author Justin Deoliveira, OpenGeo
  */
 public class DirectoryRegistry implements Registry {
 
+    static final Logger LOG = LoggerFactory.getLogger(DirectoryRegistry.class);
+
+    /** default number of opened objects kept open */
+    public static final int DEFAULT_CACHE_SIZE = 32;
+
+    /**
+     * resolution of file system modification times, changes made within this window of a scan
+     * may not update the directory modification time
+     */
+    static final long MTIME_RESOLUTION = 2000;
+
     /** base directory */
     File baseDir;
 
@@ -26,9 +65,16 @@ public class DirectoryRegistry implements Registry {
     /** list of file extensions to restrict to */
     List<String> exts;
 
+    /** index of directory contents */
+    volatile Index index;
+
+    /** opened objects, least recently used first */
+    final LinkedHashMap<String,Entry> open;
+    int cacheSize = DEFAULT_CACHE_SIZE;
+
     /**
      * Constructs a new registry.
-     * 
+     *
      * @param baseDir The directory to search for files in.
      * @param exts Optional file name extensions to restrict look ups to.
      */
@@ -38,18 +84,134 @@ public class DirectoryRegistry implements Registry {
 
     /**
      * Constructs a new registry.
-     * 
+     *
      * @param baseDir The directory to search for files in.
      * @param exts Optional file name extensions to restrict look ups to.
      */
     public DirectoryRegistry(File baseDir, DriverRegistry drivers, String... exts) {
         this.baseDir = baseDir;
         this.drivers = drivers;
-        this.exts = exts.length > 0 ? Arrays.asList(exts) : null; 
+        this.exts = exts.length > 0 ? Arrays.asList(exts) : null;
+        this.open = new LinkedHashMap<String, Entry>(16, 0.75f, true);
     }
-    
+
+    /**
+     * The maximum number of opened objects kept open.
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Sets the maximum number of opened objects kept open, the least recently used objects are
+     * closed when exceeded.
+     */
+    public void setCacheSize(int cacheSize) {
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("cache size must be positive");
+        }
+
+        List<Entry> evicted;
+        synchronized (open) {
+            this.cacheSize = cacheSize;
+            evicted = evict();
+        }
+        dispose(evicted);
+    }
+
     @Override
     public Iterable<Item> list() {
+        return index().items;
+    }
+
+    @Override
+    public Object get(final String key) throws IOException {
+        File file = index().files.get(key);
+        if (file == null) {
+            return null;
+        }
+
+        Entry stale = null;
+        synchronized (open) {
+            Entry e = open.get(key);
+            if (e != null) {
+                if (e.file.equals(file)) {
+                    return e.value;
+                }
+                // file replaced since it was opened
+                stale = open.remove(key);
+            }
+        }
+        dispose(stale);
+
+        Object obj = Drivers.open(file, drivers);
+        if (obj == null) {
+            return null;
+        }
+
+        Entry entry = entry(key, file, obj);
+        List<Entry> evicted;
+        synchronized (open) {
+            Entry e = open.get(key);
+            if (e != null && e.file.equals(file)) {
+                // opened concurrently, use the object already cached
+                evicted = Collections.singletonList(entry);
+                entry = e;
+            }
+            else {
+                open.put(key, entry);
+                evicted = evict();
+            }
+        }
+        dispose(evicted);
+        return entry.value;
+    }
+
+    /**
+     * Creates the entry for an opened object, wrapping it to be shared among callers.
+     */
+    Entry entry(String key, File file, Object obj) {
+        Ref ref = new Ref(key, obj);
+        if (obj instanceof Workspace) {
+            return new Entry(file, new SharedWorkspace((Workspace) obj, ref), ref);
+        }
+        if (obj instanceof Dataset) {
+            return new Entry(file, share((Dataset) obj, ref, true), ref);
+        }
+        return new Entry(file, obj, ref);
+    }
+
+    /**
+     * Discards the index of the directory contents, forcing a rescan on next use.
+     */
+    public void refresh() {
+        index = null;
+    }
+
+    /**
+     * Returns the index of the directory contents, rescanning the directory if it changed.
+     */
+    Index index() {
+        Index idx = index;
+        if (idx == null || idx.isStale(baseDir)) {
+            Index scanned = null;
+            synchronized (this) {
+                idx = index;
+                if (idx == null || idx.isStale(baseDir)) {
+                    index = idx = scanned = scan();
+                }
+            }
+            if (scanned != null) {
+                release(scanned);
+            }
+        }
+        return idx;
+    }
+
+    Index scan() {
+        long time = System.currentTimeMillis();
+        long mtime = baseDir.lastModified();
+
         // list all files, possibily filtering by extension
         String[] files = exts == null ? baseDir.list() : baseDir.list(new FilenameFilter() {
             @Override
@@ -57,44 +219,85 @@ public class DirectoryRegistry implements Registry {
                 return exts.contains(Util.extension(name));
             }
         });
+        if (files == null) {
+            LOG.debug("Unable to list directory " + baseDir);
+            files = new String[0];
+        }
+        Arrays.sort(files);
 
         // process files to see what ones we have drivers for
-        LinkedHashSet<Item> items = new LinkedHashSet<Item>();
+        Map<String,File> byName = new LinkedHashMap<String, File>();
+        Map<String,Item> items = new LinkedHashMap<String, Item>();
         for (String fn : files) {
-            Driver<?> drv = Drivers.find(new File(baseDir, fn).toURI(), drivers);
-            if (drv != null) {
-                items.add(new Item(Util.base(fn), drv));
+            File f = new File(baseDir, fn);
+            Driver<?> drv = Drivers.find(f.toURI(), drivers);
+            if (drv == null) {
+                continue;
+            }
+
+            String name = Util.base(fn);
+            File prev = byName.get(name);
+            if (prev == null || rank(f) < rank(prev)) {
+                byName.put(name, f);
+                items.put(name, new Item(name, drv));
             }
         }
 
-        return items;
+        return new Index(mtime, time, byName, new ArrayList<Item>(items.values()));
     }
 
-    @Override
-    public Object get(final String key) throws IOException {
-        if (exts == null) {
-            //search for any file with this base name
-            String[] files = baseDir.list(new FilenameFilter() {
-                @Override
-                public boolean accept(File dir, String name) {
-                    return name.startsWith(key+".");
+    /**
+     * Rank of a file among those sharing a base name, lower is preferred.
+     */
+    int rank(File f) {
+        return exts != null ? exts.indexOf(Util.extension(f.getName())) : 0;
+    }
+
+    /**
+     * Closes opened objects whose file is no longer part of the directory.
+     */
+    void release(Index idx) {
+        List<Entry> removed = new ArrayList<Entry>();
+        synchronized (open) {
+            for (Iterator<Map.Entry<String,Entry>> it = open.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<String,Entry> e = it.next();
+                if (!e.getValue().file.equals(idx.files.get(e.getKey()))) {
+                    it.remove();
+                    removed.add(e.getValue());
                 }
-            });
-            for (String file : files) {
-                return Drivers.open(new File(baseDir, file), drivers);
             }
         }
-        else {
-            //look for one of our specific extensions
-            for (String ext : exts) {
-                File f = new File(baseDir, key + "." + ext);
-                if (f.exists()) {
-                    return Drivers.open(f, drivers);
-                }
-            }
+        dispose(removed);
+    }
+
+    /**
+     * Removes the least recently used entries exceeding the cache size, must be called while
+     * holding the lock on {@link #open}.
+     *
+     * @return The removed entries, to be disposed once the lock is released.
+     */
+    List<Entry> evict() {
+        List<Entry> evicted = new ArrayList<Entry>();
+        for (Iterator<Entry> it = open.values().iterator(); open.size() > cacheSize;) {
+            evicted.add(it.next());
+            it.remove();
         }
+        return evicted;
+    }
+
+    void dispose(List<Entry> entries) {
+        for (Entry e : entries) {
+            dispose(e);
+        }
+    }
 
-        return null;
+    /**
+     * Drops the reference held by the registry, the object is closed once no longer in use.
+     */
+    void dispose(Entry e) {
+        if (e != null) {
+            e.ref.release();
+        }
     }
 
     Workspace workspace(File file) throws IOException {
@@ -114,5 +317,432 @@ public class DirectoryRegistry implements Registry {
     }
 
     public void close() {
+        List<Entry> entries;
+        synchronized (open) {
+            entries = new ArrayList<Entry>(open.values());
+            open.clear();
+        }
+        dispose(entries);
+        index = null;
+    }
+
+    /**
+     * Snapshot of the directory contents.
+     */
+    static class Index {
+        /** modification time of the directory when scanned */
+        final long mtime;
+        /** time of the scan */
+        final long time;
+        final Map<String,File> files;
+        final List<Item> items;
+
+        Index(long mtime, long time, Map<String,File> files, List<Item> items) {
+            this.mtime = mtime;
+            this.time = time;
+            this.files = files;
+            this.items = Collections.unmodifiableList(items);
+        }
+
+        boolean isStale(File dir) {
+            // a change within the resolution of the modification time right after the scan may
+            // not be visible, so rescan until the scan is clear of it. the modification time may
+            // also be ahead of the clock, in which case only rescan while within the resolution
+            return dir.lastModified() != mtime || Math.abs(time - mtime) <= MTIME_RESOLUTION;
+        }
+    }
+
+    /**
+     * An opened object along with the file it was opened from.
+     */
+    static class Entry {
+        final File file;
+        /** object handed out to callers */
+        final Object value;
+        /** reference to the opened object */
+        final Ref ref;
+
+        Entry(File file, Object value, Ref ref) {
+            this.file = file;
+            this.value = value;
+            this.ref = ref;
+        }
+    }
+
+    /**
+     * Reference count of an opened object.
+     * <p>
+     * The registry holds one reference for as long as the object is cached, and every use of the
+     * object holds another. The object is closed when the count drops to zero, after which it
+     * can no longer be acquired.
+     * </p>
+     */
+    static class Ref {
+        final String key;
+        final Object obj;
+        final AtomicInteger count = new AtomicInteger(1);
+
+        Ref(String key, Object obj) {
+            this.key = key;
+            this.obj = obj;
+        }
+
+        void acquire() throws IOException {
+            for (;;) {
+                int c = count.get();
+                if (c <= 0) {
+                    throw new IOException(key + " has been closed");
+                }
+                if (count.compareAndSet(c, c+1)) {
+                    return;
+                }
+            }
+        }
+
+        void release() {
+            if (count.decrementAndGet() == 0 && obj instanceof Disposable) {
+                try {
+                    ((Disposable) obj).close();
+                }
+                catch(Exception e) {
+                    LOG.debug("Error closing " + key, e);
+                }
+            }
+        }
+
+        boolean isClosed() {
+            return count.get() <= 0;
+        }
+    }
+
+    /**
+     * Wraps a dataset so that its use holds a reference to the object it came from.
+     *
+     * @param shared Whether the dataset is the shared object itself, closed by the registry
+     *   only, rather than a dataset obtained from a shared workspace.
+     */
+    static Dataset share(Dataset data, Ref ref, boolean shared) {
+        if (data instanceof VectorData) {
+            return new SharedVectorData((VectorData) data, ref, shared);
+        }
+        if (data instanceof TileSet) {
+            return new SharedTileSet((TileSet) data, ref, shared);
+        }
+        return new SharedDataset<Dataset>(data, ref, shared);
+    }
+
+    /**
+     * Workspace shared among the callers of the registry, closed by the registry only.
+     */
+    class SharedWorkspace implements Workspace {
+        final Workspace ws;
+        final Ref ref;
+
+        SharedWorkspace(Workspace ws, Ref ref) {
+            this.ws = ws;
+            this.ref = ref;
+        }
+
+        @Override
+        public Driver<?> getDriver() {
+            return ws.getDriver();
+        }
+
+        @Override
+        public Map<Key<?>, Object> getDriverOptions() {
+            return ws.getDriverOptions();
+        }
+
+        @Override
+        public Iterable<DataRef<Dataset>> list() throws IOException {
+            ref.acquire();
+            try {
+                return ws.list();
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public Dataset get(String layer) throws IOException {
+            if (ref.isClosed()) {
+                // evicted and closed since it was handed out, go through the registry again
+                Object obj = DirectoryRegistry.this.get(ref.key);
+                return obj instanceof Workspace ? ((Workspace) obj).get(layer) : null;
+            }
+
+            ref.acquire();
+            try {
+                Dataset data = ws.get(layer);
+                return data != null ? share(data, ref, false) : null;
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public VectorData create(Schema schema) throws IOException {
+            ref.acquire();
+            try {
+                VectorData data = ws.create(schema);
+                return data != null ? (VectorData) share(data, ref, false) : null;
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public void close() {
+            // closed by the registry
+        }
+    }
+
+    /**
+     * Dataset holding a reference to the object it came from while in use.
+     */
+    static class SharedDataset<T extends Dataset> implements Dataset {
+        final T data;
+        final Ref ref;
+        final boolean shared;
+
+        SharedDataset(T data, Ref ref, boolean shared) {
+            this.data = data;
+            this.ref = ref;
+            this.shared = shared;
+        }
+
+        @Override
+        public Driver<?> getDriver() {
+            return data.getDriver();
+        }
+
+        @Override
+        public Map<Key<?>, Object> getDriverOptions() {
+            return data.getDriverOptions();
+        }
+
+        @Override
+        public String getName() {
+            return data.getName();
+        }
+
+        @Override
+        public String getTitle() {
+            return data.getTitle();
+        }
+
+        @Override
+        public String getDescription() {
+            return data.getDescription();
+        }
+
+        @Override
+        public CoordinateReferenceSystem getCRS() throws IOException {
+            ref.acquire();
+            try {
+                return data.getCRS();
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public Envelope bounds() throws IOException {
+            ref.acquire();
+            try {
+                return data.bounds();
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        /**
+         * Wraps a cursor opened on the dataset, the reference must have been acquired and is
+         * released when the cursor is closed.
+         */
+        <C> Cursor<C> track(Cursor<C> cursor) {
+            return new SharedCursor<C>(cursor, ref);
+        }
+
+        @Override
+        public void close() {
+            if (!shared) {
+                // obtained from a shared workspace, owned by the caller
+                data.close();
+            }
+        }
+    }
+
+    /**
+     * Vector dataset holding a reference to the object it came from while in use.
+     */
+    static class SharedVectorData extends SharedDataset<VectorData> implements VectorData {
+
+        SharedVectorData(VectorData data, Ref ref, boolean shared) {
+            super(data, ref, shared);
+        }
+
+        @Override
+        public Schema getSchema() throws IOException {
+            ref.acquire();
+            try {
+                return data.getSchema();
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public long count(Query q) throws IOException {
+            ref.acquire();
+            try {
+                return data.count(q);
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public Cursor<Feature> cursor(Query q) throws IOException {
+            ref.acquire();
+            try {
+                return track(data.cursor(q));
+            }
+            catch(IOException e) {
+                ref.release();
+                throw e;
+            }
+            catch(RuntimeException e) {
+                ref.release();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Tile set holding a reference to the object it came from while in use.
+     */
+    static class SharedTileSet extends SharedDataset<TileSet> implements TileSet {
+
+        SharedTileSet(TileSet tiles, Ref ref, boolean shared) {
+            super(tiles, ref, shared);
+        }
+
+        @Override
+        public TilePyramid getPyramid() throws IOException {
+            ref.acquire();
+            try {
+                return data.getPyramid();
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public Tile read(long z, long x, long y) throws IOException {
+            ref.acquire();
+            try {
+                return data.read(z, x, y);
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public Cursor<Tile> read(long z1, long z2, long x1, long x2, long y1, long y2)
+            throws IOException {
+            ref.acquire();
+            try {
+                return track(data.read(z1, z2, x1, x2, y1, y2));
+            }
+            catch(IOException e) {
+                ref.release();
+                throw e;
+            }
+            catch(RuntimeException e) {
+                ref.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void put(Tile t) throws IOException {
+            ref.acquire();
+            try {
+                data.put(t);
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public long putAll(Cursor<Tile> cursor) throws IOException {
+            ref.acquire();
+            try {
+                return data.putAll(cursor);
+            }
+            finally {
+                ref.release();
+            }
+        }
+    }
+
+    /**
+     * Cursor releasing a reference when closed.
+     */
+    static class SharedCursor<T> extends Cursor<T> {
+        Cursor<T> delegate;
+        Ref ref;
+        boolean closed;
+
+        SharedCursor(Cursor<T> delegate, Ref ref) {
+            super(delegate.getMode());
+            this.delegate = delegate;
+            this.ref = ref;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public T next() throws IOException {
+            return delegate.next();
+        }
+
+        @Override
+        protected void doWrite() throws IOException {
+            delegate.write();
+        }
+
+        @Override
+        protected void doRemove() throws IOException {
+            delegate.remove();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                delegate.close();
+            }
+            finally {
+                ref.release();
+            }
+        }
     }
 }
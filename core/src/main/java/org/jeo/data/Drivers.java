@@ -23,8 +23,17 @@ public class Drivers {
     /** logger */
     static final Logger LOG = LoggerFactory.getLogger(Drivers.class);
 
-    /** driver registry */
-    static final DriverRegistry REGISTRY = new ServiceLoaderDriverRegistry();
+    /** driver registry, drivers are loaded once and cached */
+    static final CachedDriverRegistry REGISTRY = 
+        new CachedDriverRegistry(new ServiceLoaderDriverRegistry());
+
+    /**
+     * Reloads the registered drivers, picking up drivers made available since they were first 
+     * loaded.
+     */
+    public static void reload() {
+        REGISTRY.reload();
+    }
 
     /**
      * Lists all registered drivers.
@@ -106,6 +115,10 @@ public class Drivers {
      * @see Driver#getName()
      */
     public static Driver<?> find(String name, DriverRegistry registry) {
+        if (registry instanceof CachedDriverRegistry) {
+            return ((CachedDriverRegistry) registry).find(name);
+        }
+
         for (Iterator<Driver<?>> it = list(registry); it.hasNext();) {
             Driver<?> d = it.next();
             if (name.equalsIgnoreCase(d.getName()) || d.getAliases().contains(name)) {
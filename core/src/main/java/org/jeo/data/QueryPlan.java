@@ -1,6 +1,18 @@
 package org.jeo.data;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jeo.feature.Field;
+import org.jeo.feature.Schema;
+import org.jeo.filter.Expression;
 import org.jeo.filter.Filter;
+import org.jeo.filter.FilterOptimizer;
+import org.jeo.filter.FilterVisitor;
+import org.jeo.filter.Function;
+import org.jeo.filter.Property;
 import org.jeo.geom.Envelopes;
 import org.jeo.util.Pair;
 import org.osgeo.proj4j.CoordinateReferenceSystem;
@@ -28,6 +40,10 @@ public class QueryPlan {
     boolean reprojected;
     boolean simplified;
     boolean sorted;
+    boolean projected;
+
+    /** part of the filter not handled natively */
+    Filter residual;
 
     public QueryPlan(Query q) {
         this.q = q;
@@ -61,6 +77,36 @@ public class QueryPlan {
         filtered = true;
     }
 
+    /**
+     * Marks part of {@link Query#getFilter()} as being handled natively.
+     * <p>
+     * The <tt>residual</tt> filter is the part that was not handled natively, and is applied by
+     * {@link #apply(Cursor)} in place of the query filter. See 
+     * {@link FilterOptimizer#split(Filter, FilterOptimizer.Capabilities)}. A <code>null</code> or 
+     * {@link Filter#TRUE} residual is equivalent to calling {@link #filtered()}.
+     * </p>
+     */
+    public void filtered(Filter residual) {
+        if (Filter.isTrueOrNull(residual)) {
+            filtered();
+        }
+        else {
+            this.residual = residual;
+        }
+    }
+
+    /**
+     * The part of {@link Query#getFilter()} that has not been handled natively.
+     *
+     * @return The residual filter, {@link Filter#TRUE} if the filter was handled natively.
+     */
+    public Filter getResidualFilter() {
+        if (isFiltered()) {
+            return Filter.TRUE;
+        }
+        return residual != null ? residual : q.getFilter();
+    }
+
     /**
      * Whether {@link Query#getSort()} was handled natively.
      */
@@ -131,13 +177,121 @@ public class QueryPlan {
         simplified = true;
     }
 
+    /**
+     * Whether {@link Query#getFields()} was handled natively.
+     */
+    public boolean isProjected() {
+        return projected;
+    }
+
+    /**
+     * Marks {@link Query#getFields()} as being handled natively.
+     * <p>
+     * A format should only mark the fields as handled if the features it returns contain exactly
+     * the fields specified by the query. Formats that simply avoid reading unneeded fields should
+     * use {@link #fields(Schema)} and leave the rest to {@link #apply(Cursor)}.
+     * </p>
+     */
+    public void projected() {
+        projected = true;
+    }
+
+    /**
+     * Determines the names of the fields that a format must read in order to process the query.
+     * <p>
+     * The resulting names consist of those from {@link Query#getFields()} along with any 
+     * properties required to evaluate the filter or sort of the query when not handled natively.
+     * Therefore this method should be called after the other aspects of the query have been 
+     * marked as handled natively. The geometry required to apply {@link Query#getBounds()} is not 
+     * accounted for since this method has no knowledge of a schema, see {@link #fields(Schema)}.
+     * </p>
+     * @return The set of field names, an empty set meaning all fields.
+     */
+    public Set<String> fields() {
+        final Set<String> names = new LinkedHashSet<String>();
+        if (q.getFields().isEmpty()) {
+            return names;
+        }
+
+        names.addAll(q.getFields());
+
+        Filter filter = getResidualFilter();
+        if (!Filter.isTrueOrNull(filter)) {
+            filter.accept(new FilterVisitor() {
+                @Override
+                public Object visit(Property property, Object obj) {
+                    names.add(property.getProperty());
+                    return obj;
+                }
+                @Override
+                public Object visit(Function function, Object obj) {
+                    for (Expression e : function.getArgs()) {
+                        e.accept(this, obj);
+                    }
+                    return obj;
+                }
+            }, null);
+        }
+
+        List<Sort> sort = q.getSort();
+        if (!isSorted() && sort != null) {
+            for (Sort s : sort) {
+                names.add(s.getProperty());
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Determines the fields of a schema that a format must read in order to process the query.
+     * <p>
+     * This method builds on {@link #fields()}, additionally including the geometry field when the
+     * query bounds have not been handled natively.
+     * </p>
+     * <p>
+     * If the query specifies no fields the original schema is returned.
+     * </p>
+     * @param schema The schema of the dataset being queried.
+     * 
+     * @return The schema containing the subset of fields to read, in the order of the original 
+     *   schema.
+     */
+    public Schema fields(Schema schema) {
+        Set<String> names = fields();
+        if (names.isEmpty()) {
+            return schema;
+        }
+
+        for (String fld : q.getFields()) {
+            if (schema.field(fld) == null) {
+                throw new IllegalArgumentException("No such field: " + fld);
+            }
+        }
+
+        Field geom = schema.geometry();
+        if (geom != null && !isBounded() && !Envelopes.isNull(q.getBounds())) {
+            names.add(geom.getName());
+        }
+
+        List<Field> selected = new ArrayList<Field>();
+        for (Field fld : schema) {
+            if (names.contains(fld.getName())) {
+                selected.add(fld);
+            }
+        }
+        return new Schema(schema.getName(), selected);
+    }
+
     /**
      * Augments the specified cursor with wrappers that handle the parts of the query that could
      * not be processed natively.
      * <p>
      * For example, if a format is unable to process {@link Query#getFilter()} objects natively 
      * then {@link #isFiltered()} should return <tt>false</tt> and this method should wrap the 
-     * cursor with {@link Cursors#filter(Cursor, Filter)}.
+     * cursor with {@link Cursors#filter(Cursor, Filter)}. The filter applied is the 
+     * {@link #getResidualFilter() residual filter}, optimized with 
+     * {@link FilterOptimizer#optimize(Filter)}.
      * </p>
      * @param cursor Cursor to augment.
      * 
@@ -150,9 +304,14 @@ public class QueryPlan {
             cursor = Cursors.intersects(cursor, bounds);
         }
 
-        Filter filter = q.getFilter();
-        if (!isFiltered() && !Filter.isFalseOrNull(filter)) {
-            cursor = Cursors.filter(cursor, filter);
+        Filter filter = getResidualFilter();
+        if (!Filter.isTrueOrNull(filter)) {
+            cursor = Cursors.filter(cursor, FilterOptimizer.optimize(filter));
+        }
+
+        List<Sort> sort = q.getSort();
+        if (!isSorted() && sort != null && !sort.isEmpty()) {
+            cursor = Cursors.sort(cursor, sort);
         }
 
         Integer offset = q.getOffset();
@@ -170,7 +329,16 @@ public class QueryPlan {
             cursor = Cursors.reproject(cursor, reproj.first(), reproj.second());
         }
 
-        //TODO: sorting
+        Double simplify = q.getSimplify();
+        if (!isSimplified() && simplify != null) {
+            cursor = Cursors.simplify(cursor, simplify);
+        }
+
+        List<String> fields = q.getFields();
+        if (!isProjected() && !fields.isEmpty()) {
+            cursor = Cursors.select(cursor, fields);
+        }
+
         return cursor;
     }
 
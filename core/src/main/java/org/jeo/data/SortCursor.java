@@ -0,0 +1,327 @@
+package org.jeo.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.jeo.feature.Feature;
+import org.jeo.feature.ListFeature;
+import org.jeo.feature.Schema;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+
+/**
+ * Cursor wrapper that sorts features by a list of {@link Sort} criteria.
+ * <p>
+ * Features are buffered in memory up to a maximum number of features. Once the buffer is full
+ * it is sorted and spilled to a temporary file as a sorted "run". When the underlying cursor is
+ * exhausted the runs are merged together to produce the final sorted result. When the entire
+ * input fits in memory no temporary files are created.
+ * </p>
+ * <p>
+ * Spilled features are written with java serialization, attribute values that are not
+ * {@link java.io.Serializable} can not be spilled.
+ * </p>
+ * <p>
+ * The sort is stable, features with equal sort keys are returned in their original order
+ * whether or not runs were spilled.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+class SortCursor<T> extends Cursor<T> {
+
+    /** cursor being sorted */
+    Cursor<T> delegate;
+
+    /** comparator for features */
+    Comparator<Object> comparator;
+
+    /** max features to buffer in memory */
+    int bufferSize;
+
+    /** spilled sorted runs */
+    List<Run> runs;
+
+    /** schema/crs of spilled features, shared across runs */
+    List<Header> headers;
+
+    /** sorted result, in memory or merged */
+    Iterator<T> sorted;
+
+    SortCursor(Cursor<T> delegate, List<Sort> sort, int bufferSize) {
+        super(delegate.getMode());
+        if (delegate.getMode() != READ) {
+            throw new IllegalArgumentException("Sort cursor can only be applied to read only cursor");
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("buffer size must be positive");
+        }
+
+        this.delegate = delegate;
+        this.comparator = comparator(sort);
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        if (sorted == null) {
+            sorted = sort();
+        }
+        return sorted.hasNext();
+    }
+
+    @Override
+    public T next() throws IOException {
+        return hasNext() ? sorted.next() : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+        if (runs != null) {
+            for (Run r : runs) {
+                r.dispose();
+            }
+            runs = null;
+        }
+    }
+
+    Iterator<T> sort() throws IOException {
+        List<T> buf = new ArrayList<T>();
+        try {
+            while (delegate.hasNext()) {
+                buf.add(delegate.next());
+                if (buf.size() == bufferSize) {
+                    spill(buf);
+                    buf.clear();
+                }
+            }
+        }
+        finally {
+            delegate.close();
+        }
+
+        Collections.sort(buf, comparator);
+        if (runs == null) {
+            // everything fit in memory
+            return buf.iterator();
+        }
+
+        if (!buf.isEmpty()) {
+            spill(buf);
+        }
+        return new Merge();
+    }
+
+    void spill(List<T> buf) throws IOException {
+        Collections.sort(buf, comparator);
+        if (runs == null) {
+            runs = new ArrayList<Run>();
+            headers = new ArrayList<Header>();
+        }
+
+        Run run = new Run(File.createTempFile("jeo", ".sort"), runs.size());
+        runs.add(run);
+
+        ObjectOutputStream out = new ObjectOutputStream(
+            new BufferedOutputStream(new FileOutputStream(run.file)));
+        try {
+            for (T obj : buf) {
+                Feature f = (Feature) obj;
+                out.writeInt(header(f));
+                out.writeObject(f.getId());
+                out.writeObject(new ArrayList<Object>(f.list()));
+
+                // reset so the stream does not hold a reference to every feature written
+                out.reset();
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    int header(Feature f) {
+        Schema schema = f.schema();
+        CoordinateReferenceSystem crs = f.getCRS();
+
+        // features of a cursor almost always share a single schema so a linear scan is fine
+        for (int i = 0; i < headers.size(); i++) {
+            Header h = headers.get(i);
+            if (h.schema == schema && h.crs == crs) {
+                return i;
+            }
+        }
+
+        headers.add(new Header(schema, crs));
+        return headers.size()-1;
+    }
+
+    static Comparator<Object> comparator(final List<Sort> sort) {
+        return new Comparator<Object>() {
+            @Override
+            public int compare(Object o1, Object o2) {
+                Feature f1 = (Feature) o1;
+                Feature f2 = (Feature) o2;
+                for (Sort s : sort) {
+                    int c = compareValues(f1.get(s.getProperty()), f2.get(s.getProperty()));
+                    if (c != 0) {
+                        return s.isAscending() ? c : -c;
+                    }
+                }
+                return 0;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    static int compareValues(Object o1, Object o2) {
+        // nulls first
+        if (o1 == null) {
+            return o2 == null ? 0 : -1;
+        }
+        if (o2 == null) {
+            return 1;
+        }
+
+        if (o1 instanceof Number && o2 instanceof Number && o1.getClass() != o2.getClass()) {
+            return Double.compare(((Number)o1).doubleValue(), ((Number)o2).doubleValue());
+        }
+
+        if (o1 instanceof Comparable && o1.getClass().isInstance(o2)) {
+            return ((Comparable<Object>)o1).compareTo(o2);
+        }
+
+        return o1.toString().compareTo(o2.toString());
+    }
+
+    static class Header {
+        Schema schema;
+        CoordinateReferenceSystem crs;
+
+        Header(Schema schema, CoordinateReferenceSystem crs) {
+            this.schema = schema;
+            this.crs = crs;
+        }
+    }
+
+    /**
+     * A sorted run of features spilled to disk.
+     */
+    class Run {
+        File file;
+        /** position of the run in the input, earlier runs hold earlier features */
+        int index;
+        ObjectInputStream in;
+        T head;
+
+        Run(File file, int index) {
+            this.file = file;
+            this.index = index;
+        }
+
+        /**
+         * Advances to the next feature of the run, returning <code>false</code> when exhausted.
+         */
+        @SuppressWarnings("unchecked")
+        boolean advance() throws IOException {
+            if (in == null) {
+                in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            }
+
+            int h;
+            try {
+                h = in.readInt();
+            }
+            catch(EOFException e) {
+                head = null;
+                dispose();
+                return false;
+            }
+
+            try {
+                String id = (String) in.readObject();
+                List<Object> values = (List<Object>) in.readObject();
+
+                Header header = headers.get(h);
+                ListFeature f = new ListFeature(id, values, header.schema);
+                f.setCRS(header.crs);
+
+                head = (T) f;
+                return true;
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+
+        void dispose() {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+                in = null;
+            }
+            file.delete();
+        }
+    }
+
+    /**
+     * K-way merge of the spilled runs.
+     */
+    class Merge implements Iterator<T> {
+
+        PriorityQueue<Run> queue;
+
+        Merge() throws IOException {
+            queue = new PriorityQueue<Run>(runs.size(), new Comparator<Run>() {
+                @Override
+                public int compare(Run r1, Run r2) {
+                    int c = comparator.compare(r1.head, r2.head);
+                    // break ties by run to keep the sort stable
+                    return c != 0 ? c : r1.index - r2.index;
+                }
+            });
+            for (Run r : runs) {
+                if (r.advance()) {
+                    queue.add(r);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            Run r = queue.poll();
+            T next = r.head;
+            try {
+                if (r.advance()) {
+                    queue.add(r);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
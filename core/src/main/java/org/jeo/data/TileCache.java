@@ -0,0 +1,344 @@
+package org.jeo.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In memory cache of tiles, shared by any number of tile sets.
+ * <p>
+ * Tiles are keyed by a dataset key and tile index. Once the total size of the cached tile data
+ * exceeds a byte budget tiles are evicted in least recently used order. Lookups of tiles that don't
+ * exist are cached as well so that repeated requests for a missing tile don't reach the underlying
+ * tile set.
+ * </p>
+ * <p>
+ * Tile data may optionally be stored off heap in direct buffers, which keeps large caches out of
+ * the garbage collected heap at the cost of copying the data on every hit. When stored on heap
+ * the data of a cached tile is shared by all tiles returned for it and must not be modified.
+ * </p>
+ * <p>
+ * The cache also keeps the digest of cached tile data, see {@link #digest(String, Tile)}, so that
+ * callers validating tiles don't have to hash the data on every read.
+ * </p>
+ * <p>
+ * This class is typically used through {@link CachedTileSet}.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class TileCache {
+
+    /**
+     * Default byte budget, 64MB.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+
+    /** approximate memory overhead of a single cache entry */
+    static final int ENTRY_OVERHEAD = 96;
+
+    long maxBytes;
+    boolean offHeap;
+
+    /** entries in access order */
+    LinkedHashMap<TileKey,Entry> entries = new LinkedHashMap<TileKey, Entry>(256, 0.75f, true);
+
+    /** current size of cached entries */
+    long bytes;
+
+    /** statistics */
+    long hits, misses, evictions;
+
+    /**
+     * Creates a cache with the default byte budget that stores tile data on the heap.
+     */
+    public TileCache() {
+        this(DEFAULT_MAX_BYTES, false);
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxBytes The maximum number of bytes of tile data to cache.
+     * @param offHeap Whether to store tile data off heap.
+     */
+    public TileCache(long maxBytes, boolean offHeap) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("max bytes must not be negative");
+        }
+        this.maxBytes = maxBytes;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * The maximum number of bytes of tile data held by the cache.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Whether tile data is stored off heap.
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Reads a tile through the cache, falling back to the tile set when the tile is not cached.
+     *
+     * @param dataset Key identifying the tile set.
+     * @param tiles The tile set to read uncached tiles from.
+     * @param z The zoom level of the tile.
+     * @param x The column of the tile.
+     * @param y The row of the tile.
+     *
+     * @return The tile, or <code>null</code> if no such tile exists.
+     */
+    public Tile get(String dataset, TileSet tiles, long z, long x, long y) throws IOException {
+        TileKey key = new TileKey(dataset, z, x, y);
+        synchronized (this) {
+            Entry e = entries.get(key);
+            if (e != null) {
+                hits++;
+                return e.tile(key);
+            }
+            misses++;
+        }
+
+        // read outside of the lock, concurrent misses for the same tile may both read it
+        Tile t = tiles.read(z, x, y);
+        put(key, t);
+        return t;
+    }
+
+    synchronized void put(TileKey key, Tile t) {
+        Entry e = new Entry(t, offHeap);
+        if (e.size > maxBytes) {
+            return;
+        }
+
+        Entry old = entries.put(key, e);
+        if (old != null) {
+            bytes -= old.size;
+        }
+        bytes += e.size;
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Entry eldest = it.next();
+            it.remove();
+            bytes -= eldest.size;
+            evictions++;
+        }
+    }
+
+    /**
+     * Returns the MD5 digest of the data of a tile read through the cache, computing it only once
+     * per cached tile.
+     * <p>
+     * The digest is only returned while the tile is cached with the data it was read with, so the
+     * digest always matches the data of the specified tile.
+     * </p>
+     * @param dataset Key identifying the tile set the tile was read from.
+     * @param t The tile, as returned by {@link #get(String, TileSet, long, long, long)}.
+     *
+     * @return The digest, or <code>null</code> if the tile is not cached or its cached data has
+     *   changed since it was read.
+     */
+    public byte[] digest(String dataset, Tile t) {
+        if (t.getZ() == null || t.getX() == null || t.getY() == null) {
+            return null;
+        }
+
+        Entry e;
+        synchronized (this) {
+            e = entries.get(new TileKey(dataset, t.getZ(), t.getX(), t.getY()));
+        }
+        return e != null ? e.digest(t.getData()) : null;
+    }
+
+    /**
+     * Removes a single cached tile.
+     */
+    public synchronized void invalidate(String dataset, long z, long x, long y) {
+        Entry e = entries.remove(new TileKey(dataset, z, x, y));
+        if (e != null) {
+            bytes -= e.size;
+        }
+    }
+
+    /**
+     * Removes all cached tiles of a dataset.
+     */
+    public synchronized void invalidate(String dataset) {
+        Iterator<Map.Entry<TileKey,Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<TileKey,Entry> e = it.next();
+            if (e.getKey().dataset.equals(dataset)) {
+                it.remove();
+                bytes -= e.getValue().size;
+            }
+        }
+    }
+
+    /**
+     * Removes all cached tiles.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * The number of tiles, including missing tiles, in the cache.
+     */
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * The approximate size in bytes of the cached tiles.
+     */
+    public synchronized long getSize() {
+        return bytes;
+    }
+
+    /**
+     * The number of lookups served from the cache.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * The number of lookups that had to read from the underlying tile set.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * The number of tiles evicted to stay within the byte budget.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("TileCache[count=%d, size=%d/%d, hits=%d, misses=%d, evictions=%d]",
+            entries.size(), bytes, maxBytes, hits, misses, evictions);
+    }
+
+    static class TileKey {
+        final String dataset;
+        final long z, x, y;
+
+        TileKey(String dataset, long z, long x, long y) {
+            this.dataset = dataset;
+            this.z = z;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = dataset.hashCode();
+            result = 31 * result + (int) (z ^ (z >>> 32));
+            result = 31 * result + (int) (x ^ (x >>> 32));
+            result = 31 * result + (int) (y ^ (y >>> 32));
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) obj;
+            return z == other.z && x == other.x && y == other.y && dataset.equals(other.dataset);
+        }
+    }
+
+    /**
+     * Cached tile, an entry with no data and buffer represents a missing tile.
+     */
+    static class Entry {
+        boolean missing;
+        String mimeType;
+        byte[] data;
+        ByteBuffer buffer;
+        long size;
+
+        /** md5 digest of the data, computed on first use */
+        volatile byte[] digest;
+
+        Entry(Tile t, boolean offHeap) {
+            size = ENTRY_OVERHEAD;
+            if (t == null) {
+                missing = true;
+                return;
+            }
+
+            mimeType = t.getMimeType();
+            byte[] d = t.getData();
+            if (d != null) {
+                if (offHeap) {
+                    buffer = ByteBuffer.allocateDirect(d.length);
+                    buffer.put(d);
+                    buffer.flip();
+                }
+                else {
+                    data = d;
+                }
+                size += d.length;
+            }
+        }
+
+        Tile tile(TileKey key) {
+            if (missing) {
+                return null;
+            }
+
+            byte[] d = data;
+            if (buffer != null) {
+                d = new byte[buffer.remaining()];
+                buffer.duplicate().get(d);
+            }
+            return new Tile((int)key.z, (int)key.x, (int)key.y, d, mimeType);
+        }
+
+        /**
+         * Returns the digest of the entry data, or <code>null</code> if the specified data is not
+         * that of the entry.
+         */
+        byte[] digest(byte[] d) {
+            if (missing) {
+                return null;
+            }
+            if (buffer != null ? d == null || !buffer.duplicate().equals(ByteBuffer.wrap(d)) 
+                : data != d) {
+                return null;
+            }
+
+            byte[] md = digest;
+            if (md == null) {
+                try {
+                    md = MessageDigest.getInstance("MD5").digest(d != null ? d : new byte[0]);
+                }
+                catch(NoSuchAlgorithmException ex) {
+                    throw new RuntimeException(ex);
+                }
+                digest = md;
+            }
+            return md;
+        }
+    }
+}
@@ -12,6 +12,7 @@ public class TileCover {
     TileGrid grid;
     int x0,x1,y0,y1;
 
+    /** tiles pulled by fill(), allocated lazily since large covers are often only enumerated */
     Tile[][] tiles;
 
     /**
@@ -29,8 +30,6 @@ public class TileCover {
         this.y0 = y0;
         this.x1 = x1;
         this.y1 = y1;
-
-        tiles = new Tile[getWidth()][getHeight()];
     }
 
     /**
@@ -97,6 +96,8 @@ public class TileCover {
      * @param tileset The tile source.
      */
     public void fill(TileSet tileset) throws IOException {
+        tiles = new Tile[getWidth()][getHeight()];
+
         Cursor<Tile> cursor = cursor(tileset);
         try {
             for (Tile t : cursor) {
@@ -118,7 +119,7 @@ public class TileCover {
      * </p> 
      */
     public Tile tile(int x, int y) {
-        Tile t = tiles[x][y];
+        Tile t = tiles != null ? tiles[x][y] : null;
         if (t == null) {
             // "blank" tile
             t = new Tile(grid.getZ(), x0 + x, y0 + y, null, null);
@@ -0,0 +1,451 @@
+package org.jeo.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Seeds a tile set with the tiles of another tile set over an area and range of zoom levels.
+ * <p>
+ * The pyramid of the source tile set is walked level by level, using
+ * {@link TilePyramid#cover(Envelope, int)} to determine the tiles that cover the area at each
+ * level. Tiles are read from the source, which is typically expensive to generate tiles, by a
+ * pool of worker threads and handed off to a single writer, the thread calling {@link #seed()},
+ * that writes them to the target with {@link TileSet#putAll(Cursor)}. Tasks for the workers are
+ * created as they make progress, so memory use does not depend on the number of tiles seeded.
+ * </p>
+ * <p>
+ * Example usage:
+ * <pre><code>
+ * long n = new TileSeeder(source, target).bounds(bbox).zoom(0, 10).threads(4).seed();
+ * </code></pre>
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class TileSeeder {
+
+    static Logger LOG = LoggerFactory.getLogger(TileSeeder.class);
+
+    /**
+     * Callback reporting seeding progress.
+     */
+    public static interface Progress {
+        /**
+         * Called periodically from the writer thread, and once when seeding completes.
+         *
+         * @param count The number of tiles processed so far.
+         * @param total The total number of tiles to process.
+         * @param rate The number of tiles processed per second.
+         */
+        void progress(long count, long total, double rate);
+    }
+
+    /** maximum number of tiles generated by a single task */
+    static final int TASK_SIZE = 256;
+
+    /** minimum time between progress reports, in milliseconds */
+    static final long PROGRESS_INTERVAL = 1000;
+
+    /** marker signalling the end of the tile queue */
+    static final Tile END = new Tile();
+
+    TileSet source;
+    TileSet target;
+
+    Envelope bounds;
+    Integer minZoom, maxZoom;
+    int threads = Runtime.getRuntime().availableProcessors();
+    int queueSize = 1024;
+    Progress progress;
+
+    /**
+     * Creates a new seeder.
+     *
+     * @param source The tile set to read tiles from.
+     * @param target The tile set to write tiles to.
+     */
+    public TileSeeder(TileSet source, TileSet target) {
+        this.source = source;
+        this.target = target;
+    }
+
+    /**
+     * Sets the area to seed, defaulting to the bounds of the source pyramid.
+     */
+    public TileSeeder bounds(Envelope bounds) {
+        this.bounds = bounds;
+        return this;
+    }
+
+    /**
+     * Sets the range of zoom levels to seed, defaulting to all levels of the source pyramid.
+     */
+    public TileSeeder zoom(Integer minZoom, Integer maxZoom) {
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads generating tiles, defaulting to the number of processors.
+     */
+    public TileSeeder threads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Sets the number of generated tiles that may wait to be written before the generating
+     * threads block.
+     */
+    public TileSeeder queue(int queueSize) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("queue size must be positive");
+        }
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    /**
+     * Sets the progress callback.
+     */
+    public TileSeeder progress(Progress progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    /**
+     * Computes the covers of the area to seed, one per zoom level.
+     */
+    public List<TileCover> covers() throws IOException {
+        TilePyramid pyr = source.getPyramid();
+        Envelope bbox = bounds != null ? bounds : pyr.getBounds();
+
+        List<TileCover> covers = new ArrayList<TileCover>();
+        for (TileGrid grid : pyr.getGrids()) {
+            int z = grid.getZ();
+            if ((minZoom != null && z < minZoom) || (maxZoom != null && z > maxZoom)) {
+                continue;
+            }
+
+            TileCover cov = pyr.cover(bbox, grid);
+            if (cov == null) {
+                continue;
+            }
+
+            // clamp to the grid
+            int x0 = Math.max(cov.getX0(), 0);
+            int x1 = Math.min(cov.getX1(), grid.getWidth()-1);
+            int y0 = Math.max(cov.getY0(), 0);
+            int y1 = Math.min(cov.getY1(), grid.getHeight()-1);
+            if (x0 > x1 || y0 > y1) {
+                continue;
+            }
+
+            covers.add(new TileCover(grid, x0, y0, x1, y1));
+        }
+        return covers;
+    }
+
+    /**
+     * The total number of tiles to seed.
+     */
+    public long count() throws IOException {
+        return count(covers());
+    }
+
+    long count(List<TileCover> covers) {
+        long count = 0;
+        for (TileCover cov : covers) {
+            count += ((long)cov.getWidth()) * cov.getHeight();
+        }
+        return count;
+    }
+
+    /**
+     * Seeds the target tile set.
+     * <p>
+     * This method blocks until all tiles have been written. Tiles the source does not contain
+     * are skipped.
+     * </p>
+     * @return The number of tiles written.
+     */
+    public long seed() throws IOException {
+        final List<TileCover> covers = covers();
+        long total = count(covers);
+        if (total == 0) {
+            return 0;
+        }
+
+        ThreadFactory threadFactory = new ThreadFactory() {
+            AtomicInteger n = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "jeo-seed-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+
+        ExecutorService exec = Executors.newFixedThreadPool(threads, threadFactory);
+        final Seed seed = new Seed(total, exec);
+
+        // tasks are created as the workers make progress rather than up front, from a separate
+        // thread since this one writes the tiles
+        Thread producer = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                seed.submit(covers);
+            }
+        });
+        producer.start();
+
+        try {
+            long written = target.putAll(seed.new QueueCursor());
+            seed.report();
+            return written;
+        }
+        finally {
+            producer.interrupt();
+            exec.shutdownNow();
+            try {
+                exec.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * State of a single seeding run, shared by the generating threads and the writer.
+     */
+    class Seed {
+        long total;
+        ExecutorService exec;
+
+        BlockingQueue<Tile> queue = new ArrayBlockingQueue<Tile>(queueSize);
+
+        /** bounds the number of tasks submitted and not yet completed */
+        Semaphore slots = new Semaphore(threads * 2);
+
+        /** 
+         * tasks submitted and not yet completed, plus one until all tasks are submitted, the last
+         * to finish ends the queue
+         */
+        AtomicInteger pending = new AtomicInteger(1);
+
+        /** number of tasks submitted */
+        AtomicLong submitted = new AtomicLong();
+
+        /** first error raised by a generating thread */
+        AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+        /** number of tiles generated, including those not present in the source */
+        AtomicLong count = new AtomicLong();
+
+        long start = System.currentTimeMillis();
+        long lastReport = start;
+
+        Seed(long total, ExecutorService exec) {
+            this.total = total;
+            this.exec = exec;
+        }
+
+        /**
+         * Splits the covers into tasks of at most {@link #TASK_SIZE} tiles, a row or part of a
+         * row each, submitting them as slots free up.
+         */
+        void submit(List<TileCover> covers) {
+            try {
+                for (TileCover cov : covers) {
+                    int z = cov.getGrid().getZ();
+                    for (int y = cov.getY0(); y <= cov.getY1(); y++) {
+                        for (int x = cov.getX0(); x <= cov.getX1(); x += TASK_SIZE) {
+                            if (error.get() != null) {
+                                return;
+                            }
+
+                            Generate task =
+                                new Generate(z, x, Math.min(x + TASK_SIZE - 1, cov.getX1()), y);
+
+                            slots.acquire();
+                            pending.incrementAndGet();
+                            try {
+                                exec.execute(wrap(task));
+                            }
+                            catch(RejectedExecutionException e) {
+                                // writer gave up
+                                pending.decrementAndGet();
+                                return;
+                            }
+                            submitted.incrementAndGet();
+                        }
+                    }
+                }
+            }
+            catch(InterruptedException e) {
+                // writer gave up
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                if (pending.decrementAndGet() == 0) {
+                    end();
+                }
+            }
+        }
+
+        Runnable wrap(final Generate task) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (error.get() == null) {
+                            task.run(Seed.this);
+                        }
+                    }
+                    catch(InterruptedException e) {
+                        // writer gave up
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    catch(Throwable t) {
+                        error.compareAndSet(null, t);
+                    }
+                    finally {
+                        slots.release();
+                    }
+
+                    if (pending.decrementAndGet() == 0 || error.get() != null) {
+                        end();
+                    }
+                }
+            };
+        }
+
+        /**
+         * Ends the queue.
+         */
+        void end() {
+            // offer rather than put, an error ends the queue regardless of order
+            if (!queue.offer(END)) {
+                try {
+                    queue.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        void report() {
+            if (progress == null) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            lastReport = now;
+
+            long n = count.get();
+            double secs = (now - start) / 1000d;
+            progress.progress(n, total, secs > 0 ? n / secs : 0);
+        }
+
+        /**
+         * Cursor draining the tile queue, run by the writer.
+         */
+        class QueueCursor extends Cursor<Tile> {
+
+            Tile next;
+            boolean done;
+
+            @Override
+            public boolean hasNext() throws IOException {
+                if (next == null && !done) {
+                    try {
+                        next = queue.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted waiting for tiles", e);
+                    }
+
+                    Throwable t = error.get();
+                    if (t != null) {
+                        throw t instanceof IOException ? (IOException) t : new IOException(t);
+                    }
+
+                    if (next == END) {
+                        next = null;
+                        done = true;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Tile next() throws IOException {
+                try {
+                    return hasNext() ? next : null;
+                }
+                finally {
+                    next = null;
+                    if (System.currentTimeMillis() - lastReport >= PROGRESS_INTERVAL) {
+                        report();
+                    }
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+        }
+    }
+
+    /**
+     * Task generating a run of tiles in a single row.
+     */
+    class Generate {
+        int z, x0, x1, y;
+
+        Generate(int z, int x0, int x1, int y) {
+            this.z = z;
+            this.x0 = x0;
+            this.x1 = x1;
+            this.y = y;
+        }
+
+        void run(Seed seed) throws IOException, InterruptedException {
+            for (int x = x0; x <= x1; x++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+
+                Tile t = source.read(z, x, y);
+                if (t != null && t.getData() != null) {
+                    seed.queue.put(t);
+                }
+                else {
+                    LOG.debug("no tile at {}/{}/{}", new Object[]{z, x, y});
+                }
+                seed.count.incrementAndGet();
+            }
+        }
+    }
+}
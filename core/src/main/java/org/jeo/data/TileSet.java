@@ -41,4 +41,29 @@ public interface TileSet extends Dataset {
      * @return A cursor over the tile set.
      */
     Cursor<Tile> read(long z1, long z2, long x1, long x2, long y1, long y2) throws IOException;
+
+    /**
+     * Writes a single tile to the layer, replacing any existing tile with the same tile index.
+     * <p>
+     * Writing many tiles should be done with {@link #putAll(Cursor)}.
+     * </p>
+     * @param t The tile to write.
+     * 
+     * @throws UnsupportedOperationException If the tile set is read only.
+     */
+    void put(Tile t) throws IOException;
+
+    /**
+     * Writes a set of tiles to the layer, replacing any existing tiles with the same tile index.
+     * <p>
+     * Implementations should write the tiles in bulk, for example in batched transactions. The 
+     * cursor is closed by this method.
+     * </p>
+     * @param tiles The tiles to write.
+     * 
+     * @return The number of tiles written.
+     * 
+     * @throws UnsupportedOperationException If the tile set is read only.
+     */
+    long putAll(Cursor<Tile> tiles) throws IOException;
 }
@@ -0,0 +1,907 @@
+package org.jeo.feature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.jeo.util.Util;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * A fixed capacity batch of features of the same {@link Schema}, stored by column.
+ * <p>
+ * Values are stored in one column per field of the schema rather than in one object per feature.
+ * Numeric fields ({@link Double}, {@link Float}, {@link Long}, {@link Integer}, {@link Short} and
+ * {@link Byte}) are stored in primitive arrays and can be read without boxing with
+ * {@link #getDouble(int, int)} and {@link #getLong(int, int)}. Geometry fields store the
+ * envelope of each geometry in a packed coordinate array, allowing {@link #intersects(int, Envelope)}
+ * and {@link #extent()} to work without touching the geometry objects.
+ * </p>
+ * <p>
+ * A batch is typically filled by a {@link org.jeo.data.BatchCursor}, processed, and then cleared
+ * and refilled, so that the storage is allocated once for many features:
+ * <pre><code>
+ * FeatureBatch batch = cursor.newBatch();
+ * while (cursor.next(batch)) {
+ *   for (int i = 0; i &lt; batch.size(); i++) {
+ *     double d = batch.getDouble(i, col);
+ *     ...
+ *   }
+ * }
+ * </code></pre>
+ * </p>
+ * <p>
+ * Rows can be appended from existing features with {@link #add(Feature)}, or appended with
+ * {@link #addRow(String)} and populated with {@link #set(int, int, Object)}. Values are
+ * converted to the type of the field when stored.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class FeatureBatch implements Iterable<Feature> {
+
+    /** schema of features in the batch */
+    Schema schema;
+
+    /** columns, one per schema field */
+    Column[] columns;
+
+    /** feature identifiers, and coordinate reference systems (created on demand) */
+    String[] ids;
+    CoordinateReferenceSystem[] crs;
+
+    /** position of the geometry field, -1 if none */
+    int geom;
+
+    /** number of rows */
+    int size;
+
+    /**
+     * Creates a new batch.
+     *
+     * @param schema The schema of features in the batch.
+     * @param capacity The maximum number of features the batch can hold.
+     */
+    public FeatureBatch(Schema schema, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+
+        this.schema = schema;
+        this.ids = new String[capacity];
+
+        columns = new Column[schema.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Column.create(schema.field(i).getType(), capacity);
+        }
+
+        Field g = schema.geometry();
+        geom = g != null ? schema.indexOf(g.getName()) : -1;
+    }
+
+    /**
+     * The schema of features in the batch.
+     */
+    public Schema schema() {
+        return schema;
+    }
+
+    /**
+     * The number of features in the batch.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The maximum number of features in the batch.
+     */
+    public int capacity() {
+        return ids.length;
+    }
+
+    /**
+     * Whether the batch contains no features.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Whether the batch is filled to capacity.
+     */
+    public boolean isFull() {
+        return size == ids.length;
+    }
+
+    /**
+     * Removes all features from the batch, retaining the allocated storage.
+     */
+    public void clear() {
+        Arrays.fill(ids, 0, size, null);
+        if (crs != null) {
+            Arrays.fill(crs, 0, size, null);
+        }
+        for (Column c : columns) {
+            c.clear(size);
+        }
+        size = 0;
+    }
+
+    /**
+     * Appends an empty row to the batch, all values being <code>null</code>.
+     *
+     * @param id The feature identifier, may be <code>null</code>.
+     *
+     * @return The index of the new row.
+     *
+     * @throws IllegalStateException If the batch is full.
+     */
+    public int addRow(String id) {
+        if (isFull()) {
+            throw new IllegalStateException("Batch is full");
+        }
+        int row = size++;
+        ids[row] = id;
+        return row;
+    }
+
+    /**
+     * Appends a feature to the batch.
+     * <p>
+     * Values are copied from the feature for each field of the batch schema, by position when
+     * the feature is a {@link ListFeature} of the same schema, otherwise by name.
+     * </p>
+     * @return The index of the new row.
+     *
+     * @throws IllegalStateException If the batch is full.
+     */
+    public int add(Feature f) {
+        int row = addRow(f.getId());
+        if (f.getCRS() != null) {
+            setCRS(row, f.getCRS());
+        }
+
+        if (f instanceof ListFeature && f.schema() == schema) {
+            ListFeature lf = (ListFeature) f;
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].set(row, lf.get(i));
+            }
+        }
+        else {
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].set(row, f.get(schema.field(i).getName()));
+            }
+        }
+        return row;
+    }
+
+    /**
+     * The identifier of the feature at the specified row.
+     * <p>
+     * A unique identifier is generated for rows that were added without one.
+     * </p>
+     */
+    public String id(int row) {
+        check(row);
+        String id = ids[row];
+        if (id == null) {
+            ids[row] = id = Util.uuid();
+        }
+        return id;
+    }
+
+    /**
+     * The coordinate reference system of the feature at the specified row, may be
+     * <code>null</code>.
+     */
+    public CoordinateReferenceSystem getCRS(int row) {
+        check(row);
+        return crs != null ? crs[row] : null;
+    }
+
+    /**
+     * Sets the coordinate reference system of the feature at the specified row.
+     */
+    public void setCRS(int row, CoordinateReferenceSystem c) {
+        check(row);
+        if (crs == null) {
+            if (c == null) {
+                return;
+            }
+            crs = new CoordinateReferenceSystem[ids.length];
+        }
+        crs[row] = c;
+    }
+
+    /**
+     * Returns the value at the specified row and column.
+     *
+     * @param row The row index, <tt>0 &lt;= row &lt; size()</tt>.
+     * @param col The column index, the position of the field in the schema.
+     */
+    public Object get(int row, int col) {
+        check(row);
+        return columns[col].get(row);
+    }
+
+    /**
+     * Sets the value at the specified row and column, converting it to the type of the field.
+     *
+     * @param row The row index, <tt>0 &lt;= row &lt; size()</tt>.
+     * @param col The column index, the position of the field in the schema.
+     * @param value The new value, may be <code>null</code>.
+     */
+    public void set(int row, int col, Object value) {
+        check(row);
+        columns[col].set(row, value);
+    }
+
+    /**
+     * Sets the value at the specified row and column as is, without converting it to the type of
+     * the field.
+     * <p>
+     * Used by formats whose values may not match the declared field type, so that the value read
+     * from the batch is the same as the one read from the equivalent feature. Values of the field
+     * type are still stored without boxing for numeric fields.
+     * </p>
+     */
+    public void setObject(int row, int col, Object value) {
+        check(row);
+        columns[col].setObject(row, value);
+    }
+
+    /**
+     * Sets a numeric value at the specified row and column, without boxing for numeric fields.
+     */
+    public void setDouble(int row, int col, double value) {
+        check(row);
+        columns[col].setDouble(row, value);
+    }
+
+    /**
+     * Sets a numeric value at the specified row and column, without boxing for numeric fields.
+     */
+    public void setLong(int row, int col, long value) {
+        check(row);
+        columns[col].setLong(row, value);
+    }
+
+    /**
+     * Whether the value at the specified row and column is <code>null</code>.
+     */
+    public boolean isNull(int row, int col) {
+        check(row);
+        return columns[col].isNull(row);
+    }
+
+    /**
+     * Returns the value at the specified row and column as a double, without boxing for numeric
+     * fields.
+     *
+     * @return The value, or {@link Double#NaN} if the value is <code>null</code> or not numeric.
+     */
+    public double getDouble(int row, int col) {
+        check(row);
+        return columns[col].getDouble(row);
+    }
+
+    /**
+     * Returns the value at the specified row and column as a long, without boxing for numeric
+     * fields.
+     *
+     * @return The value, or <tt>0</tt> if the value is <code>null</code> or not numeric, see
+     *   {@link #isNull(int, int)}.
+     */
+    public long getLong(int row, int col) {
+        check(row);
+        return columns[col].getLong(row);
+    }
+
+    /**
+     * The geometry of the feature at the specified row, the value of the schema geometry field.
+     *
+     * @return The geometry, or <code>null</code> if the schema has no geometry field.
+     */
+    public Geometry geometry(int row) {
+        check(row);
+        return geom != -1 ? (Geometry) columns[geom].get(row) : null;
+    }
+
+    /**
+     * Determines if the envelope of the geometry at the specified row intersects a bounding box.
+     * <p>
+     * This method uses the packed envelopes of the geometry column and does not access the
+     * geometry object.
+     * </p>
+     * @return <tt>false</tt> if the schema has no geometry field, or the geometry is
+     *   <code>null</code> or empty.
+     */
+    public boolean intersects(int row, Envelope bbox) {
+        check(row);
+        if (geom == -1) {
+            return false;
+        }
+
+        double[] b = ((GeometryColumn) columns[geom]).bounds;
+        int i = row * 4;
+
+        // comparisons with NaN for empty geometries are false
+        return b[i] <= bbox.getMaxX() && b[i+2] >= bbox.getMinX() &&
+            b[i+1] <= bbox.getMaxY() && b[i+3] >= bbox.getMinY();
+    }
+
+    /**
+     * The aggregated envelope of the geometries of the features in the batch.
+     *
+     * @return The envelope, a null envelope if the batch contains no geometries.
+     */
+    public Envelope extent() {
+        Envelope e = new Envelope();
+        if (geom == -1) {
+            return e;
+        }
+
+        double[] b = ((GeometryColumn) columns[geom]).bounds;
+        for (int i = 0; i < size * 4; i += 4) {
+            if (!Double.isNaN(b[i])) {
+                e.expandToInclude(b[i], b[i+1]);
+                e.expandToInclude(b[i+2], b[i+3]);
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Removes the rows of the batch not marked to be retained, preserving the order of the
+     * remaining rows.
+     *
+     * @param keep Flags aligned with the rows of the batch, <tt>true</tt> to retain the row.
+     *
+     * @return The new size of the batch.
+     */
+    public int retain(boolean[] keep) {
+        int n = 0;
+        for (int row = 0; row < size; row++) {
+            if (!keep[row]) {
+                continue;
+            }
+            if (n != row) {
+                ids[n] = ids[row];
+                if (crs != null) {
+                    crs[n] = crs[row];
+                }
+                for (Column c : columns) {
+                    c.move(row, n);
+                }
+            }
+            n++;
+        }
+
+        int old = size;
+        size = n;
+
+        // release references held by the removed rows
+        Arrays.fill(ids, n, old, null);
+        if (crs != null) {
+            Arrays.fill(crs, n, old, null);
+        }
+        for (Column c : columns) {
+            c.clear(n, old);
+        }
+        return n;
+    }
+
+    /**
+     * Returns a copy of the feature at the specified row.
+     */
+    public Feature feature(int row) {
+        check(row);
+
+        List<Object> values = new ArrayList<Object>(columns.length);
+        for (Column c : columns) {
+            values.add(c.get(row));
+        }
+
+        ListFeature f = new ListFeature(id(row), values, schema);
+        f.setCRS(getCRS(row));
+        return f;
+    }
+
+    /**
+     * Returns a view of the feature at the specified row.
+     * <p>
+     * Unlike {@link #feature(int)} the values of the feature are not copied, rather read from
+     * and written to the batch. The view is only valid until the batch is cleared or modified
+     * with {@link #retain(boolean[])}.
+     * </p>
+     */
+    public Feature view(int row) {
+        check(row);
+        return new Row(row);
+    }
+
+    /**
+     * Iterator over copies of the features in the batch, see {@link #feature(int)}.
+     */
+    @Override
+    public Iterator<Feature> iterator() {
+        return new Iterator<Feature>() {
+            int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < size;
+            }
+
+            @Override
+            public Feature next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return feature(i++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    void check(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row: " + row + ", size: " + size);
+        }
+    }
+
+    /**
+     * Feature view of a row of the batch, see {@link FeatureBatch#view(int)}.
+     * <p>
+     * Values can be read by position with {@link #get(int)}, as with {@link ListFeature}.
+     * </p>
+     */
+    public class Row extends AbstractFeature {
+
+        int row;
+
+        Row(int row) {
+            // identifier generated lazily
+            super("", FeatureBatch.this.schema);
+            this.row = row;
+            this.crs = FeatureBatch.this.getCRS(row);
+        }
+
+        /**
+         * The batch the row belongs to.
+         */
+        public FeatureBatch batch() {
+            return FeatureBatch.this;
+        }
+
+        /**
+         * Returns the value at the specified column, the position of the field in the schema.
+         */
+        public Object get(int col) {
+            return columns[col].get(row);
+        }
+
+        @Override
+        public String getId() {
+            return id(row);
+        }
+
+        @Override
+        public void setCRS(CoordinateReferenceSystem crs) {
+            super.setCRS(crs);
+            FeatureBatch.this.setCRS(row, crs);
+        }
+
+        @Override
+        public Object get(String key) {
+            int i = schema.indexOf(key);
+            return i != -1 ? columns[i].get(row) : null;
+        }
+
+        @Override
+        public void put(String key, Object val) {
+            int i = schema.indexOf(key);
+            if (i == -1) {
+                throw new IllegalArgumentException("No such key " + key);
+            }
+            columns[i].set(row, val);
+        }
+
+        @Override
+        public Geometry geometry() {
+            return geom != -1 ? (Geometry) columns[geom].get(row) : null;
+        }
+
+        @Override
+        protected Geometry findGeometry() {
+            return geometry();
+        }
+
+        @Override
+        protected Schema buildSchema() {
+            return schema;
+        }
+
+        @Override
+        public List<Object> list() {
+            List<Object> list = new ArrayList<Object>(columns.length);
+            for (Column c : columns) {
+                list.add(c.get(row));
+            }
+            return Collections.unmodifiableList(list);
+        }
+
+        @Override
+        public Map<String, Object> map() {
+            Map<String,Object> map = new LinkedHashMap<String, Object>();
+            for (int i = 0; i < columns.length; i++) {
+                map.put(schema.field(i).getName(), columns[i].get(row));
+            }
+            return Collections.unmodifiableMap(map);
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(getId()).append(map()).toString();
+        }
+    }
+
+    /**
+     * Storage for the values of a single field.
+     */
+    static abstract class Column {
+
+        static Column create(Class<?> type, int capacity) {
+            if (type == Double.class || type == Float.class) {
+                return new DoubleColumn(type, capacity);
+            }
+            if (type == Long.class || type == Integer.class || type == Short.class
+                || type == Byte.class) {
+                return new LongColumn(type, capacity);
+            }
+            if (Geometry.class.isAssignableFrom(type)) {
+                return new GeometryColumn(capacity);
+            }
+            return new ObjectColumn(capacity);
+        }
+
+        abstract Object get(int row);
+
+        abstract void set(int row, Object value);
+
+        void setObject(int row, Object value) {
+            set(row, value);
+        }
+
+        abstract boolean isNull(int row);
+
+        void setDouble(int row, double value) {
+            set(row, value);
+        }
+
+        void setLong(int row, long value) {
+            set(row, value);
+        }
+
+        double getDouble(int row) {
+            Object o = get(row);
+            return o instanceof Number ? ((Number) o).doubleValue() : Double.NaN;
+        }
+
+        long getLong(int row) {
+            Object o = get(row);
+            return o instanceof Number ? ((Number) o).longValue() : 0;
+        }
+
+        /**
+         * Moves the value of one row to another.
+         */
+        abstract void move(int from, int to);
+
+        /**
+         * Resets rows in the range <tt>[from,to)</tt> to <code>null</code>.
+         */
+        abstract void clear(int from, int to);
+
+        void clear(int size) {
+            clear(0, size);
+        }
+    }
+
+    /**
+     * Column of primitive numeric values.
+     * <p>
+     * Values that are not numbers, and can't be converted to one, are stored as is so that no
+     * information is lost.
+     * </p>
+     */
+    static abstract class NumericColumn extends Column {
+
+        static final byte NULL = 0, PRIMITIVE = 1, OTHER = 2;
+
+        Class<?> type;
+        byte[] state;
+        Object[] other;
+
+        NumericColumn(Class<?> type, int capacity) {
+            this.type = type;
+            this.state = new byte[capacity];
+        }
+
+        @Override
+        void set(int row, Object value) {
+            if (value == null) {
+                state[row] = NULL;
+                return;
+            }
+
+            Number n = value instanceof Number ? (Number) value : parse(value.toString());
+            if (n != null) {
+                setPrimitive(row, n);
+                state[row] = PRIMITIVE;
+            }
+            else {
+                setOther(row, value);
+            }
+        }
+
+        @Override
+        void setObject(int row, Object value) {
+            if (value == null) {
+                state[row] = NULL;
+            }
+            else if (value.getClass() == type) {
+                setPrimitive(row, (Number) value);
+                state[row] = PRIMITIVE;
+            }
+            else {
+                setOther(row, value);
+            }
+        }
+
+        void setOther(int row, Object value) {
+            if (other == null) {
+                other = new Object[state.length];
+            }
+            other[row] = value;
+            state[row] = OTHER;
+        }
+
+        @Override
+        Object get(int row) {
+            switch(state[row]) {
+            case PRIMITIVE:
+                return box(row);
+            case OTHER:
+                return other[row];
+            default:
+                return null;
+            }
+        }
+
+        @Override
+        boolean isNull(int row) {
+            return state[row] == NULL;
+        }
+
+        @Override
+        void move(int from, int to) {
+            state[to] = state[from];
+            if (other != null) {
+                other[to] = other[from];
+            }
+        }
+
+        @Override
+        void clear(int from, int to) {
+            Arrays.fill(state, from, to, NULL);
+            if (other != null) {
+                Arrays.fill(other, from, to, null);
+            }
+        }
+
+        Number parse(String str) {
+            try {
+                return Long.parseLong(str);
+            }
+            catch(NumberFormatException e) {
+                try {
+                    return Double.parseDouble(str);
+                }
+                catch(NumberFormatException e1) {
+                    return null;
+                }
+            }
+        }
+
+        abstract void setPrimitive(int row, Number n);
+
+        abstract Object box(int row);
+    }
+
+    static class DoubleColumn extends NumericColumn {
+        double[] values;
+
+        DoubleColumn(Class<?> type, int capacity) {
+            super(type, capacity);
+            values = new double[capacity];
+        }
+
+        @Override
+        void setPrimitive(int row, Number n) {
+            values[row] = n.doubleValue();
+        }
+
+        @Override
+        void setDouble(int row, double value) {
+            values[row] = value;
+            state[row] = PRIMITIVE;
+        }
+
+        @Override
+        void setLong(int row, long value) {
+            setDouble(row, value);
+        }
+
+        @Override
+        Object box(int row) {
+            return type == Float.class ? (Object) Float.valueOf((float) values[row]) :
+                (Object) Double.valueOf(values[row]);
+        }
+
+        @Override
+        double getDouble(int row) {
+            return state[row] == PRIMITIVE ? values[row] : super.getDouble(row);
+        }
+
+        @Override
+        long getLong(int row) {
+            return state[row] == PRIMITIVE ? (long) values[row] : super.getLong(row);
+        }
+
+        @Override
+        void move(int from, int to) {
+            super.move(from, to);
+            values[to] = values[from];
+        }
+    }
+
+    static class LongColumn extends NumericColumn {
+        long[] values;
+
+        LongColumn(Class<?> type, int capacity) {
+            super(type, capacity);
+            values = new long[capacity];
+        }
+
+        @Override
+        void setPrimitive(int row, Number n) {
+            values[row] = n.longValue();
+        }
+
+        @Override
+        void setLong(int row, long value) {
+            values[row] = value;
+            state[row] = PRIMITIVE;
+        }
+
+        @Override
+        Object box(int row) {
+            long l = values[row];
+            if (type == Integer.class) {
+                return Integer.valueOf((int) l);
+            }
+            if (type == Short.class) {
+                return Short.valueOf((short) l);
+            }
+            if (type == Byte.class) {
+                return Byte.valueOf((byte) l);
+            }
+            return Long.valueOf(l);
+        }
+
+        @Override
+        double getDouble(int row) {
+            return state[row] == PRIMITIVE ? values[row] : super.getDouble(row);
+        }
+
+        @Override
+        long getLong(int row) {
+            return state[row] == PRIMITIVE ? values[row] : super.getLong(row);
+        }
+
+        @Override
+        void move(int from, int to) {
+            super.move(from, to);
+            values[to] = values[from];
+        }
+    }
+
+    static class ObjectColumn extends Column {
+        Object[] values;
+
+        ObjectColumn(int capacity) {
+            values = new Object[capacity];
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void set(int row, Object value) {
+            values[row] = value;
+        }
+
+        @Override
+        boolean isNull(int row) {
+            return values[row] == null;
+        }
+
+        @Override
+        void move(int from, int to) {
+            values[to] = values[from];
+        }
+
+        @Override
+        void clear(int from, int to) {
+            Arrays.fill(values, from, to, null);
+        }
+    }
+
+    /**
+     * Column of geometries, maintaining the packed envelopes (minx, miny, maxx, maxy) of the
+     * geometries, <tt>NaN</tt> for null or empty geometries.
+     */
+    static class GeometryColumn extends ObjectColumn {
+        double[] bounds;
+
+        GeometryColumn(int capacity) {
+            super(capacity);
+            bounds = new double[capacity * 4];
+            Arrays.fill(bounds, Double.NaN);
+        }
+
+        @Override
+        void set(int row, Object value) {
+            super.set(row, value);
+
+            int i = row * 4;
+            Envelope e = value instanceof Geometry ? ((Geometry) value).getEnvelopeInternal() : null;
+            if (e == null || e.isNull()) {
+                Arrays.fill(bounds, i, i + 4, Double.NaN);
+            }
+            else {
+                bounds[i] = e.getMinX();
+                bounds[i+1] = e.getMinY();
+                bounds[i+2] = e.getMaxX();
+                bounds[i+3] = e.getMaxY();
+            }
+        }
+
+        @Override
+        void move(int from, int to) {
+            super.move(from, to);
+            System.arraycopy(bounds, from * 4, bounds, to * 4, 4);
+        }
+
+        @Override
+        void clear(int from, int to) {
+            super.clear(from, to);
+            Arrays.fill(bounds, from * 4, to * 4, Double.NaN);
+        }
+    }
+}
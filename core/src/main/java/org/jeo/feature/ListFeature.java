@@ -99,9 +99,14 @@ public class ListFeature extends AbstractFeature {
 
     @Override
     public Map<String, Object> map() {
+        Schema schema = schema();
         LinkedHashMap<String, Object> map = new LinkedHashMap<String, Object>();
-        for (Field f : schema()) {
-            map.put(f.getName(), get(f.getName()));
+        for (int i = 0; i < schema.size(); i++) {
+            String name = schema.field(i).getName();
+            if (!map.containsKey(name)) {
+                // first field with a given name wins, as with get(String)
+                map.put(name, get(i));
+            }
         }
         return map;
     }
@@ -1,8 +1,11 @@
 package org.jeo.feature;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.osgeo.proj4j.CoordinateReferenceSystem;
 
@@ -12,6 +15,12 @@ import org.osgeo.proj4j.CoordinateReferenceSystem;
  * A schema is am immutable collection of named {@link Field} objects, any of which may be a 
  * geometry field. 
  * </p>
+ * <p>
+ * Fields are indexed by name, so {@link #field(String)} and {@link #indexOf(String)} are constant
+ * time operations. Code processing many features of the same schema should resolve field 
+ * positions once with {@link #indexOf(String)} or {@link #indexOf(List)} and access values by 
+ * position, for instance with {@link ListFeature#get(int)}.
+ * </p>
  * @author Justin Deoliveira, OpenGeo
  */
 public class Schema implements Iterable<Field> {
@@ -22,6 +31,12 @@ public class Schema implements Iterable<Field> {
     /** list of fields */
     List<Field> fields;
 
+    /** field name to position */
+    Map<String,Integer> index;
+
+    /** position of the geometry field, -1 if none */
+    int geometry;
+
     /**
      * Returns a new schema builder.
      * 
@@ -39,7 +54,21 @@ public class Schema implements Iterable<Field> {
      */
     public Schema(String name, List<Field> fields) {
         this.name = name;
-        this.fields = Collections.unmodifiableList(fields);
+        this.fields = Collections.unmodifiableList(new ArrayList<Field>(fields));
+
+        Map<String,Integer> index = new HashMap<String, Integer>();
+        geometry = -1;
+        for (int i = 0; i < this.fields.size(); i++) {
+            Field f = this.fields.get(i);
+            if (!index.containsKey(f.getName())) {
+                // first field with a given name wins
+                index.put(f.getName(), i);
+            }
+            if (geometry == -1 && f.isGeometry()) {
+                geometry = i;
+            }
+        }
+        this.index = Collections.unmodifiableMap(index);
     }
 
     /**
@@ -57,13 +86,7 @@ public class Schema implements Iterable<Field> {
      * </p>
      */
     public Field geometry() {
-        //TODO: store the derived result
-        for (Field f : this) {
-            if (f.isGeometry()) {
-                return f;
-            }
-        }
-        return null;
+        return geometry != -1 ? fields.get(geometry) : null;
     }
 
     /**
@@ -97,6 +120,15 @@ public class Schema implements Iterable<Field> {
         return i != -1 ? fields.get(i) : null;
     }
 
+    /**
+     * Returns the field of the schema at the specified position.
+     * 
+     * @param i The field index, <tt>0 &lt;= i &lt; size()</tt>.
+     */
+    public Field field(int i) {
+        return fields.get(i);
+    }
+
     /**
      * Returns the index of the field in the schema with the specified name, or <code>-1</code> if
      * no such field exists.
@@ -106,14 +138,24 @@ public class Schema implements Iterable<Field> {
      * @return The index position, or <code>-1</code>
      */
     public int indexOf(String name) {
-        //TODO: potentially add an index of name to field
-        for (int i = 0; i < fields.size(); i++) {
-            Field f = fields.get(i);
-            if (f.getName().equals(name)) {
-                return i;
-            }
+        Integer i = index.get(name);
+        return i != null ? i : -1;
+    }
+
+    /**
+     * Returns the indexes of the fields in the schema with the specified names.
+     * 
+     * @param names The field names.
+     * 
+     * @return The index positions, in the order of <tt>names</tt>, <code>-1</code> for names 
+     *   with no such field.
+     */
+    public int[] indexOf(List<String> names) {
+        int[] indexes = new int[names.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = indexOf(names.get(i));
         }
-        return -1;
+        return indexes;
     }
 
     /**
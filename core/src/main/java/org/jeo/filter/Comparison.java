@@ -71,6 +71,13 @@ public class Comparison extends Filter {
             }
         }
 
+        return test(o1, o2);
+    }
+
+    /**
+     * Applies the operator to operands already converted by {@link #compare(Object, Object)}.
+     */
+    boolean test(Object o1, Object o2) {
         if (type == Type.EQUAL) {
             return o1 != null ? o1.equals(o2) : o2 == null;
         }
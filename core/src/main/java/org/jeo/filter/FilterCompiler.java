@@ -0,0 +1,406 @@
+package org.jeo.filter;
+
+import java.util.List;
+
+import org.jeo.feature.Feature;
+import org.jeo.feature.FeatureBatch;
+import org.jeo.feature.Field;
+import org.jeo.feature.ListFeature;
+import org.jeo.feature.Schema;
+import org.jeo.util.Convert;
+import org.jeo.util.Optional;
+
+/**
+ * Compiles a filter into an evaluator bound to a specific {@link Schema}.
+ * <p>
+ * Applying a filter walks the filter tree for every object, looking up properties by name and
+ * converting literal operands to the type of the value they are compared against. The compiled
+ * filter does that work once:
+ * <ul>
+ *   <li>Properties are resolved to their index in the schema, and read by position from
+ *   {@link ListFeature} objects and {@link FeatureBatch} rows of that schema.</li>
+ *   <li>Literals compared to a property are converted to the type of the property up front, and
+ *   the conversion cached for values of other types.</li>
+ *   <li>Logical operands are held in arrays and evaluated with short circuiting.</li>
+ *   <li>Spatial filters prepare their literal geometry once for the compiled filter.</li>
+ * </ul>
+ * Objects not matching the schema are still evaluated correctly, looking up properties by name.
+ * The compiled filter is visited as the original filter, which is available from
+ * {@link Compiled#getFilter()}. It is only equal to filters compiled from an equal filter.
+ * </p>
+ * <p>
+ * Usage:
+ * <pre><code>
+ * Filter compiled = FilterCompiler.compile(filter, schema);
+ * for (Feature f : features) {
+ *   if (compiled.apply(f)) {
+ *     ...
+ *   }
+ * }
+ * </code></pre>
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class FilterCompiler {
+
+    /**
+     * Compiles a filter.
+     * <p>
+     * A filter already compiled against another schema is recompiled from the original filter.
+     * </p>
+     * @param filter The filter to compile.
+     * @param schema The schema of objects the filter will be applied to, may be
+     *   <code>null</code> to only compile the structure of the filter.
+     */
+    public static Filter compile(Filter filter, Schema schema) {
+        if (filter instanceof Compiled) {
+            Compiled c = (Compiled) filter;
+            if (c.schema == schema) {
+                return c;
+            }
+            filter = c.filter;
+        }
+        if (filter == null || filter == Filter.TRUE || filter == Filter.FALSE) {
+            return filter;
+        }
+        return new Compiled(filter, new FilterCompiler(schema).evaluator(filter), schema);
+    }
+
+    Schema schema;
+
+    FilterCompiler(Schema schema) {
+        this.schema = schema;
+    }
+
+    Evaluator evaluator(Filter filter) {
+        Object e = filter.accept(new CompileVisitor(), null);
+        return e instanceof Evaluator ? (Evaluator) e : new Delegate(filter);
+    }
+
+    Expression expression(Expression expr) {
+        if (expr instanceof Property && schema != null) {
+            String name = ((Property) expr).getProperty();
+            int i = schema.indexOf(name);
+            if (i != -1) {
+                return new BoundProperty((Property) expr, schema, i);
+            }
+        }
+        return expr;
+    }
+
+    /**
+     * Visitor producing the evaluator for each filter.
+     */
+    class CompileVisitor extends FilterVisitor {
+
+        @Override
+        public Object visit(All all, Object obj) {
+            return new Evaluator() {
+                @Override
+                boolean apply(Object obj) {
+                    return true;
+                }
+            };
+        }
+
+        @Override
+        public Object visit(None none, Object obj) {
+            return new Evaluator() {
+                @Override
+                boolean apply(Object obj) {
+                    return false;
+                }
+            };
+        }
+
+        @Override
+        public Object visit(Id id, Object obj) {
+            return new Delegate(id);
+        }
+
+        @Override
+        public Object visit(Logic logic, Object obj) {
+            if (logic.getClass() != Logic.class) {
+                return new Delegate(logic);
+            }
+
+            List<Filter> parts = logic.getParts();
+            Evaluator[] evals = new Evaluator[parts.size()];
+            for (int i = 0; i < evals.length; i++) {
+                evals[i] = evaluator(parts.get(i));
+            }
+
+            switch(logic.getType()) {
+            case AND:
+                return new And(evals);
+            case OR:
+                return new Or(evals);
+            case NOT:
+                return new Not(evals[0]);
+            default:
+                return new Delegate(logic);
+            }
+        }
+
+        @Override
+        public Object visit(Comparison compare, Object obj) {
+            if (compare.getClass() != Comparison.class) {
+                // subclass may override the comparison
+                return new Delegate(compare);
+            }
+
+            Expression left = expression(compare.getLeft());
+            Expression right = expression(compare.getRight());
+
+            if (right instanceof Literal) {
+                return new LiteralComparison(compare, left, right.evaluate(null));
+            }
+            return new ExpressionComparison(compare, left, right);
+        }
+
+        @Override
+        public Object visit(Spatial spatial, Object obj) {
+            if (spatial.getClass() != Spatial.class) {
+                return new Delegate(spatial);
+            }
+            return new Delegate(new Spatial(spatial.getType(),
+                expression(spatial.getLeft()), expression(spatial.getRight())));
+        }
+    }
+
+    /**
+     * Compiled filter.
+     */
+    static class Compiled extends Filter {
+        final Filter filter;
+        final Evaluator eval;
+        final Schema schema;
+
+        Compiled(Filter filter, Evaluator eval, Schema schema) {
+            this.filter = filter;
+            this.eval = eval;
+            this.schema = schema;
+        }
+
+        /**
+         * The original filter.
+         */
+        public Filter getFilter() {
+            return filter;
+        }
+
+        @Override
+        public boolean apply(Object obj) {
+            return eval.apply(obj);
+        }
+
+        @Override
+        public Object accept(FilterVisitor v, Object obj) {
+            return filter.accept(v, obj);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            return filter.equals(((Compiled) obj).filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return filter.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return filter.toString();
+        }
+    }
+
+    static abstract class Evaluator {
+        abstract boolean apply(Object obj);
+    }
+
+    static class Delegate extends Evaluator {
+        final Filter filter;
+
+        Delegate(Filter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        boolean apply(Object obj) {
+            return filter.apply(obj);
+        }
+    }
+
+    static class And extends Evaluator {
+        final Evaluator[] parts;
+
+        And(Evaluator[] parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        boolean apply(Object obj) {
+            for (Evaluator e : parts) {
+                if (!e.apply(obj)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static class Or extends Evaluator {
+        final Evaluator[] parts;
+
+        Or(Evaluator[] parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        boolean apply(Object obj) {
+            for (Evaluator e : parts) {
+                if (e.apply(obj)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static class Not extends Evaluator {
+        final Evaluator part;
+
+        Not(Evaluator part) {
+            this.part = part;
+        }
+
+        @Override
+        boolean apply(Object obj) {
+            return !part.apply(obj);
+        }
+    }
+
+    static class ExpressionComparison extends Evaluator {
+        final Comparison compare;
+        final Expression left, right;
+
+        ExpressionComparison(Comparison compare, Expression left, Expression right) {
+            this.compare = compare;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean apply(Object obj) {
+            return compare.compare(left.evaluate(obj), right.evaluate(obj));
+        }
+    }
+
+    /**
+     * Comparison of an expression to a literal, caching the conversion of the literal to the
+     * type of the expression value.
+     */
+    static class LiteralComparison extends Evaluator {
+        final Comparison compare;
+        final Expression left;
+        final Object literal;
+
+        /** last conversion of the literal */
+        volatile Conversion conv;
+
+        LiteralComparison(Comparison compare, Expression left, Object literal) {
+            this.compare = compare;
+            this.left = left;
+            this.literal = literal;
+
+            if (left instanceof BoundProperty && literal != null) {
+                // convert up front to the type of the property
+                Class<?> type = ((BoundProperty) left).field.getType();
+                if (type != Object.class) {
+                    conv = new Conversion(type, literal);
+                }
+            }
+        }
+
+        @Override
+        boolean apply(Object obj) {
+            Object o1 = left.evaluate(obj);
+            Object o2 = literal;
+
+            if (o1 != null && !o1.getClass().isInstance(o2)) {
+                Conversion c = conv;
+                if (c == null || c.type != o1.getClass()) {
+                    conv = c = new Conversion(o1.getClass(), literal);
+                }
+                o2 = c.value;
+            }
+            return compare.test(o1, o2);
+        }
+    }
+
+    /**
+     * Literal converted to a type, or the literal itself if not convertible.
+     */
+    static class Conversion {
+        final Class<?> type;
+        final Object value;
+
+        Conversion(Class<?> type, Object literal) {
+            this.type = type;
+
+            Optional<?> converted = Convert.to(literal, type);
+            this.value = converted.has() ? converted.get() : literal;
+        }
+    }
+
+    /**
+     * Property resolved to a field position in a schema.
+     */
+    static class BoundProperty implements Expression {
+        final Property property;
+        final Schema schema;
+        final Field field;
+        final int index;
+
+        BoundProperty(Property property, Schema schema, int index) {
+            this.property = property;
+            this.schema = schema;
+            this.field = schema.getFields().get(index);
+            this.index = index;
+        }
+
+        @Override
+        public Object evaluate(Object obj) {
+            if (obj instanceof ListFeature) {
+                ListFeature f = (ListFeature) obj;
+                if (f.schema() == schema) {
+                    return f.get(index);
+                }
+            }
+            if (obj instanceof FeatureBatch.Row) {
+                FeatureBatch.Row r = (FeatureBatch.Row) obj;
+                if (r.batch().schema() == schema) {
+                    return r.get(index);
+                }
+            }
+            if (obj instanceof Feature) {
+                return ((Feature) obj).get(property.getProperty());
+            }
+            return null;
+        }
+
+        @Override
+        public Object accept(FilterVisitor visitor, Object obj) {
+            return property.accept(visitor, obj);
+        }
+
+        @Override
+        public String toString() {
+            return property.toString();
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package org.jeo.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jeo.util.Pair;
+
+/**
+ * Simplifies and restructures filters before they are encoded natively or evaluated in memory.
+ * <p>
+ * The optimizer provides the following operations:
+ * <ul>
+ *   <li>{@link #simplify(Filter)} - flattens nested logical filters of the same type, removes
+ *   duplicate operands and folds constant sub filters.</li>
+ *   <li>{@link #split(Filter, Capabilities)} - splits a filter into the part a format can
+ *   handle natively and the residual part that must be evaluated in memory.</li>
+ *   <li>{@link #reorder(Filter)} - orders the operands of logical filters so that the cheapest
+ *   are evaluated first, with spatial filters last.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Usage by a format:
+ * <pre><code>
+ * Pair&lt;Filter,Filter> split = FilterOptimizer.split(q.getFilter(), capabilities);
+ * if (split.first() != Filter.TRUE) {
+ *   // encode split.first() natively
+ *   ...
+ *   qp.filtered(split.second());
+ * }
+ * </code></pre>
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class FilterOptimizer {
+
+    /**
+     * Determines which filters a format can handle natively.
+     */
+    public static interface Capabilities {
+
+        /**
+         * Whether the filter can be handled natively in its entirety.
+         */
+        boolean supports(Filter filter);
+    }
+
+    /** relative costs of evaluating filters in memory */
+    static final int COST_CONSTANT = 0;
+    static final int COST_SIMPLE = 1;
+    static final int COST_FUNCTION = 5;
+    static final int COST_SPATIAL = 20;
+
+    /**
+     * Simplifies a filter.
+     * <p>
+     * The resulting filter is equivalent to the original. {@link Filter#TRUE} and
+     * {@link Filter#FALSE} are returned when the filter reduces to a constant.
+     * </p>
+     * @param filter The filter to simplify, may be <code>null</code>.
+     */
+    public static Filter simplify(Filter filter) {
+        if (filter == null) {
+            return null;
+        }
+        return (Filter) filter.accept(new SimplifyVisitor(), null);
+    }
+
+    /**
+     * Splits a filter into the part that can be handled natively and the residual part.
+     * <p>
+     * The filter is simplified and its top level AND operands are tested individually, so a
+     * single unsupported operand does not prevent the rest of the filter from being handled
+     * natively. The logical AND of the two parts is equivalent to the original filter. The
+     * residual filter is reordered with {@link #reorder(Filter)}.
+     * </p>
+     * @param filter The filter to split.
+     * @param caps The capabilities of the format.
+     *
+     * @return Pair of native filter and residual filter, either being {@link Filter#TRUE} when
+     *   empty.
+     */
+    public static Pair<Filter,Filter> split(Filter filter, Capabilities caps) {
+        filter = simplify(filter);
+        if (Filter.isTrueOrNull(filter)) {
+            return new Pair<Filter, Filter>(Filter.TRUE, Filter.TRUE);
+        }
+
+        List<Filter> supported = new ArrayList<Filter>();
+        List<Filter> residual = new ArrayList<Filter>();
+
+        if (caps.supports(filter)) {
+            supported.add(filter);
+        }
+        else if (isAnd(filter)) {
+            for (Filter f : ((Logic) filter).getParts()) {
+                (caps.supports(f) ? supported : residual).add(f);
+            }
+        }
+        else {
+            residual.add(filter);
+        }
+
+        return new Pair<Filter, Filter>(and(supported), reorder(and(residual)));
+    }
+
+    /**
+     * Reorders the operands of logical filters by their cost of evaluation.
+     * <p>
+     * Comparisons of properties and literals are considered cheapest, followed by filters
+     * involving functions, with spatial filters being the most expensive. The relative order of
+     * operands of equal cost is preserved. Since logical filters are evaluated with short
+     * circuiting the expensive operands are evaluated for fewer objects.
+     * </p>
+     * @param filter The filter to reorder, may be <code>null</code>.
+     */
+    public static Filter reorder(Filter filter) {
+        if (filter == null) {
+            return null;
+        }
+        return (Filter) filter.accept(new ReorderVisitor(), null);
+    }
+
+    /**
+     * Simplifies and then reorders a filter.
+     */
+    public static Filter optimize(Filter filter) {
+        return reorder(simplify(filter));
+    }
+
+    /**
+     * Computes the relative cost of evaluating a filter in memory.
+     */
+    public static int cost(Filter filter) {
+        return (Integer) filter.accept(new CostVisitor(), null);
+    }
+
+    static boolean isAnd(Filter f) {
+        return f.getClass() == Logic.class && ((Logic)f).getType() == Logic.Type.AND;
+    }
+
+    static Filter and(List<Filter> parts) {
+        if (parts.isEmpty()) {
+            return Filter.TRUE;
+        }
+        return parts.size() == 1 ? parts.get(0) : new Logic(Logic.Type.AND, parts);
+    }
+
+    /**
+     * Visitor returning the simplified form of each filter.
+     */
+    static class SimplifyVisitor extends FilterVisitor {
+
+        @Override
+        public Object visit(All all, Object obj) {
+            return Filter.TRUE;
+        }
+
+        @Override
+        public Object visit(None none, Object obj) {
+            return Filter.FALSE;
+        }
+
+        @Override
+        public Object visit(Id id, Object obj) {
+            return id;
+        }
+
+        @Override
+        public Object visit(Comparison compare, Object obj) {
+            if (compare.getLeft() instanceof Literal && compare.getRight() instanceof Literal) {
+                try {
+                    return compare.apply(null) ? Filter.TRUE : Filter.FALSE;
+                }
+                catch(RuntimeException e) {
+                    // leave it to evaluation to report
+                }
+            }
+            return compare;
+        }
+
+        @Override
+        public Object visit(Spatial spatial, Object obj) {
+            return spatial;
+        }
+
+        @Override
+        public Object visit(Logic logic, Object obj) {
+            if (logic.getClass() != Logic.class) {
+                return logic;
+            }
+
+            if (logic.getType() == Logic.Type.NOT) {
+                Filter part = (Filter) logic.getParts().get(0).accept(this, obj);
+                if (part == Filter.TRUE) {
+                    return Filter.FALSE;
+                }
+                if (part == Filter.FALSE) {
+                    return Filter.TRUE;
+                }
+                if (part.getClass() == Logic.class && ((Logic)part).getType() == Logic.Type.NOT) {
+                    return ((Logic)part).getParts().get(0);
+                }
+                return new Logic(Logic.Type.NOT, part);
+            }
+
+            // AND: TRUE is the identity and FALSE absorbs, vice versa for OR
+            boolean and = logic.getType() == Logic.Type.AND;
+            Filter identity = and ? Filter.TRUE : Filter.FALSE;
+            Filter absorb = and ? Filter.FALSE : Filter.TRUE;
+
+            Set<Filter> parts = new LinkedHashSet<Filter>();
+            if (!flatten(logic, parts, identity, absorb)) {
+                return absorb;
+            }
+
+            if (parts.isEmpty()) {
+                return identity;
+            }
+            if (parts.size() == 1) {
+                return parts.iterator().next();
+            }
+            return new Logic(logic.getType(), new ArrayList<Filter>(parts));
+        }
+
+        /**
+         * Collects the simplified operands of a logical filter, pulling up the operands of
+         * nested filters of the same type.
+         *
+         * @return <tt>false</tt> if an operand simplified to the absorbing constant.
+         */
+        boolean flatten(Logic logic, Set<Filter> parts, Filter identity, Filter absorb) {
+            for (Filter f : logic.getParts()) {
+                Filter s = (Filter) f.accept(this, null);
+                if (s == absorb) {
+                    return false;
+                }
+                if (s == identity) {
+                    continue;
+                }
+
+                if (s.getClass() == Logic.class && ((Logic)s).getType() == logic.getType()) {
+                    // already simplified
+                    parts.addAll(((Logic)s).getParts());
+                }
+                else {
+                    parts.add(s);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Visitor returning each filter with the operands of logical filters sorted by cost.
+     */
+    static class ReorderVisitor extends FilterVisitor {
+
+        @Override
+        public Object visit(All all, Object obj) {
+            return all;
+        }
+
+        @Override
+        public Object visit(None none, Object obj) {
+            return none;
+        }
+
+        @Override
+        public Object visit(Id id, Object obj) {
+            return id;
+        }
+
+        @Override
+        public Object visit(Comparison compare, Object obj) {
+            return compare;
+        }
+
+        @Override
+        public Object visit(Spatial spatial, Object obj) {
+            return spatial;
+        }
+
+        @Override
+        public Object visit(Logic logic, Object obj) {
+            if (logic.getClass() != Logic.class) {
+                return logic;
+            }
+
+            final List<Filter> parts = new ArrayList<Filter>();
+            final List<Integer> costs = new ArrayList<Integer>();
+            for (Filter f : logic.getParts()) {
+                Filter r = (Filter) f.accept(this, obj);
+                parts.add(r);
+                costs.add(cost(r));
+            }
+
+            if (logic.getType() == Logic.Type.NOT) {
+                return new Logic(Logic.Type.NOT, parts);
+            }
+
+            List<Integer> order = new ArrayList<Integer>();
+            for (int i = 0; i < parts.size(); i++) {
+                order.add(i);
+            }
+
+            // stable sort
+            Collections.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer i1, Integer i2) {
+                    return costs.get(i1).compareTo(costs.get(i2));
+                }
+            });
+
+            List<Filter> sorted = new ArrayList<Filter>(parts.size());
+            for (Integer i : order) {
+                sorted.add(parts.get(i));
+            }
+            return new Logic(logic.getType(), sorted);
+        }
+    }
+
+    /**
+     * Visitor computing the cost of filters and expressions.
+     */
+    static class CostVisitor extends FilterVisitor {
+
+        @Override
+        public Object visit(Literal literal, Object obj) {
+            return COST_CONSTANT;
+        }
+
+        @Override
+        public Object visit(Property property, Object obj) {
+            return COST_SIMPLE;
+        }
+
+        @Override
+        public Object visit(Function function, Object obj) {
+            int cost = COST_FUNCTION;
+            for (Expression e : function.getArgs()) {
+                cost += cost(e, obj);
+            }
+            return cost;
+        }
+
+        @Override
+        public Object visit(Mixed mixed, Object obj) {
+            int cost = 0;
+            for (Expression e : mixed.getExpressions()) {
+                cost += cost(e, obj);
+            }
+            return cost;
+        }
+
+        @Override
+        public Object visit(All all, Object obj) {
+            return COST_CONSTANT;
+        }
+
+        @Override
+        public Object visit(None none, Object obj) {
+            return COST_CONSTANT;
+        }
+
+        @Override
+        public Object visit(Id id, Object obj) {
+            return COST_SIMPLE;
+        }
+
+        @Override
+        public Object visit(Logic logic, Object obj) {
+            int cost = 0;
+            for (Filter f : logic.getParts()) {
+                cost += (Integer) f.accept(this, obj);
+            }
+            return cost;
+        }
+
+        @Override
+        public Object visit(Comparison compare, Object obj) {
+            return COST_SIMPLE + cost(compare.getLeft(), obj) + cost(compare.getRight(), obj);
+        }
+
+        @Override
+        public Object visit(Spatial spatial, Object obj) {
+            return COST_SPATIAL + cost(spatial.getLeft(), obj) + cost(spatial.getRight(), obj);
+        }
+
+        int cost(Expression e, Object obj) {
+            Object cost = e != null ? e.accept(this, obj) : null;
+            return cost instanceof Integer ? (Integer) cost : COST_SIMPLE;
+        }
+    }
+}
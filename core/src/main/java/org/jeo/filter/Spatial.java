@@ -4,13 +4,19 @@ import org.jeo.geom.Envelopes;
 
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
 
 /**
  * Filter that applies a spatial comparison operator to two geometry expression operands.  
- * 
+ * <p>
+ * When one of the operands is a {@link Literal} its geometry is converted and prepared once, and
+ * the comparison is evaluated with the {@link PreparedGeometry} against the geometry of each
+ * object. In all cases the envelopes of the two operands are compared first, rejecting (or for
+ * {@link Type#DISJOINT} accepting) objects without evaluating the full predicate.
+ * </p>
  * @author Justin Deoliveira, OpenGeo
- * 
- * TODO: use prepared geometries
  */
 public class Spatial extends Filter {
 
@@ -24,6 +30,9 @@ public class Spatial extends Filter {
     Type type;
     Expression left, right;
 
+    /** prepared literal operand, if any */
+    volatile Prepared prepared;
+
     public Spatial(Type type, Expression left, Expression right) {
         this.type = type;
         this.left = left;
@@ -44,12 +53,43 @@ public class Spatial extends Filter {
 
     @Override
     public boolean apply(Object obj) {
+        Prepared p = prepared();
+        if (p != null) {
+            Object o = p.left ? right.evaluate(obj) : left.evaluate(obj);
+            if (o == null) {
+                throw new IllegalArgumentException(
+                    "Unable to perform comparison on null operand(s)");
+            }
+            return p.compare(toGeometry(o));
+        }
+
         Object o1 = left.evaluate(obj);
         Object o2 = right.evaluate(obj);
 
         return compare(o1, o2);
     }
 
+    /**
+     * Returns the prepared literal operand, or <code>null</code> if neither operand is a literal.
+     */
+    Prepared prepared() {
+        Prepared p = prepared;
+        if (p == null) {
+            boolean l = left instanceof Literal;
+            if (!l && !(right instanceof Literal)) {
+                return null;
+            }
+
+            Object o = (l ? left : right).evaluate(null);
+            if (o == null) {
+                // fall back on compare() to report the null operand
+                return null;
+            }
+            prepared = p = new Prepared(toGeometry(o), l);
+        }
+        return p;
+    }
+
     protected boolean compare(Object o1, Object o2) {
         if (o1 == null || o2 == null) {
             throw new IllegalArgumentException("Unable to perform comparison on null operand(s)");
@@ -58,6 +98,11 @@ public class Spatial extends Filter {
         Geometry g1 = toGeometry(o1);
         Geometry g2 = toGeometry(o2);
 
+        Boolean result = precheck(g1.getEnvelopeInternal(), g2.getEnvelopeInternal());
+        if (result != null) {
+            return result;
+        }
+
         switch(type) {
         case INTERSECT:
             return g1.intersects(g2);
@@ -78,6 +123,28 @@ public class Spatial extends Filter {
         }
     }
 
+    /**
+     * Decides the comparison from the envelopes of the operands alone, returning
+     * <code>null</code> when the envelopes are not enough to decide.
+     */
+    Boolean precheck(Envelope e1, Envelope e2) {
+        switch(type) {
+        case INTERSECT:
+        case TOUCH:
+        case OVERLAP:
+        case CROSS:
+            return e1.intersects(e2) ? null : Boolean.FALSE;
+        case DISJOINT:
+            return e1.intersects(e2) ? null : Boolean.TRUE;
+        case COVER:
+            return e1.covers(e2) ? null : Boolean.FALSE;
+        case WITHIN:
+            return e2.covers(e1) ? null : Boolean.FALSE;
+        default:
+            return null;
+        }
+    }
+
     protected Geometry toGeometry(Object o) {
         if (o instanceof Geometry) {
             return (Geometry) o;
@@ -133,4 +200,64 @@ public class Spatial extends Filter {
         return new StringBuilder().append(left).append(" ").append(type).append(" ").append(right)
             .toString();
     }
+
+    /**
+     * Literal operand prepared for repeated comparisons.
+     */
+    class Prepared {
+        final Geometry geom;
+        final Envelope env;
+        final PreparedGeometry prep;
+
+        /** whether the literal is the left operand */
+        final boolean left;
+
+        /** whether the literal is a rectangle */
+        final boolean rect;
+
+        Prepared(Geometry geom, boolean left) {
+            this.geom = geom;
+            this.env = geom.getEnvelopeInternal();
+            this.prep = PreparedGeometryFactory.prepare(geom);
+            this.left = left;
+            this.rect = geom instanceof Polygon && ((Polygon) geom).isRectangle();
+        }
+
+        boolean compare(Geometry g) {
+            Envelope e = g.getEnvelopeInternal();
+            Boolean result = left ? precheck(env, e) : precheck(e, env);
+            if (result != null) {
+                return result;
+            }
+
+            // a non empty geometry within a rectangle intersects it
+            if (rect && env.covers(e)) {
+                if (type == Type.INTERSECT) {
+                    return true;
+                }
+                if (type == Type.DISJOINT) {
+                    return false;
+                }
+            }
+
+            switch(type) {
+            case INTERSECT:
+                return prep.intersects(g);
+            case TOUCH:
+                return prep.touches(g);
+            case OVERLAP:
+                return prep.overlaps(g);
+            case DISJOINT:
+                return prep.disjoint(g);
+            case CROSS:
+                return left ? prep.crosses(g) : g.crosses(geom);
+            case COVER:
+                return left ? prep.covers(g) : prep.coveredBy(g);
+            case WITHIN:
+                return left ? prep.within(g) : prep.contains(g);
+            default:
+                throw new IllegalStateException();
+            }
+        }
+    }
 }
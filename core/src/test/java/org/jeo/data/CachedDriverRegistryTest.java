@@ -0,0 +1,80 @@
+package org.jeo.data;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+public class CachedDriverRegistryTest {
+
+    @Test
+    public void testFind() throws Exception {
+        Driver<?> foo = driver("Foo", "f", "fu");
+        Driver<?> bar = driver("Bar", "b", "f");
+
+        CountingRegistry reg = new CountingRegistry(foo, bar);
+        CachedDriverRegistry cached = new CachedDriverRegistry(reg);
+
+        assertSame(foo, cached.find("foo"));
+        assertSame(foo, cached.find("FU"));
+        assertSame(bar, cached.find("Bar"));
+        assertSame(bar, cached.find("b"));
+
+        // first registered driver wins
+        assertSame(foo, cached.find("f"));
+        assertNull(cached.find("baz"));
+
+        assertSame(bar, Drivers.find("b", cached));
+
+        Iterator<Driver<?>> it = cached.list();
+        assertSame(foo, it.next());
+        assertSame(bar, it.next());
+        assertFalse(it.hasNext());
+
+        assertEquals(1, reg.count);
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        CountingRegistry reg = new CountingRegistry(driver("Foo"));
+        CachedDriverRegistry cached = new CachedDriverRegistry(reg);
+
+        assertNotNull(cached.find("foo"));
+        assertNull(cached.find("bar"));
+
+        reg.drivers = new Driver<?>[]{driver("Foo"), driver("Bar")};
+        assertNull(cached.find("bar"));
+
+        cached.reload();
+        assertNotNull(cached.find("bar"));
+        assertEquals(2, reg.count);
+    }
+
+    Driver<?> driver(String name, String... aliases) {
+        Driver<?> d = createMock(Driver.class);
+        expect(d.getName()).andReturn(name).anyTimes();
+        expect(d.getAliases()).andReturn(
+            aliases.length > 0 ? Arrays.asList(aliases) : Collections.<String>emptyList()).anyTimes();
+        replay(d);
+        return d;
+    }
+
+    static class CountingRegistry implements DriverRegistry {
+        Driver<?>[] drivers;
+        int count;
+
+        CountingRegistry(Driver<?>... drivers) {
+            this.drivers = drivers;
+        }
+
+        @Override
+        public Iterator<Driver<?>> list() {
+            count++;
+            return Arrays.<Driver<?>>asList(drivers).iterator();
+        }
+    }
+}
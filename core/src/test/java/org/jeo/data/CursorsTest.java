@@ -0,0 +1,170 @@
+package org.jeo.data;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import java.io.IOException;
+
+import org.jeo.TestData;
+import org.jeo.feature.Feature;
+import org.jeo.feature.FeatureBatch;
+import org.jeo.feature.Features;
+import org.jeo.feature.Schema;
+import org.jeo.filter.cql.CQL;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+public class CursorsTest {
+
+    @Test
+    public void testSortInMemory() throws Exception {
+        VectorData data = TestData.point();
+
+        Cursor<Feature> c = Cursors.sort(data.cursor(new Query()),
+            Arrays.asList(new Sort("pop")), 100);
+        assertAscending(c, 7);
+    }
+
+    @Test
+    public void testSortSpill() throws Exception {
+        VectorData data = TestData.point();
+
+        Cursor<Feature> c = Cursors.sort(data.cursor(new Query()),
+            Arrays.asList(new Sort("pop")), 2);
+        assertAscending(c, 7);
+
+        c = Cursors.sort(data.cursor(new Query()), Arrays.asList(new Sort("-name")), 3);
+        assertEquals("Thisland", c.next().get("name"));
+        c.close();
+    }
+
+    @Test
+    public void testSortStable() throws Exception {
+        Schema schema = Schema.build("widgets").field("key", Integer.class).schema();
+        List<Feature> features = new ArrayList<Feature>();
+        for (int i = 0; i < 20; i++) {
+            features.add(Features.create(String.valueOf(i), schema, i % 3));
+        }
+
+        List<String> inMemory = ids(Cursors.sort(
+            Cursors.create(features), Arrays.asList(new Sort("key")), 100));
+        List<String> spilled = ids(Cursors.sort(
+            Cursors.create(features), Arrays.asList(new Sort("key")), 4));
+
+        assertEquals(Arrays.asList("0", "3", "6", "9", "12", "15", "18"), inMemory.subList(0, 7));
+        assertEquals(inMemory, spilled);
+    }
+
+    List<String> ids(Cursor<Feature> c) throws IOException {
+        List<String> ids = new ArrayList<String>();
+        for (Feature f : c) {
+            ids.add(f.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testSimplify() throws Exception {
+        VectorData data = TestData.polygon();
+
+        Cursor<Feature> c = Cursors.simplify(data.cursor(new Query()), 10d);
+        Cursor<Feature> d = data.cursor(new Query());
+
+        int count = 0;
+        while (c.hasNext()) {
+            Feature simplified = c.next();
+            Feature original = d.next();
+
+            Geometry g = simplified.geometry();
+            assertTrue(g.isValid());
+            assertFalse(g.isEmpty());
+            assertTrue(g.getNumPoints() <= original.geometry().getNumPoints());
+
+            // simplified geometry is cached
+            assertSame(g, simplified.geometry());
+            assertSame(g, simplified.get("geometry"));
+            assertEquals(original.get("name"), simplified.get("name"));
+            count++;
+        }
+        c.close();
+        d.close();
+
+        assertEquals(8, count);
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        VectorData data = TestData.point();
+
+        Cursor<Feature> c = Cursors.filter(batch(data), CQL.parse("pop > 30000"));
+        assertTrue(c instanceof BatchCursor);
+
+        int expected = Cursors.size(Cursors.filter(data.cursor(new Query()), 
+            CQL.parse("pop > 30000")));
+        assertTrue(expected > 0 && expected < 7);
+
+        BatchCursor bc = (BatchCursor) c;
+        FeatureBatch batch = new FeatureBatch(bc.schema(), 2);
+        int count = 0;
+        while (bc.next(batch)) {
+            assertTrue(batch.size() <= 2);
+            for (int i = 0; i < batch.size(); i++) {
+                assertTrue(((Number) batch.get(i, bc.schema().indexOf("pop"))).intValue() > 30000);
+                count++;
+            }
+        }
+        bc.close();
+        assertEquals(expected, count);
+
+        assertEquals(Cursors.extent(data.cursor(new Query())), Cursors.extent(batch(data)));
+        assertEquals(7, Cursors.size(batch(data)));
+
+        Envelope bbox = data.bounds();
+        bbox = new Envelope(bbox.getMinX(), bbox.centre().x, bbox.getMinY(), bbox.centre().y);
+        assertEquals(Cursors.size(Cursors.intersects(data.cursor(new Query()), bbox)), 
+            Cursors.size(Cursors.intersects(batch(data), bbox)));
+    }
+
+    BatchCursor batch(VectorData data) throws IOException {
+        final Schema schema = data.getSchema();
+        final Cursor<Feature> c = data.cursor(new Query());
+        return new BatchCursor() {
+            @Override
+            public Schema schema() {
+                return schema;
+            }
+            @Override
+            public boolean hasNext() throws IOException {
+                return c.hasNext();
+            }
+            @Override
+            public Feature next() throws IOException {
+                return c.next();
+            }
+            @Override
+            public void close() throws IOException {
+                c.close();
+            }
+        };
+    }
+
+    void assertAscending(Cursor<Feature> c, int size) throws Exception {
+        Integer prev = null;
+        int count = 0;
+        for (Feature f : c) {
+            Integer pop = (Integer) f.get("pop");
+            if (prev != null) {
+                assertTrue(prev <= pop);
+            }
+            assertNotNull(f.geometry());
+            prev = pop;
+            count++;
+        }
+        assertEquals(size, count);
+    }
+}
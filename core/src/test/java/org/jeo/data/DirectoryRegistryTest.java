@@ -0,0 +1,182 @@
+package org.jeo.data;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.jeo.TestData;
+import org.jeo.data.mem.MemWorkspace;
+import org.jeo.feature.Feature;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DirectoryRegistryTest {
+
+    File dir;
+    TestDriver driver;
+    int lists;
+
+    DirectoryRegistry reg;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("dir", "reg", new File("target"));
+        dir.delete();
+        dir.mkdirs();
+
+        touch("a.tst");
+        touch("b.tst");
+        touch("c.txt");
+        settle();
+
+        driver = new TestDriver();
+        reg = new DirectoryRegistry(dir, new DriverRegistry() {
+            @Override
+            public Iterator<Driver<?>> list() {
+                lists++;
+                return Arrays.<Driver<?>>asList(driver).iterator();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        reg.close();
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testList() throws Exception {
+        assertEquals(Arrays.asList("a", "b"), names());
+
+        int n = lists;
+        assertEquals(Arrays.asList("a", "b"), names());
+        assertNotNull(reg.get("a"));
+        assertEquals(n, lists - 1);
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        Workspace ws = (Workspace) reg.get("a");
+        assertNotNull(ws);
+        assertSame(ws, reg.get("a"));
+        assertNull(reg.get("c"));
+        assertEquals(1, driver.opened.size());
+
+        // shared workspaces are closed by the registry
+        ws.close();
+        assertEquals(0, driver.closed);
+
+        reg.close();
+        assertEquals(1, driver.closed);
+    }
+
+    @Test
+    public void testChange() throws Exception {
+        assertNotNull(reg.get("a"));
+
+        new File(dir, "a.tst").delete();
+        touch("d.tst");
+
+        assertEquals(Arrays.asList("b", "d"), names());
+        assertNull(reg.get("a"));
+        assertNotNull(reg.get("d"));
+        assertEquals(1, driver.closed);
+    }
+
+    @Test
+    public void testEvict() throws Exception {
+        reg.setCacheSize(1);
+
+        assertNotNull(reg.get("a"));
+        assertNotNull(reg.get("b"));
+        assertEquals(2, driver.opened.size());
+        assertEquals(1, driver.closed);
+
+        assertNotNull(reg.get("b"));
+        assertEquals(2, driver.opened.size());
+    }
+
+    @Test
+    public void testEvictInUse() throws Exception {
+        reg.setCacheSize(1);
+
+        Workspace ws = (Workspace) reg.get("a");
+        VectorData data = (VectorData) ws.get("point");
+        Cursor<Feature> c = data.cursor(new Query());
+
+        // evicted while the cursor is open, closed once the cursor is
+        assertNotNull(reg.get("b"));
+        assertEquals(0, driver.closed);
+
+        assertTrue(c.hasNext());
+        assertNotNull(c.next());
+        c.close();
+        assertEquals(1, driver.closed);
+
+        // reopened through the registry
+        assertNotNull(ws.get("point"));
+        assertEquals(3, driver.opened.size());
+    }
+
+    @Test
+    public void testMtimeAhead() throws Exception {
+        dir.setLastModified(System.currentTimeMillis() + 60000);
+        assertFalse(reg.scan().isStale(dir));
+    }
+
+    List<String> names() {
+        List<String> names = new ArrayList<String>();
+        for (Registry.Item it : reg.list()) {
+            names.add(it.getName());
+        }
+        return names;
+    }
+
+    void touch(String name) throws IOException {
+        new File(dir, name).createNewFile();
+    }
+
+    void settle() {
+        // backdate the directory so the first scan is not considered racy
+        dir.setLastModified(System.currentTimeMillis() - 60000);
+    }
+
+    class TestDriver extends FileDriver<Workspace> {
+        List<File> opened = new ArrayList<File>();
+        int closed;
+
+        @Override
+        public String getName() {
+            return "tst";
+        }
+
+        @Override
+        public Class<Workspace> getType() {
+            return Workspace.class;
+        }
+
+        @Override
+        public Workspace open(File file, Map<?, Object> opts) throws IOException {
+            opened.add(file);
+            MemWorkspace ws = new MemWorkspace() {
+                @Override
+                public void close() {
+                    closed++;
+                }
+            };
+            ws.put("point", TestData.point());
+            return ws;
+        }
+    }
+}
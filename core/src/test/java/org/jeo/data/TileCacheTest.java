@@ -0,0 +1,134 @@
+package org.jeo.data;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.security.MessageDigest;
+
+import org.junit.Test;
+
+public class TileCacheTest {
+
+    @Test
+    public void testHitMiss() throws Exception {
+        TileSet ts = createMock(TileSet.class);
+        expect(ts.read(0, 0, 0)).andReturn(tile(0, 0, 0, 10)).once();
+        expect(ts.read(1, 0, 0)).andReturn(null).once();
+        replay(ts);
+
+        TileCache cache = new TileCache();
+        CachedTileSet cached = new CachedTileSet(ts, cache, "foo");
+
+        for (int i = 0; i < 3; i++) {
+            Tile t = cached.read(0, 0, 0);
+            assertNotNull(t);
+            assertEquals(10, t.getData().length);
+            assertEquals("image/png", t.getMimeType());
+
+            assertNull(cached.read(1, 0, 0));
+        }
+
+        assertEquals(2, cache.getMissCount());
+        assertEquals(4, cache.getHitCount());
+        assertEquals(2, cache.getCount());
+        verify(ts);
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        TileSet ts = createMock(TileSet.class);
+        expect(ts.read(0, 0, 0)).andReturn(tile(0, 0, 0, 100)).times(2);
+        expect(ts.read(0, 0, 1)).andReturn(tile(0, 0, 1, 100)).once();
+        expect(ts.read(0, 0, 2)).andReturn(tile(0, 0, 2, 100)).once();
+        replay(ts);
+
+        TileCache cache = new TileCache(2 * (100 + TileCache.ENTRY_OVERHEAD), false);
+        CachedTileSet cached = new CachedTileSet(ts, cache, "foo");
+
+        cached.read(0, 0, 0);
+        cached.read(0, 0, 1);
+        assertEquals(2, cache.getCount());
+
+        // touch 1 so that 0 is least recently used
+        cached.read(0, 0, 1);
+        cached.read(0, 0, 2);
+        assertEquals(2, cache.getCount());
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(cache.getSize() <= cache.getMaxBytes());
+
+        cached.read(0, 0, 1);
+        cached.read(0, 0, 0);
+        verify(ts);
+    }
+
+    @Test
+    public void testOffHeap() throws Exception {
+        Tile t = tile(0, 0, 0, 10);
+
+        TileSet ts = createMock(TileSet.class);
+        expect(ts.read(0, 0, 0)).andReturn(t).once();
+        replay(ts);
+
+        TileCache cache = new TileCache(TileCache.DEFAULT_MAX_BYTES, true);
+        CachedTileSet cached = new CachedTileSet(ts, cache, "foo");
+
+        cached.read(0, 0, 0);
+        Tile u = cached.read(0, 0, 0);
+        assertArrayEquals(t.getData(), u.getData());
+        assertNotSame(t.getData(), u.getData());
+        verify(ts);
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        TileSet ts = createMock(TileSet.class);
+        expect(ts.read(0, 0, 0)).andReturn(tile(0, 0, 0, 10)).times(2);
+        replay(ts);
+
+        TileCache cache = new TileCache();
+        CachedTileSet cached = new CachedTileSet(ts, cache, "foo");
+        cached.read(0, 0, 0);
+
+        cache.invalidate("foo");
+        assertEquals(0, cache.getCount());
+        assertEquals(0, cache.getSize());
+
+        cached.read(0, 0, 0);
+        verify(ts);
+    }
+
+    @Test
+    public void testDigest() throws Exception {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            Tile t = tile(0, 0, 0, 10);
+
+            TileSet ts = createMock(TileSet.class);
+            expect(ts.read(0, 0, 0)).andReturn(t).once();
+            replay(ts);
+
+            TileCache cache = new TileCache(TileCache.DEFAULT_MAX_BYTES, offHeap);
+            CachedTileSet cached = new CachedTileSet(ts, cache, "foo");
+
+            byte[] digest = cached.digest(cached.read(0, 0, 0));
+            assertArrayEquals(MessageDigest.getInstance("MD5").digest(t.getData()), digest);
+
+            // computed once per cached tile
+            assertSame(digest, cached.digest(cached.read(0, 0, 0)));
+
+            // not for data other than that cached
+            assertNull(cached.digest(tile(0, 0, 0, 5)));
+
+            cache.invalidate("foo", 0, 0, 0);
+            assertNull(cached.digest(t));
+            verify(ts);
+        }
+    }
+
+    Tile tile(int z, int x, int y, int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) i;
+        }
+        return new Tile(z, x, y, data, "image/png");
+    }
+}
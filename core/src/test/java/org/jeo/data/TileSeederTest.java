@@ -0,0 +1,145 @@
+package org.jeo.data;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+public class TileSeederTest {
+
+    TilePyramid pyr;
+
+    @Before
+    public void setUp() {
+        pyr = TilePyramid.build().grid(2, 1).grid(4, 2).grid(8, 4).pyramid();
+    }
+
+    @Test
+    public void testCount() throws Exception {
+        TileSet src = source(null);
+        replay(src);
+
+        assertEquals(2 + 8 + 32, new TileSeeder(src, null).count());
+        assertEquals(8 + 32, new TileSeeder(src, null).zoom(1, null).count());
+
+        // bounds outside the pyramid are clamped
+        assertEquals(1 + 4 + 16, new TileSeeder(src, null)
+            .bounds(new Envelope(-360, -1, -180, 180)).count());
+    }
+
+    @Test
+    public void testSeed() throws Exception {
+        TileSet src = source(null);
+        final Set<String> written = new HashSet<String>();
+        TileSet dest = target(written);
+        replay(src, dest);
+
+        final long[] last = new long[2];
+        long n = new TileSeeder(src, dest).zoom(1, 2).threads(4).queue(3)
+            .progress(new TileSeeder.Progress() {
+                @Override
+                public void progress(long count, long total, double rate) {
+                    last[0] = count;
+                    last[1] = total;
+                }
+            }).seed();
+
+        assertEquals(40, n);
+        assertEquals(40, written.size());
+        assertTrue(written.contains("1/3/1"));
+        assertTrue(written.contains("2/7/3"));
+        assertFalse(written.contains("0/0/0"));
+
+        assertEquals(40, last[0]);
+        assertEquals(40, last[1]);
+        verify(dest);
+    }
+
+    @Test
+    public void testSeedError() throws Exception {
+        TileSet src = source(new Tile(2, 5, 2, null, null));
+        TileSet dest = target(new HashSet<String>());
+        replay(src, dest);
+
+        try {
+            new TileSeeder(src, dest).threads(2).queue(1).seed();
+            fail();
+        }
+        catch(IOException e) {
+            assertEquals("boom", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSeedMany() throws Exception {
+        // many more tasks than threads, created as the workers make progress
+        TilePyramidBuilder b = TilePyramid.build();
+        for (int z = 0; z < 8; z++) {
+            b.grid(2 << z, 1 << z);
+        }
+        pyr = b.pyramid();
+
+        TileSet src = source(null);
+        final Set<String> written = new HashSet<String>();
+        TileSet dest = target(written);
+        replay(src, dest);
+
+        TileSeeder seeder = new TileSeeder(src, dest).threads(2).queue(1);
+        long n = seeder.seed();
+        assertEquals(seeder.count(), n);
+        assertEquals(n, written.size());
+        verify(dest);
+    }
+
+    TileSet source(final Tile fail) throws IOException {
+        TileSet src = createMock(TileSet.class);
+        expect(src.getPyramid()).andReturn(pyr).anyTimes();
+        expect(src.read(anyLong(), anyLong(), anyLong())).andAnswer(new IAnswer<Tile>() {
+            @Override
+            public Tile answer() throws Throwable {
+                Object[] args = getCurrentArguments();
+                int z = ((Long)args[0]).intValue();
+                int x = ((Long)args[1]).intValue();
+                int y = ((Long)args[2]).intValue();
+
+                if (fail != null && fail.getZ() == z && fail.getX() == x && fail.getY() == y) {
+                    throw new IOException("boom");
+                }
+                return new Tile(z, x, y, new byte[]{1}, "image/png");
+            }
+        }).anyTimes();
+        return src;
+    }
+
+    TileSet target(final Set<String> written) throws IOException {
+        TileSet dest = createMock(TileSet.class);
+        expect(dest.putAll((Cursor<Tile>) anyObject())).andAnswer(new IAnswer<Long>() {
+            @Override
+            public Long answer() throws Throwable {
+                @SuppressWarnings("unchecked")
+                Cursor<Tile> c = (Cursor<Tile>) getCurrentArguments()[0];
+                long n = 0;
+                try {
+                    while (c.hasNext()) {
+                        Tile t = c.next();
+                        written.add(t.getZ() + "/" + t.getX() + "/" + t.getY());
+                        n++;
+                    }
+                }
+                finally {
+                    c.close();
+                }
+                return n;
+            }
+        }).once();
+        return dest;
+    }
+}
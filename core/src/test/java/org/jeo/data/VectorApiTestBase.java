@@ -126,6 +126,58 @@ public abstract class VectorApiTestBase {
             data.cursor(new Query().filter("P_MALE > P_FEMALE AND NOT SAMP_POP > 200000")), "NV");
     }
 
+    @Test
+    public void testCursorSort() throws Exception {
+        assertSorted(data.cursor(new Query().sort("STATE_NAME")), "Alabama", "Wyoming");
+        assertSorted(data.cursor(new Query().sort("-STATE_NAME")), "Wyoming", "Alabama");
+
+        // sort has to happen before limit/offset
+        assertSorted(data.cursor(new Query().sort("STATE_NAME").limit(1)), "Alabama", "Alabama");
+        assertSorted(data.cursor(new Query().sort("-STATE_NAME").offset(48)), "Alabama", "Alabama");
+    }
+
+    @Test
+    public void testCursorFields() throws Exception {
+        Cursor<Feature> c = data.cursor(new Query().fields("STATE_NAME"));
+        try {
+            assertTrue(c.hasNext());
+
+            Feature f = c.next();
+            assertEquals(1, f.schema().size());
+            assertNotNull(f.get("STATE_NAME"));
+            assertNull(f.get("STATE_ABBR"));
+            assertNull(f.geometry());
+        }
+        finally {
+            c.close();
+        }
+
+        // fields not selected but required by other parts of the query
+        assertCovered(data.cursor(new Query().fields("STATE_ABBR").filter("STATE_NAME = 'Texas'")), 
+            "TX");
+
+        Envelope bbox = new Envelope(-106.649513, -93.507217, 25.845198, 36.493877);
+        assertCovered(data.cursor(new Query().fields("STATE_ABBR").bounds(bbox)), 
+            "MO", "OK", "TX", "NM", "AR", "LA");
+    }
+
+    void assertSorted(Cursor<Feature> cursor, String first, String last) throws IOException {
+        String prev = null;
+        try {
+            while(cursor.hasNext()) {
+                String name = (String) cursor.next().get("STATE_NAME");
+                if (prev == null) {
+                    assertEquals(first, name);
+                }
+                prev = name;
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        assertEquals(last, prev);
+    }
+
     void assertNotCovered(Cursor<Feature> cursor, String... abbrs) throws IOException {
         final Set<String> set = Sets.newHashSet(abbrs);
         try {
@@ -0,0 +1,50 @@
+package org.jeo.feature;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ListFeatureTest {
+
+    @Test
+    public void testGet() {
+        Schema schema = Schema.build("widgets").field("name", String.class)
+            .field("count", Integer.class).schema();
+        ListFeature f = new ListFeature("1", Arrays.asList((Object) "foo", 1), schema);
+
+        assertEquals("foo", f.get("name"));
+        assertEquals(1, f.get("count"));
+        assertNull(f.get("bar"));
+
+        f.put("count", 2);
+        assertEquals(2, f.get(1));
+
+        try {
+            f.put("bar", 3);
+            fail();
+        }
+        catch(IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void testDuplicateNames() {
+        Schema schema = Schema.build("widgets").field("name", String.class)
+            .field("count", Integer.class).field("name", String.class).schema();
+        ListFeature f = new ListFeature("1", Arrays.asList((Object) "foo", 1, "bar"), schema);
+
+        assertEquals("foo", f.get("name"));
+
+        f.put("name", "baz");
+        assertEquals("baz", f.get(0));
+        assertEquals("bar", f.get(2));
+
+        Map<String,Object> map = f.map();
+        assertEquals(2, map.size());
+        assertEquals("baz", map.get("name"));
+        assertEquals(Arrays.asList("name", "count"), Arrays.asList(map.keySet().toArray()));
+    }
+}
@@ -0,0 +1,56 @@
+package org.jeo.feature;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+public class SchemaTest {
+
+    @Test
+    public void testIndexOf() {
+        Schema schema = Schema.build("widgets").field("geom", Point.class)
+            .field("name", String.class).field("count", Integer.class).schema();
+
+        assertEquals(0, schema.indexOf("geom"));
+        assertEquals(2, schema.indexOf("count"));
+        assertEquals(-1, schema.indexOf("foo"));
+        assertEquals(-1, schema.indexOf((String) null));
+
+        assertEquals("name", schema.field("name").getName());
+        assertSame(schema.field(1), schema.field("name"));
+        assertNull(schema.field("foo"));
+
+        assertArrayEquals(new int[]{2, -1, 0}, 
+            schema.indexOf(Arrays.asList("count", "foo", "geom")));
+    }
+
+    @Test
+    public void testDuplicateNames() {
+        Schema schema = Schema.build("widgets").field("name", String.class)
+            .field("geom", Point.class).field("name", Integer.class)
+            .field("geom", Polygon.class).schema();
+
+        assertEquals(4, schema.size());
+        assertEquals(0, schema.indexOf("name"));
+        assertEquals(String.class, schema.field("name").getType());
+        assertEquals(1, schema.indexOf("geom"));
+        assertEquals(Point.class, schema.geometry().getType());
+    }
+
+    @Test
+    public void testImmutable() {
+        Schema schema = Schema.build("widgets").field("name", String.class).schema();
+        try {
+            schema.getFields().add(new Field("foo", String.class));
+            fail();
+        }
+        catch(UnsupportedOperationException e) {
+        }
+        assertEquals(-1, schema.indexOf("foo"));
+    }
+}
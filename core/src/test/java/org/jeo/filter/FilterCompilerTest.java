@@ -0,0 +1,138 @@
+package org.jeo.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jeo.feature.Feature;
+import org.jeo.feature.FeatureBatch;
+import org.jeo.feature.Features;
+import org.jeo.feature.Schema;
+import org.jeo.filter.cql.CQL;
+import org.jeo.geom.Geom;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Point;
+
+public class FilterCompilerTest {
+
+    Schema schema;
+    List<Feature> features;
+
+    @Before
+    public void setUp() {
+        schema = Schema.build("widgets").field("name", String.class).field("count", Integer.class)
+            .field("price", Double.class).field("geom", Point.class).schema();
+
+        features = new ArrayList<Feature>();
+        for (int i = 0; i < 20; i++) {
+            features.add(Features.create(String.valueOf(i), schema,
+                "widget" + i, i, i * 1.5, Geom.point(i, i)));
+        }
+    }
+
+    @Test
+    public void testSameAsFilter() throws Exception {
+        List<Filter> filters = new ArrayList<Filter>();
+        for (String cql : new String[] {
+            "count = 5", "count = '5'", "count < 10 AND price > 3", "count > 15 OR name = 'widget1'",
+            "NOT (count >= 10)", "name <> 'widget3'", "price <= 4.5",
+            "INTERSECTS(geom, POLYGON((2 2, 8 2, 8 8, 2 8, 2 2)))", "foo = 'bar'"}) {
+            filters.add(CQL.parse(cql));
+        }
+        filters.add(new Comparison(Comparison.Type.LESS, new Literal("5"), new Property("count")));
+
+        for (Filter filter : filters) {
+            Filter compiled = FilterCompiler.compile(filter, schema);
+
+            for (Feature f : features) {
+                assertEquals(filter + " " + f, filter.apply(f), compiled.apply(f));
+            }
+        }
+    }
+
+    @Test
+    public void testOtherSchema() throws Exception {
+        Filter filter = CQL.parse("count = 5 AND name = 'widget5'");
+        Filter compiled = FilterCompiler.compile(filter, schema);
+
+        // field order differs from the compiled schema
+        Schema other = Schema.build("widgets").field("count", Integer.class)
+            .field("name", String.class).schema();
+        assertTrue(compiled.apply(Features.create("5", other, 5, "widget5")));
+        assertFalse(compiled.apply(Features.create("4", other, 4, "widget4")));
+
+        Map<String,Object> map = new HashMap<String, Object>();
+        map.put("count", "5");
+        map.put("name", "widget5");
+        assertTrue(compiled.apply(Features.create(null, null, map)));
+    }
+
+    @Test
+    public void testBatchRows() throws Exception {
+        FeatureBatch batch = new FeatureBatch(schema, features.size());
+        for (Feature f : features) {
+            batch.add(f);
+        }
+
+        for (String cql : new String[] {"count = 5", "count < 10 AND price > 3", "foo = 'bar'",
+            "INTERSECTS(geom, POLYGON((2 2, 8 2, 8 8, 2 8, 2 2)))"}) {
+            Filter filter = CQL.parse(cql);
+            Filter compiled = FilterCompiler.compile(filter, schema);
+
+            for (int i = 0; i < batch.size(); i++) {
+                assertEquals(filter + " " + i, filter.apply(features.get(i)),
+                    compiled.apply(batch.view(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testRecompile() throws Exception {
+        Filter filter = CQL.parse("count = 5 AND name = 'widget5'");
+        Filter compiled = FilterCompiler.compile(filter, schema);
+
+        Schema other = Schema.build("widgets").field("count", Integer.class)
+            .field("name", String.class).schema();
+        Filter recompiled = FilterCompiler.compile(compiled, other);
+        assertNotSame(compiled, recompiled);
+        assertEquals(filter, ((FilterCompiler.Compiled) recompiled).getFilter());
+        assertEquals(compiled, recompiled);
+        assertSame(recompiled, FilterCompiler.compile(recompiled, other));
+
+        FeatureBatch batch = new FeatureBatch(other, 2);
+        batch.add(Features.create("5", other, 5, "widget5"));
+        batch.add(Features.create("4", other, 4, "widget4"));
+        assertTrue(recompiled.apply(batch.view(0)));
+        assertFalse(recompiled.apply(batch.view(1)));
+    }
+
+    @Test
+    public void testEquality() throws Exception {
+        Filter filter = CQL.parse("count = 5");
+        Filter compiled = FilterCompiler.compile(filter, schema);
+
+        assertEquals(filter, ((FilterCompiler.Compiled) compiled).getFilter());
+        assertEquals(filter.toString(), compiled.toString());
+
+        // equality is symmetric, only holding between compiled filters
+        assertFalse(filter.equals(compiled));
+        assertFalse(compiled.equals(filter));
+
+        Filter other = FilterCompiler.compile(CQL.parse("count = 5"), schema);
+        assertEquals(compiled, other);
+        assertEquals(other, compiled);
+        assertEquals(compiled.hashCode(), other.hashCode());
+
+        assertSame(compiled, FilterCompiler.compile(compiled, schema));
+        assertSame(Filter.TRUE, FilterCompiler.compile(Filter.TRUE, schema));
+    }
+}
@@ -0,0 +1,111 @@
+package org.jeo.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.jeo.data.Query;
+import org.jeo.data.QueryPlan;
+import org.jeo.filter.cql.CQL;
+import org.jeo.util.Pair;
+import org.junit.Test;
+
+public class FilterOptimizerTest {
+
+    @Test
+    public void testSimplifyFlatten() throws Exception {
+        Filter a = CQL.parse("a = 1"), b = CQL.parse("b = 2"), c = CQL.parse("c = 3");
+
+        Filter f = new Logic(Logic.Type.AND, a, new Logic(Logic.Type.AND, b, c));
+        assertEquals(new Logic(Logic.Type.AND, a, b, c), FilterOptimizer.simplify(f));
+
+        f = new Logic(Logic.Type.OR, new Logic(Logic.Type.OR, a, b), a, c);
+        assertEquals(new Logic(Logic.Type.OR, a, b, c), FilterOptimizer.simplify(f));
+
+        f = new Logic(Logic.Type.AND, a, new Logic(Logic.Type.OR, b, c));
+        assertEquals(f, FilterOptimizer.simplify(f));
+
+        assertEquals(a, FilterOptimizer.simplify(a.not().not()));
+    }
+
+    @Test
+    public void testSimplifyConstants() throws Exception {
+        Filter a = CQL.parse("a = 1"), b = CQL.parse("b = 2");
+
+        assertEquals(a, FilterOptimizer.simplify(new Logic(Logic.Type.AND, a, new All())));
+        assertSame(Filter.FALSE, FilterOptimizer.simplify(new Logic(Logic.Type.AND, a, new None())));
+        assertSame(Filter.TRUE, FilterOptimizer.simplify(new Logic(Logic.Type.OR, a, new All())));
+        assertEquals(b, FilterOptimizer.simplify(new Logic(Logic.Type.OR, new None(), b)));
+        assertSame(Filter.FALSE, FilterOptimizer.simplify(new All().not()));
+
+        Filter f = new Comparison(Comparison.Type.LESS, new Literal(1), new Literal(2));
+        assertSame(Filter.TRUE, FilterOptimizer.simplify(f));
+        assertSame(Filter.FALSE, FilterOptimizer.simplify(new Logic(Logic.Type.AND, a, f.not())));
+    }
+
+    @Test
+    public void testSplit() throws Exception {
+        final Filter fn = new Comparison(Comparison.Type.EQUAL, new Function("foo") {
+            @Override
+            public Object evaluate(Object obj) {
+                return 1;
+            }
+            @Override
+            public String toString() {
+                return "foo()";
+            }
+        }, new Literal(1));
+        Filter a = CQL.parse("a = 1"), b = CQL.parse("b = 2");
+        Filter s = CQL.parse("INTERSECTS(geom, POINT(0 0))");
+
+        FilterOptimizer.Capabilities caps = new FilterOptimizer.Capabilities() {
+            @Override
+            public boolean supports(Filter filter) {
+                String s = filter.toString();
+                return !s.contains("foo()") && !s.contains("INTERSECT");
+            }
+        };
+
+        Pair<Filter,Filter> split = FilterOptimizer.split(
+            new Logic(Logic.Type.AND, s, new Logic(Logic.Type.AND, fn, a), b), caps);
+        assertEquals(new Logic(Logic.Type.AND, a, b), split.first());
+        assertEquals(new Logic(Logic.Type.AND, fn, s), split.second());
+
+        // the residual is reordered, cheapest operand first
+        split = FilterOptimizer.split(new Logic(Logic.Type.OR, fn, a), caps);
+        assertSame(Filter.TRUE, split.first());
+        assertEquals(new Logic(Logic.Type.OR, a, fn), split.second());
+
+        split = FilterOptimizer.split(new Logic(Logic.Type.AND, a, b), caps);
+        assertEquals(new Logic(Logic.Type.AND, a, b), split.first());
+        assertSame(Filter.TRUE, split.second());
+    }
+
+    @Test
+    public void testReorder() throws Exception {
+        Filter a = CQL.parse("a = 1"), b = CQL.parse("b = 2");
+        Filter s = CQL.parse("INTERSECTS(geom, POINT(0 0))");
+
+        Filter f = new Logic(Logic.Type.OR, s, a, new Logic(Logic.Type.AND, s, b));
+        assertEquals(new Logic(Logic.Type.OR, a, s, new Logic(Logic.Type.AND, b, s)),
+            FilterOptimizer.reorder(f));
+        assertEquals(Arrays.asList(a, b),
+            ((Logic)FilterOptimizer.reorder(new Logic(Logic.Type.AND, a, b))).getParts());
+    }
+
+    @Test
+    public void testQueryPlanResidual() throws Exception {
+        Filter a = CQL.parse("a = 1"), b = CQL.parse("b = 2");
+        Query q = new Query().filter(new Logic(Logic.Type.AND, a, b));
+
+        QueryPlan qp = new QueryPlan(q);
+        assertEquals(q.getFilter(), qp.getResidualFilter());
+
+        qp.filtered(b);
+        assertEquals(b, qp.getResidualFilter());
+
+        qp.filtered(Filter.TRUE);
+        assertSame(Filter.TRUE, qp.getResidualFilter());
+    }
+}
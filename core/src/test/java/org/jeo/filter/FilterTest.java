@@ -9,8 +9,14 @@ import java.util.Map;
 
 import org.jeo.feature.Feature;
 import org.jeo.feature.MapFeature;
+import org.jeo.geom.Envelopes;
+import org.jeo.geom.Geom;
 import org.junit.Test;
 
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+
 public class FilterTest {
     
     @Test
@@ -87,4 +93,58 @@ public class FilterTest {
         Logic l = new Logic(Logic.Type.AND, c1, c2);
         assertTrue(l.apply(f));
     }
+
+    @Test
+    public void testSpatial() {
+        Polygon poly = Geom.polygon(0,0, 10,0, 10,10, 5,15, 0,10, 0,0);
+        Envelope box = new Envelope(2, 8, 2, 8);
+
+        Geometry[] geoms = new Geometry[]{
+            Geom.point(5, 5), Geom.point(5, 14), Geom.point(20, 20), Geom.point(0, 5),
+            Geom.lineString(-5,5, 15,5), Geom.lineString(3,3, 4,4), Geom.lineString(3,3, 4,20),
+            Geom.polygon(3,3, 4,3, 4,4, 3,3), Geom.polygon(-5,-5, 20,-5, 20,20, -5,-5),
+            Geom.polygon(20,20, 30,20, 30,30, 20,20), Geom.polygon(8,8, 12,8, 12,12, 8,8)
+        };
+
+        for (Object lit : new Object[]{poly, box}) {
+            Geometry g2 = lit instanceof Envelope ?
+                Envelopes.toPolygon((Envelope) lit) : (Geometry) lit;
+
+            for (Spatial.Type type : Spatial.Type.values()) {
+                Spatial right = new Spatial(type, new Property("geom"), new Literal(lit));
+                Spatial left = new Spatial(type, new Literal(lit), new Property("geom"));
+
+                for (Geometry g : geoms) {
+                    Map<String,Object> map = new HashMap<String, Object>();
+                    map.put("geom", g);
+                    Feature f = MapFeature.create(map);
+
+                    String msg = g + " " + type + " " + lit;
+                    assertEquals(msg, compare(type, g, g2), right.apply(f));
+                    assertEquals(msg, compare(type, g2, g), left.apply(f));
+                }
+            }
+        }
+    }
+
+    boolean compare(Spatial.Type type, Geometry g1, Geometry g2) {
+        switch(type) {
+        case INTERSECT:
+            return g1.intersects(g2);
+        case TOUCH:
+            return g1.touches(g2);
+        case OVERLAP:
+            return g1.overlaps(g2);
+        case DISJOINT:
+            return g1.disjoint(g2);
+        case CROSS:
+            return g1.crosses(g2);
+        case COVER:
+            return g1.covers(g2);
+        case WITHIN:
+            return g1.within(g2);
+        default:
+            throw new IllegalStateException();
+        }
+    }
 }
@@ -4,19 +4,28 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
-import org.jeo.data.Cursor;
+import org.jeo.data.BatchCursor;
 import org.jeo.feature.Feature;
+import org.jeo.feature.FeatureBatch;
+import org.jeo.feature.Schema;
 
-public class CSVCursor extends Cursor<Feature> {
+public class CSVCursor extends BatchCursor {
 
     CSVDataset csv;
     BufferedReader reader;
+    boolean[] fields;
     String next;
     int i;
 
     public CSVCursor(BufferedReader reader, CSVDataset csv) throws FileNotFoundException {
+        this(reader, csv, null);
+    }
+
+    CSVCursor(BufferedReader reader, CSVDataset csv, boolean[] fields) 
+        throws FileNotFoundException {
         this.reader = reader;
         this.csv = csv;
+        this.fields = fields;
         next = null;
         i = 0;
     }
@@ -37,13 +46,36 @@ public class CSVCursor extends Cursor<Feature> {
         }
 
         try {
-            return csv.feature(i++, next);
+            return csv.feature(i++, next, fields);
         }
         finally {
             next = null;
         }
     }
 
+    @Override
+    public Schema schema() throws IOException {
+        return csv.getSchema();
+    }
+
+    /**
+     * Parses rows directly into the batch, see 
+     * {@link CSVDataset#feature(int, String, boolean[], FeatureBatch)}.
+     */
+    @Override
+    public boolean next(FeatureBatch batch) throws IOException {
+        batch.clear();
+        while (!batch.isFull() && hasNext()) {
+            try {
+                csv.feature(i++, next, fields, batch);
+            }
+            finally {
+                next = null;
+            }
+        }
+        return !batch.isEmpty();
+    }
+
     @Override
     public void close() throws IOException {
         reader.close();
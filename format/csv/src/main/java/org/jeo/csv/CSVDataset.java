@@ -16,6 +16,8 @@ import org.jeo.data.Query;
 import org.jeo.data.QueryPlan;
 import org.jeo.data.VectorData;
 import org.jeo.feature.Feature;
+import org.jeo.feature.FeatureBatch;
+import org.jeo.feature.Field;
 import org.jeo.feature.ListFeature;
 import org.jeo.feature.Schema;
 import org.jeo.feature.SchemaBuilder;
@@ -135,7 +137,41 @@ public class CSVDataset implements VectorData, FileData {
             reader.readLine();
         }
 
-        return new QueryPlan(q).apply(new CSVCursor(reader, this));
+        QueryPlan qp = new QueryPlan(q);
+        return qp.apply(new CSVCursor(reader, this, fields(qp.fields(schema))));
+    }
+
+    /**
+     * Determines which values of a row need to be parsed in order to read the specified fields.
+     * <p>
+     * The first element of the returned array corresponds to the geometry, subsequent elements 
+     * to the columns of the row. Returns <code>null</code> when all values are required.
+     * </p>
+     */
+    boolean[] fields(Schema fields) {
+        if (fields == schema) {
+            return null;
+        }
+
+        int[] geomCols = handler.columns();
+
+        int size = schema.size();
+        for (int col : geomCols) {
+            size = Math.max(size, col+2);
+        }
+
+        boolean[] mask = new boolean[size];
+        for (Field f : fields) {
+            mask[schema.indexOf(f.getName())] = true;
+        }
+
+        if (mask[0]) {
+            // geometry requested, ensure the columns it is created from are parsed
+            for (int col : geomCols) {
+                mask[col+1] = true;
+            }
+        }
+        return mask;
     }
 
     public void close() {
@@ -146,14 +182,60 @@ public class CSVDataset implements VectorData, FileData {
     }
 
     Feature feature(int i, String line) throws IOException {
-        List<Object> row = parseRow(line);
-        List<Object> values = new ArrayList<Object>();
-        values.add(handler.geom(row));
+        return feature(i, line, null);
+    }
+
+    Feature feature(int i, String line, boolean[] fields) throws IOException {
+        if (fields == null) {
+            List<Object> row = parseRow(line);
+            List<Object> values = new ArrayList<Object>();
+            values.add(handler.geom(row));
+            values.addAll(row);
+
+            return new ListFeature(String.valueOf(i), values, schema);
+        }
+
+        // only parse the values that are needed, leaving the rest null
+        String[] raw = row(line);
+        List<Object> row = new ArrayList<Object>(raw.length);
+        for (int j = 0; j < raw.length; j++) {
+            row.add(j+1 < fields.length && fields[j+1] ? parse(raw[j]) : null);
+        }
+
+        List<Object> values = new ArrayList<Object>(raw.length+1);
+        values.add(fields[0] ? handler.geom(row) : null);
         values.addAll(row);
 
         return new ListFeature(String.valueOf(i), values, schema);
     }
 
+    /**
+     * Parses a row into a new row of a batch, only parsing the values that are needed.
+     * <p>
+     * Values beyond the fields of the schema are ignored.
+     * </p>
+     * @param fields Mask of the values to parse as described by {@link #fields(Schema)}, 
+     *   <code>null</code> meaning all values.
+     */
+    void feature(int i, String line, boolean[] fields, FeatureBatch batch) throws IOException {
+        String[] raw = row(line);
+        List<Object> row = new ArrayList<Object>(raw.length);
+        for (int j = 0; j < raw.length; j++) {
+            boolean parse = fields == null || (j+1 < fields.length && fields[j+1]);
+            row.add(parse ? parse(raw[j]) : null);
+        }
+
+        int r = batch.addRow(String.valueOf(i));
+        if (fields == null || fields[0]) {
+            batch.set(r, 0, handler.geom(row));
+        }
+
+        int n = Math.min(row.size(), batch.schema().size()-1);
+        for (int j = 0; j < n; j++) {
+            batch.set(r, j+1, row.get(j));
+        }
+    }
+
     String[] row(String line) {
         return opts.getDelimiter().split(line);
     }
@@ -161,21 +243,23 @@ public class CSVDataset implements VectorData, FileData {
     List<Object> parseRow(String line) {
         List<Object> row = new ArrayList<Object>();
         for (String val : row(line)) {
-            Object parsed = null;
+            row.add(parse(val));
+        }
+        return row;
+    }
+
+    Object parse(String val) {
+        try {
+            return Integer.parseInt(val);
+        }
+        catch(NumberFormatException e1) {
             try {
-                parsed = Integer.parseInt(val);
+                return Double.parseDouble(val);
             }
-            catch(NumberFormatException e1) {
-                try {
-                    parsed = Double.parseDouble(val);
-                }
-                catch(NumberFormatException e2) {
-                    parsed = val;
-                }
+            catch(NumberFormatException e2) {
+                return val;
             }
-            row.add(parsed);
         }
-        return row;
     }
 
 }
@@ -13,4 +13,9 @@ public abstract class CSVHandler {
     public abstract void header(String[] head);
 
     public abstract Geometry geom(List<Object> row) throws IOException;
+
+    /**
+     * The indexes of the columns of a row used to create the geometry.
+     */
+    public abstract int[] columns();
 }
@@ -48,4 +48,9 @@ public class WKTHandler extends CSVHandler {
             throw new IOException(e); 
         }
     }
+
+    @Override
+    public int[] columns() {
+        return new int[]{opts.getWkt()};
+    }
 }
@@ -49,4 +49,9 @@ public class XYHandler extends CSVHandler {
         Number y = (Number) row.get(opts.getY());
         return gb.point(x.doubleValue(), y.doubleValue()).toPoint();
     }
+
+    @Override
+    public int[] columns() {
+        return new int[]{opts.getX(), opts.getY()};
+    }
 }
@@ -3,6 +3,7 @@ package org.jeo.geojson;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.jeo.feature.Feature;
 import org.json.simple.parser.ParseException;
@@ -14,11 +15,19 @@ public class FeatureCollectionHandler extends BaseHandler {
 
     CoordinateReferenceSystem crs;
     boolean streaming = true;
+    Set<String> fields;
 
     public void setStreaming(boolean streaming) {
         this.streaming = streaming;
     }
 
+    /**
+     * Sets the feature properties to read, <code>null</code> meaning all properties.
+     */
+    public void setFields(Set<String> fields) {
+        this.fields = fields;
+    }
+
     public boolean isStreaming() {
         return streaming;
     }
@@ -73,7 +82,7 @@ public class FeatureCollectionHandler extends BaseHandler {
 
         @Override
         public boolean startObject() throws ParseException, IOException {
-            push("feature", new FeatureHandler() {
+            FeatureHandler fh = new FeatureHandler() {
                @Override
                public boolean endObject() throws ParseException, IOException {
                    super.endObject();
@@ -89,7 +98,10 @@ public class FeatureCollectionHandler extends BaseHandler {
 
                    return !streaming;
                } 
-            });
+            };
+            fh.setFields(fields);
+
+            push("feature", fh);
             return true;
         }
 
@@ -3,6 +3,7 @@ package org.jeo.geojson;
 import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.jeo.feature.Feature;
 import org.jeo.feature.MapFeature;
@@ -13,6 +14,18 @@ import com.vividsolutions.jts.geom.Geometry;
 
 public class FeatureHandler extends BaseHandler {
 
+    Set<String> fields;
+
+    /**
+     * Sets the properties to read, <code>null</code> meaning all properties.
+     * <p>
+     * When the geometry is not included it is skipped over entirely rather than being parsed.
+     * </p>
+     */
+    public void setFields(Set<String> fields) {
+        this.fields = fields;
+    }
+
     @Override
     public boolean startObject() throws ParseException, IOException {
         return true;
@@ -28,10 +41,17 @@ public class FeatureHandler extends BaseHandler {
             push(key, new CRSHandler());
         }
         if ("geometry".equals(key)) {
-            push(key, new GeometryHandler());
+            if (fields == null || fields.contains("geometry")) {
+                push(key, new GeometryHandler());
+            }
+            else {
+                push(key, new SkipHandler());
+            }
         }
         else if ("properties".equals(key)) {
-            push(key, new PropertiesHandler());
+            PropertiesHandler ph = new PropertiesHandler();
+            ph.setFields(fields);
+            push(key, ph);
         }
         else if ("id".equals(key)) {
             push(key, new IdHandler());
@@ -9,6 +9,9 @@ import java.util.Map;
 import org.jeo.data.FileDriver;
 import org.jeo.data.VectorDriver;
 import org.jeo.feature.Schema;
+import org.jeo.util.Key;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * GeoJSON format driver.
@@ -18,11 +21,24 @@ import org.jeo.feature.Schema;
  * GeoJSON.open(new File("states.json"));
  * </code></pre>
  * </p>
+ * <p>
+ * Specifying the {@link #INDEX} option builds the sidecar {@link GeoJSONIndex} of the file when
+ * opened, unless an up to date index already exists. Files that can't be indexed, such as those
+ * containing a single feature or geometry rather than a feature collection, are opened without
+ * an index.
+ * </p>
  * 
  * @author Justin Deoliveira, OpenGeo
  */
 public class GeoJSON extends FileDriver<GeoJSONDataset> implements VectorDriver<GeoJSONDataset> {
 
+    static Logger LOG = LoggerFactory.getLogger(GeoJSON.class);
+
+    /**
+     * Whether to build the sidecar index of the file on open.
+     */
+    public static final Key<Boolean> INDEX = new Key<Boolean>("index", Boolean.class, false);
+
     /**
      * Opens a file containing encoded GeoJSON.
      */
@@ -40,6 +56,11 @@ public class GeoJSON extends FileDriver<GeoJSONDataset> implements VectorDriver<
         return Arrays.asList("json");
     }
     
+    @Override
+    public List<Key<?>> getKeys() {
+        return (List) Arrays.asList(FILE, INDEX);
+    }
+
     @Override
     public Class<GeoJSONDataset> getType() {
         return GeoJSONDataset.class;
@@ -58,6 +79,16 @@ public class GeoJSON extends FileDriver<GeoJSONDataset> implements VectorDriver<
 
     @Override
     public GeoJSONDataset open(File file, Map<?, Object> opts) throws IOException {
-        return new GeoJSONDataset(file);
+        GeoJSONDataset data = new GeoJSONDataset(file);
+        if (Boolean.TRUE.equals(INDEX.get(opts)) && data.index() == null) {
+            try {
+                data.buildIndex();
+            }
+            catch(IOException e) {
+                // the index is optional, fall back to parsing the file
+                LOG.warn("Unable to index " + file.getPath() + ", opening without index", e);
+            }
+        }
+        return data;
     }
 }
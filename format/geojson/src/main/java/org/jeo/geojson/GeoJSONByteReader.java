@@ -0,0 +1,329 @@
+package org.jeo.geojson;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jeo.feature.Feature;
+import org.jeo.feature.MapFeature;
+import org.jeo.geom.Geom;
+import org.jeo.proj.Proj;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
+
+/**
+ * Reads GeoJSON objects with a {@link JSONByteParser}.
+ * <p>
+ * Coordinate arrays are read straight into the packed ordinate arrays of
+ * {@link PackedCoordinateSequence} objects, without going through intermediate lists of boxed
+ * numbers. The objects produced are the same as those of the handler based {@link GeoJSONReader}.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+class GeoJSONByteReader {
+
+    GeometryFactory gf = new GeometryFactory();
+
+    /** the properties to read, <code>null</code> meaning all properties */
+    Set<String> fields;
+
+    /** scratch space for ordinates */
+    double[] ords = new double[1024];
+
+    GeoJSONByteReader(Set<String> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Reads a feature object.
+     */
+    Feature feature(JSONByteParser p) throws IOException {
+        String id = null;
+        CoordinateReferenceSystem crs = null;
+        Geometry geom = null;
+        Map<String,Object> props = null;
+
+        p.expect('{');
+        if (!p.accept('}')) {
+            do {
+                String key = p.key();
+                if ("geometry".equals(key) && (fields == null || fields.contains("geometry"))) {
+                    geom = geometry(p);
+                }
+                else if ("properties".equals(key)) {
+                    props = properties(p);
+                }
+                else if ("id".equals(key)) {
+                    Object obj = p.value();
+                    id = obj != null ? obj.toString() : null;
+                }
+                else if ("crs".equals(key)) {
+                    crs = crs(p);
+                }
+                else {
+                    p.skip();
+                }
+            }
+            while (p.more('}'));
+        }
+
+        if (props == null) {
+            props = new LinkedHashMap<String, Object>();
+        }
+        props.put("geometry", geom);
+
+        Feature f = new MapFeature(id, props);
+        f.setCRS(crs);
+        return f;
+    }
+
+    Map<String,Object> properties(JSONByteParser p) throws IOException {
+        if (p.acceptNull()) {
+            return null;
+        }
+
+        Map<String,Object> props = new LinkedHashMap<String, Object>();
+        p.expect('{');
+        if (!p.accept('}')) {
+            do {
+                String key = p.key();
+                if (fields == null || fields.contains(key)) {
+                    props.put(key, p.value());
+                }
+                else {
+                    p.skip();
+                }
+            }
+            while (p.more('}'));
+        }
+        return props;
+    }
+
+    /**
+     * Reads a named crs object.
+     */
+    CoordinateReferenceSystem crs(JSONByteParser p) throws IOException {
+        Object obj = p.value();
+        if (obj instanceof Map) {
+            Object props = ((Map<?,?>) obj).get("properties");
+            if (props instanceof Map && ((Map<?,?>) props).containsKey("name")) {
+                return Proj.crs(((Map<?,?>) props).get("name").toString());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a geometry object.
+     */
+    Geometry geometry(JSONByteParser p) throws IOException {
+        if (p.acceptNull()) {
+            return null;
+        }
+
+        String type = null;
+        Object coords = null;
+        List<Geometry> geoms = null;
+
+        p.expect('{');
+        if (!p.accept('}')) {
+            do {
+                String key = p.key();
+                if ("type".equals(key)) {
+                    type = p.string();
+                }
+                else if ("coordinates".equals(key)) {
+                    coords = coordinates(p);
+                }
+                else if ("geometries".equals(key)) {
+                    geoms = new ArrayList<Geometry>();
+                    p.expect('[');
+                    if (!p.accept(']')) {
+                        do {
+                            geoms.add(geometry(p));
+                        }
+                        while (p.more(']'));
+                    }
+                }
+                else {
+                    p.skip();
+                }
+            }
+            while (p.more('}'));
+        }
+
+        if (geoms != null) {
+            return gf.createGeometryCollection(geoms.toArray(new Geometry[geoms.size()]));
+        }
+        return createGeometry(type, coords);
+    }
+
+    /**
+     * Reads a (nested) coordinate array.
+     * <p>
+     * A position is read as a <tt>double[]</tt>, an array of positions as a
+     * {@link CoordinateSequence}, and arrays nested deeper as a {@link List} of those.
+     * </p>
+     */
+    Object coordinates(JSONByteParser p) throws IOException {
+        p.expect('[');
+        if (p.accept(']')) {
+            return new ArrayList<Object>();
+        }
+
+        if (p.peek() != '[') {
+            // single position
+            int n = 0;
+            do {
+                if (n == ords.length) {
+                    ords = Arrays.copyOf(ords, n * 2);
+                }
+                ords[n++] = p.number();
+            }
+            while (p.more(']'));
+            return Arrays.copyOf(ords, n);
+        }
+
+        Object first = coordinates(p);
+        if (first instanceof double[]) {
+            return sequence((double[]) first, p);
+        }
+
+        List<Object> list = new ArrayList<Object>();
+        list.add(first);
+        while (p.more(']')) {
+            list.add(coordinates(p));
+        }
+        return list;
+    }
+
+    /**
+     * Reads the remaining positions of an array of positions.
+     */
+    CoordinateSequence sequence(double[] first, JSONByteParser p) throws IOException {
+        ensureSize(first.length, 2);
+        int dim = first.length > 2 ? 3 : 2;
+
+        System.arraycopy(first, 0, ords, 0, dim);
+        int n = dim;
+
+        while (p.more(']')) {
+            if (n + dim > ords.length) {
+                ords = Arrays.copyOf(ords, ords.length * 2);
+            }
+
+            p.expect('[');
+            ords[n] = p.number();
+            p.expect(',');
+            ords[n+1] = p.number();
+
+            boolean open = p.more(']');
+            if (dim > 2) {
+                ords[n+2] = open ? p.number() : Double.NaN;
+                open = open && p.more(']');
+            }
+
+            // skip any extra ordinates
+            while (open) {
+                p.number();
+                open = p.more(']');
+            }
+            n += dim;
+        }
+
+        return new PackedCoordinateSequence.Double(Arrays.copyOf(ords, n), dim);
+    }
+
+    Geometry createGeometry(String type, Object coords) {
+        switch(Geom.Type.from(type)) {
+        case POINT:
+            return gf.createPoint(coord(coords));
+        case LINESTRING:
+            return gf.createLineString(seq(coords));
+        case POLYGON:
+            return createPolygon(coords);
+        case MULTIPOINT:
+            return gf.createMultiPoint(seq(coords));
+        case MULTILINESTRING:
+            List<?> lines = list(coords);
+            LineString[] ls = new LineString[ensureSize(lines.size(), 1)];
+            for (int i = 0; i < ls.length; i++) {
+                ls[i] = gf.createLineString(seq(lines.get(i)));
+            }
+            return gf.createMultiLineString(ls);
+        case MULTIPOLYGON:
+            List<?> polys = list(coords);
+            Polygon[] ps = new Polygon[ensureSize(polys.size(), 1)];
+            for (int i = 0; i < ps.length; i++) {
+                ps[i] = createPolygon(polys.get(i));
+            }
+            return gf.createMultiPolygon(ps);
+        default:
+            throw new IllegalArgumentException("Unexpected geometry type: " + type);
+        }
+    }
+
+    Polygon createPolygon(Object coords) {
+        List<?> rings = list(coords);
+        ensureSize(rings.size(), 1);
+
+        LinearRing shell = gf.createLinearRing(seq(rings.get(0)));
+        LinearRing[] holes = rings.size() > 1 ? new LinearRing[rings.size()-1] : null;
+        for (int i = 1; i < rings.size(); i++) {
+            holes[i-1] = gf.createLinearRing(seq(rings.get(i)));
+        }
+        return gf.createPolygon(shell, holes);
+    }
+
+    Coordinate coord(Object coords) {
+        if (!(coords instanceof double[])) {
+            throw new IllegalArgumentException("expected position but was: " + coords);
+        }
+
+        double[] pos = (double[]) coords;
+        ensureSize(pos.length, 2);
+
+        Coordinate c = new Coordinate(pos[0], pos[1]);
+        if (pos.length > 2 && !Double.isNaN(pos[2])) {
+            c.z = pos[2];
+        }
+        return c;
+    }
+
+    CoordinateSequence seq(Object coords) {
+        if (coords instanceof CoordinateSequence) {
+            return (CoordinateSequence) coords;
+        }
+        if (coords instanceof List && ((List<?>)coords).isEmpty()) {
+            ensureSize(0, 1);
+        }
+        throw new IllegalArgumentException("expected array of positions but was: " + coords);
+    }
+
+    List<?> list(Object coords) {
+        if (coords instanceof List) {
+            return (List<?>) coords;
+        }
+        throw new IllegalArgumentException("expected nested coordinate array but was: " + coords);
+    }
+
+    int ensureSize(int size, int min) {
+        if (size < min) {
+            throw new IllegalArgumentException(String.format(
+                "expected coordinate arary of size %d but is of size %d", min, size));
+        }
+        return size;
+    }
+}
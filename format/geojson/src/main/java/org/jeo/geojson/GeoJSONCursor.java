@@ -2,6 +2,7 @@ package org.jeo.geojson;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Set;
 
 import org.jeo.data.Cursor;
 import org.jeo.feature.Feature;
@@ -17,9 +18,20 @@ public class GeoJSONCursor extends Cursor<Feature> {
     Feature next;
 
     GeoJSONCursor(Reader input) {
+        this(input, null);
+    }
+
+    /**
+     * Creates the cursor specifying the feature properties to read, <code>null</code> meaning
+     * all properties.
+     */
+    GeoJSONCursor(Reader input, Set<String> fields) {
         this.input = input;
         this.parser = new JSONParser();
-        this.handler = new RootHandler(new FeatureCollectionHandler());
+
+        FeatureCollectionHandler fch = new FeatureCollectionHandler();
+        fch.setFields(fields);
+        this.handler = new RootHandler(fch);
     }
 
     @Override
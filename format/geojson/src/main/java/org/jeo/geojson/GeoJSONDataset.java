@@ -3,13 +3,17 @@ package org.jeo.geojson;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.jeo.data.Cursor;
 import org.jeo.data.Cursor.Mode;
@@ -20,7 +24,9 @@ import org.jeo.data.Query;
 import org.jeo.data.QueryPlan;
 import org.jeo.data.VectorData;
 import org.jeo.feature.Feature;
+import org.jeo.feature.Field;
 import org.jeo.feature.Schema;
+import org.jeo.geom.Envelopes;
 import org.jeo.proj.Proj;
 import org.jeo.util.Key;
 import org.jeo.util.Optional;
@@ -31,10 +37,23 @@ import org.osgeo.proj4j.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Envelope;
 
+/**
+ * GeoJSON dataset.
+ * <p>
+ * Reading the dataset involves parsing the file. When the file is a feature collection a sidecar
+ * {@link GeoJSONIndex} can be built with {@link #buildIndex()}, after which the count, bounds, crs
+ * and schema of the dataset are read from the index, and bounding box queries read the matching
+ * features directly. The index is ignored once the file changes, until it is rebuilt.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
 public class GeoJSONDataset implements VectorData, FileData {
 
     File file;
 
+    /** sidecar index, loaded on demand */
+    volatile GeoJSONIndex index;
+
     public GeoJSONDataset(File file) {
         this.file = file;
     }
@@ -69,8 +88,54 @@ public class GeoJSONDataset implements VectorData, FileData {
         return null;
     }
 
+    /**
+     * Builds the sidecar index of the dataset, replacing any existing index.
+     *
+     * @throws IOException If the file is not a feature collection.
+     */
+    public GeoJSONIndex buildIndex() throws IOException {
+        GeoJSONIndex idx = GeoJSONIndex.build(file);
+        idx.write(GeoJSONIndex.file(file));
+        index = idx;
+        return idx;
+    }
+
+    /**
+     * Returns the up to date sidecar index of the dataset, or <code>null</code> if there is none.
+     */
+    GeoJSONIndex index() {
+        GeoJSONIndex idx = index;
+        if (idx != null && idx.isCurrent(file)) {
+            return idx;
+        }
+
+        index = null;
+        File f = GeoJSONIndex.file(file);
+        if (!f.exists()) {
+            return null;
+        }
+
+        try {
+            idx = GeoJSONIndex.read(f);
+        }
+        catch(IOException e) {
+            // unreadable index, fall back to parsing the file
+            return null;
+        }
+        if (!idx.isCurrent(file)) {
+            return null;
+        }
+        return index = idx;
+    }
+
     @Override
     public Schema getSchema() throws IOException {
+        GeoJSONIndex idx = index();
+        if (idx != null) {
+            List<Field> fields = idx.fields();
+            return fields != null ? Schema.build(getName()).fields(fields).schema() : null;
+        }
+
         Optional<Feature> f = first();
         if (f.has()) {
             return Schema.build(getName()).fields(f.get().schema().getFields()).schema();
@@ -80,6 +145,11 @@ public class GeoJSONDataset implements VectorData, FileData {
 
     @Override
     public CoordinateReferenceSystem getCRS() throws IOException {
+        GeoJSONIndex idx = index();
+        if (idx != null) {
+            return idx.crs() != null ? idx.crs() : Proj.EPSG_4326;
+        }
+
         CoordinateReferenceSystem crs = null;
 
         //first scan for a crs property
@@ -104,11 +174,21 @@ public class GeoJSONDataset implements VectorData, FileData {
 
     @Override
     public Envelope bounds() throws IOException {
+        GeoJSONIndex idx = index();
+        if (idx != null) {
+            return idx.extent();
+        }
         return Cursors.extent(cursor(new Query()));
     }
 
     @Override
     public long count(Query q) throws IOException {
+        GeoJSONIndex idx = index();
+        if (idx != null && !q.isFiltered()) {
+            long count = Envelopes.isNull(q.getBounds()) ?
+                idx.size() : idx.query(q.getBounds()).length;
+            return q.adjustCount(count);
+        }
         return Cursors.size(cursor(q));
     }
 
@@ -124,7 +204,25 @@ public class GeoJSONDataset implements VectorData, FileData {
             return new GeoJSONAppendCursor(writer());
         }
 
-        return new QueryPlan(q).apply(new GeoJSONCursor(reader()));
+        QueryPlan qp = new QueryPlan(q);
+
+        Set<String> fields = qp.fields();
+        if (fields.isEmpty()) {
+            fields = null;
+        }
+        else if (!Envelopes.isNull(q.getBounds())) {
+            fields.add("geometry");
+        }
+
+        GeoJSONIndex idx = index();
+        if (idx != null && !Envelopes.isNull(q.getBounds())) {
+            // the index matches on envelope intersection just like the bounds filter does
+            Cursor<Feature> c = new GeoJSONIndexCursor(file, idx, idx.query(q.getBounds()), fields);
+            qp.bounded();
+            return qp.apply(c);
+        }
+
+        return qp.apply(new GeoJSONStreamCursor(new FileInputStream(file), fields));
     }
 
     @Override
@@ -145,10 +243,12 @@ public class GeoJSONDataset implements VectorData, FileData {
     }
 
     Reader reader() throws IOException {
-        return new BufferedReader(new FileReader(file));
+        return new BufferedReader(
+            new InputStreamReader(new FileInputStream(file), GeoJSONIndex.UTF8));
     }
 
     Writer writer() throws IOException {
-        return new BufferedWriter(new FileWriter(file));
+        return new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(file), GeoJSONIndex.UTF8));
     }
 }
@@ -0,0 +1,454 @@
+package org.jeo.geojson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.jeo.feature.Feature;
+import org.jeo.feature.Field;
+import org.jeo.proj.Proj;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Sidecar index of a GeoJSON feature collection.
+ * <p>
+ * The index stores the byte offset and length of every feature in the collection along with a
+ * {@link PackedRTree} of the feature envelopes, allowing features intersecting a bounding box to
+ * be read directly from the file without parsing the rest of it. It also stores the summary
+ * information of the collection: feature count, extent, crs and schema.
+ * </p>
+ * <p>
+ * The index is written next to the indexed file with the <tt>.idx</tt> extension, and records
+ * the length and modification time of the file it was built from. An index whose file changed
+ * since is considered stale and ignored, see {@link #isCurrent(File)}.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class GeoJSONIndex {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final int MAGIC = 0x4a47494e; // JGIN
+    static final int VERSION = 1;
+
+    /**
+     * Returns the sidecar index file for a GeoJSON file.
+     */
+    public static File file(File json) {
+        return new File(json.getPath() + ".idx");
+    }
+
+    /**
+     * Scans a GeoJSON feature collection and builds its index.
+     *
+     * @throws IOException If the file is not a feature collection or can not be parsed.
+     */
+    public static GeoJSONIndex build(File json) throws IOException {
+        long length = json.length();
+        long lastModified = json.lastModified();
+
+        Scanner s = new Scanner();
+        InputStream in = new FileInputStream(json);
+        try {
+            s.scan(in);
+        }
+        finally {
+            in.close();
+        }
+
+        if (!s.collection) {
+            throw new IOException(json.getPath() + " is not a GeoJSON feature collection");
+        }
+
+        // sort features into tree order
+        int n = s.offsets.size();
+        Envelope[] envs = s.envelopes.toArray(new Envelope[n]);
+        int[] order = PackedRTree.sort(envs, PackedRTree.NODE_SIZE);
+
+        long[] offsets = new long[n];
+        int[] lengths = new int[n];
+        Envelope[] sorted = new Envelope[n];
+        for (int i = 0; i < n; i++) {
+            offsets[i] = s.offsets.get(order[i]);
+            lengths[i] = s.lengths.get(order[i]);
+            sorted[i] = envs[order[i]];
+        }
+
+        PackedRTree tree = PackedRTree.build(sorted, PackedRTree.NODE_SIZE);
+
+        // the crs of the collection, falling back on the first crs of a feature like CRSFinder
+        CoordinateReferenceSystem crs = s.crs != null ? s.crs : s.featureCrs;
+
+        return new GeoJSONIndex(length, lastModified, s.extent, s.crs, crs, s.fields,
+            offsets, lengths, tree);
+    }
+
+    /**
+     * Reads an index previously written with {@link #write(File)}.
+     */
+    public static GeoJSONIndex read(File file) throws IOException {
+        DataInputStream in =
+            new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file.getPath() + " is not a GeoJSON index");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported GeoJSON index version: " + version);
+            }
+
+            long length = in.readLong();
+            long lastModified = in.readLong();
+
+            Envelope extent = new Envelope();
+            if (in.readBoolean()) {
+                extent.init(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+            }
+
+            CoordinateReferenceSystem collectionCrs = readCRS(in);
+            CoordinateReferenceSystem crs = readCRS(in);
+
+            List<Field> fields = null;
+            int nfields = in.readInt();
+            if (nfields >= 0) {
+                fields = new ArrayList<Field>(nfields);
+                for (int i = 0; i < nfields; i++) {
+                    fields.add(new Field(in.readUTF(), type(in.readUTF())));
+                }
+            }
+
+            int n = in.readInt();
+            long[] offsets = new long[n];
+            int[] lengths = new int[n];
+            for (int i = 0; i < n; i++) {
+                offsets[i] = in.readLong();
+                lengths[i] = in.readInt();
+            }
+
+            PackedRTree tree = PackedRTree.read(in);
+            return new GeoJSONIndex(length, lastModified, extent, collectionCrs, crs, fields,
+                offsets, lengths, tree);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    final long length;
+    final long lastModified;
+
+    final Envelope extent;
+    final CoordinateReferenceSystem collectionCrs;
+    final CoordinateReferenceSystem crs;
+    final List<Field> fields;
+
+    /** feature offsets and lengths, in tree order */
+    final long[] offsets;
+    final int[] lengths;
+    final PackedRTree tree;
+
+    GeoJSONIndex(long length, long lastModified, Envelope extent,
+        CoordinateReferenceSystem collectionCrs, CoordinateReferenceSystem crs, List<Field> fields,
+        long[] offsets, int[] lengths, PackedRTree tree) {
+        this.length = length;
+        this.lastModified = lastModified;
+        this.extent = extent;
+        this.collectionCrs = collectionCrs;
+        this.crs = crs;
+        this.fields = fields;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.tree = tree;
+    }
+
+    /**
+     * Determines if the index is up to date with the file it was built from.
+     */
+    public boolean isCurrent(File json) {
+        return json.length() == length && json.lastModified() == lastModified;
+    }
+
+    /**
+     * The number of features in the collection.
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * The extent of the features in the collection.
+     */
+    public Envelope extent() {
+        return new Envelope(extent);
+    }
+
+    /**
+     * The crs of the collection, <code>null</code> if the file does not specify one.
+     */
+    public CoordinateReferenceSystem crs() {
+        return crs;
+    }
+
+    /**
+     * The fields of the first feature in the collection, <code>null</code> if the collection is
+     * empty.
+     */
+    public List<Field> fields() {
+        return fields;
+    }
+
+    /**
+     * Returns the positions of the features intersecting a bounding box, in file order.
+     */
+    int[] query(Envelope bbox) {
+        int[] hits = tree.search(bbox);
+
+        // sort by offset so the file is read sequentially
+        Integer[] sorted = new Integer[hits.length];
+        for (int i = 0; i < hits.length; i++) {
+            sorted[i] = hits[i];
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                long o1 = offsets[i1], o2 = offsets[i2];
+                return o1 < o2 ? -1 : o1 == o2 ? 0 : 1;
+            }
+        });
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = sorted[i];
+        }
+        return hits;
+    }
+
+    /**
+     * Writes the index out to a file.
+     */
+    public void write(File file) throws IOException {
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(length);
+            out.writeLong(lastModified);
+
+            out.writeBoolean(!extent.isNull());
+            if (!extent.isNull()) {
+                out.writeDouble(extent.getMinX());
+                out.writeDouble(extent.getMaxX());
+                out.writeDouble(extent.getMinY());
+                out.writeDouble(extent.getMaxY());
+            }
+
+            writeCRS(collectionCrs, out);
+            writeCRS(crs, out);
+
+            if (fields == null) {
+                out.writeInt(-1);
+            }
+            else {
+                out.writeInt(fields.size());
+                for (Field f : fields) {
+                    out.writeUTF(f.getName());
+                    out.writeUTF(f.getType().getName());
+                }
+            }
+
+            out.writeInt(offsets.length);
+            for (int i = 0; i < offsets.length; i++) {
+                out.writeLong(offsets[i]);
+                out.writeInt(lengths[i]);
+            }
+
+            tree.write(out);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    static void writeCRS(CoordinateReferenceSystem crs, DataOutputStream out) throws IOException {
+        String str = "";
+        if (crs != null) {
+            Integer epsg = Proj.epsgCode(crs);
+            str = epsg != null ? "EPSG:" + epsg : Proj.toWKT(crs, false);
+        }
+        out.writeUTF(str);
+    }
+
+    static CoordinateReferenceSystem readCRS(DataInputStream in) throws IOException {
+        String str = in.readUTF();
+        if (str.isEmpty()) {
+            return null;
+        }
+        return str.startsWith("EPSG:") ? Proj.crs(str) : Proj.fromWKT(str);
+    }
+
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        }
+        catch(ClassNotFoundException e) {
+            return Object.class;
+        }
+    }
+
+    /**
+     * Byte level scanner that locates the members of the top level <tt>features</tt> array
+     * without building the whole document.
+     * <p>
+     * Only the bytes of each feature and of the collection <tt>crs</tt> member are parsed.
+     * Structural characters of JSON are all ASCII and never part of a multi byte UTF-8 sequence,
+     * so the scanner can work on the raw bytes of the file.
+     * </p>
+     */
+    static class Scanner {
+
+        GeoJSONByteReader reader = new GeoJSONByteReader(null);
+
+        boolean collection;
+
+        List<Long> offsets = new ArrayList<Long>();
+        List<Integer> lengths = new ArrayList<Integer>();
+        List<Envelope> envelopes = new ArrayList<Envelope>();
+
+        Envelope extent = new Envelope();
+        CoordinateReferenceSystem crs;
+        CoordinateReferenceSystem featureCrs;
+        List<Field> fields;
+
+        void scan(InputStream in) throws IOException {
+            int depth = 0;
+            boolean inString = false, escape = false;
+
+            // last string seen at depth 1 and the key of the current member of the collection
+            StringBuilder str = new StringBuilder();
+            String lastString = null, key = null;
+
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            boolean capture = false;
+            long start = 0;
+
+            byte[] chunk = new byte[8192];
+            long pos = -1;
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+              for (int i = 0; i < n; i++) {
+                int b = chunk[i] & 0xff;
+                pos++;
+                if (capture) {
+                    buf.write(b);
+                }
+
+                if (inString) {
+                    if (escape) {
+                        escape = false;
+                    }
+                    else if (b == '\\') {
+                        escape = true;
+                    }
+                    else if (b == '"') {
+                        inString = false;
+                        if (depth == 1) {
+                            lastString = str.toString();
+                        }
+                    }
+                    else if (depth == 1) {
+                        str.append((char) b);
+                    }
+                    continue;
+                }
+
+                switch(b) {
+                case '"':
+                    inString = true;
+                    str.setLength(0);
+                    break;
+                case ':':
+                    if (depth == 1) {
+                        key = lastString;
+                    }
+                    break;
+                case ',':
+                    if (depth == 1) {
+                        key = null;
+                    }
+                    break;
+                case '{':
+                case '[':
+                    if (depth == 1 && b == '[' && "features".equals(key)) {
+                        collection = true;
+                    }
+                    if ((depth == 2 && b == '{' && "features".equals(key))
+                        || (depth == 1 && b == '{' && "crs".equals(key))) {
+                        capture = true;
+                        start = pos;
+                        buf.reset();
+                        buf.write(b);
+                    }
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    if (capture && depth == (("crs".equals(key)) ? 1 : 2)) {
+                        capture = false;
+                        if ("crs".equals(key)) {
+                            crs(buf);
+                        }
+                        else {
+                            feature(start, buf);
+                        }
+                    }
+                    break;
+                }
+              }
+            }
+        }
+
+        void crs(ByteArrayOutputStream buf) throws IOException {
+            byte[] bytes = buf.toByteArray();
+            crs = reader.crs(new JSONByteParser(bytes, 0, bytes.length));
+        }
+
+        void feature(long offset, ByteArrayOutputStream buf) throws IOException {
+            byte[] bytes = buf.toByteArray();
+            Feature f = reader.feature(new JSONByteParser(bytes, 0, bytes.length));
+
+            Envelope e = new Envelope();
+            Geometry g = f.geometry();
+            if (g != null) {
+                e = g.getEnvelopeInternal();
+                extent.expandToInclude(e);
+            }
+
+            if (fields == null) {
+                fields = new ArrayList<Field>(f.schema().getFields());
+            }
+            if (featureCrs == null) {
+                featureCrs = f.getCRS();
+            }
+
+            offsets.add(offset);
+            lengths.add(bytes.length);
+            envelopes.add(e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.jeo.geojson;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Set;
+
+import org.jeo.data.Cursor;
+import org.jeo.feature.Feature;
+
+/**
+ * Cursor reading features located with a {@link GeoJSONIndex} directly from a GeoJSON file.
+ *
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class GeoJSONIndexCursor extends Cursor<Feature> {
+
+    GeoJSONIndex index;
+    int[] hits;
+    GeoJSONByteReader reader;
+
+    RandomAccessFile file;
+    byte[] buf = new byte[8192];
+    int i = 0;
+
+    /**
+     * Creates the cursor.
+     *
+     * @param hits Positions of the features to read in the index, in file order.
+     * @param fields The feature properties to read, <code>null</code> meaning all properties.
+     */
+    GeoJSONIndexCursor(File json, GeoJSONIndex index, int[] hits, Set<String> fields)
+        throws IOException {
+        this.index = index;
+        this.hits = hits;
+        this.reader = new GeoJSONByteReader(fields);
+        this.file = new RandomAccessFile(json, "r");
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        return i < hits.length;
+    }
+
+    @Override
+    public Feature next() throws IOException {
+        if (i >= hits.length) {
+            return null;
+        }
+
+        int hit = hits[i++];
+        int len = index.lengths[hit];
+        if (len > buf.length) {
+            buf = new byte[Math.max(len, buf.length * 2)];
+        }
+
+        file.seek(index.offsets[hit]);
+        file.readFully(buf, 0, len);
+
+        Feature f = reader.feature(new JSONByteParser(buf, 0, len));
+        if (f != null && f.getCRS() == null) {
+            f.setCRS(index.collectionCrs);
+        }
+        return f;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            file.close();
+        }
+        file = null;
+    }
+}
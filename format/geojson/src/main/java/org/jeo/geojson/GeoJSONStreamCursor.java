@@ -0,0 +1,123 @@
+package org.jeo.geojson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+import org.jeo.data.Cursor;
+import org.jeo.feature.Feature;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+
+/**
+ * Cursor streaming the features of a GeoJSON feature collection from UTF-8 encoded bytes.
+ * <p>
+ * This cursor produces the same features as {@link GeoJSONCursor} but reads the input with a
+ * {@link JSONByteParser} rather than a json-simple parser driving a tree of handlers, which
+ * avoids decoding the input into characters and boxing every coordinate.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class GeoJSONStreamCursor extends Cursor<Feature> {
+
+    JSONByteParser parser;
+    GeoJSONByteReader reader;
+
+    /** crs of the collection */
+    CoordinateReferenceSystem crs;
+
+    /** whether the parser is positioned within the features array, and before its first member */
+    boolean inFeatures;
+    boolean first;
+    boolean finished;
+
+    Feature next;
+
+    GeoJSONStreamCursor(InputStream input) {
+        this(input, null);
+    }
+
+    /**
+     * Creates the cursor specifying the feature properties to read, <code>null</code> meaning
+     * all properties.
+     */
+    GeoJSONStreamCursor(InputStream input, Set<String> fields) {
+        this.parser = new JSONByteParser(input);
+        this.reader = new GeoJSONByteReader(fields);
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        if (next == null && !finished) {
+            next = read();
+        }
+        return next != null;
+    }
+
+    @Override
+    public Feature next() throws IOException {
+        try {
+            return hasNext() ? next : null;
+        }
+        finally {
+            next = null;
+        }
+    }
+
+    Feature read() throws IOException {
+        if (!inFeatures) {
+            parser.expect('{');
+            if (parser.accept('}') || !seekFeatures()) {
+                finished = true;
+                return null;
+            }
+        }
+
+        boolean more = first ? !parser.accept(']') : parser.more(']');
+        first = false;
+        if (!more) {
+            // the remainder of the collection holds no features
+            finished = true;
+            return null;
+        }
+
+        Feature f = reader.feature(parser);
+        if (f.getCRS() == null) {
+            f.setCRS(crs);
+        }
+        return f;
+    }
+
+    /**
+     * Reads members of the collection until the features array is reached.
+     *
+     * @return <tt>false</tt> if the collection has no features array.
+     */
+    boolean seekFeatures() throws IOException {
+        do {
+            String key = parser.key();
+            if ("features".equals(key)) {
+                parser.expect('[');
+                inFeatures = true;
+                first = true;
+                return true;
+            }
+            else if ("crs".equals(key)) {
+                crs = reader.crs(parser);
+            }
+            else {
+                parser.skip();
+            }
+        }
+        while (parser.more('}'));
+
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (parser != null) {
+            parser.close();
+        }
+        parser = null;
+    }
+}
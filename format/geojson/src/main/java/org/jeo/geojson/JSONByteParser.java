@@ -0,0 +1,517 @@
+package org.jeo.geojson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pull parser reading JSON directly from UTF-8 encoded bytes.
+ * <p>
+ * Unlike the json-simple parser this parser does not tokenize every value into an object,
+ * callers pull values of the type they expect. In particular {@link #number()} parses a number
+ * into a primitive double without creating any intermediate objects, making it suitable for
+ * reading large coordinate arrays.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+class JSONByteParser {
+
+    static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i-1] * 10;
+        }
+    }
+
+    InputStream in;
+    byte[] buf;
+    int pos, limit;
+
+    /** offset in the input of the start of the buffer */
+    long offset;
+
+    /** scratch space for strings and numbers */
+    char[] chars = new char[64];
+
+    /** whether the last number read was an integer, and its value if so */
+    boolean integral;
+    long integer;
+
+    JSONByteParser(InputStream in) {
+        this(in, 65536);
+    }
+
+    JSONByteParser(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buf = new byte[bufferSize];
+    }
+
+    JSONByteParser(byte[] bytes, int off, int len) {
+        this.buf = bytes;
+        this.pos = off;
+        this.limit = off + len;
+        this.offset = -off;
+    }
+
+    /**
+     * Position in the input of the next byte to be read.
+     */
+    long position() {
+        return offset + pos;
+    }
+
+    /**
+     * Skips whitespace and returns the next byte without consuming it, <tt>-1</tt> at the end of
+     * the input.
+     */
+    int peek() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            int b = buf[pos];
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                pos++;
+            }
+            else {
+                return b & 0xff;
+            }
+        }
+    }
+
+    /**
+     * Skips whitespace and consumes the next byte, <tt>-1</tt> at the end of the input.
+     */
+    int next() throws IOException {
+        int b = peek();
+        if (b != -1) {
+            pos++;
+        }
+        return b;
+    }
+
+    /**
+     * Skips whitespace and consumes the next byte, failing if it is not the specified character.
+     */
+    void expect(char c) throws IOException {
+        int b = next();
+        if (b != c) {
+            throw unexpected(b, "'" + c + "'");
+        }
+    }
+
+    /**
+     * Consumes the next byte if it is the specified character.
+     */
+    boolean accept(char c) throws IOException {
+        if (peek() == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Consumes the separator between members of an object or array, returning <tt>false</tt> when
+     * the end of the object or array is reached instead.
+     *
+     * @param end The character ending the object or array.
+     */
+    boolean more(char end) throws IOException {
+        int b = next();
+        if (b == ',') {
+            return true;
+        }
+        if (b == end) {
+            return false;
+        }
+        throw unexpected(b, "',' or '" + end + "'");
+    }
+
+    /**
+     * Reads the key of an object member, along with the following colon.
+     */
+    String key() throws IOException {
+        String key = string();
+        expect(':');
+        return key;
+    }
+
+    /**
+     * Reads a string.
+     */
+    String string() throws IOException {
+        expect('"');
+
+        int n = 0;
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw error("Unterminated string");
+            }
+            int b = buf[pos++] & 0xff;
+            if (b == '"') {
+                break;
+            }
+
+            if (n + 2 > chars.length) {
+                char[] tmp = new char[chars.length * 2];
+                System.arraycopy(chars, 0, tmp, 0, n);
+                chars = tmp;
+            }
+
+            if (b == '\\') {
+                chars[n++] = escape();
+            }
+            else if (b < 0x80) {
+                chars[n++] = (char) b;
+            }
+            else {
+                n += Character.toChars(codePoint(b), chars, n);
+            }
+        }
+        return new String(chars, 0, n);
+    }
+
+    char escape() throws IOException {
+        int b = read();
+        switch(b) {
+        case '"':
+        case '\\':
+        case '/':
+            return (char) b;
+        case 'b':
+            return '\b';
+        case 'f':
+            return '\f';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 't':
+            return '\t';
+        case 'u':
+            int c = 0;
+            for (int i = 0; i < 4; i++) {
+                int d = Character.digit(read(), 16);
+                if (d < 0) {
+                    throw error("Illegal unicode escape");
+                }
+                c = c * 16 + d;
+            }
+            return (char) c;
+        default:
+            throw unexpected(b, "escape character");
+        }
+    }
+
+    /**
+     * Decodes the remaining bytes of a multi byte UTF-8 sequence.
+     */
+    int codePoint(int b) throws IOException {
+        int cp, n;
+        if ((b & 0xe0) == 0xc0) {
+            cp = b & 0x1f;
+            n = 1;
+        }
+        else if ((b & 0xf0) == 0xe0) {
+            cp = b & 0x0f;
+            n = 2;
+        }
+        else if ((b & 0xf8) == 0xf0) {
+            cp = b & 0x07;
+            n = 3;
+        }
+        else {
+            throw error("Illegal UTF-8 sequence");
+        }
+
+        for (int i = 0; i < n; i++) {
+            int c = read();
+            if ((c & 0xc0) != 0x80) {
+                throw error("Illegal UTF-8 sequence");
+            }
+            cp = (cp << 6) | (c & 0x3f);
+        }
+        return cp;
+    }
+
+    /**
+     * Reads a number as a primitive double.
+     */
+    double number() throws IOException {
+        peek();
+
+        boolean neg = false;
+        long mantissa = 0;
+        int digits = 0, scale = 0, exp = 0;
+        int n = 0;
+
+        int b = peekRaw();
+        if (b == '-') {
+            neg = true;
+            n = append(n, b);
+            b = peekRaw();
+        }
+
+        boolean any = false;
+        while (b >= '0' && b <= '9') {
+            any = true;
+            n = append(n, b);
+            if (mantissa != 0 || b != '0') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+            }
+            b = peekRaw();
+        }
+        if (b == '.') {
+            n = append(n, b);
+            b = peekRaw();
+            while (b >= '0' && b <= '9') {
+                any = true;
+                n = append(n, b);
+                if (mantissa != 0 || b != '0') {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                }
+                scale++;
+                b = peekRaw();
+            }
+        }
+        if (!any) {
+            throw unexpected(b, "number");
+        }
+        if (b == 'e' || b == 'E') {
+            n = append(n, b);
+            b = peekRaw();
+            boolean eneg = false;
+            if (b == '-' || b == '+') {
+                eneg = b == '-';
+                n = append(n, b);
+                b = peekRaw();
+            }
+            if (b < '0' || b > '9') {
+                throw unexpected(b, "exponent");
+            }
+            while (b >= '0' && b <= '9') {
+                n = append(n, b);
+                exp = exp * 10 + (b - '0');
+                if (exp > 100000) {
+                    exp = 100000;
+                }
+                b = peekRaw();
+            }
+            if (eneg) {
+                exp = -exp;
+            }
+        }
+
+        integral = n == (neg ? 1 : 0) + Math.max(digits, 1);
+        if (integral) {
+            try {
+                integer = digits <= 18 ? (neg ? -mantissa : mantissa)
+                    : Long.parseLong(new String(chars, 0, n));
+            }
+            catch(NumberFormatException e) {
+                // too large for a long
+                integral = false;
+            }
+        }
+
+        // values that fit exactly in a double are computed with a single correctly rounded
+        // multiplication or division, everything else goes through the jdk
+        int e = exp - scale;
+        if (digits <= 15 && e >= -22 && e <= 22) {
+            double d = mantissa;
+            d = e < 0 ? d / POW10[-e] : d * POW10[e];
+            return neg ? -d : d;
+        }
+        return Double.parseDouble(new String(chars, 0, n));
+    }
+
+    /**
+     * Reads a number, as a {@link Long} when it is integral like json-simple does and as a
+     * {@link Double} otherwise.
+     */
+    Number numberValue() throws IOException {
+        double d = number();
+        if (integral) {
+            return integer;
+        }
+        return d;
+    }
+
+    /**
+     * Reads any value, objects as {@link Map}, arrays as {@link List}, and primitives as
+     * {@link String}, {@link Number}, {@link Boolean} or <code>null</code>.
+     */
+    Object value() throws IOException {
+        int b = peek();
+        switch(b) {
+        case '{':
+            pos++;
+            Map<String,Object> map = new LinkedHashMap<String, Object>();
+            if (!accept('}')) {
+                do {
+                    String key = key();
+                    map.put(key, value());
+                }
+                while (more('}'));
+            }
+            return map;
+        case '[':
+            pos++;
+            List<Object> list = new ArrayList<Object>();
+            if (!accept(']')) {
+                do {
+                    list.add(value());
+                }
+                while (more(']'));
+            }
+            return list;
+        case '"':
+            return string();
+        case 't':
+            literal("true");
+            return Boolean.TRUE;
+        case 'f':
+            literal("false");
+            return Boolean.FALSE;
+        case 'n':
+            literal("null");
+            return null;
+        default:
+            return numberValue();
+        }
+    }
+
+    /**
+     * Reads the <tt>null</tt> literal if it is next.
+     */
+    boolean acceptNull() throws IOException {
+        if (peek() == 'n') {
+            literal("null");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Skips over a value, be it a primitive, object or array, without building it.
+     */
+    void skip() throws IOException {
+        int b = peek();
+        if (b == '"') {
+            skipString();
+        }
+        else if (b == '{' || b == '[') {
+            int depth = 0;
+            do {
+                b = next();
+                if (b == '"') {
+                    pos--;
+                    skipString();
+                }
+                else if (b == '{' || b == '[') {
+                    depth++;
+                }
+                else if (b == '}' || b == ']') {
+                    depth--;
+                }
+                else if (b == -1) {
+                    throw error("Unexpected end of input");
+                }
+            }
+            while (depth > 0);
+        }
+        else {
+            value();
+        }
+    }
+
+    void skipString() throws IOException {
+        expect('"');
+        int b;
+        while ((b = read()) != '"') {
+            if (b == '\\') {
+                read();
+            }
+        }
+    }
+
+    void literal(String lit) throws IOException {
+        for (int i = 0; i < lit.length(); i++) {
+            int b = read();
+            if (b != lit.charAt(i)) {
+                throw unexpected(b, lit);
+            }
+        }
+    }
+
+    /**
+     * Consumes the next byte without skipping whitespace, failing at the end of the input.
+     */
+    int read() throws IOException {
+        if (pos == limit && !fill()) {
+            throw error("Unexpected end of input");
+        }
+        return buf[pos++] & 0xff;
+    }
+
+    /**
+     * Returns the next byte without skipping whitespace or consuming it, <tt>-1</tt> at the end
+     * of the input.
+     */
+    int peekRaw() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buf[pos] & 0xff;
+    }
+
+    int append(int n, int b) {
+        if (n == chars.length) {
+            char[] tmp = new char[chars.length * 2];
+            System.arraycopy(chars, 0, tmp, 0, n);
+            chars = tmp;
+        }
+        chars[n] = (char) b;
+        pos++;
+        return n + 1;
+    }
+
+    boolean fill() throws IOException {
+        if (in == null) {
+            return false;
+        }
+
+        offset += limit;
+        pos = limit = 0;
+
+        int n = in.read(buf);
+        if (n <= 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+    IOException unexpected(int b, String expected) {
+        return error(String.format("Expected %s but found %s", expected,
+            b == -1 ? "end of input" : "'" + (char) b + "'"));
+    }
+
+    IOException error(String msg) {
+        return new IOException(msg + " at position " + position());
+    }
+
+    void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+        in = null;
+    }
+}
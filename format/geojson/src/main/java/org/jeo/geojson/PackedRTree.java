@@ -0,0 +1,246 @@
+package org.jeo.geojson;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Static R-tree packed with the Sort-Tile-Recursive algorithm.
+ * <p>
+ * The tree is stored as a flat array of boxes, four doubles per node, leaves first and the root
+ * last. Leaf <tt>i</tt> is the <tt>i</tt>th item in tree order, {@link #build(Envelope[], int)}
+ * returns the order items are to be stored in so that positions returned from
+ * {@link #search(Envelope)} map back to them. Items with a null envelope are kept in the tree
+ * but never match a search.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+class PackedRTree {
+
+    /** default number of children per node */
+    static final int NODE_SIZE = 16;
+
+    final int nodeSize;
+    final int numItems;
+
+    /** node boxes as minx, miny, maxx, maxy */
+    final double[] boxes;
+
+    /** exclusive end, in nodes, of each level of the tree starting with the leaves */
+    final int[] levels;
+
+    PackedRTree(int nodeSize, int numItems, double[] boxes, int[] levels) {
+        this.nodeSize = nodeSize;
+        this.numItems = numItems;
+        this.boxes = boxes;
+        this.levels = levels;
+    }
+
+    /**
+     * Sorts item envelopes into tree order.
+     *
+     * @return Indexes of the original items in tree order.
+     */
+    static int[] sort(final Envelope[] items, int nodeSize) {
+        int n = items.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+
+        // sort into vertical slices by center x, then each slice by center y
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return Double.compare(centerX(items[i1]), centerX(items[i2]));
+            }
+        });
+
+        int leaves = (int) Math.ceil(n / (double) nodeSize);
+        int slices = (int) Math.ceil(Math.sqrt(leaves));
+        int sliceSize = nodeSize * (int) Math.ceil(leaves / (double) Math.max(slices, 1));
+
+        for (int i = 0; i < n; i += sliceSize) {
+            Arrays.sort(order, i, Math.min(i + sliceSize, n), new Comparator<Integer>() {
+                @Override
+                public int compare(Integer i1, Integer i2) {
+                    return Double.compare(centerY(items[i1]), centerY(items[i2]));
+                }
+            });
+        }
+
+        int[] sorted = new int[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = order[i];
+        }
+        return sorted;
+    }
+
+    /**
+     * Builds the tree from item envelopes already in tree order.
+     */
+    static PackedRTree build(Envelope[] items, int nodeSize) {
+        int n = items.length;
+
+        // compute the size of each level
+        int[] sizes = new int[32];
+        int depth = 0, total = 0;
+        int size = n;
+        do {
+            sizes[depth++] = size;
+            total += size;
+            size = (int) Math.ceil(size / (double) nodeSize);
+        }
+        while (sizes[depth-1] > 1);
+
+        int[] levels = new int[depth];
+        double[] boxes = new double[total * 4];
+
+        for (int i = 0; i < n; i++) {
+            Envelope e = items[i];
+            if (e == null || e.isNull()) {
+                Arrays.fill(boxes, i * 4, i * 4 + 4, Double.NaN);
+            }
+            else {
+                boxes[i*4] = e.getMinX();
+                boxes[i*4+1] = e.getMinY();
+                boxes[i*4+2] = e.getMaxX();
+                boxes[i*4+3] = e.getMaxY();
+            }
+        }
+        levels[0] = n;
+
+        // build each parent level by grouping consecutive children
+        for (int l = 1; l < depth; l++) {
+            int start = levels[l-1] - sizes[l-1];
+            int node = levels[l-1];
+            for (int c = start; c < levels[l-1]; c += nodeSize, node++) {
+                union(boxes, node, c, Math.min(c + nodeSize, levels[l-1]));
+            }
+            levels[l] = node;
+        }
+
+        return new PackedRTree(nodeSize, n, boxes, levels);
+    }
+
+    static void union(double[] boxes, int node, int from, int to) {
+        double minx = Double.NaN, miny = Double.NaN, maxx = Double.NaN, maxy = Double.NaN;
+        for (int i = from; i < to; i++) {
+            if (Double.isNaN(boxes[i*4])) {
+                continue;
+            }
+            if (Double.isNaN(minx)) {
+                minx = boxes[i*4];
+                miny = boxes[i*4+1];
+                maxx = boxes[i*4+2];
+                maxy = boxes[i*4+3];
+            }
+            else {
+                minx = Math.min(minx, boxes[i*4]);
+                miny = Math.min(miny, boxes[i*4+1]);
+                maxx = Math.max(maxx, boxes[i*4+2]);
+                maxy = Math.max(maxy, boxes[i*4+3]);
+            }
+        }
+        boxes[node*4] = minx;
+        boxes[node*4+1] = miny;
+        boxes[node*4+2] = maxx;
+        boxes[node*4+3] = maxy;
+    }
+
+    /**
+     * Returns the positions, in tree order, of items whose envelope intersects the specified
+     * envelope.
+     */
+    int[] search(Envelope bbox) {
+        if (numItems == 0 || bbox == null || bbox.isNull()) {
+            return new int[0];
+        }
+
+        int[] result = new int[16];
+        int count = 0;
+
+        // stack of node indexes along with their level
+        int[] stack = new int[levels.length * nodeSize * 2];
+        int top = 0;
+        stack[top++] = levels[levels.length-1] - 1;
+        stack[top++] = levels.length - 1;
+
+        while (top > 0) {
+            int level = stack[--top];
+            int node = stack[--top];
+
+            if (!intersects(node, bbox)) {
+                continue;
+            }
+
+            if (level == 0) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count * 2);
+                }
+                result[count++] = node;
+                continue;
+            }
+
+            // children of the node in the level below
+            int start = level > 1 ? levels[level-2] : 0;
+            int first = start + (node - levels[level-1]) * nodeSize;
+            int last = Math.min(first + nodeSize, levels[level-1]);
+            for (int c = first; c < last; c++) {
+                if (top + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = c;
+                stack[top++] = level - 1;
+            }
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    boolean intersects(int node, Envelope bbox) {
+        // comparisons with the NaN boxes of null envelopes are always false
+        int i = node * 4;
+        return boxes[i] <= bbox.getMaxX() && boxes[i+2] >= bbox.getMinX()
+            && boxes[i+1] <= bbox.getMaxY() && boxes[i+3] >= bbox.getMinY();
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(nodeSize);
+        out.writeInt(numItems);
+        out.writeInt(levels.length);
+        for (int l : levels) {
+            out.writeInt(l);
+        }
+        for (double d : boxes) {
+            out.writeDouble(d);
+        }
+    }
+
+    static PackedRTree read(DataInput in) throws IOException {
+        int nodeSize = in.readInt();
+        int numItems = in.readInt();
+        int[] levels = new int[in.readInt()];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = in.readInt();
+        }
+
+        double[] boxes = new double[levels[levels.length-1] * 4];
+        for (int i = 0; i < boxes.length; i++) {
+            boxes[i] = in.readDouble();
+        }
+        return new PackedRTree(nodeSize, numItems, boxes, levels);
+    }
+
+    static double centerX(Envelope e) {
+        return e == null || e.isNull() ? Double.MAX_VALUE : (e.getMinX() + e.getMaxX()) / 2d;
+    }
+
+    static double centerY(Envelope e) {
+        return e == null || e.isNull() ? Double.MAX_VALUE : (e.getMinY() + e.getMaxY()) / 2d;
+    }
+}
@@ -2,19 +2,34 @@ package org.jeo.geojson;
 
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.json.simple.parser.ParseException;
 
 /**
- * TODO: handle nested objects and arrays
+ * Handler for the properties of a feature.
+ * <p>
+ * Nested objects are read as {@link Map} values and arrays as {@link List} values.
+ * </p>
  */
 class PropertiesHandler extends BaseHandler {
 
     String key;
-    Deque<Map<String,Object>> stack = new ArrayDeque<Map<String,Object>>();
+    /** objects and arrays being read, a Map or List */
+    Deque<Object> stack = new ArrayDeque<Object>();
+    Set<String> fields;
+
+    /**
+     * Sets the properties to read, <code>null</code> meaning all properties.
+     */
+    public void setFields(Set<String> fields) {
+        this.fields = fields;
+    }
 
     @Override
     public boolean startObject() throws ParseException, IOException {
@@ -22,7 +37,7 @@ class PropertiesHandler extends BaseHandler {
 
         //top level?
         if (!stack.isEmpty()) {
-            stack.peek().put(key, map);
+            add(map);
         }
 
         stack.push(map);
@@ -31,7 +46,7 @@ class PropertiesHandler extends BaseHandler {
 
     @Override
     public boolean endObject() throws ParseException, IOException {
-        Map<String,Object> map = stack.pop();
+        Object map = stack.pop();
         if (stack.isEmpty()) {
             node.setValue(map);
             pop();
@@ -47,9 +62,23 @@ class PropertiesHandler extends BaseHandler {
         return true;
     }
 
+    @Override
+    public boolean startArray() throws ParseException, IOException {
+        List<Object> list = new ArrayList<Object>();
+        add(list);
+        stack.push(list);
+        return true;
+    }
+
+    @Override
+    public boolean endArray() throws ParseException, IOException {
+        stack.pop();
+        return true;
+    }
+
     @Override
     public boolean primitive(Object value) throws ParseException, IOException {
-        stack.peek().put(key, value);
+        add(value);
         return true;
     }
 
@@ -57,4 +86,14 @@ class PropertiesHandler extends BaseHandler {
     public boolean endObjectEntry() throws ParseException, IOException {
         return true;
     }
-}
\ No newline at end of file
+
+    void add(Object value) {
+        Object parent = stack.peek();
+        if (parent instanceof List) {
+            ((List<Object>) parent).add(value);
+        }
+        else if (stack.size() > 1 || fields == null || fields.contains(key)) {
+            ((Map<String,Object>) parent).put(key, value);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.jeo.geojson;
+
+import java.io.IOException;
+
+import org.json.simple.parser.ParseException;
+
+/**
+ * Handler that skips over a value, be it a primitive, object or array, without building it.
+ */
+class SkipHandler extends BaseHandler {
+
+    int depth = 0;
+
+    @Override
+    public boolean startObject() throws ParseException, IOException {
+        depth++;
+        return true;
+    }
+
+    @Override
+    public boolean endObject() throws ParseException, IOException {
+        return end();
+    }
+
+    @Override
+    public boolean startArray() throws ParseException, IOException {
+        depth++;
+        return true;
+    }
+
+    @Override
+    public boolean endArray() throws ParseException, IOException {
+        return end();
+    }
+
+    @Override
+    public boolean startObjectEntry(String key) throws ParseException, IOException {
+        return true;
+    }
+
+    @Override
+    public boolean endObjectEntry() throws ParseException, IOException {
+        return true;
+    }
+
+    @Override
+    public boolean primitive(Object value) throws ParseException, IOException {
+        if (depth == 0) {
+            pop();
+        }
+        return true;
+    }
+
+    boolean end() {
+        if (--depth == 0) {
+            pop();
+        }
+        return true;
+    }
+}
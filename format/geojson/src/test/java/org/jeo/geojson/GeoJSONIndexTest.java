@@ -0,0 +1,143 @@
+package org.jeo.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jeo.Tests;
+import org.jeo.data.Query;
+import org.jeo.feature.Feature;
+import org.jeo.feature.Schema;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+public class GeoJSONIndexTest {
+
+    GeoJSONDataset data;
+
+    @Before
+    public void setUp() throws Exception {
+        File dir = Tests.unzip(getClass().getResourceAsStream("states.zip"), Tests.newTmpDir());
+        data = new GeoJSONDataset(new File(dir, "states.json"));
+    }
+
+    @Test
+    public void testBuild() throws Exception {
+        Envelope bounds = data.bounds();
+        Schema schema = data.getSchema();
+
+        assertNull(data.index());
+        data.buildIndex();
+        assertTrue(GeoJSONIndex.file(data.getFile()).exists());
+
+        GeoJSONDataset indexed = new GeoJSONDataset(data.getFile());
+        GeoJSONIndex idx = indexed.index();
+        assertNotNull(idx);
+
+        assertEquals(49, idx.size());
+        assertEquals(49, indexed.count(new Query()));
+        assertEquals(bounds, indexed.bounds());
+        assertEquals("EPSG:4326", indexed.getCRS().getName());
+        assertEquals(schema.getFields(), indexed.getSchema().getFields());
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        GeoJSONDataset plain = new GeoJSONDataset(data.getFile());
+        Envelope bounds = plain.bounds();
+        data.buildIndex();
+
+        Random r = new Random(1);
+        for (int i = 0; i < 20; i++) {
+            double x = bounds.getMinX() + r.nextDouble() * bounds.getWidth();
+            double y = bounds.getMinY() + r.nextDouble() * bounds.getHeight();
+            Envelope bbox = new Envelope(x, x + r.nextDouble() * 10, y, y + r.nextDouble() * 5);
+
+            Query q = new Query().bounds(bbox);
+            Set<String> expected = names(plain, q);
+            assertEquals(expected, names(data, q));
+            assertEquals(expected.size(), data.count(q));
+        }
+
+        Query q = new Query().bounds(new Envelope(-100, -90, 30, 40)).limit(2);
+        assertEquals(2, data.count(q));
+        assertEquals(2, names(data, q).size());
+    }
+
+    @Test
+    public void testStale() throws Exception {
+        data.buildIndex();
+        assertNotNull(data.index());
+
+        FileWriter w = new FileWriter(data.getFile(), true);
+        w.write(" ");
+        w.close();
+
+        assertNull(data.index());
+        assertNull(new GeoJSONDataset(data.getFile()).index());
+        assertEquals(49, data.count(new Query()));
+    }
+
+    @Test
+    public void testIndexOption() throws Exception {
+        Map<String,Object> opts = new HashMap<String, Object>();
+        opts.put(GeoJSON.INDEX.getName(), "true");
+
+        GeoJSONDataset ds = new GeoJSON().open(data.getFile(), opts);
+        assertNotNull(ds.index());
+        assertTrue(GeoJSONIndex.file(data.getFile()).exists());
+    }
+
+    @Test
+    public void testNotCollection() throws Exception {
+        File file = Tests.newTmpFile();
+        FileWriter w = new FileWriter(file);
+        w.write("{\"type\": \"Point\", \"coordinates\": [1, 2]}");
+        w.close();
+
+        try {
+            GeoJSONIndex.build(file);
+            fail("expected failure");
+        }
+        catch(IOException e) {
+        }
+    }
+
+    @Test
+    public void testIndexOptionNotCollection() throws Exception {
+        File file = Tests.newTmpFile();
+        FileWriter w = new FileWriter(file);
+        w.write("{\"type\": \"Feature\", \"geometry\": {\"type\": \"Point\", "
+            + "\"coordinates\": [1, 2]}, \"properties\": {\"name\": \"one\"}}");
+        w.close();
+
+        Map<String,Object> opts = new HashMap<String, Object>();
+        opts.put(GeoJSON.INDEX.getName(), "true");
+
+        GeoJSONDataset ds = new GeoJSON().open(file, opts);
+        assertNull(ds.index());
+        assertFalse(GeoJSONIndex.file(file).exists());
+    }
+
+    Set<String> names(GeoJSONDataset data, Query q) throws Exception {
+        Set<String> names = new TreeSet<String>();
+        for (Feature f : data.cursor(q)) {
+            names.add((String) f.get("STATE_NAME"));
+        }
+        return names;
+    }
+}
@@ -8,7 +8,10 @@ import static org.junit.Assert.assertTrue;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.jeo.data.Cursor;
 import org.jeo.data.Cursors;
@@ -155,6 +158,19 @@ public class GeoJSONReadWriteTest extends GeoJSONTestSupport {
         assertNotNull(f.getCRS());
     }
 
+    @Test
+    public void testParseFeatureNestedProperties() throws Exception {
+        Feature f = reader.feature(strip(
+            "{'type': 'Feature', 'properties': {'a': [1, 2.5, 'three'], " +
+              "'o': {'b': [[1], {'c': true}]}, 'd': 4}}"));
+
+        assertEquals(Arrays.asList(1l, 2.5, "three"), f.get("a"));
+        Map<String,Object> o = (Map<String, Object>) f.get("o");
+        assertEquals(Arrays.asList(Arrays.asList(1l), Collections.singletonMap("c", true)), 
+            o.get("b"));
+        assertEquals(4l, f.get("d"));
+    }
+
     @Test
     public void testParseFeatureCollection() throws Exception {
         Cursor<Feature> c = reader.features(featureCollectionText());
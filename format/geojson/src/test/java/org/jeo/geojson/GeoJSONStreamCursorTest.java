@@ -0,0 +1,137 @@
+package org.jeo.geojson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.jeo.Tests;
+import org.jeo.data.Cursor;
+import org.jeo.feature.Feature;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+public class GeoJSONStreamCursorTest extends GeoJSONTestSupport {
+
+    @Test
+    public void testSameAsGeoJSONCursor() throws Exception {
+        File dir = Tests.unzip(getClass().getResourceAsStream("states.zip"), Tests.newTmpDir());
+        File file = new File(dir, "states.json");
+
+        Cursor<Feature> expected = new GeoJSONCursor(new BufferedReader(
+            new InputStreamReader(new FileInputStream(file), "UTF-8")));
+        Cursor<Feature> actual = new GeoJSONStreamCursor(new FileInputStream(file));
+
+        int count = 0;
+        while (expected.hasNext()) {
+            assertTrue(actual.hasNext());
+
+            Feature f1 = expected.next();
+            Feature f2 = actual.next();
+            assertEquals(f1.getId(), f2.getId());
+            assertEquals(f1.getCRS(), f2.getCRS());
+            assertEquals(f1.map().keySet(), f2.map().keySet());
+            for (String key : f1.map().keySet()) {
+                Object v1 = f1.get(key), v2 = f2.get(key);
+                if (v1 instanceof Geometry) {
+                    assertTrue(((Geometry) v1).equalsExact((Geometry) v2));
+                }
+                else {
+                    assertEquals(v1, v2);
+                }
+            }
+            count++;
+        }
+        assertFalse(actual.hasNext());
+        assertEquals(49, count);
+
+        expected.close();
+        actual.close();
+    }
+
+    @Test
+    public void testGeometries() throws Exception {
+        Cursor<Feature> c = cursor(strip(
+            "{'type': 'FeatureCollection', 'features': [" +
+              "{'type': 'Feature', 'geometry': {'type': 'Point', 'coordinates': [1.5, -2e1, 3]}}," +
+              "{'type': 'Feature', 'geometry': {'coordinates': [[0,0],[1,1,5],[2,2]], " +
+                "'type': 'LineString'}}," +
+              "{'type': 'Feature', 'geometry': {'type': 'Polygon', 'coordinates': " +
+                "[[[0,0],[10,0],[10,10],[0,0]],[[1,1],[2,1],[2,2],[1,1]]]}}," +
+              "{'type': 'Feature', 'geometry': null}" +
+            "]}"));
+
+        Point p = (Point) c.next().geometry();
+        assertEquals(1.5, p.getX(), 0);
+        assertEquals(-20, p.getY(), 0);
+        assertEquals(3, p.getCoordinate().z, 0);
+
+        LineString l = (LineString) c.next().geometry();
+        assertEquals(3, l.getNumPoints());
+        assertEquals(2, l.getCoordinateN(2).x, 0);
+
+        Polygon poly = (Polygon) c.next().geometry();
+        assertEquals(1, poly.getNumInteriorRing());
+        assertEquals(49.5, poly.getArea(), 0.0001);
+
+        assertNull(c.next().geometry());
+        assertFalse(c.hasNext());
+    }
+
+    @Test
+    public void testProperties() throws Exception {
+        Cursor<Feature> c = cursor(
+            "{\"features\": [{\"type\": \"Feature\", \"id\": \"foo.1\", \"properties\": {" +
+              "\"s\": \"caf\u00e9 \\\"q\\\" \\u00e9\", \"i\": 12, \"d\": 1.25, \"b\": true, " +
+              "\"n\": null, \"o\": {\"a\": [1, 2]}}, \"geometry\": null}], " +
+              "\"crs\": {\"type\": \"name\", \"properties\": {\"name\": \"EPSG:4326\"}}}");
+
+        Feature f = c.next();
+        assertEquals("foo.1", f.getId());
+        assertEquals("caf\u00e9 \"q\" \u00e9", f.get("s"));
+        assertEquals(12l, f.get("i"));
+        assertEquals(1.25, f.get("d"));
+        assertEquals(Boolean.TRUE, f.get("b"));
+        assertNull(f.get("n"));
+        assertEquals(Arrays.asList(1l, 2l), ((Map<String,List<?>>) f.get("o")).get("a"));
+        assertFalse(c.hasNext());
+    }
+
+    @Test
+    public void testFields() throws Exception {
+        Cursor<Feature> c = new GeoJSONStreamCursor(new ByteArrayInputStream(strip(
+            "{'type': 'FeatureCollection', 'features': [" +
+              "{'type': 'Feature', 'properties': {'a': 1, 'b': {'c': [2]}}, " +
+               "'geometry': {'type': 'Point', 'coordinates': [1, 2]}}]}").getBytes("UTF-8")),
+            new HashSet<String>(Arrays.asList("a")));
+
+        Feature f = c.next();
+        assertEquals(1l, f.get("a"));
+        assertFalse(f.map().containsKey("b"));
+        assertNull(f.geometry());
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        assertFalse(cursor("{\"type\": \"FeatureCollection\", \"features\": []}").hasNext());
+        assertFalse(cursor("{}").hasNext());
+    }
+
+    Cursor<Feature> cursor(String json) throws Exception {
+        return new GeoJSONStreamCursor(new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+}
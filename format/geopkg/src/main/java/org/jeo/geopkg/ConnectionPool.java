@@ -0,0 +1,472 @@
+package org.jeo.geopkg;
+
+import static org.jeo.geopkg.GeoPkgWorkspace.LOG;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+/**
+ * Bounded pool of database connections with a per connection prepared statement cache.
+ * <p>
+ * Connections obtained from the pool are returned to it when closed. Callers block when all
+ * connections are in use, for up to a timeout after which an {@link SQLException} is thrown. New
+ * connections are initialized with a list of statements, typically pragmas.
+ * </p>
+ * <p>
+ * Prepared statements created from a pooled connection are cached by sql string. A cached
+ * statement is handed out to a single caller at a time and is returned to the cache when closed,
+ * or when the connection itself is returned to the pool. Plain statements are closed when the
+ * connection is returned to the pool.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+class ConnectionPool implements DataSource {
+
+    /** default time to wait for a connection, in milliseconds */
+    static final long DEFAULT_TIMEOUT = 30000;
+
+    /** source of new connections */
+    DataSource db;
+
+    /** statements run on new connections */
+    List<String> init;
+
+    /** max cached statements per connection */
+    int statementCacheSize;
+
+    /** bounds the number of connections in use */
+    Semaphore permits;
+
+    /** time to wait for a connection, in milliseconds */
+    long timeout;
+
+    /** connections not in use */
+    Deque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+
+    volatile boolean closed;
+
+    ConnectionPool(DataSource db, int maxConnections, int statementCacheSize, List<String> init) {
+        this(db, maxConnections, statementCacheSize, init, DEFAULT_TIMEOUT);
+    }
+
+    ConnectionPool(DataSource db, int maxConnections, int statementCacheSize, List<String> init,
+        long timeout) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("max connections must be positive");
+        }
+
+        this.db = db;
+        this.init = init;
+        this.statementCacheSize = statementCacheSize;
+        this.timeout = timeout;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool has been closed");
+        }
+
+        try {
+            if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new SQLException(
+                    "Timed out after " + timeout + "ms waiting for connection, all in use");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for connection", e);
+        }
+
+        boolean acquired = false;
+        try {
+            PooledConnection pc;
+            synchronized (idle) {
+                pc = idle.poll();
+            }
+            if (pc == null) {
+                pc = new PooledConnection(open());
+            }
+
+            Connection cx = pc.lease();
+            acquired = true;
+            return cx;
+        }
+        finally {
+            if (!acquired) {
+                permits.release();
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    Connection open() throws SQLException {
+        Connection cx = db.getConnection();
+        if (init != null && !init.isEmpty()) {
+            Statement st = cx.createStatement();
+            try {
+                for (String sql : init) {
+                    LOG.debug(sql);
+                    st.execute(sql);
+                }
+            }
+            catch(SQLException e) {
+                closeQuietly(st);
+                cx.close();
+                throw e;
+            }
+            st.close();
+        }
+        return cx;
+    }
+
+    void release(PooledConnection pc) {
+        try {
+            if (pc.reset() && !closed) {
+                synchronized (idle) {
+                    idle.push(pc);
+                }
+            }
+            else {
+                pc.dispose();
+            }
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes the pool and all connections not in use. Connections in use are closed when they
+     * are returned to the pool.
+     */
+    public void close() {
+        closed = true;
+        synchronized (idle) {
+            for (PooledConnection pc : idle) {
+                pc.dispose();
+            }
+            idle.clear();
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return db.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        db.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        db.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return db.getLoginTimeout();
+    }
+
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch(InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    static void closeQuietly(Statement st) {
+        if (st == null) {
+            return;
+        }
+        try {
+            st.close();
+        } catch (SQLException e) {
+            LOG.debug("error closing statement", e);
+        }
+    }
+
+    static void closeQuietly(Connection cx) {
+        if (cx == null) {
+            return;
+        }
+        try {
+            cx.close();
+        } catch (SQLException e) {
+            LOG.debug("error closing connection", e);
+        }
+    }
+
+    /**
+     * A physical connection along with its statement cache.
+     */
+    class PooledConnection {
+
+        Connection cx;
+
+        /** idle prepared statements, least recently used first */
+        Map<String,PreparedStatement> cache;
+
+        /** prepared statements handed out during the current lease */
+        List<StatementLease> prepared = new ArrayList<StatementLease>();
+
+        /** plain statements created during the current lease */
+        List<Statement> statements = new ArrayList<Statement>();
+
+        PooledConnection(Connection cx) {
+            this.cx = cx;
+            this.cache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > statementCacheSize) {
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionLease(this));
+        }
+
+        PreparedStatement prepare(String sql, Connection proxy) throws SQLException {
+            PreparedStatement ps = cache.remove(sql);
+            if (ps == null) {
+                ps = cx.prepareStatement(sql);
+            }
+
+            StatementLease lease = new StatementLease(this, sql, ps, proxy);
+            prepared.add(lease);
+
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, lease);
+        }
+
+        void giveBack(StatementLease lease) {
+            prepared.remove(lease);
+
+            PreparedStatement ps = lease.ps;
+            try {
+                if (lease.results != null) {
+                    lease.results.close();
+                }
+                ps.clearParameters();
+            }
+            catch(SQLException e) {
+                LOG.debug("error resetting statement", e);
+                closeQuietly(ps);
+                return;
+            }
+
+            if (statementCacheSize < 1 || cache.containsKey(lease.sql)) {
+                closeQuietly(ps);
+            }
+            else {
+                cache.put(lease.sql, ps);
+            }
+        }
+
+        /**
+         * Resets the connection for reuse, returning <code>false</code> if the connection is
+         * no longer usable.
+         */
+        boolean reset() {
+            // return statements still leased, e.g. those used by a cursor that only closes its
+            // connection
+            for (StatementLease lease : new ArrayList<StatementLease>(prepared)) {
+                lease.release();
+            }
+            for (Statement st : statements) {
+                closeQuietly(st);
+            }
+            statements.clear();
+
+            try {
+                if (!cx.getAutoCommit()) {
+                    cx.rollback();
+                    cx.setAutoCommit(true);
+                }
+                return !cx.isClosed();
+            }
+            catch(SQLException e) {
+                LOG.debug("error resetting connection", e);
+                return false;
+            }
+        }
+
+        void dispose() {
+            for (PreparedStatement ps : cache.values()) {
+                closeQuietly(ps);
+            }
+            cache.clear();
+
+            try {
+                cx.close();
+            } catch (SQLException e) {
+                LOG.debug("error closing connection", e);
+            }
+        }
+    }
+
+    /**
+     * Handler for a leased connection, returning the connection to the pool on close.
+     */
+    class ConnectionLease implements InvocationHandler {
+
+        PooledConnection pc;
+        boolean closed;
+
+        ConnectionLease(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                if (!closed) {
+                    closed = true;
+                    release(pc);
+                }
+                return null;
+            }
+            if ("isClosed".equals(name)) {
+                return closed || pc.cx.isClosed();
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name)) {
+                return "Pooled " + pc.cx;
+            }
+
+            if (closed) {
+                throw new SQLException("Connection has been closed");
+            }
+
+            if ("prepareStatement".equals(name) && args.length == 1) {
+                return pc.prepare((String) args[0], (Connection) proxy);
+            }
+
+            Object result = ConnectionPool.invoke(pc.cx, method, args);
+            if (result instanceof Statement) {
+                pc.statements.add((Statement) result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Handler for a leased prepared statement, returning the statement to the cache on close.
+     */
+    class StatementLease implements InvocationHandler {
+
+        PooledConnection pc;
+        String sql;
+        PreparedStatement ps;
+        Connection cx;
+
+        /** last result set obtained from the statement */
+        ResultSet results;
+
+        boolean closed;
+
+        StatementLease(PooledConnection pc, String sql, PreparedStatement ps, Connection cx) {
+            this.pc = pc;
+            this.sql = sql;
+            this.ps = ps;
+            this.cx = cx;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                release();
+                return null;
+            }
+            if ("isClosed".equals(name)) {
+                return closed;
+            }
+            if ("getConnection".equals(name)) {
+                return cx;
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name)) {
+                return sql;
+            }
+
+            if (closed) {
+                throw new SQLException("Statement has been closed");
+            }
+
+            Object result = ConnectionPool.invoke(ps, method, args);
+            if (result instanceof ResultSet) {
+                results = (ResultSet) result;
+            }
+            return result;
+        }
+
+        void release() {
+            if (!closed) {
+                closed = true;
+                pc.giveBack(this);
+            }
+        }
+    }
+}
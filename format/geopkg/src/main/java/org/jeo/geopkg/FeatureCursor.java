@@ -8,16 +8,18 @@ import java.sql.ResultSet;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.jeo.data.Cursor;
+import org.jeo.data.BatchCursor;
 import org.jeo.feature.Feature;
+import org.jeo.feature.FeatureBatch;
 import org.jeo.feature.Field;
 import org.jeo.feature.ListFeature;
 import org.jeo.feature.Schema;
 import org.jeo.geopkg.geom.GeoPkgGeomReader;
 
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 
-public class FeatureCursor extends Cursor<Feature> {
+public class FeatureCursor extends BatchCursor {
 
     ResultSet results;
     Connection cx;
@@ -27,11 +29,39 @@ public class FeatureCursor extends Cursor<Feature> {
     Boolean next;
     GeoPkgGeomReader geomReader;
 
+    /** bounds to filter features against */
+    Envelope bbox;
+
+    /** index of geometry to filter, and the geometry of the current row */
+    int geom = -1;
+    Geometry geometry;
+
     FeatureCursor(ResultSet stmt, Connection cx ,Schema schema) {
+        this(stmt, cx, schema, null);
+    }
+
+    /**
+     * Creates a cursor that only returns features whose geometry envelope intersects the 
+     * specified bounds. 
+     * <p>
+     * Rows are first checked against the envelope stored in the geometry header so that the 
+     * geometry only need be decoded for rows that intersect the bounds.
+     * </p>
+     */
+    FeatureCursor(ResultSet stmt, Connection cx ,Schema schema, Envelope bbox) {
         this.results = stmt;
         this.cx = cx;
         this.schema = schema;
         this.geomReader = new GeoPkgGeomReader();
+
+        if (bbox != null) {
+            Field g = schema.geometry();
+            if (g == null) {
+                throw new IllegalArgumentException("Schema has no geometry to filter");
+            }
+            this.bbox = bbox;
+            this.geom = schema.indexOf(g.getName());
+        }
     }
 
     @Override
@@ -39,6 +69,9 @@ public class FeatureCursor extends Cursor<Feature> {
         if (next == null) {
             try {
                 next = results.next();
+                while (next && bbox != null && !intersects()) {
+                    next = results.next();
+                }
             } catch (Exception e) {
                 throw new IOException(e);
             }
@@ -47,6 +80,23 @@ public class FeatureCursor extends Cursor<Feature> {
         return next;
     }
 
+    boolean intersects() throws Exception {
+        geometry = null;
+
+        byte[] bytes = results.getBytes(geom+1);
+        if (bytes == null) {
+            return false;
+        }
+
+        Envelope e = geomReader.envelope(bytes);
+        if (e != null && !e.intersects(bbox)) {
+            return false;
+        }
+
+        geometry = geomReader.read(bytes);
+        return e != null || geometry.getEnvelopeInternal().intersects(bbox);
+    }
+
     @Override
     public Feature next() throws IOException {
         try {
@@ -56,12 +106,7 @@ public class FeatureCursor extends Cursor<Feature> {
                     List<Object> values = new ArrayList<Object>();
 
                     for (int i = 0; i < fields.size(); i++) {
-                        if (Geometry.class.isAssignableFrom(fields.get(i).getType())) {
-                            values.add(geomReader.read(results.getBytes(i+1)));
-                        }
-                        else {
-                            values.add(results.getObject(i+1));
-                        }
+                        values.add(value(i, fields.get(i)));
                     }
     
                     //TODO: feature id
@@ -69,6 +114,7 @@ public class FeatureCursor extends Cursor<Feature> {
                 }
                 finally {
                     next = null;
+                    geometry = null;
                 }
             }
             return null;
@@ -78,6 +124,58 @@ public class FeatureCursor extends Cursor<Feature> {
         }
     }
 
+    Object value(int i, Field fld) throws Exception {
+        if (i == geom) {
+            return geometry;
+        }
+        if (Geometry.class.isAssignableFrom(fld.getType())) {
+            return geomReader.read(results.getBytes(i+1));
+        }
+        return results.getObject(i+1);
+    }
+
+    @Override
+    public Schema schema() {
+        return schema;
+    }
+
+    /**
+     * Reads rows directly into the batch, values of numeric columns matching the type of the 
+     * field being stored without boxing.
+     * <p>
+     * SQLite column types are only declarations, so values are stored as read, the same as for
+     * {@link #next()}, rather than converted to the type of the field.
+     * </p>
+     */
+    @Override
+    public boolean next(FeatureBatch batch) throws IOException {
+        batch.clear();
+
+        List<Field> fields = schema.getFields();
+        try {
+            while (!batch.isFull() && hasNext()) {
+                try {
+                    int row = batch.addRow(null);
+                    for (int i = 0; i < fields.size(); i++) {
+                        // the geometry being filtered was decoded by hasNext()
+                        batch.setObject(row, i, value(i, fields.get(i)));
+                    }
+                }
+                finally {
+                    next = null;
+                    geometry = null;
+                }
+            }
+        }
+        catch(IOException e) {
+            throw e;
+        }
+        catch(Exception e) {
+            throw new IOException(e);
+        }
+        return !batch.isEmpty();
+    }
+
     @Override
     public void close() throws IOException {
         try {
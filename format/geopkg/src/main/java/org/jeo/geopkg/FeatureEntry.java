@@ -17,6 +17,7 @@ public class FeatureEntry extends Entry {
     String geometryColumn;
 
     Schema schema;
+    Boolean spatialIndex;
 
     public FeatureEntry() {
         setDataType(DataType.Feature);
@@ -54,6 +55,14 @@ public class FeatureEntry extends Entry {
         this.schema = schema;
     }
 
+    Boolean hasSpatialIndex() {
+        return spatialIndex;
+    }
+
+    void setSpatialIndex(Boolean spatialIndex) {
+        this.spatialIndex = spatialIndex;
+    }
+
     void init(FeatureEntry e) {
         super.init(e);
         setGeometryColumn(e.getGeometryColumn());
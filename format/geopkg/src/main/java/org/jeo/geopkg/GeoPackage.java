@@ -23,13 +23,47 @@ public class GeoPackage extends FileDriver<GeoPkgWorkspace> {
      */
     public static final Key<Password> PASSWD = new Key<Password>("passwd", Password.class);
 
+    /**
+     * Maximum number of pooled database connections, defaults to 8.
+     */
+    public static final Key<Integer> MAX_CONNECTIONS = 
+        new Key<Integer>("max_connections", Integer.class, 8);
+
+    /**
+     * Number of prepared statements cached per pooled connection, defaults to 32.
+     */
+    public static final Key<Integer> STATEMENT_CACHE_SIZE = 
+        new Key<Integer>("statement_cache_size", Integer.class, 32);
+
+    /**
+     * Write ahead logging journal mode, defaults to <tt>false</tt>.
+     * <p>
+     * WAL allows readers to proceed concurrently with a writer. Note that the journal mode is 
+     * persistent, once enabled the database remains in WAL mode.
+     * </p>
+     */
+    public static final Key<Boolean> WAL = new Key<Boolean>("wal", Boolean.class, false);
+
+    /**
+     * SQLite page cache size, corresponding to <tt>PRAGMA cache_size</tt>. Defaults to the 
+     * SQLite default.
+     */
+    public static final Key<Integer> CACHE_SIZE = new Key<Integer>("cache_size", Integer.class);
+
+    /**
+     * Size in bytes of memory mapped I/O, corresponding to <tt>PRAGMA mmap_size</tt>. Defaults 
+     * to the SQLite default.
+     */
+    public static final Key<Long> MMAP_SIZE = new Key<Long>("mmap_size", Long.class);
+
     public static GeoPkgWorkspace open(File file) throws IOException {
         return new GeoPackage().open(file, (Map) Collections.singletonMap(FILE, file));
     }
 
     @Override
     public List<Key<?>> getKeys() {
-        return (List) Arrays.asList(FILE, USER, PASSWD);
+        return (List) Arrays.asList(FILE, USER, PASSWD, MAX_CONNECTIONS, STATEMENT_CACHE_SIZE, 
+            WAL, CACHE_SIZE, MMAP_SIZE);
     }
 
     @Override
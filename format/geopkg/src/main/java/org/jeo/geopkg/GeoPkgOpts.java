@@ -14,8 +14,32 @@ public class GeoPkgOpts {
     String user;
     Password passwd;
 
+    Integer maxConnections = MAX_CONNECTIONS.getDefault();
+    Integer statementCacheSize = STATEMENT_CACHE_SIZE.getDefault();
+    Boolean wal = WAL.getDefault();
+    Integer cacheSize;
+    Long mmapSize;
+
     public static GeoPkgOpts fromMap(Map<?,Object> map) {
-        return new GeoPkgOpts(FILE.get(map)).user(USER.get(map)).passwd(PASSWD.get(map));
+        GeoPkgOpts opts = 
+            new GeoPkgOpts(FILE.get(map)).user(USER.get(map)).passwd(PASSWD.get(map));
+
+        if (MAX_CONNECTIONS.has(map)) {
+            opts.maxConnections(MAX_CONNECTIONS.get(map));
+        }
+        if (STATEMENT_CACHE_SIZE.has(map)) {
+            opts.statementCacheSize(STATEMENT_CACHE_SIZE.get(map));
+        }
+        if (WAL.has(map)) {
+            opts.wal(WAL.get(map));
+        }
+        if (CACHE_SIZE.has(map)) {
+            opts.cacheSize(CACHE_SIZE.get(map));
+        }
+        if (MMAP_SIZE.has(map)) {
+            opts.mmapSize(MMAP_SIZE.get(map));
+        }
+        return opts;
     }
 
     public GeoPkgOpts(File file) {
@@ -32,6 +56,31 @@ public class GeoPkgOpts {
         return this;
     }
 
+    public GeoPkgOpts maxConnections(Integer maxConnections) {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    public GeoPkgOpts statementCacheSize(Integer statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+        return this;
+    }
+
+    public GeoPkgOpts wal(Boolean wal) {
+        this.wal = wal;
+        return this;
+    }
+
+    public GeoPkgOpts cacheSize(Integer cacheSize) {
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
+    public GeoPkgOpts mmapSize(Long mmapSize) {
+        this.mmapSize = mmapSize;
+        return this;
+    }
+
     public File getFile() {
         return file;
     }
@@ -44,6 +93,26 @@ public class GeoPkgOpts {
         return passwd;
     }
 
+    public Integer getMaxConnections() {
+        return maxConnections;
+    }
+
+    public Integer getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public Boolean getWal() {
+        return wal;
+    }
+
+    public Integer getCacheSize() {
+        return cacheSize;
+    }
+
+    public Long getMmapSize() {
+        return mmapSize;
+    }
+
     public Map<Key<?>,Object> toMap() {
         Map<Key<?>,Object> map = new LinkedHashMap<Key<?>, Object>();
         map.put(FILE, file);
@@ -53,6 +122,21 @@ public class GeoPkgOpts {
         if (passwd != null) {
             map.put(PASSWD, passwd);
         }
+        if (maxConnections != null) {
+            map.put(MAX_CONNECTIONS, maxConnections);
+        }
+        if (statementCacheSize != null) {
+            map.put(STATEMENT_CACHE_SIZE, statementCacheSize);
+        }
+        if (wal != null) {
+            map.put(WAL, wal);
+        }
+        if (cacheSize != null) {
+            map.put(CACHE_SIZE, cacheSize);
+        }
+        if (mmapSize != null) {
+            map.put(MMAP_SIZE, mmapSize);
+        }
         return map;
     }
 }
@@ -68,16 +68,7 @@ public class GeoPkgTileSet implements TileSet {
 
     @Override
     public Tile read(long z, long x, long y) throws IOException {
-        Cursor<Tile> c = geopkg.read(entry, (int)z, (int)z, (int)x, (int)x, (int)y, (int)y);
-        try {
-            if (c.hasNext()) {
-                return c.next();
-            }
-            return null;
-        }
-        finally {
-            c.close();
-        }
+        return geopkg.read(entry, (int)z, (int)x, (int)y);
     }
 
     @Override
@@ -86,6 +77,16 @@ public class GeoPkgTileSet implements TileSet {
         return geopkg.read(entry, (int)z1, (int)z2, (int)x1, (int)x2, (int)y1, (int)y2);
     }
 
+    @Override
+    public void put(Tile t) throws IOException {
+        geopkg.put(entry, t);
+    }
+
+    @Override
+    public long putAll(Cursor<Tile> tiles) throws IOException {
+        return geopkg.putAll(entry, tiles);
+    }
+
     @Override
     public void close() {
     }
@@ -1,6 +1,7 @@
 package org.jeo.geopkg;
 
 import static java.lang.String.format;
+import static org.jeo.geopkg.ConnectionPool.closeQuietly;
 
 import java.io.File;
 import java.io.IOException;
@@ -9,6 +10,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -27,6 +29,7 @@ import org.jeo.data.Dataset;
 import org.jeo.data.FileData;
 import org.jeo.data.Query;
 import org.jeo.data.QueryPlan;
+import org.jeo.data.Sort;
 import org.jeo.data.Tile;
 import org.jeo.data.TilePyramid;
 import org.jeo.data.TilePyramidBuilder;
@@ -40,6 +43,7 @@ import org.jeo.filter.Filter;
 import org.jeo.geom.Envelopes;
 import org.jeo.geom.Geom;
 import org.jeo.geopkg.Entry.DataType;
+import org.jeo.geopkg.geom.GeoPkgGeomReader;
 import org.jeo.geopkg.geom.GeoPkgGeomWriter;
 import org.jeo.proj.Proj;
 import org.jeo.sql.DbOP;
@@ -78,6 +82,12 @@ public class GeoPkgWorkspace implements Workspace, FileData {
     /** name of tile matrix metadata table */
     static final String TILE_MATRIX_METADATA = "tile_matrix_metadata";
 
+    /** number of tiles written per transaction */
+    static final int TILE_BATCH_SIZE = 1000;
+
+    /** prefix of spatial index tables */
+    static final String RTREE_PREFIX = "rtree_";
+
     /** date format */
     static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-mm-dd'T'HH:MM:ss.SSS'Z'");
     static {
@@ -87,8 +97,8 @@ public class GeoPkgWorkspace implements Workspace, FileData {
     /** creation options */
     GeoPkgOpts opts;
 
-    /** data source */
-    DataSource db;
+    /** pooled data source */
+    ConnectionPool db;
 
     /** wkb writer */
     GeoPkgGeomWriter geomWriter;
@@ -110,10 +120,32 @@ public class GeoPkgWorkspace implements Workspace, FileData {
         geomWriter = new GeoPkgGeomWriter();
     }
 
-    DataSource createDataSource(GeoPkgOpts opts) {
+    ConnectionPool createDataSource(GeoPkgOpts opts) {
         SQLiteDataSource dataSource = new SQLiteDataSource();
         dataSource.setUrl("jdbc:sqlite:" + opts.getFile().getPath());
-        return dataSource;
+
+        List<String> pragmas = new ArrayList<String>();
+        if (Boolean.TRUE.equals(opts.getWal())) {
+            pragmas.add("PRAGMA journal_mode=WAL");
+        }
+        if (opts.getCacheSize() != null) {
+            pragmas.add("PRAGMA cache_size=" + opts.getCacheSize());
+        }
+        if (opts.getMmapSize() != null) {
+            pragmas.add("PRAGMA mmap_size=" + opts.getMmapSize());
+        }
+
+        Integer maxConnections = opts.getMaxConnections();
+        if (maxConnections == null) {
+            maxConnections = GeoPackage.MAX_CONNECTIONS.getDefault();
+        }
+
+        // cache statements unless explicitly turned off with a size of 0
+        Integer statementCacheSize = opts.getStatementCacheSize();
+        if (statementCacheSize == null) {
+            statementCacheSize = GeoPackage.STATEMENT_CACHE_SIZE.getDefault();
+        }
+        return new ConnectionPool(dataSource, maxConnections, statementCacheSize, pragmas);
     }
 
     @Override
@@ -236,13 +268,12 @@ public class GeoPkgWorkspace implements Workspace, FileData {
     public long count(final FeatureEntry entry, final Query q) throws IOException {
         QueryPlan qp = new QueryPlan(q);
 
-        if (!Envelopes.isNull(q.getBounds())) {
-            return Cursors.size(cursor(entry, q));
-        }
-
         final SQL sql = new SQL("SELECT count(*) FROM ").name(entry.getTableName());
-        final List<Object> args = encodeQuery(sql, q, qp);
+        final List<Object> args = encodeWhere(sql, entry, q, qp);
 
+        if (!Envelopes.isNull(q.getBounds()) && !qp.isBounded()) {
+            return Cursors.size(cursor(entry, q));
+        }
         if (q.isFiltered() && !qp.isFiltered()) {
             return Cursors.size(cursor(entry, q));
         }
@@ -264,69 +295,166 @@ public class GeoPkgWorkspace implements Workspace, FileData {
 
             QueryPlan qp = new QueryPlan(q);
 
-            //TODO: handle selective fields
-            SQL sqlb = new SQL("SELECT * FROM ").name(entry.getTableName());
-            List<Object> args = encodeQuery(sqlb, q, qp);
+            SQL where = new SQL();
+            List<Object> args = encodeWhere(where, entry, q, qp);
+            encodeOrderAndPaging(where, q, qp);
 
-            Connection cx = db.getConnection();
-            PreparedStatement ps = prepareStatement(log(sqlb.toString()), args, cx);
+            // only select the columns needed to process the query
+            Schema fields = qp.fields(schema);
 
-            ResultSet rs = ps.executeQuery();
+            // without a spatial index filter bounds with the geometry header envelope
+            Envelope bbox = null;
+            if (!qp.isBounded() && !Envelopes.isNull(q.getBounds()) && fields.geometry() != null) {
+                bbox = q.getBounds();
+                qp.bounded();
+            }
 
-            Cursor<Feature> c = new FeatureCursor(rs, cx, schema);
+            SQL sqlb = new SQL("SELECT ");
+            if (fields == schema) {
+                sqlb.add("*");
+            }
+            else {
+                for (Field f : fields) {
+                    sqlb.name(f.getName()).add(", ");
+                }
+                sqlb.trim(2);
 
-            if (!Envelopes.isNull(q.getBounds())) {
-                c = Cursors.intersects(c, q.getBounds());
+                if (names(fields).equals(q.getFields())) {
+                    qp.projected();
+                }
             }
+            sqlb.add(" FROM ").name(entry.getTableName()).add(where);
+
+            Connection cx = db.getConnection();
+            PreparedStatement ps = null;
+            try {
+                ps = prepareStatement(log(sqlb.toString()), args, cx);
+
+                ResultSet rs = ps.executeQuery();
 
-            return qp.apply(c);
+                return qp.apply(new FeatureCursor(rs, cx, fields, bbox));
+            }
+            catch(Exception e) {
+                // the cursor was never created to return the connection to the pool
+                closeQuietly(ps);
+                closeQuietly(cx);
+                throw e;
+            }
         }
         catch(Exception e) {
             throw new IOException(e);
         }
     }
 
-    List<Object> encodeQuery(SQL sql, Query q, QueryPlan qp) {
-        GeoPkgFilterSQLEncoder sqlfe = new GeoPkgFilterSQLEncoder();
-        sqlfe.setDbTypes(dbtypes);
+    List<String> names(Schema schema) {
+        List<String> names = new ArrayList<String>(schema.size());
+        for (Field f : schema) {
+            names.add(f.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Encodes the bounds and filter of a query as a WHERE clause, returning the arguments of the
+     * encoded clause.
+     * <p>
+     * The bounds are only encoded when the entry has a spatial index, see 
+     * {@link #hasSpatialIndex(FeatureEntry)}.
+     * </p>
+     */
+    List<Object> encodeWhere(SQL sql, FeatureEntry entry, Query q, QueryPlan qp) 
+        throws IOException {
+
+        List<Object> args = new ArrayList<Object>();
+
+        Envelope bbox = q.getBounds();
+        if (!Envelopes.isNull(bbox) && hasSpatialIndex(entry)) {
+            sql.add(" WHERE rowid IN (SELECT id FROM ").name(spatialIndexName(entry))
+               .add(" WHERE minx <= ? AND maxx >= ? AND miny <= ? AND maxy >= ?)");
+            args.add(bbox.getMaxX());
+            args.add(bbox.getMinX());
+            args.add(bbox.getMaxY());
+            args.add(bbox.getMinY());
+            qp.bounded();
+        }
 
         if (!Filter.isTrueOrNull(q.getFilter())) {
+            GeoPkgFilterSQLEncoder sqlfe = new GeoPkgFilterSQLEncoder();
+            sqlfe.setDbTypes(dbtypes);
+
             try {
-                sql.add(" WHERE ").add(sqlfe.encode(q.getFilter(), null));
-                qp.filtered();
+                // encode what we can, leaving the rest to be evaluated in memory
+                Pair<Filter,Filter> split = sqlfe.split(q.getFilter());
+                if (split.first() != Filter.TRUE) {
+                    String filter = sqlfe.encode(split.first(), null);
+                    sql.add(qp.isBounded() ? " AND (" : " WHERE (").add(filter).add(")");
+                    for (Pair<Object, Integer> p : sqlfe.getArgs()) {
+                        args.add(p.first());
+                    }
+                    qp.filtered(split.second());
+                }
             }
             catch(Exception e) {
                 LOG.debug("Unable to natively encode filter: " + q.getFilter(), e);
             }
         }
 
-        if (q.getLimit() != null) {
-            sql.add(" LIMIT ").add(q.getLimit());
-            qp.offsetted();
+        return args;
+    }
+
+    /**
+     * Encodes the sort, limit and offset of a query.
+     * <p>
+     * Limit and offset are only encoded when all of the query bounds and filter were encoded 
+     * natively, otherwise the paging would be applied before the features are filtered.
+     * </p>
+     */
+    void encodeOrderAndPaging(SQL sql, Query q, QueryPlan qp) {
+        List<Sort> sort = q.getSort();
+        if (sort != null && !sort.isEmpty()) {
+            sql.add(" ORDER BY ");
+            for (Sort srt : sort) {
+                sql.name(srt.getProperty()).add(srt.isAscending() ? " ASC" : " DESC").add(", ");
+            }
+            sql.trim(2);
+            qp.sorted();
         }
-        if (q.getOffset() != null) {
-            sql.add(" OFFSET ").add(q.getOffset());
-            qp.limited();
+
+        boolean bounded = Envelopes.isNull(q.getBounds()) || qp.isBounded();
+        boolean filtered = Filter.isTrueOrNull(q.getFilter()) || qp.isFiltered();
+        if (!bounded || !filtered) {
+            return;
         }
 
-        List<Object> args = new ArrayList<Object>();
-        for (Pair<Object, Integer> p : sqlfe.getArgs()) {
-            args.add(p.first());
+        if (q.getLimit() != null || q.getOffset() != null) {
+            // sqlite requires a limit with offset, negative meaning no limit
+            sql.add(" LIMIT ").add(q.getLimit() != null ? q.getLimit() : -1);
+            qp.limited();
+        }
+        if (q.getOffset() != null) {
+            sql.add(" OFFSET ").add(q.getOffset());
+            qp.offsetted();
         }
-        return args;
     }
 
     public void add(final FeatureEntry entry, final Feature feature) throws IOException {
+        // look these up front rather than obtaining a second connection during the insert
+        final Schema schema = schema(entry);
+        final boolean indexed = hasSpatialIndex(entry);
+
         run(new DbOP<Boolean>() {
             @Override
             protected Boolean doRun(Connection cx) throws Exception {
-                Feature f = Features.retype(feature, schema(entry));
+                Feature f = Features.retype(feature, schema);
 
                 SQL sqlb = new SQL("INSERT INTO ").name(entry.getTableName()).add(" (");
                 List<Object> objs = new ArrayList<Object>();
 
-                for (Field fld : f.schema()) {
-                    Object o = f.get(fld.getName());
+                // retyped feature values are positional with the schema
+                List<Object> values = f.list();
+                for (int i = 0; i < schema.size(); i++) {
+                    Field fld = schema.field(i);
+                    Object o = values.get(i);
                     if (o != null) {
                         sqlb.name(fld.getName()).add(", ");
                         objs.add(o);
@@ -342,12 +470,138 @@ public class GeoPkgWorkspace implements Workspace, FileData {
                 String sql = sqlb.toString();
                 log(sql, objs);
 
-                return open(prepareStatement(sql, objs, cx)).execute();
+                open(prepareStatement(sql, objs, cx)).execute();
+
+                Object g = entry.getGeometryColumn() != null ? 
+                    f.get(entry.getGeometryColumn()) : null;
+                if (g instanceof Geometry && indexed) {
+                    Envelope e = ((Geometry) g).getEnvelopeInternal();
+                    if (!e.isNull()) {
+                        sql = new SQL("INSERT INTO ").name(spatialIndexName(entry))
+                            .add(" VALUES (last_insert_rowid(), ?, ?, ?, ?)").toString();
+                        log(sql, e);
+
+                        PreparedStatement ps = open(cx.prepareStatement(sql));
+                        setEnvelope(ps, 1, e);
+                        ps.execute();
+                    }
+                }
+                return true;
             }
         });
         
     }
 
+    /**
+     * Determines if the feature entry has an R-tree spatial index.
+     * <p>
+     * The spatial index is a virtual table named <tt>rtree_&lt;table>_&lt;geometry column></tt>, 
+     * see {@link #createSpatialIndex(FeatureEntry)}. 
+     * </p>
+     */
+    public boolean hasSpatialIndex(final FeatureEntry entry) throws IOException {
+        if (entry.hasSpatialIndex() == null) {
+            if (entry.getGeometryColumn() == null) {
+                entry.setSpatialIndex(false);
+            }
+            else {
+                entry.setSpatialIndex(run(new DbOP<Boolean>() {
+                    @Override
+                    protected Boolean doRun(Connection cx) throws Exception {
+                        String sql = "SELECT name FROM sqlite_master WHERE type = 'table' AND name = ?";
+                        String rtree = spatialIndexName(entry);
+                        log(sql, rtree);
+
+                        PreparedStatement ps = open(cx.prepareStatement(sql));
+                        ps.setString(1, rtree);
+
+                        return open(ps.executeQuery()).next();
+                    }
+                }));
+            }
+        }
+        return entry.hasSpatialIndex();
+    }
+
+    /**
+     * Creates an R-tree spatial index for a feature entry, indexing any features that already 
+     * exist in the feature table.
+     * <p>
+     * Once created the index is used to process bounding box queries and is maintained as 
+     * features are added through this workspace.
+     * </p>
+     */
+    public void createSpatialIndex(final FeatureEntry entry) throws IOException {
+        if (entry.getGeometryColumn() == null) {
+            throw new IllegalArgumentException(
+                format("Entry %s has no geometry column", entry.getTableName()));
+        }
+
+        run(new DbOP<Object>() {
+            @Override
+            protected Object doRun(Connection cx) throws Exception {
+                String rtree = spatialIndexName(entry);
+
+                String sql = new SQL("CREATE VIRTUAL TABLE ").name(rtree)
+                    .add(" USING rtree(id, minx, maxx, miny, maxy)").toString();
+                open(cx.createStatement()).execute(log(sql));
+
+                //index existing features
+                boolean autoCommit = cx.getAutoCommit();
+                cx.setAutoCommit(false);
+                try {
+                    sql = new SQL("SELECT rowid, ").name(entry.getGeometryColumn())
+                        .add(" FROM ").name(entry.getTableName()).toString();
+                    ResultSet rs = open(open(cx.createStatement()).executeQuery(log(sql)));
+
+                    sql = new SQL("INSERT INTO ").name(rtree).add(" VALUES (?, ?, ?, ?, ?)")
+                        .toString();
+                    PreparedStatement ps = open(cx.prepareStatement(log(sql)));
+
+                    GeoPkgGeomReader geomReader = new GeoPkgGeomReader();
+                    while(rs.next()) {
+                        byte[] bytes = rs.getBytes(2);
+                        if (bytes == null) {
+                            continue;
+                        }
+
+                        Envelope e = geomReader.read(bytes).getEnvelopeInternal();
+                        if (e.isNull()) {
+                            continue;
+                        }
+
+                        ps.setLong(1, rs.getLong(1));
+                        setEnvelope(ps, 2, e);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    cx.commit();
+                }
+                catch(Exception e) {
+                    cx.rollback();
+                    throw e;
+                }
+                finally {
+                    cx.setAutoCommit(autoCommit);
+                }
+                return null;
+            }
+        });
+
+        entry.setSpatialIndex(true);
+    }
+
+    String spatialIndexName(FeatureEntry entry) {
+        return RTREE_PREFIX + entry.getTableName() + "_" + entry.getGeometryColumn();
+    }
+
+    void setEnvelope(PreparedStatement ps, int i, Envelope e) throws SQLException {
+        ps.setDouble(i, e.getMinX());
+        ps.setDouble(i+1, e.getMaxX());
+        ps.setDouble(i+2, e.getMinY());
+        ps.setDouble(i+3, e.getMaxY());
+    }
+
     public GeoPkgVector create(Schema schema) throws IOException {
         create(new FeatureEntry(), schema);
         return (GeoPkgVector) get(schema.getName());
@@ -416,9 +670,14 @@ public class GeoPkgWorkspace implements Workspace, FileData {
         } catch (Exception ex) {
             throw new IOException("Error updating " + GEOPACKAGE_CONTENTS, ex);
         }
+
+        if (e.getGeometryColumn() != null) {
+            createSpatialIndex(e);
+        }
         
         //update the entry
         entry.init(e);
+        entry.setSpatialIndex(e.hasSpatialIndex());
     }
 
     void createFeatureTable(final Schema schema, final FeatureEntry entry) throws Exception {
@@ -664,6 +923,169 @@ public class GeoPkgWorkspace implements Workspace, FileData {
         });
     }
 
+    /**
+     * Reads a single tile.
+     * <p>
+     * This method looks up the tile with a prepared statement, which the connection pool caches
+     * across calls, and reads the tile data directly rather than going through a cursor.
+     * </p>
+     * @return The tile, or <code>null</code> if no such tile exists.
+     */
+    public Tile read(final TileEntry entry, final int z, final int x, final int y) 
+        throws IOException {
+
+        return run(new DbOP<Tile>() {
+            @Override
+            protected Tile doRun(Connection cx) throws Exception {
+                String sql = tileQuery(entry);
+                if (LOG.isDebugEnabled()) {
+                    log(sql, z, x, y);
+                }
+
+                PreparedStatement ps = open(cx.prepareStatement(sql));
+                ps.setInt(1, z);
+                ps.setInt(2, x);
+                ps.setInt(3, y);
+
+                ResultSet rs = open(ps.executeQuery());
+                if (!rs.next()) {
+                    return null;
+                }
+
+                Tile t = new Tile();
+                t.setZ(z);
+                t.setX(x);
+                t.setY(y);
+                t.setData(rs.getBytes(1));
+                return t;
+            }
+        });
+    }
+
+    String tileQuery(TileEntry entry) {
+        String sql = entry.getTileQuery();
+        if (sql == null) {
+            sql = new SQL("SELECT tile_data FROM ").name(entry.getTableName())
+                .add(" WHERE zoom_level = ? AND tile_column = ? AND tile_row = ?").toString();
+            entry.setTileQuery(sql);
+        }
+        return sql;
+    }
+
+    /**
+     * Writes a single tile, replacing any existing tile with the same tile index.
+     */
+    public void put(TileEntry entry, Tile tile) throws IOException {
+        putAll(entry, Cursors.single(tile));
+    }
+
+    /**
+     * Writes a set of tiles, replacing any existing tiles with the same tile index.
+     * <p>
+     * Tiles are inserted with a single prepared statement, in batches of 
+     * {@value #TILE_BATCH_SIZE} tiles per transaction. The cursor is closed by this method.
+     * Should a tile fail to be written, for instance one lacking its z, x or y index, the batch
+     * it is part of is rolled back while previous batches remain written.
+     * </p>
+     * @return The number of tiles written.
+     */
+    public long putAll(final TileEntry entry, final Cursor<Tile> tiles) throws IOException {
+        try {
+            createTileIndex(entry);
+
+            return run(new DbOP<Long>() {
+                @Override
+                protected Long doRun(Connection cx) throws Exception {
+                    String sql = new SQL("INSERT OR REPLACE INTO ").name(entry.getTableName())
+                        .add(" (zoom_level, tile_column, tile_row, tile_data) VALUES (?,?,?,?)")
+                        .toString();
+                    PreparedStatement ps = open(cx.prepareStatement(log(sql)));
+
+                    long count = 0;
+                    int batch = 0;
+
+                    boolean autoCommit = cx.getAutoCommit();
+                    cx.setAutoCommit(false);
+                    try {
+                        while (tiles.hasNext()) {
+                            Tile t = tiles.next();
+                            if (t.getZ() == null || t.getX() == null || t.getY() == null) {
+                                throw new IllegalArgumentException(format(
+                                    "Tile index not set: z = %d, x = %d, y = %d", 
+                                    t.getZ(), t.getX(), t.getY()));
+                            }
+
+                            ps.setInt(1, t.getZ());
+                            ps.setInt(2, t.getX());
+                            ps.setInt(3, t.getY());
+                            ps.setBytes(4, t.getData());
+                            ps.addBatch();
+                            count++;
+
+                            if (++batch == TILE_BATCH_SIZE) {
+                                ps.executeBatch();
+                                cx.commit();
+                                batch = 0;
+                            }
+                        }
+
+                        if (batch > 0) {
+                            ps.executeBatch();
+                        }
+                        cx.commit();
+                    }
+                    catch(Exception e) {
+                        // don't leave the batch on the statement, it is cached for reuse
+                        ps.clearBatch();
+                        cx.rollback();
+                        throw e;
+                    }
+                    finally {
+                        cx.setAutoCommit(autoCommit);
+                    }
+
+                    LOG.debug("Wrote " + count + " tiles to " + entry.getTableName());
+                    return count;
+                }
+            });
+        }
+        finally {
+            tiles.close();
+        }
+    }
+
+    /**
+     * Creates the unique index on tile index columns if it does not already exist.
+     * <p>
+     * The index is required for writes to replace existing tiles and makes single tile lookups 
+     * efficient. Failure to create the index, for instance because the table already contains 
+     * duplicate tiles, is logged and ignored, the entry is only marked as indexed once the index
+     * has been created.
+     * </p>
+     */
+    void createTileIndex(final TileEntry entry) throws IOException {
+        if (entry.isTileIndexed()) {
+            return;
+        }
+
+        try {
+            run(new DbOP<Object>() {
+                @Override
+                protected Object doRun(Connection cx) throws Exception {
+                    String sql = new SQL("CREATE UNIQUE INDEX IF NOT EXISTS ")
+                        .name(entry.getTableName() + "_zxy").add(" ON ").name(entry.getTableName())
+                        .add(" (zoom_level, tile_column, tile_row)").toString();
+                    open(cx.createStatement()).execute(log(sql));
+                    return null;
+                }
+            });
+            entry.setTileIndexed(true);
+        }
+        catch(IOException e) {
+            LOG.warn("Unable to create tile index for " + entry.getTableName(), e);
+        }
+    }
+
     public Cursor<Tile> read(TileEntry entry) throws IOException  {
         return read(entry, null, null, null, null, null, null);
     }
@@ -676,7 +1098,7 @@ public class GeoPkgWorkspace implements Workspace, FileData {
             q.add("zoom_level >= " + lowZoom);
         }
         if (highZoom != null && highZoom > -1) {
-            q.add("zoom_level <= " + lowZoom);
+            q.add("zoom_level <= " + highZoom);
         }
         if (lowCol != null && lowCol > -1) {
             q.add("tile_column >= " + lowCol);
@@ -704,13 +1126,21 @@ public class GeoPkgWorkspace implements Workspace, FileData {
 
         try {
             Connection cx = db.getConnection();
-            ResultSet rs = cx.createStatement().executeQuery(log(sql.toString()));
-            return new TileCursor(rs, cx);
+            Statement st = null;
+            try {
+                st = cx.createStatement();
+                ResultSet rs = st.executeQuery(log(sql.toString()));
+                return new TileCursor(rs, cx);
+            }
+            catch(Exception e) {
+                closeQuietly(st);
+                closeQuietly(cx);
+                throw e;
+            }
         }
         catch(Exception e) {
             throw new IOException(e);
         }
-        
     }
 
     TileEntry createTileEntry(ResultSet rs) throws Exception {
@@ -838,7 +1268,7 @@ public class GeoPkgWorkspace implements Workspace, FileData {
     public void close() {
         try {
             if (db != null) {
-                //db.close();
+                db.close();
                 db = null;
             }
         } catch (Exception e) {
@@ -11,6 +11,12 @@ public class TileEntry extends Entry {
     TilePyramid tilePyramid;
     Boolean timesTwoZoom;
 
+    /** single tile lookup sql */
+    String tileQuery;
+
+    /** whether the tile index has been checked */
+    boolean tileIndexed;
+
     public TileEntry() {
         setDataType(DataType.Tile);
     }
@@ -31,6 +37,22 @@ public class TileEntry extends Entry {
         this.timesTwoZoom = timesTwoZoom;
     }
 
+    String getTileQuery() {
+        return tileQuery;
+    }
+
+    void setTileQuery(String tileQuery) {
+        this.tileQuery = tileQuery;
+    }
+
+    boolean isTileIndexed() {
+        return tileIndexed;
+    }
+
+    void setTileIndexed(boolean tileIndexed) {
+        this.tileIndexed = tileIndexed;
+    }
+
     void init(TileEntry e) {
         super.init(e);
         setTilePyramid(e.getTilePyramid());
@@ -7,6 +7,7 @@ import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.io.ByteArrayInStream;
 import com.vividsolutions.jts.io.ByteOrderDataInStream;
+import com.vividsolutions.jts.io.ByteOrderValues;
 import com.vividsolutions.jts.io.InStream;
 import com.vividsolutions.jts.io.InputStreamInStream;
 import com.vividsolutions.jts.io.ParseException;
@@ -14,6 +15,14 @@ import com.vividsolutions.jts.io.WKBReader;
 
 public class GeoPkgGeomReader {
 
+    /** offset of the envelope in the header, after magic, flags, and srid */
+    static final int ENVELOPE_OFFSET = 8;
+
+    WKBReader wkbReader = new WKBReader();
+
+    /** scratch buffer for reading header values */
+    byte[] buf = new byte[8];
+
     public Geometry read(byte[] bytes) throws IOException {
         return read(new ByteArrayInStream(bytes));
     }
@@ -28,7 +37,7 @@ public class GeoPkgGeomReader {
         
         // read the geometry
         try {
-            Geometry g = new WKBReader().read(input);
+            Geometry g = wkbReader.read(input);
             g.setSRID(h.srid);
             return g;
         } catch (ParseException e) {
@@ -36,6 +45,41 @@ public class GeoPkgGeomReader {
         }
     }
 
+    /**
+     * Reads the envelope from the header of an encoded geometry without parsing the geometry
+     * itself.
+     * <p>
+     * This is much cheaper than {@link #read(byte[])} and is suitable for quickly ruling out 
+     * geometries that don't intersect an area of interest.
+     * </p>
+     * @param bytes The encoded geometry.
+     * 
+     * @return The envelope, or <code>null</code> if the header contains no envelope. 
+     */
+    public Envelope envelope(byte[] bytes) {
+        if (bytes.length < ENVELOPE_OFFSET) {
+            return null;
+        }
+
+        Flags flags = new Flags(bytes[3]);
+        EnvelopeType et = flags.getEnvelopeIndicator();
+        if (et == null || et == EnvelopeType.NONE || bytes.length < ENVELOPE_OFFSET + 32) {
+            return null;
+        }
+
+        int order = flags.getEndianess();
+        double x1 = readDouble(bytes, ENVELOPE_OFFSET, order);
+        double x2 = readDouble(bytes, ENVELOPE_OFFSET + 8, order);
+        double y1 = readDouble(bytes, ENVELOPE_OFFSET + 16, order);
+        double y2 = readDouble(bytes, ENVELOPE_OFFSET + 24, order);
+        return new Envelope(x1, x2, y1, y2);
+    }
+
+    double readDouble(byte[] bytes, int offset, int order) {
+        System.arraycopy(bytes, offset, buf, 0, 8);
+        return ByteOrderValues.getDouble(buf, order);
+    }
+
     /*
      * OptimizedGeoPackageBinary {
      * byte[3] magic = 0x47504230; // 'GPB'
@@ -0,0 +1,191 @@
+package org.jeo.geopkg;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.SQLiteDataSource;
+
+public class ConnectionPoolTest extends GeoPkgTestSupport {
+
+    File dir;
+    ConnectionPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = newTmpDir();
+
+        SQLiteDataSource db = new SQLiteDataSource();
+        db.setUrl("jdbc:sqlite:" + new File(dir, "test.db").getPath());
+        pool = new ConnectionPool(db, 1, 2, Collections.singletonList("PRAGMA cache_size=100"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        Connection cx = pool.getConnection();
+        PreparedStatement ps = cx.prepareStatement("SELECT 1");
+        ResultSet rs = ps.executeQuery();
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt(1));
+        ps.close();
+        cx.close();
+        assertTrue(cx.isClosed());
+
+        ConnectionPool.PooledConnection pc = pool.idle.peek();
+        assertNotNull(pc);
+        assertTrue(pc.cache.containsKey("SELECT 1"));
+
+        cx = pool.getConnection();
+        assertTrue(pool.idle.isEmpty());
+        ps = cx.prepareStatement("SELECT 1");
+        assertFalse(pc.cache.containsKey("SELECT 1"));
+
+        rs = ps.executeQuery();
+        assertTrue(rs.next());
+
+        // statement left open is returned to the cache with the connection
+        cx.close();
+        assertTrue(pc.cache.containsKey("SELECT 1"));
+    }
+
+    @Test
+    public void testStatementCacheSize() throws Exception {
+        Connection cx = pool.getConnection();
+        for (int i = 0; i < 5; i++) {
+            cx.prepareStatement("SELECT " + i).close();
+        }
+        cx.close();
+
+        ConnectionPool.PooledConnection pc = pool.idle.peek();
+        assertEquals(2, pc.cache.size());
+        assertTrue(pc.cache.containsKey("SELECT 4"));
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        final Connection cx = pool.getConnection();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pool.getConnection().close();
+                    latch.countDown();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        t.start();
+
+        assertFalse(latch.await(200, TimeUnit.MILLISECONDS));
+        cx.close();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        SQLiteDataSource db = new SQLiteDataSource();
+        db.setUrl("jdbc:sqlite:" + new File(dir, "timeout.db").getPath());
+
+        ConnectionPool p = new ConnectionPool(db, 1, 2, null, 100);
+        try {
+            Connection cx = p.getConnection();
+            try {
+                p.getConnection();
+                fail("pool exhausted, expected timeout");
+            }
+            catch(SQLException e) {
+                assertTrue(e.getMessage().contains("Timed out"));
+            }
+
+            // usable again once the connection is returned
+            cx.close();
+            p.getConnection().close();
+        }
+        finally {
+            p.close();
+        }
+    }
+
+    @Test
+    public void testStatementCacheDefault() throws Exception {
+        GeoPkgWorkspace geopkg = GeoPackage.open(new File(dir, "default.geopackage"));
+        try {
+            assertEquals(GeoPackage.STATEMENT_CACHE_SIZE.getDefault().intValue(), 
+                geopkg.db.statementCacheSize);
+
+            PreparedStatement ps = prepare(geopkg);
+            geopkg.getDataSource().getConnection().close();
+            assertSame(ps, prepare(geopkg));
+        }
+        finally {
+            geopkg.close();
+        }
+
+        GeoPkgWorkspace unset = new GeoPkgWorkspace(
+            new GeoPkgOpts(new File(dir, "unset.geopackage")).statementCacheSize(null));
+        try {
+            assertEquals(GeoPackage.STATEMENT_CACHE_SIZE.getDefault().intValue(), 
+                unset.db.statementCacheSize);
+        }
+        finally {
+            unset.close();
+        }
+    }
+
+    /**
+     * Prepares and runs a statement with a pooled connection, returning the underlying statement.
+     */
+    PreparedStatement prepare(GeoPkgWorkspace geopkg) throws Exception {
+        Connection cx = geopkg.getDataSource().getConnection();
+        try {
+            PreparedStatement ps = cx.prepareStatement("SELECT 1");
+            assertTrue(ps.executeQuery().next());
+            ps.close();
+            return ((ConnectionPool.StatementLease) Proxy.getInvocationHandler(ps)).ps;
+        }
+        finally {
+            cx.close();
+        }
+    }
+
+    @Test
+    public void testWAL() throws Exception {
+        GeoPkgWorkspace geopkg = 
+            new GeoPkgWorkspace(new GeoPkgOpts(new File(dir, "wal.geopackage")).wal(true));
+        try {
+            Connection cx = geopkg.getDataSource().getConnection();
+            try {
+                ResultSet rs = cx.createStatement().executeQuery("PRAGMA journal_mode");
+                assertTrue(rs.next());
+                assertEquals("wal", rs.getString(1).toLowerCase());
+            }
+            finally {
+                cx.close();
+            }
+        }
+        finally {
+            geopkg.close();
+        }
+    }
+}
@@ -6,16 +6,22 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.io.FileUtils;
+import org.jeo.data.BatchCursor;
 import org.jeo.data.Cursor;
 import org.jeo.data.Query;
 import org.jeo.feature.Feature;
+import org.jeo.feature.FeatureBatch;
 import org.jeo.feature.Features;
 import org.jeo.feature.ListFeature;
 import org.jeo.feature.Schema;
@@ -71,6 +77,24 @@ public class GeoPkgFeatureTest extends GeoPkgTestSupport {
         assertNotNull(schema.field("STATE_NAME"));
     }
 
+    @Test
+    public void testCursorErrorReleasesConnection() throws Exception {
+        FeatureEntry entry = geopkg.feature("states");
+        geopkg.schema(entry);
+        entry.setTableName("nosuch");
+
+        int max = GeoPackage.MAX_CONNECTIONS.getDefault();
+        for (int i = 0; i < max + 1; i++) {
+            try {
+                geopkg.cursor(entry, new Query());
+                fail("expected error querying missing table");
+            }
+            catch(IOException e) {
+            }
+        }
+        assertEquals(max, geopkg.db.permits.availablePermits());
+    }
+
     @Test
     public void testCount() throws Exception {
         FeatureEntry entry = geopkg.feature("states");
@@ -130,6 +154,85 @@ public class GeoPkgFeatureTest extends GeoPkgTestSupport {
         c.close();
     }
 
+    @Test
+    public void testReadWithBounds() throws Exception {
+        FeatureEntry entry = geopkg.feature("states");
+        Envelope bbox = new Envelope(-106.6, -93.5, 25.8, 36.5);
+
+        int expected = 0;
+        Cursor<Feature> c = geopkg.cursor(entry, new Query());
+        for (Feature f : c) {
+            if (f.geometry().getEnvelopeInternal().intersects(bbox)) {
+                expected++;
+            }
+        }
+        c.close();
+        assertTrue(expected > 0);
+
+        int n = 0;
+        c = geopkg.cursor(entry, new Query().bounds(bbox));
+        for (Feature f : c) {
+            assertTrue(f.geometry().getEnvelopeInternal().intersects(bbox));
+            n++;
+        }
+        c.close();
+        assertEquals(expected, n);
+
+        c = geopkg.cursor(entry, new Query().bounds(bbox).fields("STATE_NAME").limit(1).offset(1));
+        assertTrue(c.hasNext());
+        Feature f = c.next();
+        assertNull(f.geometry());
+        assertNotNull(f.get("STATE_NAME"));
+        assertFalse(c.hasNext());
+        c.close();
+    }
+
+    @Test
+    public void testSpatialIndex() throws Exception {
+        FeatureEntry entry = geopkg.feature("states");
+        assertFalse(geopkg.hasSpatialIndex(entry));
+
+        Envelope bbox = new Envelope(-106.6, -93.5, 25.8, 36.5);
+        Query q = new Query().bounds(bbox);
+        long count = geopkg.count(entry, q);
+        assertTrue(count > 0 && count < 49);
+
+        geopkg.createSpatialIndex(entry);
+        assertTrue(geopkg.hasSpatialIndex(entry));
+
+        entry = geopkg.feature("states");
+        assertTrue(geopkg.hasSpatialIndex(entry));
+        assertEquals(count, geopkg.count(entry, q));
+
+        int n = 0;
+        Cursor<Feature> c = geopkg.cursor(entry, new Query().bounds(bbox));
+        for (Feature f : c) {
+            assertTrue(f.geometry().getEnvelopeInternal().intersects(bbox));
+            n++;
+        }
+        c.close();
+        assertEquals(count, n);
+
+        //filter and paging along with the index
+        c = geopkg.cursor(entry, new Query().bounds(bbox).filter("STATE_NAME = 'Texas'"));
+        assertTrue(c.hasNext());
+        assertEquals("Texas", c.next().get("STATE_NAME"));
+        assertFalse(c.hasNext());
+        c.close();
+
+        assertEquals(1, geopkg.count(entry, new Query().bounds(bbox).limit(1)));
+        assertEquals(count - 1, geopkg.count(entry, new Query().bounds(bbox).offset(1)));
+
+        //new features are indexed
+        Schema schema = geopkg.schema(entry);
+        Feature f = new ListFeature(null, null, schema);
+        f.put(schema.geometry().getName(), Geom.point(-100, 30).buffer(0.1));
+        f.put("STATE_NAME", "JEOLAND");
+        geopkg.add(entry, f);
+
+        assertEquals(count + 1, geopkg.count(entry, q));
+    }
+
     @Test
     public void testCreate() throws Exception {
         Schema schema = new SchemaBuilder("widgets").field("geometry", Point.class)
@@ -159,6 +262,9 @@ public class GeoPkgFeatureTest extends GeoPkgTestSupport {
         //test re-loading the entry
         entry = geopkg.feature("widgets");
         assertNotNull(entry);
+        assertTrue(geopkg.hasSpatialIndex(entry));
+        assertEquals(1, geopkg.count(entry, new Query().bounds(new Envelope(0, 2, 1, 3))));
+        assertEquals(0, geopkg.count(entry, new Query().bounds(new Envelope(5, 6, 5, 6))));
 
         assertEquals(Geom.Type.POINT, entry.getGeometryType());
 
@@ -174,4 +280,73 @@ public class GeoPkgFeatureTest extends GeoPkgTestSupport {
             }
         });
     }
+
+    @Test
+    public void testReadBatch() throws Exception {
+        Schema schema = new SchemaBuilder("widgets").field("geometry", Point.class)
+            .field("name", String.class).field("cost", Double.class).field("qty", Integer.class)
+            .schema();
+
+        FeatureEntry entry = new FeatureEntry();
+        entry.setSrid(4326);
+        entry.setBounds(new Envelope(-180, 180, -90, 90));
+        geopkg.create(entry, schema);
+
+        geopkg.add(entry, Features.create(null, schema, Geom.point(1,2), "anvil", 10.99, 1));
+        geopkg.add(entry, Features.create(null, schema, Geom.point(3,4), "rope", 2.5, 10));
+        geopkg.add(entry, Features.create(null, schema, Geom.point(5,6), "dynamite", 5.0, 3));
+
+        // values not matching the declared column types
+        geopkg.run(new DbOP<Object>() {
+            @Override
+            protected Object doRun(Connection cx) throws Exception {
+                open(cx.createStatement()).executeUpdate(
+                    "UPDATE widgets SET qty = 2.5, cost = 'n/a' WHERE name = 'rope'");
+                open(cx.createStatement()).executeUpdate(
+                    "UPDATE widgets SET qty = 5000000000 WHERE name = 'dynamite'");
+                return null;
+            }
+        });
+
+        List<Feature> features = new ArrayList<Feature>();
+        Cursor<Feature> c = geopkg.cursor(entry, new Query());
+        for (Feature f : c) {
+            features.add(f);
+        }
+        c.close();
+        assertEquals(3, features.size());
+
+        BatchCursor bc = (BatchCursor) geopkg.cursor(entry, new Query());
+        FeatureBatch batch = bc.newBatch();
+        try {
+            assertTrue(bc.next(batch));
+            assertEquals(3, batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                Feature f = features.get(i);
+                for (String fld : Arrays.asList("name", "cost", "qty")) {
+                    assertEquals(f.get(fld), batch.view(i).get(fld));
+                }
+                assertTrue(f.geometry().equalsExact(batch.geometry(i)));
+            }
+
+            // values matching the field type stored unboxed
+            assertEquals(10.99, batch.getDouble(0, batch.schema().indexOf("cost")), 0.0);
+            assertEquals(1, batch.getLong(0, batch.schema().indexOf("qty")));
+
+            assertFalse(bc.next(batch));
+        }
+        finally {
+            bc.close();
+        }
+
+        bc = (BatchCursor) geopkg.cursor(entry, new Query().bounds(new Envelope(2, 4, 3, 5)));
+        try {
+            assertTrue(bc.next(batch));
+            assertEquals(1, batch.size());
+            assertEquals("rope", batch.view(0).get("name"));
+        }
+        finally {
+            bc.close();
+        }
+    }
 }
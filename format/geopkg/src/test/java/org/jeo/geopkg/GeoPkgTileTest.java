@@ -1,17 +1,24 @@
 package org.jeo.geopkg;
 
 import static org.jeo.Tests.unzip;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.io.FileUtils;
 import org.jeo.data.Cursor;
+import org.jeo.data.Cursors;
 import org.jeo.data.Tile;
 import org.junit.After;
 import org.junit.Before;
@@ -56,4 +63,124 @@ public class GeoPkgTileTest extends GeoPkgTestSupport {
         assertNull(r.next());
     }
 
+    @Test
+    public void testReadErrorReleasesConnection() throws Exception {
+        TileEntry entry = geopkg.tile("tiles");
+        entry.setTableName("nosuch");
+
+        int max = GeoPackage.MAX_CONNECTIONS.getDefault();
+        for (int i = 0; i < max + 1; i++) {
+            try {
+                geopkg.read(entry);
+                fail("expected error reading missing table");
+            }
+            catch(IOException e) {
+            }
+        }
+        assertEquals(max, geopkg.db.permits.availablePermits());
+    }
+
+    @Test
+    public void testReadTile() throws Exception {
+        TileEntry entry = geopkg.tile("tiles");
+
+        Cursor<Tile> r = geopkg.read(entry);
+        while (r.hasNext()) {
+            Tile t = r.next();
+
+            Tile u = geopkg.read(entry, t.getZ(), t.getX(), t.getY());
+            assertNotNull(u);
+            assertEquals(t.getZ(), u.getZ());
+            assertEquals(t.getX(), u.getX());
+            assertEquals(t.getY(), u.getY());
+            assertArrayEquals(t.getData(), u.getData());
+        }
+        r.close();
+
+        assertNull(geopkg.read(entry, 100, 0, 0));
+    }
+
+    @Test
+    public void testReadTileReusesStatement() throws Exception {
+        TileEntry entry = geopkg.tile("tiles");
+        String sql = geopkg.tileQuery(entry);
+
+        assertNotNull(geopkg.read(entry, 0, 0, 0));
+        ConnectionPool.PooledConnection pc = geopkg.db.idle.peek();
+        PreparedStatement ps = pc.cache.get(sql);
+        assertNotNull(ps);
+
+        // the statement is prepared once and reused by subsequent reads
+        for (int i = 0; i < 3; i++) {
+            geopkg.read(entry, i, 0, 0);
+            assertSame(pc, geopkg.db.idle.peek());
+            assertSame(ps, pc.cache.get(sql));
+        }
+    }
+
+    @Test
+    public void testPut() throws Exception {
+        TileEntry entry = geopkg.tile("tiles");
+        GeoPkgTileSet tiles = new GeoPkgTileSet(entry, geopkg);
+
+        Tile t = tiles.read(0, 0, 0);
+        assertNotNull(t);
+
+        tiles.put(new Tile(0, 0, 0, new byte[]{1,2,3}, null));
+        assertArrayEquals(new byte[]{1,2,3}, tiles.read(0, 0, 0).getData());
+        assertEquals(10, Cursors.size(geopkg.read(entry)));
+    }
+
+    @Test
+    public void testPutAllInvalid() throws Exception {
+        TileEntry entry = geopkg.tile("tiles");
+        GeoPkgTileSet tiles = new GeoPkgTileSet(entry, geopkg);
+
+        List<Tile> list = new ArrayList<Tile>();
+        list.add(new Tile(11, 1, 1, new byte[]{1}, null));
+        list.add(new Tile(11, null, 2, new byte[]{2}, null));
+        try {
+            tiles.putAll(Cursors.create(list));
+            fail("expected failure writing tile with no column");
+        }
+        catch(Exception e) {
+        }
+        assertEquals(0, Cursors.size(geopkg.read(entry, 11, 11, -1, -1, -1, -1)));
+
+        // nothing left over from the failed batch
+        tiles.put(new Tile(11, 3, 3, new byte[]{3}, null));
+        assertEquals(1, Cursors.size(geopkg.read(entry, 11, 11, -1, -1, -1, -1)));
+    }
+
+    @Test
+    public void testCreateTileIndex() throws Exception {
+        TileEntry entry = geopkg.tile("tiles");
+        geopkg.createTileIndex(entry);
+        assertTrue(entry.isTileIndexed());
+
+        // failure to create the index is not recorded as an index
+        entry = geopkg.tile("tiles");
+        entry.setTableName("nosuch");
+        geopkg.createTileIndex(entry);
+        assertFalse(entry.isTileIndexed());
+    }
+
+    @Test
+    public void testPutAll() throws Exception {
+        TileEntry entry = geopkg.tile("tiles");
+        GeoPkgTileSet tiles = new GeoPkgTileSet(entry, geopkg);
+
+        int n = GeoPkgWorkspace.TILE_BATCH_SIZE * 2 + 1;
+        List<Tile> list = new ArrayList<Tile>();
+        for (int i = 0; i < n; i++) {
+            list.add(new Tile(10, i, i, new byte[]{(byte)i}, null));
+        }
+
+        assertEquals(n, tiles.putAll(Cursors.create(list)));
+        assertEquals(n, Cursors.size(geopkg.read(entry, 10, 10, -1, -1, -1, -1)));
+
+        Tile t = tiles.read(10, 42, 42);
+        assertNotNull(t);
+        assertArrayEquals(new byte[]{42}, t.getData());
+    }
 }
@@ -122,19 +122,21 @@ public class MongoDataset implements VectorData {
 
         QueryPlan qp = new QueryPlan(q);
 
-        //TODO: sorting
         DBCursor dbCursor = !Envelopes.isNull(q.getBounds()) ? 
             dbcol.find(encodeBboxQuery(q.getBounds())) : dbcol.find();
         qp.bounded();
 
+        // sorting is done in memory, in which case offset/limit must be applied after the sort
+        boolean paged = q.getSort() == null || q.getSort().isEmpty();
+
         Integer offset = q.getOffset();
-        if (offset != null) {
+        if (offset != null && paged) {
             dbCursor.skip(offset);
             qp.offsetted();
         }
 
         Integer limit = q.getLimit();
-        if (limit != null) {
+        if (limit != null && paged) {
             dbCursor.limit(limit);
             qp.limited();
         }
@@ -20,6 +20,7 @@ import org.jeo.data.Cursors;
 import org.jeo.data.Driver;
 import org.jeo.data.Query;
 import org.jeo.data.QueryPlan;
+import org.jeo.data.Sort;
 import org.jeo.data.VectorData;
 import org.jeo.feature.Feature;
 import org.jeo.feature.Field;
@@ -158,44 +159,25 @@ public class PostGISDataset implements VectorData {
     
             Schema schema = getSchema();
     
+            List<Pair<Object,Integer>> args = new ArrayList<Pair<Object,Integer>>();
+
+            SQL where = new SQL();
+            encodeQuery(where, q, qp, args);
+
+            // only select the columns needed to process the query, along with the primary key
+            Schema fields = qp.fields(schema);
+            List<PrimaryKeyColumn> pkcols = getTable().getPrimaryKey().getColumns();
+
             SQL sql = new SQL("SELECT ");
-            
-            if (q.getFields().isEmpty()) {
-                //grab all from the schema
-                for (Field f : getSchema()) {
-                    encodeFieldForSelect(f, sql);
-                    sql.add(", ");
-                }
-                sql.trim(2);
-            }
-            else {
-                // use specified, but ensure geometry included
-                // TODO: be smarter about this, only include geometry if we have a filter that requires
-                // it, etc...
-                boolean geom = false;
-                for (String prop : q.getFields()) {
-                    Field f = getSchema().field(prop);
-                    if (f == null) {
-                        throw new IllegalArgumentException("No such field: " + prop);
-                    }
-    
+            for (Field f : schema) {
+                if (fields.field(f.getName()) != null || isPrimaryKey(f, pkcols)) {
                     encodeFieldForSelect(f, sql);
                     sql.add(", ");
-    
-                    geom = geom || f.isGeometry();
-                }
-                sql.trim(2);
-    
-                
-                if (!geom && schema.geometry() != null) {
-                    encodeFieldForSelect(schema.geometry(), sql.add(", "));
                 }
             }
+            sql.trim(2);
     
-            sql.add(" FROM ").name(schema.getName());
-
-            List<Pair<Object,Integer>> args = new ArrayList<Pair<Object,Integer>>();
-            encodeQuery(sql, q, qp, args);
+            sql.add(" FROM ").name(schema.getName()).add(where);
 
             pg.logQuery(sql, args);
 
@@ -216,6 +198,15 @@ public class PostGISDataset implements VectorData {
     public void close() {
     }
 
+    boolean isPrimaryKey(Field f, List<PrimaryKeyColumn> pkcols) {
+        for (PrimaryKeyColumn pkcol : pkcols) {
+            if (pkcol.getName().equals(f.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     void encodeFieldForSelect(Field f, SQL sql) {
         if (f.isGeometry()) {
             //TODO: force 2d
@@ -252,20 +243,39 @@ public class PostGISDataset implements VectorData {
         if (!Filter.isTrueOrNull(filter)) {
             FilterSQLEncoder sqle = new PostGISFilterEncoder(this);
             try {
-                String where = sqle.encode(filter, null);
-                if (args.isEmpty()) {
-                    sql.add(" WHERE ");
+                // encode what we can, leaving the rest to be evaluated in memory
+                Pair<Filter,Filter> split = sqle.split(filter);
+                if (split.first() != Filter.TRUE) {
+                    String where = sqle.encode(split.first(), null);
+                    sql.add(qp.isBounded() ? " AND (" : " WHERE (").add(where).add(")");
+                    args.addAll(sqle.getArgs());
+
+                    qp.filtered(split.second());
+                }
+                if (!qp.isFiltered()) {
+                    LOG.debug("Unable to natively encode filter: " + split.second());
                 }
-                sql.add(where);
-                args.addAll(sqle.getArgs());
-
-                qp.filtered();
             }
             catch(Exception e) {
                 LOG.debug("Unable to natively encode filter", e);
             }
         }
 
+        List<Sort> sort = q.getSort();
+        if (sort != null && !sort.isEmpty()) {
+            sql.add(" ORDER BY ");
+            for (Sort srt : sort) {
+                sql.name(srt.getProperty()).add(srt.isAscending() ? " ASC" : " DESC").add(", ");
+            }
+            sql.trim(2);
+            qp.sorted();
+        }
+
+        if (!Filter.isTrueOrNull(filter) && !qp.isFiltered()) {
+            // paging must be applied after the residual filter
+            return;
+        }
+
         Integer offset = q.getOffset();
         if (offset != null) {
             qp.offsetted();
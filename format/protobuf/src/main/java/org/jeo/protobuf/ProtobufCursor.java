@@ -2,18 +2,30 @@ package org.jeo.protobuf;
 
 import java.io.IOException;
 
-import org.jeo.data.Cursor;
+import org.jeo.data.BatchCursor;
 import org.jeo.feature.Feature;
+import org.jeo.feature.FeatureBatch;
 import org.jeo.feature.Schema;
 
-public class ProtobufCursor extends Cursor<Feature> {
+public class ProtobufCursor extends BatchCursor {
 
     ProtobufReader pbr;
     Schema schema;
+    boolean[] fields;
     Feature next;
 
     public ProtobufCursor(ProtobufDataset data) throws IOException {
+        this(data, null);
+    }
+
+    /**
+     * Creates the cursor specifying a mask of the fields to decode, <code>null</code> meaning all.
+     * 
+     * @see ProtobufReader#feature(Schema, boolean[])
+     */
+    ProtobufCursor(ProtobufDataset data, boolean[] fields) throws IOException {
         pbr = data.reader();
+        this.fields = fields;
 
         // skip over the schema
         schema = pbr.schema();
@@ -22,7 +34,7 @@ public class ProtobufCursor extends Cursor<Feature> {
     @Override
     public boolean hasNext() throws IOException {
         if (next == null) {
-            next = pbr.feature(schema);
+            next = pbr.feature(schema, fields);
         }
         return next != null;
     }
@@ -37,6 +49,27 @@ public class ProtobufCursor extends Cursor<Feature> {
         }
     }
 
+    @Override
+    public Schema schema() throws IOException {
+        return schema;
+    }
+
+    /**
+     * Decodes features directly into the batch, see 
+     * {@link ProtobufReader#feature(FeatureBatch, boolean[])}.
+     */
+    @Override
+    public boolean next(FeatureBatch batch) throws IOException {
+        batch.clear();
+        if (next != null) {
+            batch.add(next);
+            next = null;
+        }
+        while (!batch.isFull() && pbr.feature(batch, fields)) {
+        }
+        return !batch.isEmpty();
+    }
+
     @Override
     public void close() throws IOException {
         if (pbr != null) {
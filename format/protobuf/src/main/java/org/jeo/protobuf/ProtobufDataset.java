@@ -18,6 +18,7 @@ import org.jeo.data.QueryPlan;
 import org.jeo.data.VectorData;
 import org.jeo.data.Cursor.Mode;
 import org.jeo.feature.Feature;
+import org.jeo.feature.Field;
 import org.jeo.feature.Schema;
 import org.jeo.util.Key;
 import org.jeo.util.Util;
@@ -112,7 +113,23 @@ public class ProtobufDataset implements VectorData, FileData {
             return new ProtobufAppendCursor(this);
         }
 
-        return new QueryPlan(q).apply(new ProtobufCursor(this));
+        QueryPlan qp = new QueryPlan(q);
+        return qp.apply(new ProtobufCursor(this, fields(qp.fields(schema))));
+    }
+
+    /**
+     * Builds the mask of fields to decode, <code>null</code> meaning all fields.
+     */
+    boolean[] fields(Schema fields) {
+        if (fields == schema) {
+            return null;
+        }
+
+        boolean[] mask = new boolean[schema.size()];
+        for (Field f : fields) {
+            mask[schema.indexOf(f.getName())] = true;
+        }
+        return mask;
     }
 
     @Override
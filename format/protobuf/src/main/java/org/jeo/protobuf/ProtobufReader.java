@@ -1,10 +1,12 @@
 package org.jeo.protobuf;
 
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.jeo.feature.FeatureBatch;
 import org.jeo.feature.ListFeature;
 import org.jeo.feature.SchemaBuilder;
 import org.jeo.geom.Geom;
@@ -23,6 +25,9 @@ import org.jeo.protobuf.Geom.Point;
 import org.jeo.protobuf.Geom.Polygon;
 import org.osgeo.proj4j.CoordinateReferenceSystem;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.WireFormat;
 import com.vividsolutions.jts.geom.CoordinateSequence;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LinearRing;
@@ -178,27 +183,164 @@ public class ProtobufReader {
         vals.add(b.hasGeom() ? decode(b.getGeom()) : null);
 
         for (int i = 0; i < b.getValueCount(); i++) {
-            Value val = b.getValue(i);
-            if (val.hasIntVal()) {
-                vals.add(val.getIntVal());
-            }
-            else if (val.hasDoubleVal()) {
-                vals.add(val.getDoubleVal());
-            }
-            else if (val.hasStrVal()) {
-                vals.add(val.getStrVal());
-            }
-            else if (val.hasBytesVal()) {
-                vals.add(val.getBytesVal().toByteArray());
-            }
-            else {
-                vals.add(null);
+            vals.add(value(b.getValue(i)));
+        }
+
+        return new ListFeature(null, vals, schema);
+    }
+
+    /**
+     * Reads the next feature, only decoding the specified fields.
+     * <p>
+     * <tt>fields</tt> is a mask aligned with the schema, the first element corresponding to the
+     * geometry. Values that are not required are skipped over in the encoded message rather than
+     * decoded, and are <code>null</code> in the resulting feature. A <code>null</code> mask means
+     * all fields.
+     * </p>
+     */
+    public org.jeo.feature.Feature feature(org.jeo.feature.Schema schema, boolean[] fields) 
+        throws IOException {
+        if (fields == null) {
+            return feature(schema);
+        }
+        if (eoi()) {
+            return null;
+        }
+
+        int size = CodedInputStream.readRawVarint32(in.read(), in);
+        byte[] buf = new byte[size];
+        new DataInputStream(in).readFully(buf);
+
+        CodedInputStream cin = CodedInputStream.newInstance(buf);
+        ExtensionRegistryLite reg = ExtensionRegistryLite.getEmptyRegistry();
+
+        List<Object> vals = new ArrayList<Object>(schema.size());
+        vals.add(null);
+
+        int tag;
+        while ((tag = cin.readTag()) != 0) {
+            switch(WireFormat.getTagFieldNumber(tag)) {
+            case Feature.GEOM_FIELD_NUMBER:
+                if (fields[0]) {
+                    Geometry.Builder gb = Geometry.newBuilder();
+                    cin.readMessage(gb, reg);
+                    vals.set(0, decode(gb.build()));
+                }
+                else {
+                    cin.skipField(tag);
+                }
+                break;
+
+            case Feature.VALUE_FIELD_NUMBER:
+                int i = vals.size();
+                if (i < fields.length && fields[i]) {
+                    Value.Builder vb = Value.newBuilder();
+                    cin.readMessage(vb, reg);
+                    vals.add(value(vb.build()));
+                }
+                else {
+                    cin.skipField(tag);
+                    vals.add(null);
+                }
+                break;
+
+            default:
+                cin.skipField(tag);
             }
         }
 
         return new ListFeature(null, vals, schema);
     }
 
+    /**
+     * Reads the next feature into a new row of a batch, only decoding the specified fields.
+     * <p>
+     * <tt>fields</tt> is a mask as described by {@link #feature(org.jeo.feature.Schema, boolean[])}.
+     * Numeric values are stored in the batch without being boxed. Values beyond the fields of 
+     * the batch schema are skipped.
+     * </p>
+     * @return <tt>false</tt> if no more features are available.
+     */
+    public boolean feature(FeatureBatch batch, boolean[] fields) throws IOException {
+        if (eoi()) {
+            return false;
+        }
+
+        int size = CodedInputStream.readRawVarint32(in.read(), in);
+        byte[] buf = new byte[size];
+        new DataInputStream(in).readFully(buf);
+
+        CodedInputStream cin = CodedInputStream.newInstance(buf);
+        ExtensionRegistryLite reg = ExtensionRegistryLite.getEmptyRegistry();
+
+        int row = batch.addRow(null);
+        int cols = batch.schema().size();
+
+        // column of the next value, the geometry being the first
+        int col = 1;
+
+        int tag;
+        while ((tag = cin.readTag()) != 0) {
+            switch(WireFormat.getTagFieldNumber(tag)) {
+            case Feature.GEOM_FIELD_NUMBER:
+                if (fields == null || fields[0]) {
+                    Geometry.Builder gb = Geometry.newBuilder();
+                    cin.readMessage(gb, reg);
+                    batch.set(row, 0, decode(gb.build()));
+                }
+                else {
+                    cin.skipField(tag);
+                }
+                break;
+
+            case Feature.VALUE_FIELD_NUMBER:
+                int i = col++;
+                if (i < cols && (fields == null || (i < fields.length && fields[i]))) {
+                    Value.Builder vb = Value.newBuilder();
+                    cin.readMessage(vb, reg);
+                    value(vb.build(), batch, row, i);
+                }
+                else {
+                    cin.skipField(tag);
+                }
+                break;
+
+            default:
+                cin.skipField(tag);
+            }
+        }
+
+        return true;
+    }
+
+    static void value(Value val, FeatureBatch batch, int row, int col) {
+        if (val.hasIntVal()) {
+            batch.setLong(row, col, val.getIntVal());
+        }
+        else if (val.hasDoubleVal()) {
+            batch.setDouble(row, col, val.getDoubleVal());
+        }
+        else {
+            batch.set(row, col, value(val));
+        }
+    }
+
+    static Object value(Value val) {
+        if (val.hasIntVal()) {
+            return val.getIntVal();
+        }
+        if (val.hasDoubleVal()) {
+            return val.getDoubleVal();
+        }
+        if (val.hasStrVal()) {
+            return val.getStrVal();
+        }
+        if (val.hasBytesVal()) {
+            return val.getBytesVal().toByteArray();
+        }
+        return null;
+    }
+
     public org.jeo.feature.Schema schema() throws IOException {
         if (eoi()) {
             return null;
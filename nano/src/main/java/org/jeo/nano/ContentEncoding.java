@@ -0,0 +1,174 @@
+package org.jeo.nano;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+import org.jeo.nano.NanoHTTPD.Response;
+
+/**
+ * Negotiates compression of response bodies with the <tt>Accept-Encoding</tt> request header.
+ * <p>
+ * Bodies are compressed as they are read so streamed responses stay streamed, the length of a
+ * compressed response being unknown up front.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class ContentEncoding {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * Negotiates the encoding for a request, returning <code>null</code> when the client does
+     * not accept a supported compressed encoding.
+     * <p>
+     * Gzip is preferred over deflate. Encodings with a quality value of zero are not accepted.
+     * </p>
+     */
+    public static String negotiate(Request request) {
+        Properties header = request.getHeader();
+        String accept = header != null ? header.getProperty("accept-encoding") : null;
+        if (accept == null) {
+            return null;
+        }
+
+        boolean deflate = false;
+        for (String enc : accept.split(",")) {
+            String[] parts = enc.trim().split(";");
+            String name = parts[0].trim().toLowerCase();
+            if (parts.length > 1 && isZeroQuality(parts[1])) {
+                continue;
+            }
+
+            if (GZIP.equals(name) || "x-gzip".equals(name) || "*".equals(name)) {
+                return GZIP;
+            }
+            if (DEFLATE.equals(name)) {
+                deflate = true;
+            }
+        }
+        return deflate ? DEFLATE : null;
+    }
+
+    static boolean isZeroQuality(String param) {
+        String[] kv = param.trim().split("=");
+        if (kv.length == 2 && "q".equalsIgnoreCase(kv[0].trim())) {
+            try {
+                return Double.parseDouble(kv[1].trim()) == 0;
+            }
+            catch(NumberFormatException e) {
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether content of the specified mime type is worth compressing, i.e. it is text based or
+     * otherwise not already compressed.
+     */
+    public static boolean isCompressible(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+
+        String mime = mimeType.toLowerCase();
+        return mime.startsWith("text/") || mime.contains("json") || mime.contains("xml")
+            || mime.contains("javascript") || mime.contains("protobuf");
+    }
+
+    /**
+     * Compresses the body of a response if the client accepts a compressed encoding.
+     *
+     * @return The response, with its body compressed and encoding headers set.
+     */
+    public static Response encode(Request request, Response response) {
+        if (response.data == null) {
+            return response;
+        }
+
+        // the representation depends on the request headers, regardless of the outcome
+        response.addHeader("Vary", "Accept-Encoding");
+
+        String encoding = negotiate(request);
+        if (encoding == null) {
+            return response;
+        }
+
+        response.data = GZIP.equals(encoding) ? gzip(response.data) : deflate(response.data);
+        response.header.remove("Content-Length");
+        response.addHeader("Content-Encoding", encoding);
+        return response;
+    }
+
+    /**
+     * Wraps a stream in one compressing it in zlib format, the format of the HTTP deflate
+     * encoding.
+     */
+    public static InputStream deflate(InputStream in) {
+        return new DeflaterInputStream(in);
+    }
+
+    /**
+     * Wraps a stream in one compressing it in gzip format.
+     */
+    public static InputStream gzip(InputStream in) {
+        final CRC32 crc = new CRC32();
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        final InputStream body = new DeflaterInputStream(new CheckedInputStream(in, crc), deflater);
+
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            int i = 0;
+
+            @Override
+            public boolean hasMoreElements() {
+                return i < 3;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                switch(i++) {
+                case 0:
+                    return new ByteArrayInputStream(GZIP_HEADER);
+                case 1:
+                    return body;
+                case 2:
+                    // trailer, only known once the body has been consumed
+                    return new ByteArrayInputStream(trailer(crc.getValue(), deflater.getBytesRead()));
+                default:
+                    throw new NoSuchElementException();
+                }
+            }
+        }) {
+            @Override
+            public void close() throws IOException {
+                // a deflater supplied to the deflater stream is not ended by it
+                try {
+                    super.close();
+                }
+                finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /** gzip member header, deflate method with no flags, time or extra fields */
+    static final byte[] GZIP_HEADER = {
+        (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    static byte[] trailer(long crc, long size) {
+        return new byte[] {
+            (byte) crc, (byte) (crc >> 8), (byte) (crc >> 16), (byte) (crc >> 24),
+            (byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)
+        };
+    }
+}
@@ -30,7 +30,6 @@ import org.jeo.feature.Features;
 import org.jeo.feature.Field;
 import org.jeo.feature.Schema;
 import org.jeo.geojson.GeoJSONReader;
-import org.jeo.geojson.GeoJSONWriter;
 import org.jeo.geom.Geom;
 import org.jeo.nano.NanoHTTPD.Response;
 import org.json.simple.JSONObject;
@@ -93,9 +92,21 @@ public class FeatureHandler extends Handler {
         if (p.containsKey("limit")) {
             q.limit(Integer.parseInt(p.getProperty("limit")));
         }
-        
-        Cursor<Feature> c = layer.cursor(q);
-        return new Response(HTTP_OK, MIME_JSON, GeoJSONWriter.toString(c));
+
+        //simplification, either an explicit tolerance or derived from the width in pixels of 
+        // the map requesting the features, which makes for roughly one pixel of tolerance
+        if (p.containsKey("simplify")) {
+            q.simplify(parseSimplify(p.getProperty("simplify")));
+        }
+        else if (p.containsKey("width")) {
+            q.simplify(bbox.getWidth() / parseWidth(p.getProperty("width")));
+        }
+
+        // stream the features, the cursor is closed once the response has been written
+        Cursor<Feature> c = 
+            Metrics.time(layer.cursor(q), Metrics.get(request), Metrics.dataset(request));
+        return ContentEncoding.encode(request, 
+            new Response(HTTP_OK, MIME_JSON, new GeoJSONStream(c)));
     }
 
     Response handlePost(Request request, NanoJeoServer server) throws IOException {
@@ -153,7 +164,7 @@ public class FeatureHandler extends Handler {
     VectorData findVectorLayer(Request request, NanoJeoServer server) throws IOException {
         Matcher m = (Matcher) request.getContext().get(Matcher.class);
 
-        Dataset l = findDataset(m.group(1), server.getRegistry());
+        Dataset l = findDataset(m.group(1), server.getRegistry(), request);
         if (l == null || !(l instanceof VectorData)) {
             //no such layer
             throw new HttpException(HTTP_NOTFOUND, "No such feature layer: " + m.group(0));
@@ -164,8 +175,42 @@ public class FeatureHandler extends Handler {
 
     Envelope parseBBOX(String bbox) {
         String[] split = bbox.split(",");
-        return new Envelope(Double.parseDouble(split[0]), Double.parseDouble(split[2]), 
-            Double.parseDouble(split[1]), Double.parseDouble(split[3]));
+        try {
+            return new Envelope(Double.parseDouble(split[0]), Double.parseDouble(split[2]), 
+                Double.parseDouble(split[1]), Double.parseDouble(split[3]));
+        }
+        catch(RuntimeException e) {
+            throw new HttpException(HTTP_BADREQUEST, "Invalid bbox: " + bbox);
+        }
+    }
+
+    double parseSimplify(String simplify) {
+        double tol;
+        try {
+            tol = Double.parseDouble(simplify);
+        }
+        catch(NumberFormatException e) {
+            tol = Double.NaN;
+        }
+        if (Double.isNaN(tol) || Double.isInfinite(tol) || tol < 0) {
+            throw new HttpException(HTTP_BADREQUEST, 
+                "simplify must be a non negative number: " + simplify);
+        }
+        return tol;
+    }
+
+    int parseWidth(String width) {
+        int w;
+        try {
+            w = Integer.parseInt(width);
+        }
+        catch(NumberFormatException e) {
+            w = 0;
+        }
+        if (w <= 0) {
+            throw new HttpException(HTTP_BADREQUEST, "width must be a positive integer: " + width);
+        }
+        return w;
     }
 
     JSONObject parseJSON(InputStream body) throws IOException {
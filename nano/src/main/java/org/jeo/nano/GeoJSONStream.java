@@ -0,0 +1,104 @@
+package org.jeo.nano;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+
+import org.jeo.data.Cursor;
+import org.jeo.feature.Feature;
+import org.jeo.geojson.GeoJSONWriter;
+
+/**
+ * Input stream that encodes a feature cursor as a GeoJSON feature collection as it is read.
+ * <p>
+ * Features are pulled from the cursor and encoded only as the stream is consumed, so a response
+ * body backed by this stream never holds more than a buffer worth of the encoded collection. The
+ * cursor is closed when the end of the collection is reached or when the stream is closed.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+class GeoJSONStream extends InputStream {
+
+    Cursor<Feature> cursor;
+
+    Buffer buffer = new Buffer();
+    GeoJSONWriter writer;
+
+    /** read position in the buffer */
+    int pos;
+
+    boolean started, done;
+
+    GeoJSONStream(Cursor<Feature> cursor) throws IOException {
+        this.cursor = cursor;
+        this.writer = new GeoJSONWriter(new OutputStreamWriter(buffer, "UTF-8"));
+    }
+
+    @Override
+    public int read() throws IOException {
+        return fill() ? buffer.array()[pos++] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        int n = 0;
+        while (n < len && fill()) {
+            int m = Math.min(len - n, buffer.size() - pos);
+            System.arraycopy(buffer.array(), pos, b, off + n, m);
+            pos += m;
+            n += m;
+        }
+        return n > 0 ? n : -1;
+    }
+
+    /**
+     * Encodes more of the collection once the buffer has been consumed, returning
+     * <code>false</code> at the end of the collection.
+     */
+    boolean fill() throws IOException {
+        while (pos >= buffer.size()) {
+            if (done) {
+                return false;
+            }
+
+            buffer.reset();
+            pos = 0;
+
+            if (!started) {
+                writer.featureCollection();
+                started = true;
+            }
+            else if (cursor.hasNext()) {
+                writer.feature(cursor.next());
+            }
+            else {
+                writer.endFeatureCollection();
+                close();
+            }
+            writer.flush();
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!done) {
+            done = true;
+            cursor.close();
+        }
+    }
+
+    /**
+     * Byte array stream exposing its buffer to avoid copying it on every fill.
+     */
+    static class Buffer extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -3,6 +3,9 @@ package org.jeo.nano;
 import static org.jeo.nano.NanoHTTPD.HTTP_NOTFOUND;
 
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
 
 import org.jeo.data.Dataset;
 import org.jeo.data.Registry;
@@ -25,6 +28,14 @@ public abstract class Handler {
     }
 
     protected Dataset findDataset(String key, Registry reg) throws IOException {
+        return findDataset(key, reg, null);
+    }
+
+    /**
+     * Finds a dataset, recording it as the dataset of the request for {@link Metrics} once
+     * found.
+     */
+    protected Dataset findDataset(String key, Registry reg, Request request) throws IOException {
         Object obj = null;
 
         String[] split = key.split("/");
@@ -41,6 +52,63 @@ public abstract class Handler {
             throw new HttpException(HTTP_NOTFOUND, "No such layer: " + key);
         }
 
+        if (request != null) {
+            Metrics.dataset(request, split.length == 1 ? split[0] : split[0] + "/" + split[1]);
+        }
         return (Dataset)obj;
     }
+
+    /**
+     * Computes a strong entity tag for content by hashing it.
+     */
+    protected String etag(byte[] data) {
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+
+        return etagOf(md5.digest(data != null ? data : new byte[0]));
+    }
+
+    /**
+     * Formats a digest of content as a strong entity tag, matching tags computed with 
+     * {@link #etag(byte[])} when the digest is the MD5 digest of the content.
+     */
+    protected String etagOf(byte[] hash) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.append("\"").toString();
+    }
+
+    /**
+     * Determines if the <tt>If-None-Match</tt> header of a request matches an entity tag, meaning
+     * the client already has the current representation.
+     * <p>
+     * Tags are compared weakly, ignoring the weak indicator.
+     * </p>
+     */
+    protected boolean isNotModified(Request request, String etag) {
+        Properties header = request.getHeader();
+        String match = header != null ? header.getProperty("if-none-match") : null;
+        if (match == null) {
+            return false;
+        }
+
+        String tag = opaque(etag);
+        for (String t : match.split(",")) {
+            t = t.trim();
+            if ("*".equals(t) || tag.equals(opaque(t))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    String opaque(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
 }
@@ -0,0 +1,428 @@
+package org.jeo.nano;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jeo.data.Cursor;
+
+/**
+ * Collection of server metrics exposed in the Prometheus text format.
+ * <p>
+ * Metrics are identified by a name and a set of labels, specified as alternating label names and
+ * values. Metrics are created on first use and live as long as the collection, so label values
+ * should be drawn from a bounded set such as handler or dataset names.
+ * </p>
+ * <p>
+ * The server makes its metrics available to handlers through the request, see
+ * {@link #get(Request)}.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class Metrics {
+
+    /** default histogram bucket upper bounds, in seconds */
+    public static final double[] DEFAULT_BUCKETS =
+        {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    /** dataset label of requests that did not resolve a dataset */
+    public static final String UNKNOWN = "unknown";
+
+    /** request context key of the dataset resolved by a request */
+    static final String DATASET = "metrics.dataset";
+
+    /**
+     * Returns the metrics of the server handling a request, or <code>null</code> if the request
+     * is not being served by a server collecting metrics.
+     */
+    public static Metrics get(Request request) {
+        return (Metrics) request.getContext().get(Metrics.class);
+    }
+
+    /**
+     * Records the dataset a request resolved to, used to label the metrics of the request.
+     * <p>
+     * Handlers should only record a dataset once it has been found, so that the number of label
+     * values remains bounded by the datasets being served rather than by the requests made.
+     * </p>
+     */
+    public static void dataset(Request request, String dataset) {
+        request.getContext().put(DATASET, dataset);
+    }
+
+    /**
+     * Returns the dataset recorded for a request, or {@link #UNKNOWN} if none was resolved.
+     */
+    public static String dataset(Request request) {
+        Object dataset = request.getContext().get(DATASET);
+        return dataset != null ? dataset.toString() : UNKNOWN;
+    }
+
+    /**
+     * Wraps a cursor recording the time spent reading from it, and the number of objects read,
+     * to metrics labeled with the specified dataset name. The time is recorded when the cursor
+     * is closed.
+     */
+    public static <T> Cursor<T> time(Cursor<T> cursor, Metrics metrics, String dataset) {
+        if (metrics == null) {
+            return cursor;
+        }
+
+        return new TimedCursor<T>(cursor,
+            metrics.histogram("jeo_cursor_seconds",
+                "Time spent reading from dataset cursors", "dataset", dataset),
+            metrics.counter("jeo_cursor_reads_total",
+                "Objects read from dataset cursors", "dataset", dataset));
+    }
+
+    /**
+     * A value sampled when metrics are written.
+     */
+    public static interface Sample {
+        double value();
+    }
+
+    /**
+     * Monotonically increasing count.
+     */
+    public static class Counter {
+        final AtomicLong value = new AtomicLong();
+
+        public void inc() {
+            value.incrementAndGet();
+        }
+
+        public void inc(long n) {
+            value.addAndGet(n);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * Value that may go up and down, such as the number of requests in flight.
+     */
+    public static class Gauge {
+        final AtomicLong value = new AtomicLong();
+
+        public void inc() {
+            value.incrementAndGet();
+        }
+
+        public void dec() {
+            value.decrementAndGet();
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * Distribution of durations over a fixed set of buckets.
+     */
+    public static class Histogram {
+        final double[] buckets;
+        final AtomicLongArray counts;
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong sum = new AtomicLong();
+
+        Histogram(double[] buckets) {
+            this.buckets = buckets;
+            this.counts = new AtomicLongArray(buckets.length);
+        }
+
+        /**
+         * Records a duration in nanoseconds.
+         */
+        public void observe(long nanos) {
+            double secs = nanos / 1e9;
+            for (int i = 0; i < buckets.length; i++) {
+                if (secs <= buckets[i]) {
+                    counts.incrementAndGet(i);
+                    break;
+                }
+            }
+            count.incrementAndGet();
+            sum.addAndGet(nanos);
+        }
+
+        /**
+         * Records the duration since a start time obtained from {@link System#nanoTime()}.
+         */
+        public void observeSince(long start) {
+            observe(System.nanoTime() - start);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * The sum of the recorded durations, in seconds.
+         */
+        public double getSum() {
+            return sum.get() / 1e9;
+        }
+    }
+
+    /**
+     * Metrics sharing a name, keyed by their encoded labels.
+     */
+    static class Family {
+        final String type;
+        final String help;
+        final ConcurrentMap<String,Object> metrics = new ConcurrentSkipListMap<String, Object>();
+
+        Family(String type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    final ConcurrentMap<String,Family> families = new ConcurrentSkipListMap<String, Family>();
+    final double[] buckets;
+
+    public Metrics() {
+        this(DEFAULT_BUCKETS);
+    }
+
+    /**
+     * Creates the metrics collection.
+     *
+     * @param buckets The histogram bucket upper bounds in seconds, in increasing order.
+     */
+    public Metrics(double[] buckets) {
+        for (int i = 1; i < buckets.length; i++) {
+            if (buckets[i] <= buckets[i-1]) {
+                throw new IllegalArgumentException("buckets must be increasing");
+            }
+        }
+        this.buckets = buckets.clone();
+    }
+
+    /**
+     * Returns the counter with the specified name and labels, creating it if necessary.
+     */
+    public Counter counter(String name, String help, String... labels) {
+        Counter c = (Counter) metric(name, "counter", help, labels);
+        return c != null ? c : (Counter) metric(name, labels, new Counter());
+    }
+
+    /**
+     * Registers a counter whose value is sampled when metrics are written, for counts maintained
+     * elsewhere.
+     */
+    public void counter(String name, String help, Sample sample, String... labels) {
+        metric(name, "counter", help, labels);
+        metric(name, labels, sample);
+    }
+
+    /**
+     * Returns the gauge with the specified name and labels, creating it if necessary.
+     */
+    public Gauge gauge(String name, String help, String... labels) {
+        Gauge g = (Gauge) metric(name, "gauge", help, labels);
+        return g != null ? g : (Gauge) metric(name, labels, new Gauge());
+    }
+
+    /**
+     * Registers a gauge whose value is sampled when metrics are written.
+     */
+    public void gauge(String name, String help, Sample sample, String... labels) {
+        metric(name, "gauge", help, labels);
+        metric(name, labels, sample);
+    }
+
+    /**
+     * Returns the histogram with the specified name and labels, creating it if necessary.
+     */
+    public Histogram histogram(String name, String help, String... labels) {
+        Histogram h = (Histogram) metric(name, "histogram", help, labels);
+        return h != null ? h : (Histogram) metric(name, labels, new Histogram(buckets));
+    }
+
+    /**
+     * Looks up an existing metric, creating its family if necessary.
+     */
+    Object metric(String name, String type, String help, String... labels) {
+        Family f = families.get(name);
+        if (f == null) {
+            Family g = families.putIfAbsent(name, f = new Family(type, help));
+            if (g != null) {
+                f = g;
+            }
+        }
+        if (!f.type.equals(type)) {
+            throw new IllegalArgumentException(
+                String.format("metric %s is a %s, not a %s", name, f.type, type));
+        }
+        return f.metrics.get(labels(labels));
+    }
+
+    /**
+     * Adds a metric to an existing family, returning the metric already present if any.
+     */
+    Object metric(String name, String[] labels, Object metric) {
+        Object existing = families.get(name).metrics.putIfAbsent(labels(labels), metric);
+        return existing != null ? existing : metric;
+    }
+
+    String labels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("labels must be name value pairs");
+        }
+        if (labels.length == 0) {
+            return "";
+        }
+
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append(labels[i]).append("=\"").append(escape(labels[i+1])).append("\"");
+        }
+        return sb.append("}").toString();
+    }
+
+    String escape(String value) {
+        return String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"")
+            .replace("\n", "\\n");
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format.
+     */
+    public void write(Writer out) throws IOException {
+        for (Map.Entry<String, Family> e : families.entrySet()) {
+            String name = e.getKey();
+            Family f = e.getValue();
+
+            out.write("# HELP " + name + " " + f.help + "\n");
+            out.write("# TYPE " + name + " " + f.type + "\n");
+
+            for (Map.Entry<String, Object> m : f.metrics.entrySet()) {
+                String labels = m.getKey();
+                Object metric = m.getValue();
+
+                if (metric instanceof Histogram) {
+                    write((Histogram) metric, name, labels, out);
+                }
+                else {
+                    out.write(name + labels + " " + format(value(metric)) + "\n");
+                }
+            }
+        }
+        out.flush();
+    }
+
+    void write(Histogram h, String name, String labels, Writer out) throws IOException {
+        // buckets are cumulative, read the total first so no bucket exceeds it
+        long count = h.getCount();
+        double sum = h.getSum();
+
+        long cum = 0;
+        for (int i = 0; i < h.buckets.length; i++) {
+            cum += h.counts.get(i);
+            out.write(name + "_bucket" + bucket(labels, format(h.buckets[i])) + " "
+                + Math.min(cum, count) + "\n");
+        }
+        out.write(name + "_bucket" + bucket(labels, "+Inf") + " " + count + "\n");
+        out.write(name + "_sum" + labels + " " + format(sum) + "\n");
+        out.write(name + "_count" + labels + " " + count + "\n");
+    }
+
+    String bucket(String labels, String le) {
+        String l = "le=\"" + le + "\"";
+        return labels.isEmpty() ? "{" + l + "}" : labels.substring(0, labels.length()-1) + "," + l + "}";
+    }
+
+    double value(Object metric) {
+        if (metric instanceof Counter) {
+            return ((Counter) metric).get();
+        }
+        if (metric instanceof Gauge) {
+            return ((Gauge) metric).get();
+        }
+        return ((Sample) metric).value();
+    }
+
+    String format(double d) {
+        return d == Math.rint(d) && !Double.isInfinite(d) ? String.valueOf((long) d) : String.valueOf(d);
+    }
+
+    /**
+     * Cursor recording the time spent in its hasNext/next calls.
+     */
+    static class TimedCursor<T> extends Cursor<T> {
+        Cursor<T> delegate;
+        Histogram time;
+        Counter reads;
+
+        long nanos;
+        boolean closed;
+
+        TimedCursor(Cursor<T> delegate, Histogram time, Counter reads) {
+            super(delegate.getMode());
+            this.delegate = delegate;
+            this.time = time;
+            this.reads = reads;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return delegate.hasNext();
+            }
+            finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public T next() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return delegate.next();
+            }
+            finally {
+                nanos += System.nanoTime() - start;
+                reads.inc();
+            }
+        }
+
+        @Override
+        protected void doWrite() throws IOException {
+            delegate.write();
+        }
+
+        @Override
+        protected void doRemove() throws IOException {
+            delegate.remove();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            long start = System.nanoTime();
+            try {
+                delegate.close();
+            }
+            finally {
+                time.observe(nanos + System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.jeo.nano;
+
+import static org.jeo.nano.NanoHTTPD.HTTP_NOTFOUND;
+import static org.jeo.nano.NanoHTTPD.HTTP_OK;
+import static org.jeo.nano.NanoHTTPD.MIME_PLAINTEXT;
+
+import java.io.StringWriter;
+
+import org.jeo.nano.NanoHTTPD.Response;
+
+/**
+ * Handler exposing server metrics at <tt>/metrics</tt> in the Prometheus text format.
+ *
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class MetricsHandler extends Handler {
+
+    static final String MIME_METRICS = "text/plain; version=0.0.4";
+
+    @Override
+    public boolean canHandle(Request request, NanoJeoServer server) {
+        return "/metrics".equals(request.getUri());
+    }
+
+    @Override
+    public Response handle(Request request, NanoJeoServer server) throws Exception {
+        Metrics metrics = Metrics.get(request);
+        if (metrics == null) {
+            return new Response(HTTP_NOTFOUND, MIME_PLAINTEXT, "Metrics not enabled");
+        }
+
+        StringWriter out = new StringWriter();
+        metrics.write(out);
+
+        Response res = new Response(HTTP_OK, MIME_METRICS, out.toString());
+        res.addHeader("Cache-Control", "no-cache");
+        return res;
+    }
+}
@@ -14,6 +14,7 @@ import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URLEncoder;
 import java.util.Date;
 import java.util.Enumeration;
@@ -23,6 +24,14 @@ import java.util.Properties;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
 import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A simple, tiny, nicely embeddable HTTP 1.0 (partially 1.1) server in Java
@@ -43,7 +52,10 @@ import java.util.Vector;
  *    <li> Supports partial content (streaming)</li>
  *    <li> Supports ETags</li>
  *    <li> Never caches anything </li>
- *    <li> Doesn't limit bandwidth, request time or simultaneous connections </li>
+ *    <li> Doesn't limit bandwidth or request time </li>
+ *    <li> Serves connections from a bounded thread pool, refusing them with 503 when busy </li>
+ *    <li> Supports keep-alive connections </li>
+ *    <li> Streams responses of unknown length with chunked transfer encoding </li>
  *    <li> Default code serves files and shows all HTTP parameters and headers</li>
  *    <li> File server supports directory listing, index.html and index.htm</li>
  *    <li> File server supports partial content (streaming)</li>
@@ -200,7 +212,8 @@ public class NanoHTTPD
 		HTTP_BADREQUEST = "400 Bad Request",
 		HTTP_METHOD_NOT_ALLOWED = "405 Method Not Allowed",
 		HTTP_INTERNALERROR = "500 Internal Server Error",
-		HTTP_NOTIMPLEMENTED = "501 Not Implemented";
+		HTTP_NOTIMPLEMENTED = "501 Not Implemented",
+		HTTP_UNAVAILABLE = "503 Service Unavailable";
 
 	/**
 	 * Common mime types for dynamic content
@@ -221,9 +234,36 @@ public class NanoHTTPD
 	 * Throws an IOException if the socket is already in use
 	 */
 	public NanoHTTPD( int port, File wwwroot ) throws IOException
+	{
+		this( port, wwwroot, new ServerOpts());
+	}
+
+	/**
+	 * Starts a HTTP server to given port with the specified connection
+	 * handling options.<p>
+	 * Throws an IOException if the socket is already in use
+	 */
+	public NanoHTTPD( int port, File wwwroot, ServerOpts opts ) throws IOException
 	{
 		myTcpPort = port;
 		this.myRootDir = wwwroot;
+		this.myOpts = opts;
+
+		BlockingQueue<Runnable> queue = opts.getMaxQueued() > 0 ?
+			new ArrayBlockingQueue<Runnable>( opts.getMaxQueued()) : new SynchronousQueue<Runnable>();
+		myExecutor = new ThreadPoolExecutor( opts.getMaxThreads(), opts.getMaxThreads(),
+			60, TimeUnit.SECONDS, queue, new ThreadFactory()
+			{
+				AtomicInteger count = new AtomicInteger();
+				public Thread newThread( Runnable r )
+				{
+					Thread t = new Thread( r, "nanohttpd-" + count.incrementAndGet());
+					t.setDaemon( true );
+					return t;
+				}
+			});
+		myExecutor.allowCoreThreadTimeOut( true );
+
 		myServerSocket = new ServerSocket( myTcpPort );
 		myThread = new Thread( new Runnable()
 			{
@@ -232,7 +272,17 @@ public class NanoHTTPD
 					try
 					{
 						while( true )
-							new HTTPSession( myServerSocket.accept());
+						{
+							Socket s = myServerSocket.accept();
+							try
+							{
+								myExecutor.execute( new HTTPSession( s ));
+							}
+							catch ( RejectedExecutionException ree )
+							{
+								refuse( s );
+							}
+						}
 					}
 					catch ( IOException ioe )
 					{}
@@ -242,6 +292,30 @@ public class NanoHTTPD
 		myThread.start();
 	}
 
+	/**
+	 * Refuses a connection when all worker threads are busy and the queue
+	 * of waiting connections is full.
+	 */
+	private void refuse( Socket s )
+	{
+		try
+		{
+			String msg = "Server busy, try again later.";
+			OutputStream out = s.getOutputStream();
+			out.write(( "HTTP/1.0 " + HTTP_UNAVAILABLE + " \r\n" +
+				"Content-Type: " + MIME_PLAINTEXT + "\r\n" +
+				"Content-Length: " + msg.length() + "\r\n" +
+				"Retry-After: 1\r\n" +
+				"Connection: close\r\n\r\n" + msg ).getBytes());
+			out.flush();
+		}
+		catch ( IOException ioe ) {}
+		finally
+		{
+			try { s.close(); } catch( Throwable t ) {}
+		}
+	}
+
 	/**
 	 * Stops the server.
 	 */
@@ -251,11 +325,28 @@ public class NanoHTTPD
 		{
 			myServerSocket.close();
 			myThread.join();
+			myExecutor.shutdownNow();
 		}
 		catch ( IOException ioe ) {}
 		catch ( InterruptedException e ) {}
 	}
 
+	/**
+	 * The port the server is listening on.
+	 */
+	public int getPort()
+	{
+		return myServerSocket.getLocalPort();
+	}
+
+	/**
+	 * The connection handling options of the server.
+	 */
+	public ServerOpts getOpts()
+	{
+		return myOpts;
+	}
+
 
         public void join() {
             try {
@@ -312,9 +403,6 @@ public class NanoHTTPD
 		public HTTPSession( Socket s )
 		{
 			mySocket = s;
-			Thread t = new Thread( this );
-			t.setDaemon( true );
-			t.start();
 		}
 
 		public void run()
@@ -324,6 +412,34 @@ public class NanoHTTPD
 				InputStream is = mySocket.getInputStream();
 				if ( is == null) return;
 
+				if ( myOpts.isKeepAlive())
+					mySocket.setSoTimeout( myOpts.getKeepAliveTimeout());
+
+				int served = 0;
+				boolean more = true;
+				while ( more )
+				{
+					// keep the connection only while nobody is waiting for a worker
+					myKeepAlive = myOpts.isKeepAlive() && ++served < myOpts.getMaxKeepAliveRequests()
+						&& myExecutor.getQueue().isEmpty();
+					more = serveRequest( is ) && myKeepAlive;
+				}
+			}
+			catch ( IOException ioe ) {}
+			finally
+			{
+				try { mySocket.close(); } catch( Throwable t ) {}
+			}
+		}
+
+		/**
+		 * Reads and serves a single request from the connection, returning
+		 * false if the connection should be closed.
+		 */
+		private boolean serveRequest( InputStream is )
+		{
+			try
+			{
 				// Read the first 8192 bytes.
 				// The full header should fit in here.
 				// Apache's default header limit is 8KB.
@@ -333,7 +449,19 @@ public class NanoHTTPD
 				int splitbyte = 0;
 				int rlen = 0;
 				{
-					int read = is.read(buf, 0, bufsize);
+					int read;
+					try
+					{
+						read = is.read(buf, 0, bufsize);
+					}
+					catch ( SocketTimeoutException ste )
+					{
+						// idle connection
+						return false;
+					}
+					if (read <= 0)
+						// client closed the connection
+						return false;
 					while (read > 0)
 					{
 						rlen += read;
@@ -357,6 +485,15 @@ public class NanoHTTPD
 				String method = pre.getProperty("method");
 				String uri = pre.getProperty("uri");
 
+				// HTTP/1.1 connections are persistent unless closed explicitly,
+				// HTTP/1.0 ones only if asked for
+				String connection = header.getProperty("connection", "");
+				myProtocol = "HTTP/1.1".equals( pre.getProperty("protocol")) ? "HTTP/1.1" : "HTTP/1.0";
+				if ( "HTTP/1.1".equals( myProtocol ))
+					myKeepAlive = myKeepAlive && !connection.equalsIgnoreCase( "close" );
+				else
+					myKeepAlive = myKeepAlive && connection.equalsIgnoreCase( "keep-alive" );
+
 				long size = 0x7FFFFFFFFFFFFFFFl;
 				String contentLength = header.getProperty("content-length");
 				if (contentLength != null)
@@ -376,16 +513,21 @@ public class NanoHTTPD
 				// out whether we have already consumed part of body, if we
 				// have reached the end of the data to be sent or we should
 				// expect the first byte of the body at the next read.
-				if (splitbyte < rlen)
-					size -= rlen-splitbyte+1;
+				// A request on a persistent connection carries no body unless
+				// it gives its length.
+				if (size == 0x7FFFFFFFFFFFFFFFl && myKeepAlive)
+					size = 0;
+				else if (splitbyte < rlen)
+					size -= rlen-splitbyte;
 				else if (splitbyte==0 || size == 0x7FFFFFFFFFFFFFFFl)
 					size = 0;
 
-				// Now read all the body and write it to f
+				// Now read all the body and write it to f, reading no further
+				// than the body so the next request on the connection is intact
 				buf = new byte[512];
 				while ( rlen >= 0 && size > 0 )
 				{
-					rlen = is.read(buf, 0, 512);
+					rlen = is.read(buf, 0, (int) Math.min(512, size));
 					size -= rlen;
 					if (rlen > 0)
 						f.write(buf, 0, rlen);
@@ -457,7 +599,7 @@ public class NanoHTTPD
 					sendResponse( r.status, r.mimeType, r.header, r.data );
 
 				in.close();
-				is.close();
+				return true;
 			}
 			catch ( IOException ioe )
 			{
@@ -469,8 +611,9 @@ public class NanoHTTPD
 			}
 			catch ( InterruptedException ie )
 			{
-				// Thrown by sendError, ignore and exit the thread.
+				// Thrown by sendError, ignore and close the connection.
 			}
+			return false;
 		}
 
 		/**
@@ -506,11 +649,12 @@ public class NanoHTTPD
 				else uri = decodePercent(uri);
 
 				// If there's another token, it's protocol version,
-				// followed by HTTP headers. Ignore version but parse headers.
+				// followed by HTTP headers.
 				// NOTE: this now forces header names lowercase since they are
 				// case insensitive and vary by client.
 				if ( st.hasMoreTokens())
 				{
+					pre.put("protocol", st.nextToken().toUpperCase());
 					String line = in.readLine();
 					while ( line != null && line.trim().length() > 0 )
 					{
@@ -770,6 +914,7 @@ public class NanoHTTPD
 		 */
 		private void sendError( String status, String msg ) throws InterruptedException
 		{
+			myKeepAlive = false;
 			sendResponse( status, MIME_PLAINTEXT, null, new ByteArrayInputStream( msg.getBytes()));
 			throw new InterruptedException();
 		}
@@ -786,11 +931,33 @@ public class NanoHTTPD
 
 				OutputStream out = mySocket.getOutputStream();
 				PrintWriter pw = new PrintWriter( out );
-				pw.print("HTTP/1.0 " + status + " \r\n");
+				pw.print(myProtocol + " " + status + " \r\n");
 
 				if ( mime != null )
 					pw.print("Content-Type: " + mime + "\r\n");
 
+				// a response of unknown length is streamed in chunks to
+				// HTTP/1.1 clients, and until the connection is closed otherwise
+				String contentLength = header != null ? header.getProperty( "Content-Length" ) : null;
+				boolean chunked = false;
+				if ( contentLength == null )
+				{
+					if ( data == null )
+						contentLength = "0";
+					else if ( data instanceof ByteArrayInputStream )
+						contentLength = String.valueOf( data.available());
+					else if ( "HTTP/1.1".equals( myProtocol ))
+						chunked = true;
+					else
+						myKeepAlive = false;
+
+					if ( contentLength != null )
+						pw.print("Content-Length: " + contentLength + "\r\n");
+					if ( chunked )
+						pw.print("Transfer-Encoding: chunked\r\n");
+				}
+				pw.print("Connection: " + (myKeepAlive ? "keep-alive" : "close") + "\r\n");
+
 				if ( header == null || header.getProperty( "Date" ) == null )
 					pw.print( "Date: " + gmtFrmt.format( new Date()) + "\r\n");
 
@@ -808,7 +975,22 @@ public class NanoHTTPD
 				pw.print("\r\n");
 				pw.flush();
 
-				if ( data != null )
+				if ( data != null && contentLength == null )
+				{
+					byte[] buff = new byte[theBufferSize];
+					int read;
+					while ((read = data.read( buff, 0, theBufferSize )) > 0)
+					{
+						if ( chunked )
+							out.write(( Integer.toHexString( read ) + "\r\n" ).getBytes());
+						out.write( buff, 0, read );
+						if ( chunked )
+							out.write( CRLF );
+					}
+					if ( chunked )
+						out.write(( "0\r\n\r\n" ).getBytes());
+				}
+				else if ( data != null )
 				{
 					int pending = data.available();	// This is to support partial sends, see serveFile()
 					byte[] buff = new byte[theBufferSize];
@@ -821,18 +1003,26 @@ public class NanoHTTPD
 					}
 				}
 				out.flush();
-				out.close();
-				if ( data != null )
-					data.close();
+				if ( !myKeepAlive )
+					out.close();
 			}
 			catch( IOException ioe )
 			{
 				// Couldn't write? No can do.
+				myKeepAlive = false;
 				try { mySocket.close(); } catch( Throwable t ) {}
 			}
+			finally
+			{
+				// streamed data may hold resources such as an open cursor
+				if ( data != null )
+					try { data.close(); } catch( Throwable t ) {}
+			}
 		}
 
 		private Socket mySocket;
+		private String myProtocol = "HTTP/1.0";
+		private boolean myKeepAlive;
 	}
 
 	/**
@@ -864,6 +1054,8 @@ public class NanoHTTPD
 	private final ServerSocket myServerSocket;
 	private Thread myThread;
 	private File myRootDir;
+	private ServerOpts myOpts;
+	private ThreadPoolExecutor myExecutor;
 
 	// ==================================================
 	// File server code
@@ -1110,6 +1302,8 @@ public class NanoHTTPD
 
 	private static int theBufferSize = 16 * 1024;
 
+	private static final byte[] CRLF = { '\r', '\n' };
+
 	// Change these if you want to log to somewhere else than stdout
 	protected static PrintStream myOut = System.out; 
 	protected static PrintStream myErr = System.err;
@@ -3,16 +3,20 @@ package org.jeo.nano;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.jeo.data.Registry;
 import org.jeo.data.SimpleRegistry;
+import org.jeo.data.TileCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,24 +26,77 @@ public class NanoJeoServer extends NanoHTTPD {
 
     Registry reg;
     List<Handler> handlers;
+    Metrics metrics = new Metrics();
 
     public NanoJeoServer(int port, File wwwRoot, Registry reg, Handler... handlers) 
         throws IOException {
-        super(port, wwwRoot);
+        this(port, wwwRoot, reg, new ServerOpts(), handlers);
+    }
+
+    public NanoJeoServer(int port, File wwwRoot, Registry reg, ServerOpts opts, 
+        Handler... handlers) throws IOException {
+        super(port, wwwRoot, opts);
 
         this.reg = reg;
 
         this.handlers = new ArrayList<Handler>();
         this.handlers.add(new RootHandler());
+        this.handlers.add(new MetricsHandler());
 
         if (handlers == null || handlers.length == 0) {
-            handlers = new Handler[]{new TileHandler(), new FeatureHandler()};
+            TileCache cache = new TileCache();
+            handlers = new Handler[]{new TileHandler(cache), new VectorTileHandler(cache), 
+                new FeatureHandler()};
         }
 
         this.handlers.addAll(Arrays.asList(handlers));
         if (wwwRoot != null) {
             this.handlers.add(new WWWHandler());
         }
+
+        registerCacheMetrics();
+    }
+
+    /**
+     * Exposes the statistics of the tile caches used by the tile handlers.
+     */
+    void registerCacheMetrics() {
+        Map<TileCache, String> caches = new IdentityHashMap<TileCache, String>();
+        for (Handler h : handlers) {
+            if (h instanceof TileHandler) {
+                TileCache cache = ((TileHandler) h).getCache();
+                if (cache != null && !caches.containsKey(cache)) {
+                    caches.put(cache, String.valueOf(caches.size()));
+                }
+            }
+        }
+
+        for (Map.Entry<TileCache, String> e : caches.entrySet()) {
+            final TileCache cache = e.getKey();
+            String id = e.getValue();
+
+            metrics.counter("jeo_tile_cache_hits_total", "Tile cache hits", new Metrics.Sample() {
+                public double value() {
+                    return cache.getHitCount();
+                }
+            }, "cache", id);
+            metrics.counter("jeo_tile_cache_misses_total", "Tile cache misses", new Metrics.Sample() {
+                public double value() {
+                    return cache.getMissCount();
+                }
+            }, "cache", id);
+            metrics.counter("jeo_tile_cache_evictions_total", "Tile cache evictions", 
+                new Metrics.Sample() {
+                    public double value() {
+                        return cache.getEvictionCount();
+                    }
+                }, "cache", id);
+            metrics.gauge("jeo_tile_cache_bytes", "Size of cached tiles", new Metrics.Sample() {
+                public double value() {
+                    return cache.getSize();
+                }
+            }, "cache", id);
+        }
     }
 
     public Registry getRegistry() {
@@ -50,6 +107,14 @@ public class NanoJeoServer extends NanoHTTPD {
         return getRootDir();
     }
 
+    /**
+     * The metrics collected by the server, also available to handlers through 
+     * {@link Metrics#get(Request)}.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public Response serve(String uri, String method, Properties header, Properties parms, 
         Properties files) {
@@ -61,23 +126,104 @@ public class NanoJeoServer extends NanoHTTPD {
         LOG.debug(method + " " + uri + "?" + parms);
 
         Request request = new Request(uri, method, header, parms, files);
-         
+        request.getContext().put(Metrics.class, metrics);
+
+        long start = System.nanoTime();
+        Metrics.Gauge inFlight = 
+            metrics.gauge("jeo_http_requests_in_flight", "Requests currently being served");
+        inFlight.inc();
+
         //find the handler for this request
         Handler h = findHandler(request);
-        if (h == null) {
-            return new Response(HTTP_NOTFOUND, MIME_PLAINTEXT, "No handler for request");
-        }
+        String handler = h != null ? h.getClass().getSimpleName() : "none";
 
+        Response res = null;
         try {
-            return h.handle(request, this);
+            res = h != null ? h.handle(request, this) 
+                : new Response(HTTP_NOTFOUND, MIME_PLAINTEXT, "No handler for request");
         }
         catch(HttpException e) {
-            return e.toResponse();
+            res = e.toResponse();
         }
         catch(Exception e) {
             LOG.warn("Request threw exception", e);
-            return new Response(HTTP_INTERNALERROR, MIME_PLAINTEXT, toStream(e));
+            res = new Response(HTTP_INTERNALERROR, MIME_PLAINTEXT, toStream(e));
         }
+
+        return meter(res, request, handler, start, inFlight);
+    }
+
+    /**
+     * Records metrics for a response, the request being complete only once its body has been 
+     * written.
+     * <p>
+     * The request time is labeled with the dataset recorded by the handler once resolved, or 
+     * {@link Metrics#UNKNOWN} for requests such as those not finding a dataset.
+     * </p>
+     */
+    Response meter(Response res, Request request, String handler, final long start, 
+        final Metrics.Gauge inFlight) {
+        String status = res.status != null ? res.status.split(" ")[0] : "";
+        metrics.counter("jeo_http_requests_total", "Requests served", 
+            "handler", handler, "status", status).inc();
+
+        final Metrics.Histogram time = metrics.histogram("jeo_http_request_seconds", 
+            "Time to serve requests, including writing the response", "handler", handler, 
+            "dataset", Metrics.dataset(request));
+
+        if (res.data == null) {
+            time.observeSince(start);
+            inFlight.dec();
+            return res;
+        }
+
+        // keep the length of buffered responses known once wrapped, streamed responses are 
+        // left to be chunked
+        if (res.data instanceof ByteArrayInputStream 
+            && res.header.getProperty("Content-Length") == null) {
+            int length = ((ByteArrayInputStream) res.data).available();
+            res.addHeader("Content-Length", String.valueOf(length));
+        }
+
+        final Metrics.Counter bytes = metrics.counter("jeo_http_response_bytes_total", 
+            "Response body bytes written", "handler", handler);
+        res.data = new FilterInputStream(res.data) {
+            boolean closed;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    bytes.inc();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    bytes.inc(n);
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                }
+                finally {
+                    time.observeSince(start);
+                    inFlight.dec();
+                }
+            }
+        };
+        return res;
     }
 
     InputStream toStream(Exception e) {
@@ -0,0 +1,85 @@
+package org.jeo.nano;
+
+/**
+ * Connection handling options for {@link NanoHTTPD}.
+ * <p>
+ * Requests are served by a bounded pool of worker threads. Connections accepted while all workers
+ * are busy wait in a bounded queue, and connections arriving when the queue is full are refused
+ * immediately with a <tt>503 Service Unavailable</tt> response. Connections are kept alive between
+ * requests when the client allows it and no other connections are waiting for a worker.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class ServerOpts {
+
+    int maxThreads = 32;
+    int maxQueued = 64;
+    int keepAliveTimeout = 5000;
+    int maxKeepAliveRequests = 100;
+
+    /**
+     * Sets the maximum number of threads serving requests.
+     */
+    public ServerOpts maxThreads(int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("max threads must be positive");
+        }
+        this.maxThreads = maxThreads;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of connections waiting for a thread, <tt>0</tt> means connections
+     * are refused as soon as all threads are busy.
+     */
+    public ServerOpts maxQueued(int maxQueued) {
+        if (maxQueued < 0) {
+            throw new IllegalArgumentException("max queued must not be negative");
+        }
+        this.maxQueued = maxQueued;
+        return this;
+    }
+
+    /**
+     * Sets the time in milliseconds an idle connection is kept open waiting for another request,
+     * <tt>0</tt> disables keep alive.
+     */
+    public ServerOpts keepAliveTimeout(int keepAliveTimeout) {
+        if (keepAliveTimeout < 0) {
+            throw new IllegalArgumentException("keep alive timeout must not be negative");
+        }
+        this.keepAliveTimeout = keepAliveTimeout;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of requests served over a single connection.
+     */
+    public ServerOpts maxKeepAliveRequests(int maxKeepAliveRequests) {
+        if (maxKeepAliveRequests < 1) {
+            throw new IllegalArgumentException("max keep alive requests must be positive");
+        }
+        this.maxKeepAliveRequests = maxKeepAliveRequests;
+        return this;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    public int getMaxKeepAliveRequests() {
+        return maxKeepAliveRequests;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAliveTimeout > 0;
+    }
+}
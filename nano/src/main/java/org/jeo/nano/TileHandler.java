@@ -3,18 +3,22 @@ package org.jeo.nano;
 import static org.jeo.nano.NanoHTTPD.HTTP_BADREQUEST;
 import static org.jeo.nano.NanoHTTPD.HTTP_INTERNALERROR;
 import static org.jeo.nano.NanoHTTPD.HTTP_NOTFOUND;
+import static org.jeo.nano.NanoHTTPD.HTTP_NOTMODIFIED;
 import static org.jeo.nano.NanoHTTPD.HTTP_OK;
 import static org.jeo.nano.NanoHTTPD.MIME_PLAINTEXT;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Properties;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.jeo.data.CachedTileSet;
 import org.jeo.data.Dataset;
 import org.jeo.data.Registry;
 import org.jeo.data.Tile;
+import org.jeo.data.TileCache;
 import org.jeo.data.TileGrid;
 import org.jeo.data.TileSet;
 import org.jeo.nano.NanoHTTPD.Response;
@@ -25,10 +29,75 @@ public class TileHandler extends Handler {
     static final Pattern TILES_URI_RE = Pattern.compile( 
         //"/tiles/([^/]+)/([^/]+)/(\\d+)/+(\\d+)/+(\\d+).(\\w+)", Pattern.CASE_INSENSITIVE);
         "/tiles/((?:[^/]+/)?[^/]+)/(\\d+)/+(\\d+)/+(\\d+).(\\w+)", Pattern.CASE_INSENSITIVE);
-    
+
+    /** tile cache, may be null */
+    TileCache cache;
+
+    /** max age in seconds clients may cache tiles for without revalidating */
+    Integer maxAge;
+
+    public TileHandler() {
+        this(null);
+    }
+
+    /**
+     * Creates a handler that reads tiles through the specified cache.
+     * 
+     * @param cache The tile cache, <code>null</code> to not cache tiles.
+     */
+    public TileHandler(TileCache cache) {
+        this.cache = cache;
+    }
+
+    public TileCache getCache() {
+        return cache;
+    }
+
+    /**
+     * The time in seconds clients may use a tile without revalidating it.
+     */
+    public Integer getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Sets the time in seconds clients may use a tile without revalidating it, the default of
+     * <code>null</code> meaning clients revalidate tiles with their entity tag on every use.
+     */
+    public void setMaxAge(Integer maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * The pattern of request uris handled, capturing the dataset path, the tile z, x, y and the
+     * tile format in that order.
+     */
+    protected Pattern uriPattern() {
+        return TILES_URI_RE;
+    }
+
+    /**
+     * Returns the tile set for a requested dataset, or <code>null</code> if tiles can not be read
+     * from the dataset.
+     * 
+     * @param data The requested dataset.
+     * @param m The matched request uri.
+     */
+    protected TileSet tileSet(Dataset data, Matcher m) throws IOException {
+        if (!(data instanceof TileSet)) {
+            return null;
+        }
+
+        TileSet ts = (TileSet) data;
+        if (cache != null && !(ts instanceof CachedTileSet)) {
+            ts = new CachedTileSet(ts, cache, m.group(1));
+        }
+        return ts;
+    }
+
     @Override
     public boolean canHandle(Request request, NanoJeoServer server) {
-        Matcher m = TILES_URI_RE.matcher(request.getUri());
+        Matcher m = uriPattern().matcher(request.getUri());
         if (m.matches()) {
             //save the matcher
             request.getContext().put(Matcher.class, m);
@@ -46,16 +115,15 @@ public class TileHandler extends Handler {
 
         try {
             Registry reg = server.getRegistry();
-            Dataset l = findDataset(m.group(1), reg);
+            Dataset l = findDataset(m.group(1), reg, request);
     
-            if (!(l instanceof TileSet)) {
+            TileSet ts = tileSet(l, m);
+            if (ts == null) {
                 // not a tile set
                 return new Response(HTTP_BADREQUEST, MIME_PLAINTEXT, 
-                    "Layer " + m.group(2) + " not a tile set");
+                    "Layer " + m.group(1) + " not a tile set");
             }
     
-            TileSet ts = (TileSet) l;
-    
             //get teh tile index
             long z = Long.parseLong(m.group(2));
             long x = Long.parseLong(m.group(3));
@@ -71,17 +139,48 @@ public class TileHandler extends Handler {
                 y = g.getHeight() - (y+1);
             }
     
+            long start = System.nanoTime();
             Tile t = ts.read(z, x, y);
+
+            Metrics metrics = Metrics.get(request);
+            if (metrics != null) {
+                metrics.histogram("jeo_tile_read_seconds", "Time to read tiles", 
+                    "dataset", Metrics.dataset(request)).observeSince(start);
+            }
             if (t == null) {
                 return new Response(HTTP_NOTFOUND, MIME_PLAINTEXT, 
                     String.format("No such tile z = %d, x = %d, y = %d", z, x, y));
             }
     
-            return new Response(HTTP_OK, t.getMimeType(), new ByteArrayInputStream(t.getData()));
+            // reuse the digest of cached tiles rather than hashing them on every request
+            byte[] digest = ts instanceof CachedTileSet ? ((CachedTileSet) ts).digest(t) : null;
+            String etag = digest != null ? etagOf(digest) : etag(t.getData());
+            if (isNotModified(request, etag)) {
+                Response res = new Response(HTTP_NOTMODIFIED, t.getMimeType(), (InputStream) null);
+                res.addHeader("ETag", etag);
+                res.addHeader("Cache-Control", cacheControl());
+                return res;
+            }
+
+            Response res = new Response(HTTP_OK, t.getMimeType(), 
+                new ByteArrayInputStream(t.getData() != null ? t.getData() : new byte[0]));
+            if (ContentEncoding.isCompressible(t.getMimeType())) {
+                ContentEncoding.encode(request, res);
+            }
+
+            // compressed representations only match weakly
+            boolean encoded = res.header.containsKey("Content-Encoding");
+            res.addHeader("ETag", encoded ? "W/" + etag : etag);
+            res.addHeader("Cache-Control", cacheControl());
+            return res;
         }
         catch(IOException e) {
             return new Response(HTTP_INTERNALERROR, MIME_PLAINTEXT, e.getLocalizedMessage());
         }
     }
 
+    String cacheControl() {
+        return maxAge != null ? "public, max-age=" + maxAge : "no-cache";
+    }
+
 }
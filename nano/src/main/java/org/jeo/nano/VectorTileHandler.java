@@ -0,0 +1,91 @@
+package org.jeo.nano;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jeo.data.CachedTileSet;
+import org.jeo.data.Dataset;
+import org.jeo.data.TileCache;
+import org.jeo.data.TilePyramid;
+import org.jeo.data.TileSet;
+import org.jeo.data.VectorData;
+
+/**
+ * Handler serving tiles rendered on the fly from vector datasets.
+ * <p>
+ * Handles uris of the form <tt>/vtiles/&lt;workspace>[/&lt;layer>]/&lt;z>/&lt;x>/&lt;y>.&lt;format></tt>
+ * where the format is one supported by {@link VectorTileSet}. Rendered tiles are cached per
+ * dataset and format when the handler is created with a tile cache.
+ * </p>
+ * <p>
+ * Tiles are rendered to the pyramid the handler is created with or, by default, to a pyramid 
+ * derived from each dataset as described by {@link VectorTileSet#pyramid(VectorData)}: the global
+ * EPSG:4326 pyramid for geographic datasets, and a pyramid over the dataset bounds in its own 
+ * coordinate reference system for projected ones. 
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class VectorTileHandler extends TileHandler {
+
+    /* /vtiles/<workspace>/<layer>/<z>/<x>/<y>.<format>  */
+    static final Pattern VTILES_URI_RE = Pattern.compile(
+        "/vtiles/((?:[^/]+/)?[^/]+)/(\\d+)/+(\\d+)/+(\\d+).(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    TilePyramid pyramid;
+
+    public VectorTileHandler() {
+        this(null);
+    }
+
+    /**
+     * Creates a handler that renders tiles to a pyramid derived from each dataset, caching them 
+     * in the specified cache.
+     *
+     * @param cache The tile cache, <code>null</code> to render tiles on every request.
+     */
+    public VectorTileHandler(TileCache cache) {
+        this(cache, null);
+    }
+
+    /**
+     * Creates a handler that renders tiles to the specified pyramid, caching them in the
+     * specified cache.
+     *
+     * @param cache The tile cache, <code>null</code> to render tiles on every request.
+     * @param pyramid The pyramid tiles are rendered to, <code>null</code> to derive it from 
+     *   each dataset.
+     */
+    public VectorTileHandler(TileCache cache, TilePyramid pyramid) {
+        super(cache);
+        this.pyramid = pyramid;
+    }
+
+    /**
+     * The pyramid tiles are rendered to, <code>null</code> if derived from each dataset.
+     */
+    public TilePyramid getPyramid() {
+        return pyramid;
+    }
+
+    @Override
+    protected Pattern uriPattern() {
+        return VTILES_URI_RE;
+    }
+
+    @Override
+    protected TileSet tileSet(Dataset data, Matcher m) throws IOException {
+        String format = m.group(5);
+        if (!(data instanceof VectorData) || VectorTileSet.mimeType(format) == null) {
+            return null;
+        }
+
+        VectorData vector = (VectorData) data;
+        TileSet ts = new VectorTileSet(vector, 
+            pyramid != null ? pyramid : VectorTileSet.pyramid(vector), format);
+        if (cache != null) {
+            ts = new CachedTileSet(ts, cache, m.group(1) + "." + format.toLowerCase());
+        }
+        return ts;
+    }
+}
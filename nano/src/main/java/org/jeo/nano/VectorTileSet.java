@@ -0,0 +1,446 @@
+package org.jeo.nano;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jeo.data.Cursor;
+import org.jeo.data.Driver;
+import org.jeo.data.Query;
+import org.jeo.data.Tile;
+import org.jeo.data.TileGrid;
+import org.jeo.data.TilePyramid;
+import org.jeo.data.TileSet;
+import org.jeo.data.VectorData;
+import org.jeo.feature.Feature;
+import org.jeo.feature.Field;
+import org.jeo.feature.ListFeature;
+import org.jeo.feature.Schema;
+import org.jeo.geojson.GeoJSONWriter;
+import org.jeo.proj.Proj;
+import org.jeo.protobuf.ProtobufWriter;
+import org.jeo.util.Key;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+import org.osgeo.proj4j.proj.LongLatProjection;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.TopologyException;
+import com.vividsolutions.jts.geom.util.GeometryEditor;
+
+/**
+ * Tile set that renders the features of a vector dataset to tiles on the fly.
+ * <p>
+ * The features of a tile are those intersecting the tile bounds, expanded by a buffer of
+ * {@link #getBuffer()} pixels. Feature geometries are simplified to the resolution of the tile,
+ * clipped to the buffered bounds, and quantized to integer coordinates in tile space, in which
+ * the tile spans <tt>0</tt> to {@link #getExtent()} with the origin at the top left. Quantization
+ * collapses vertices closer than a tile unit, and geometries that collapse completely are dropped.
+ * </p>
+ * <p>
+ * Tiles are encoded in one of the following formats:
+ * <ul>
+ *   <li><tt>pbf</tt> - The protocol buffer format of the protobuf driver, a schema message
+ *   followed by a message per feature.
+ *   <li><tt>json</tt>, <tt>geojson</tt> - A GeoJSON feature collection.
+ * </ul>
+ * </p>
+ * <p>
+ * Tiles are laid out on the pyramid the tile set is created with, see {@link #pyramid(VectorData)}
+ * for deriving one from the dataset. Features are reprojected to the pyramid coordinate reference
+ * system when the two differ.
+ * </p>
+ * <p>
+ * Tiles are rendered on every read, this tile set is typically wrapped in a
+ * {@link org.jeo.data.CachedTileSet}. The tile set is read only, {@link #put(Tile)} and
+ * {@link #putAll(Cursor)} throw {@link UnsupportedOperationException}.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class VectorTileSet implements TileSet {
+
+    public static final String MIME_PBF = "application/x-protobuf";
+    public static final String MIME_JSON = "application/json";
+
+    /** default number of tile units along a tile edge */
+    public static final int DEFAULT_EXTENT = 4096;
+
+    /** default buffer around the tile in pixels */
+    public static final int DEFAULT_BUFFER = 8;
+
+    /**
+     * Creates the pyramid vector tiles are rendered to by default, a global geographic pyramid
+     * with two root tiles and 20 zoom levels.
+     */
+    public static TilePyramid pyramid() {
+        return TilePyramid.build().bounds(-180,-90,180,90).crs(Proj.EPSG_4326)
+            .tileSize(256, 256).grids(20).pyramid();
+    }
+
+    /**
+     * Derives the pyramid to render a dataset to from its coordinate reference system.
+     * <p>
+     * Datasets in geographic coordinates, or with no coordinate reference system, are rendered
+     * to the global pyramid returned by {@link #pyramid()}. Projected datasets are rendered in
+     * their own coordinate reference system, to a pyramid of 20 zoom levels with a single root
+     * tile covering the dataset bounds. Such a pyramid follows the bounds of the dataset, so 
+     * tiles cached for it are only valid as long as the bounds do not change.
+     * </p>
+     */
+    public static TilePyramid pyramid(VectorData data) throws IOException {
+        CoordinateReferenceSystem crs = data.getCRS();
+        if (crs == null || crs.getProjection() instanceof LongLatProjection) {
+            return pyramid();
+        }
+
+        Envelope bounds = data.bounds();
+        if (bounds == null || bounds.isNull()) {
+            return pyramid();
+        }
+
+        // square the bounds about their center so the root level is a single tile
+        double size = Math.max(bounds.getWidth(), bounds.getHeight()) / 2d;
+        if (size == 0) {
+            return pyramid();
+        }
+
+        Coordinate c = bounds.centre();
+        return TilePyramid.build().bounds(c.x - size, c.y - size, c.x + size, c.y + size)
+            .crs(crs).tileSize(256, 256).grids(20).pyramid();
+    }
+
+    VectorData data;
+    TilePyramid pyramid;
+    String format;
+
+    int extent = DEFAULT_EXTENT;
+    int buffer = DEFAULT_BUFFER;
+
+    /**
+     * Creates a tile set rendering the specified dataset to the specified pyramid.
+     *
+     * @param data The dataset to render.
+     * @param pyramid The tile pyramid.
+     * @param format The tile format, one of <tt>pbf</tt>, <tt>json</tt>, or <tt>geojson</tt>.
+     *
+     * @throws IllegalArgumentException If the format is not supported.
+     */
+    public VectorTileSet(VectorData data, TilePyramid pyramid, String format) {
+        if (mimeType(format) == null) {
+            throw new IllegalArgumentException("Unsupported vector tile format: " + format);
+        }
+
+        this.data = data;
+        this.pyramid = pyramid;
+        this.format = format.toLowerCase();
+    }
+
+    /**
+     * Returns the mime type of a vector tile format, or <code>null</code> if the format is not
+     * supported.
+     */
+    public static String mimeType(String format) {
+        if ("pbf".equalsIgnoreCase(format)) {
+            return MIME_PBF;
+        }
+        if ("json".equalsIgnoreCase(format) || "geojson".equalsIgnoreCase(format)) {
+            return MIME_JSON;
+        }
+        return null;
+    }
+
+    /**
+     * The dataset rendered to tiles.
+     */
+    public VectorData getData() {
+        return data;
+    }
+
+    /**
+     * The tile format.
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * The number of tile units along a tile edge.
+     */
+    public int getExtent() {
+        return extent;
+    }
+
+    /**
+     * Sets the number of tile units along a tile edge, which determines the precision of tile
+     * coordinates.
+     */
+    public VectorTileSet extent(int extent) {
+        if (extent < 1) {
+            throw new IllegalArgumentException("extent must be positive");
+        }
+        this.extent = extent;
+        return this;
+    }
+
+    /**
+     * The number of pixels the tile bounds are expanded by when selecting and clipping features.
+     */
+    public int getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Sets the number of pixels the tile bounds are expanded by when selecting and clipping
+     * features, to avoid artifacts at tile edges when features are styled by the client.
+     */
+    public VectorTileSet buffer(int buffer) {
+        if (buffer < 0) {
+            throw new IllegalArgumentException("buffer must not be negative");
+        }
+        this.buffer = buffer;
+        return this;
+    }
+
+    @Override
+    public Driver<?> getDriver() {
+        return data.getDriver();
+    }
+
+    @Override
+    public Map<Key<?>, Object> getDriverOptions() {
+        return data.getDriverOptions();
+    }
+
+    @Override
+    public String getName() {
+        return data.getName();
+    }
+
+    @Override
+    public String getTitle() {
+        return data.getTitle();
+    }
+
+    @Override
+    public String getDescription() {
+        return data.getDescription();
+    }
+
+    @Override
+    public CoordinateReferenceSystem getCRS() throws IOException {
+        return pyramid.getCRS();
+    }
+
+    @Override
+    public Envelope bounds() throws IOException {
+        return pyramid.getBounds();
+    }
+
+    @Override
+    public TilePyramid getPyramid() throws IOException {
+        return pyramid;
+    }
+
+    @Override
+    public Tile read(long z, long x, long y) throws IOException {
+        TileGrid grid = pyramid.grid((int)z);
+        if (grid == null || x < 0 || y < 0 || x >= grid.getWidth() || y >= grid.getHeight()) {
+            return null;
+        }
+
+        Tile t = new Tile((int)z, (int)x, (int)y, null, mimeType(format));
+        Envelope bbox = pyramid.bounds(t);
+
+        double res = bbox.getWidth() / pyramid.getTileWidth();
+        Envelope clip = new Envelope(bbox);
+        clip.expandBy(buffer * res);
+
+        Query q = new Query().simplify(res);
+
+        CoordinateReferenceSystem crs = pyramid.getCRS();
+        CoordinateReferenceSystem dataCrs = data.getCRS();
+        if (crs != null && dataCrs != null && !Proj.equal(crs, dataCrs)) {
+            q.bounds(Proj.reproject(clip, crs, dataCrs)).reproject(dataCrs, crs);
+        }
+        else {
+            q.bounds(clip);
+        }
+
+        Schema schema = schema(data.getSchema());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Cursor<Feature> c = data.cursor(q);
+        try {
+            if ("pbf".equals(format)) {
+                ProtobufWriter w = new ProtobufWriter(out);
+                w.schema(schema);
+                while (c.hasNext()) {
+                    Feature f = render(c.next(), schema, bbox, clip);
+                    if (f != null) {
+                        w.feature(f);
+                    }
+                }
+                w.close();
+            }
+            else {
+                GeoJSONWriter w = new GeoJSONWriter(new OutputStreamWriter(out, "UTF-8"));
+                w.featureCollection();
+                while (c.hasNext()) {
+                    Feature f = render(c.next(), schema, bbox, clip);
+                    if (f != null) {
+                        w.feature(f);
+                    }
+                }
+                w.endFeatureCollection();
+                w.flush();
+            }
+        }
+        finally {
+            c.close();
+        }
+
+        return new Tile((int)z, (int)x, (int)y, out.toByteArray(), mimeType(format));
+    }
+
+    @Override
+    public Cursor<Tile> read(final long z1, final long z2, final long x1, final long x2,
+        final long y1, final long y2) throws IOException {
+
+        return new Cursor<Tile>() {
+            long z = z1, x = x1, y = y1;
+            Tile next;
+
+            @Override
+            public boolean hasNext() throws IOException {
+                while (next == null && z <= z2) {
+                    next = VectorTileSet.this.read(z, x, y);
+                    if (++y > y2) {
+                        y = y1;
+                        if (++x > x2) {
+                            x = x1;
+                            z++;
+                        }
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Tile next() throws IOException {
+                try {
+                    return next;
+                }
+                finally {
+                    next = null;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+        };
+    }
+
+    @Override
+    public void put(Tile t) throws IOException {
+        throw new UnsupportedOperationException("vector tiles are read only");
+    }
+
+    @Override
+    public long putAll(Cursor<Tile> tiles) throws IOException {
+        throw new UnsupportedOperationException("vector tiles are read only");
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Derives the schema of tile features, tile coordinates having no coordinate reference system.
+     */
+    Schema schema(Schema schema) {
+        List<Field> fields = new ArrayList<Field>();
+        for (Field fld : schema) {
+            fields.add(fld.isGeometry() ? new Field(fld.getName(), fld.getType()) : fld);
+        }
+        return new Schema(schema.getName(), fields);
+    }
+
+    /**
+     * Renders a feature to tile space, returning <code>null</code> if its geometry does not
+     * survive clipping and quantization.
+     */
+    Feature render(Feature f, Schema schema, Envelope bbox, Envelope clip) {
+        Geometry g = f.geometry();
+        if (g == null) {
+            return null;
+        }
+
+        g = quantize(clip(g, clip), bbox);
+        if (g == null || g.isEmpty()) {
+            return null;
+        }
+
+        Field geom = schema.geometry();
+        List<Object> values = new ArrayList<Object>(schema.size());
+        for (Field fld : schema) {
+            values.add(fld == geom ? g : f.get(fld.getName()));
+        }
+        return new ListFeature(f.getId(), values, schema);
+    }
+
+    Geometry clip(Geometry g, Envelope clip) {
+        Envelope e = g.getEnvelopeInternal();
+        if (clip.contains(e)) {
+            return g;
+        }
+        if (!clip.intersects(e)) {
+            return null;
+        }
+
+        try {
+            return g.intersection(g.getFactory().toGeometry(clip));
+        }
+        catch(TopologyException ex) {
+            // invalid geometry, leave it unclipped rather than drop it
+            return g;
+        }
+    }
+
+    Geometry quantize(Geometry g, final Envelope bbox) {
+        if (g == null) {
+            return null;
+        }
+
+        final double sx = extent / bbox.getWidth();
+        final double sy = extent / bbox.getHeight();
+
+        return new GeometryEditor().edit(g, new GeometryEditor.CoordinateOperation() {
+            @Override
+            public Coordinate[] edit(Coordinate[] coords, Geometry geom) {
+                List<Coordinate> q = new ArrayList<Coordinate>(coords.length);
+                Coordinate last = null;
+                for (Coordinate c : coords) {
+                    Coordinate t = new Coordinate(Math.round((c.x - bbox.getMinX()) * sx),
+                        Math.round((bbox.getMaxY() - c.y) * sy));
+                    if (last == null || !t.equals2D(last)) {
+                        q.add(t);
+                        last = t;
+                    }
+                }
+
+                // drop lines and rings that collapsed
+                int min = geom instanceof LinearRing ? 4 : coords.length > 1 ? 2 : 1;
+                if (q.size() < min) {
+                    return new Coordinate[0];
+                }
+                return q.toArray(new Coordinate[q.size()]);
+            }
+        });
+    }
+}
@@ -4,6 +4,11 @@ import static org.easymock.classextension.EasyMock.*;
 
 import static org.junit.Assert.*;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
 import org.jeo.data.Cursor;
 import org.jeo.data.Cursors;
 import org.jeo.data.Query;
@@ -11,8 +16,10 @@ import org.jeo.data.Registry;
 import org.jeo.data.VectorData;
 import org.jeo.data.Workspace;
 import org.jeo.feature.Feature;
+import org.jeo.feature.MapFeature;
 import org.jeo.feature.Schema;
 import org.jeo.geojson.GeoJSONReader;
+import org.jeo.geom.Geom;
 import org.jeo.nano.NanoHTTPD.Response;
 import org.junit.Test;
 
@@ -53,6 +60,166 @@ public class FeatureHandlerTest extends HandlerTestSupport {
         verify(layer, ws, reg);
     }
 
+    @Test
+    public void testGetSimplify() throws Exception {
+        VectorData layer = createMock(VectorData.class);
+        expect(layer.cursor(new Query().bounds(new Envelope(-180,180,-90,90)).simplify(0.5)))
+            .andReturn(Cursors.empty(Feature.class)).once();
+        replay(layer);
+
+        Workspace ws = createMock(Workspace.class);
+        expect(ws.get("bar")).andReturn(layer).once();
+        replay(ws);
+
+        Registry reg = createMock(Registry.class);
+        expect(reg.get("foo")).andReturn(ws).once();
+        replay(reg);
+
+        NanoJeoServer server = createMock(NanoJeoServer.class);
+        expect(server.getRegistry()).andReturn(reg).anyTimes();
+        replay(server);
+
+        Request req = new Request("/features/foo/bar", "GET", null, 
+            q("bbox=-180,-90,180,90&width=720"), null);
+        FeatureHandler h = new FeatureHandler();
+        assertTrue(h.canHandle(req, server));
+
+        Response res = h.handle(req, server);
+        assertEquals(NanoHTTPD.HTTP_OK, res.status);
+
+        verify(layer, ws, reg);
+    }
+
+    @Test
+    public void testGetSimplifyInvalid() throws Exception {
+        VectorData layer = createMock(VectorData.class);
+        replay(layer);
+
+        Workspace ws = createMock(Workspace.class);
+        expect(ws.get("bar")).andReturn(layer).anyTimes();
+        replay(ws);
+
+        Registry reg = createMock(Registry.class);
+        expect(reg.get("foo")).andReturn(ws).anyTimes();
+        replay(reg);
+
+        NanoJeoServer server = createMock(NanoJeoServer.class);
+        expect(server.getRegistry()).andReturn(reg).anyTimes();
+        replay(server);
+
+        FeatureHandler h = new FeatureHandler();
+        for (String q : new String[]{"simplify=abc", "simplify=-1", "simplify=NaN", "width=abc"}) {
+            Request req = new Request("/features/foo/bar", "GET", null, 
+                q("bbox=-180,-90,180,90&" + q), null);
+            assertTrue(h.canHandle(req, server));
+            try {
+                h.handle(req, server);
+                fail(q);
+            }
+            catch(HttpException e) {
+                assertEquals(q, NanoHTTPD.HTTP_BADREQUEST, e.toResponse().status);
+            }
+        }
+
+        // no cursor opened
+        verify(layer);
+    }
+
+    @Test
+    public void testGetStream() throws Exception {
+        Cursor<Feature> c = createMock(Cursor.class);
+        expect(c.hasNext()).andReturn(true).times(2);
+        expect(c.next()).andReturn(feature("0", 0, 0)).once();
+        expect(c.next()).andReturn(feature("1", 1, 1)).once();
+        expect(c.hasNext()).andReturn(false).once();
+        c.close();
+        expectLastCall().once();
+        replay(c);
+
+        VectorData layer = createMock(VectorData.class);
+        expect(layer.cursor((Query)anyObject())).andReturn(c).once();
+        replay(layer);
+
+        Workspace ws = createMock(Workspace.class);
+        expect(ws.get("bar")).andReturn(layer).once();
+        replay(ws);
+
+        Registry reg = createMock(Registry.class);
+        expect(reg.get("foo")).andReturn(ws).once();
+        replay(reg);
+
+        NanoJeoServer server = createMock(NanoJeoServer.class);
+        expect(server.getRegistry()).andReturn(reg).anyTimes();
+        replay(server);
+
+        Request req = 
+            new Request("/features/foo/bar", "GET", null, q("bbox=-180,-90,180,90"), null);
+        FeatureHandler h = new FeatureHandler();
+        assertTrue(h.canHandle(req, server));
+
+        Response res = h.handle(req, server);
+        assertEquals(NanoHTTPD.HTTP_OK, res.status);
+
+        // features are encoded as the response is read
+        assertTrue(res.data instanceof GeoJSONStream);
+
+        Cursor<Feature> features = (Cursor<Feature>) new GeoJSONReader().read(res.data);
+        assertEquals("zero", features.next().get("name"));
+        assertEquals("one", features.next().get("name"));
+        assertFalse(features.hasNext());
+        res.data.close();
+
+        verify(c, layer, ws, reg);
+    }
+
+    @Test
+    public void testGetGzip() throws Exception {
+        Cursor<Feature> c = createMock(Cursor.class);
+        expect(c.hasNext()).andReturn(true).once();
+        expect(c.next()).andReturn(feature("0", 0, 0)).once();
+        expect(c.hasNext()).andReturn(false).once();
+        c.close();
+        expectLastCall().once();
+        replay(c);
+
+        VectorData layer = createMock(VectorData.class);
+        expect(layer.cursor((Query)anyObject())).andReturn(c).once();
+        replay(layer);
+
+        Workspace ws = createMock(Workspace.class);
+        expect(ws.get("bar")).andReturn(layer).once();
+        replay(ws);
+
+        Registry reg = createMock(Registry.class);
+        expect(reg.get("foo")).andReturn(ws).once();
+        replay(reg);
+
+        NanoJeoServer server = createMock(NanoJeoServer.class);
+        expect(server.getRegistry()).andReturn(reg).anyTimes();
+        replay(server);
+
+        Properties header = new Properties();
+        header.setProperty("accept-encoding", "deflate, gzip;q=0.8");
+
+        Request req = new Request("/features/foo/bar", "GET", header, 
+            q("bbox=-180,-90,180,90"), null);
+        FeatureHandler h = new FeatureHandler();
+        assertTrue(h.canHandle(req, server));
+
+        Response res = h.handle(req, server);
+        assertEquals(NanoHTTPD.HTTP_OK, res.status);
+        assertEquals("gzip", res.header.getProperty("Content-Encoding"));
+        assertEquals("Accept-Encoding", res.header.getProperty("Vary"));
+
+        Cursor<Feature> features = 
+            (Cursor<Feature>) new GeoJSONReader().read(new GZIPInputStream(res.data));
+        assertEquals("zero", features.next().get("name"));
+        assertFalse(features.hasNext());
+        res.data.close();
+
+        verify(c, layer, ws, reg);
+    }
+
     @Test
     public void testPostAddFeatures() throws Exception {
         Feature f = createNiceMock(Feature.class);
@@ -125,6 +292,13 @@ public class FeatureHandlerTest extends HandlerTestSupport {
         verify(layer, ws, reg);
     }
 
+    Feature feature(String id, double x, double y) {
+        Map<String,Object> values = new LinkedHashMap<String, Object>();
+        values.put("geometry", Geom.point(x, y));
+        values.put("name", "0".equals(id) ? "zero" : "one");
+        return new MapFeature(id, values);
+    }
+
     String dequote(String json) {
         return json.replaceAll("'", "\"");
     }
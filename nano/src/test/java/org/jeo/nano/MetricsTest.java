@@ -0,0 +1,144 @@
+package org.jeo.nano;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+
+import org.jeo.data.Cursor;
+import org.jeo.data.Cursors;
+import org.jeo.data.SimpleRegistry;
+import org.jeo.data.mem.MemVector;
+import org.jeo.feature.Schema;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Point;
+
+public class MetricsTest {
+
+    @Test
+    public void testWrite() throws Exception {
+        Metrics m = new Metrics(new double[]{0.1, 1});
+        m.counter("requests_total", "Requests", "handler", "foo").inc(2);
+        m.counter("requests_total", "Requests", "handler", "foo").inc();
+        m.gauge("in_flight", "In flight").inc();
+
+        Metrics.Histogram h = m.histogram("time_seconds", "Time", "handler", "foo");
+        h.observe(50000000);
+        h.observe(500000000);
+        h.observe(5000000000L);
+
+        StringWriter out = new StringWriter();
+        m.write(out);
+
+        String text = out.toString();
+        assertTrue(text.contains("# TYPE requests_total counter\n"));
+        assertTrue(text.contains("requests_total{handler=\"foo\"} 3\n"));
+        assertTrue(text.contains("# TYPE in_flight gauge\n"));
+        assertTrue(text.contains("in_flight 1\n"));
+        assertTrue(text.contains("# TYPE time_seconds histogram\n"));
+        assertTrue(text.contains("time_seconds_bucket{handler=\"foo\",le=\"0.1\"} 1\n"));
+        assertTrue(text.contains("time_seconds_bucket{handler=\"foo\",le=\"1\"} 2\n"));
+        assertTrue(text.contains("time_seconds_bucket{handler=\"foo\",le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("time_seconds_sum{handler=\"foo\"} 5.55\n"));
+        assertTrue(text.contains("time_seconds_count{handler=\"foo\"} 3\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeMismatch() {
+        Metrics m = new Metrics();
+        m.counter("foo", "Foo");
+        m.gauge("foo", "Foo");
+    }
+
+    @Test
+    public void testTimeCursor() throws Exception {
+        Metrics m = new Metrics();
+
+        Cursor<String> c = Metrics.time(
+            Cursors.create(Arrays.asList("a", "b", "c")), m, "foo");
+        while (c.hasNext()) {
+            c.next();
+        }
+        c.close();
+        c.close();
+
+        assertEquals(3, m.counter("jeo_cursor_reads_total", "", "dataset", "foo").get());
+        assertEquals(1, m.histogram("jeo_cursor_seconds", "", "dataset", "foo").getCount());
+    }
+
+    @Test
+    public void testServer() throws Exception {
+        NanoJeoServer server = new NanoJeoServer(0, null, new SimpleRegistry());
+        try {
+            String root = "http://localhost:" + server.getPort();
+            HttpURLConnection cx = (HttpURLConnection) new URL(root + "/").openConnection();
+            assertEquals(200, cx.getResponseCode());
+
+            // buffered responses keep their length once metered
+            String body = read(cx.getInputStream());
+            assertEquals(body.getBytes("UTF-8").length, cx.getContentLength());
+
+            cx = (HttpURLConnection) new URL(root + "/metrics").openConnection();
+            assertEquals(200, cx.getResponseCode());
+
+            String text = read(cx.getInputStream());
+            assertTrue(text,
+                text.contains("jeo_http_requests_total{handler=\"RootHandler\",status=\"200\"} 1"));
+            assertTrue(text, text.contains("jeo_http_response_bytes_total{handler=\"RootHandler\"}"));
+            assertTrue(text, text.contains("jeo_tile_cache_hits_total{cache=\"0\"} 0"));
+            assertTrue(text, text.contains("# TYPE jeo_http_requests_in_flight gauge"));
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testServerDataset() throws Exception {
+        SimpleRegistry reg = new SimpleRegistry();
+        reg.put("points", 
+            new MemVector(Schema.build("points").field("geom", Point.class).schema()));
+
+        NanoJeoServer server = new NanoJeoServer(0, null, reg);
+        try {
+            String root = "http://localhost:" + server.getPort();
+            HttpURLConnection cx = (HttpURLConnection) 
+                new URL(root + "/features/points?bbox=0,0,1,1").openConnection();
+            assertEquals(200, cx.getResponseCode());
+            read(cx.getInputStream());
+
+            assertEquals(404, ((HttpURLConnection) new URL(root + "/features/foo123?bbox=0,0,1,1")
+                .openConnection()).getResponseCode());
+
+            cx = (HttpURLConnection) new URL(root + "/metrics").openConnection();
+            assertEquals(200, cx.getResponseCode());
+
+            String text = read(cx.getInputStream());
+            assertTrue(text, text.contains(
+                "jeo_http_request_seconds_count{handler=\"FeatureHandler\",dataset=\"points\"}"));
+            assertTrue(text, text.contains(
+                "jeo_http_request_seconds_count{handler=\"FeatureHandler\",dataset=\"unknown\"}"));
+            assertTrue(text, text.contains("jeo_cursor_reads_total{dataset=\"points\"}"));
+            assertFalse(text, text.contains("foo123"));
+        }
+        finally {
+            server.stop();
+        }
+    }
+
+    String read(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,184 @@
+package org.jeo.nano;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class NanoHTTPDTest {
+
+    NanoHTTPD server;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testKeepAlive() throws Exception {
+        server = new NanoHTTPD(0, null, new ServerOpts()) {
+            @Override
+            public Response serve(String uri, String method, Properties header, Properties parms,
+                Properties files) {
+                return new Response(HTTP_OK, MIME_PLAINTEXT, uri);
+            }
+        };
+
+        Socket s = new Socket("localhost", server.getPort());
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+            OutputStream out = s.getOutputStream();
+
+            out.write("GET /foo HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+            out.flush();
+            assertEquals("/foo", readBody(in, "keep-alive"));
+
+            out.write("GET /bar HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes());
+            out.flush();
+            assertEquals("/bar", readBody(in, "close"));
+            assertNull(in.readLine());
+        }
+        finally {
+            s.close();
+        }
+    }
+
+    @Test
+    public void testChunked() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append(i).append(",");
+        }
+
+        server = new NanoHTTPD(0, null, new ServerOpts()) {
+            @Override
+            public Response serve(String uri, String method, Properties header, Properties parms,
+                Properties files) {
+                // stream of unknown length
+                return new Response(HTTP_OK, MIME_PLAINTEXT,
+                    new BufferedInputStream(new ByteArrayInputStream(sb.toString().getBytes())));
+            }
+        };
+
+        Socket s = new Socket("localhost", server.getPort());
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+            OutputStream out = s.getOutputStream();
+
+            for (int i = 0; i < 2; i++) {
+                out.write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+                out.flush();
+
+                assertEquals("HTTP/1.1 " + NanoHTTPD.HTTP_OK, in.readLine().trim());
+
+                boolean chunked = false;
+                String line = null;
+                while ((line = in.readLine()).length() > 0) {
+                    assertFalse(line.toLowerCase().startsWith("content-length"));
+                    if (line.equalsIgnoreCase("Transfer-Encoding: chunked")) {
+                        chunked = true;
+                    }
+                }
+                assertTrue(chunked);
+
+                StringBuilder body = new StringBuilder();
+                int size;
+                while ((size = Integer.parseInt(in.readLine().trim(), 16)) > 0) {
+                    char[] chunk = new char[size];
+                    int n = 0;
+                    while (n < size) {
+                        n += in.read(chunk, n, size - n);
+                    }
+                    body.append(chunk);
+                    assertEquals("", in.readLine());
+                }
+                assertEquals("", in.readLine());
+                assertEquals(sb.toString(), body.toString());
+            }
+        }
+        finally {
+            s.close();
+        }
+    }
+
+    @Test
+    public void testRefuse() throws Exception {
+        final CountDownLatch serving = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        server = new NanoHTTPD(0, null, new ServerOpts().maxThreads(1).maxQueued(0)) {
+            @Override
+            public Response serve(String uri, String method, Properties header, Properties parms,
+                Properties files) {
+                serving.countDown();
+                try {
+                    done.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                }
+                return new Response(HTTP_OK, MIME_PLAINTEXT, "ok");
+            }
+        };
+
+        Socket s1 = new Socket("localhost", server.getPort());
+        Socket s2 = null;
+        try {
+            s1.getOutputStream().write("GET / HTTP/1.0\r\n\r\n".getBytes());
+            s1.getOutputStream().flush();
+            assertTrue(serving.await(10, TimeUnit.SECONDS));
+
+            s2 = new Socket("localhost", server.getPort());
+            BufferedReader in = new BufferedReader(new InputStreamReader(s2.getInputStream()));
+            assertEquals("HTTP/1.0 " + NanoHTTPD.HTTP_UNAVAILABLE, in.readLine().trim());
+
+            done.countDown();
+            in = new BufferedReader(new InputStreamReader(s1.getInputStream()));
+            assertEquals("HTTP/1.0 " + NanoHTTPD.HTTP_OK, in.readLine().trim());
+        }
+        finally {
+            done.countDown();
+            s1.close();
+            if (s2 != null) {
+                s2.close();
+            }
+        }
+    }
+
+    String readBody(BufferedReader in, String connection) throws IOException {
+        assertEquals("HTTP/1.1 " + NanoHTTPD.HTTP_OK, in.readLine().trim());
+
+        int length = -1;
+        String line = null;
+        while ((line = in.readLine()).length() > 0) {
+            int i = line.indexOf(':');
+            String name = line.substring(0, i).trim();
+            String value = line.substring(i+1).trim();
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                length = Integer.parseInt(value);
+            }
+            if ("Connection".equalsIgnoreCase(name)) {
+                assertEquals(connection, value);
+            }
+        }
+        assertTrue(length >= 0);
+
+        char[] body = new char[length];
+        int n = 0;
+        while (n < length) {
+            n += in.read(body, n, length - n);
+        }
+        return new String(body);
+    }
+}
@@ -1,11 +1,13 @@
 package org.jeo.nano;
 
 import static org.easymock.classextension.EasyMock.*;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
+
+import java.util.Properties;
 
 import org.jeo.data.Registry;
 import org.jeo.data.Tile;
+import org.jeo.data.TileCache;
 import org.jeo.data.TileSet;
 import org.jeo.data.Workspace;
 import org.jeo.nano.NanoHTTPD.Response;
@@ -41,4 +43,84 @@ public class TileHandlerTest extends HandlerTestSupport {
 
         verify(layer, ws, reg);
     }
+
+    @Test
+    public void testGetCached() throws Exception {
+        TileSet layer = createMock(TileSet.class);
+        expect(layer.read(1, 2, 3)).andReturn(new Tile(1,2,3,new byte[]{},"image/png")).once();
+        replay(layer);
+
+        Workspace ws = createMock(Workspace.class);
+        expect(ws.get("bar")).andReturn(layer).times(2);
+        replay(ws);
+
+        Registry reg = createMock(Registry.class);
+        expect(reg.get("foo")).andReturn(ws).times(2);
+        replay(reg);
+
+        NanoJeoServer server = createMock(NanoJeoServer.class);
+        expect(server.getRegistry()).andReturn(reg).anyTimes();
+        replay(server);
+
+        TileCache cache = new TileCache();
+        TileHandler h = new TileHandler(cache);
+        for (int i = 0; i < 2; i++) {
+            Request req = new Request("/tiles/foo/bar/1/2/3.png", "GET", null, null, null);
+            assertTrue(h.canHandle(req, server));
+
+            Response res = h.handle(req, server);
+            assertEquals(NanoHTTPD.HTTP_OK, res.status);
+            assertEquals("image/png", res.mimeType);
+
+            // tag from the cached digest same as from hashing the tile
+            assertEquals(h.etag(new byte[]{}), res.header.getProperty("ETag"));
+        }
+
+        assertEquals(1, cache.getHitCount());
+        verify(layer, ws, reg);
+    }
+
+    @Test
+    public void testGetNotModified() throws Exception {
+        TileSet layer = createMock(TileSet.class);
+        expect(layer.read(1, 2, 3)).andReturn(new Tile(1,2,3,new byte[]{1,2,3},"image/png"))
+            .times(2);
+        replay(layer);
+
+        Workspace ws = createMock(Workspace.class);
+        expect(ws.get("bar")).andReturn(layer).times(2);
+        replay(ws);
+
+        Registry reg = createMock(Registry.class);
+        expect(reg.get("foo")).andReturn(ws).times(2);
+        replay(reg);
+
+        NanoJeoServer server = createMock(NanoJeoServer.class);
+        expect(server.getRegistry()).andReturn(reg).anyTimes();
+        replay(server);
+
+        TileHandler h = new TileHandler();
+        h.setMaxAge(60);
+
+        Request req = new Request("/tiles/foo/bar/1/2/3.png", "GET", new Properties(), null, null);
+        assertTrue(h.canHandle(req, server));
+
+        Response res = h.handle(req, server);
+        assertEquals(NanoHTTPD.HTTP_OK, res.status);
+        assertEquals("public, max-age=60", res.header.getProperty("Cache-Control"));
+
+        String etag = res.header.getProperty("ETag");
+        assertNotNull(etag);
+        assertTrue(etag.startsWith("\""));
+
+        req = new Request("/tiles/foo/bar/1/2/3.png", "GET", h("if-none-match: " + etag), null, null);
+        assertTrue(h.canHandle(req, server));
+
+        res = h.handle(req, server);
+        assertEquals(NanoHTTPD.HTTP_NOTMODIFIED, res.status);
+        assertNull(res.data);
+        assertEquals(etag, res.header.getProperty("ETag"));
+
+        verify(layer, ws, reg);
+    }
 }
@@ -0,0 +1,173 @@
+package org.jeo.nano;
+
+import static org.easymock.classextension.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.jeo.data.Cursor;
+import org.jeo.data.Cursors;
+import org.jeo.data.Query;
+import org.jeo.data.Registry;
+import org.jeo.data.TileCache;
+import org.jeo.data.VectorData;
+import org.jeo.data.Workspace;
+import org.jeo.feature.Feature;
+import org.jeo.feature.ListFeature;
+import org.jeo.feature.Schema;
+import org.jeo.geojson.GeoJSONReader;
+import org.jeo.geom.Geom;
+import org.jeo.nano.NanoHTTPD.Response;
+import org.jeo.proj.Proj;
+import org.jeo.protobuf.ProtobufReader;
+import org.junit.Test;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+
+public class VectorTileHandlerTest extends HandlerTestSupport {
+
+    Schema schema = Schema.build("bar").field("geometry", Geometry.class, Proj.EPSG_4326)
+        .field("name", String.class).schema();
+
+    @Test
+    public void testGetJSON() throws Exception {
+        NanoJeoServer server = createServer(layer(1));
+
+        Request req = new Request("/vtiles/foo/bar/0/0/0.json", "GET", null, null, null);
+        VectorTileHandler h = new VectorTileHandler();
+        assertTrue(h.canHandle(req, server));
+
+        Response res = h.handle(req, server);
+        assertEquals(NanoHTTPD.HTTP_OK, res.status);
+        assertEquals(VectorTileSet.MIME_JSON, res.mimeType);
+
+        Cursor<Feature> features = (Cursor<Feature>) new GeoJSONReader().read(res.data);
+        assertFeatures(features.next(), features.next());
+        assertFalse(features.hasNext());
+    }
+
+    @Test
+    public void testGetProtobuf() throws Exception {
+        NanoJeoServer server = createServer(layer(1));
+
+        Request req = new Request("/vtiles/foo/bar/0/0/0.pbf", "GET", null, null, null);
+        VectorTileHandler h = new VectorTileHandler();
+        assertTrue(h.canHandle(req, server));
+
+        Response res = h.handle(req, server);
+        assertEquals(NanoHTTPD.HTTP_OK, res.status);
+        assertEquals(VectorTileSet.MIME_PBF, res.mimeType);
+
+        ProtobufReader reader = new ProtobufReader(res.data);
+        Schema s = reader.schema();
+        assertEquals(Arrays.asList("geometry", "name"),
+            Arrays.asList(s.getFields().get(0).getName(), s.getFields().get(1).getName()));
+        assertFeatures(reader.feature(s), reader.feature(s));
+        assertNull(reader.feature(s));
+    }
+
+    @Test
+    public void testGetCached() throws Exception {
+        NanoJeoServer server = createServer(layer(1));
+
+        TileCache cache = new TileCache();
+        VectorTileHandler h = new VectorTileHandler(cache);
+        for (int i = 0; i < 2; i++) {
+            Request req = new Request("/vtiles/foo/bar/0/0/0.json", "GET", null, null, null);
+            assertTrue(h.canHandle(req, server));
+            assertEquals(NanoHTTPD.HTTP_OK, h.handle(req, server).status);
+        }
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testGetOutsidePyramid() throws Exception {
+        NanoJeoServer server = createServer(layer(0));
+
+        Request req = new Request("/vtiles/foo/bar/0/2/0.json", "GET", null, null, null);
+        VectorTileHandler h = new VectorTileHandler();
+        assertTrue(h.canHandle(req, server));
+        assertEquals(NanoHTTPD.HTTP_NOTFOUND, h.handle(req, server).status);
+    }
+
+    @Test
+    public void testGetProjected() throws Exception {
+        CoordinateReferenceSystem utm = Proj.crs("EPSG:26713");
+        Schema s = Schema.build("bar").field("geometry", Point.class, utm).schema();
+
+        VectorData layer = createMock(VectorData.class);
+        expect(layer.getCRS()).andReturn(utm).anyTimes();
+        expect(layer.getSchema()).andReturn(s).anyTimes();
+        expect(layer.bounds()).andReturn(new Envelope(0, 100, 0, 50)).anyTimes();
+        expect(layer.cursor((Query) anyObject())).andReturn(Cursors.create(Arrays.asList(
+            (Feature) new ListFeature("0", Arrays.asList((Object)Geom.point(25, 25)), s))));
+        replay(layer);
+
+        NanoJeoServer server = createServer(layer);
+
+        Request req = new Request("/vtiles/foo/bar/0/0/0.json", "GET", null, null, null);
+        VectorTileHandler h = new VectorTileHandler();
+        assertTrue(h.canHandle(req, server));
+
+        Response res = h.handle(req, server);
+        assertEquals(NanoHTTPD.HTTP_OK, res.status);
+
+        // single root tile spanning 0,-25 to 100,75 in the dataset crs
+        Cursor<Feature> features = (Cursor<Feature>) new GeoJSONReader().read(res.data);
+        assertEquals(new Coordinate(1024, 2048), features.next().geometry().getCoordinate());
+        assertFalse(features.hasNext());
+
+        req = new Request("/vtiles/foo/bar/0/1/0.json", "GET", null, null, null);
+        assertTrue(h.canHandle(req, server));
+        assertEquals(NanoHTTPD.HTTP_NOTFOUND, h.handle(req, server).status);
+    }
+
+    void assertFeatures(Feature pt, Feature line) {
+        // tile 0/0/0 spans -180,-90 to 0,90 over 4096 tile units
+        Point p = (Point) pt.geometry();
+        assertEquals(new Coordinate(2048, 1024), p.getCoordinate());
+
+        // clipped to the tile bounds plus an 8 pixel buffer
+        LineString l = (LineString) line.geometry();
+        assertEquals(2, l.getNumPoints());
+        assertEquals(new Coordinate(2048, 2048), l.getCoordinateN(0));
+        assertEquals(new Coordinate(4224, 2048), l.getCoordinateN(1));
+        assertEquals("line", line.get("name"));
+    }
+
+    VectorData layer(int reads) throws Exception {
+        VectorData layer = createMock(VectorData.class);
+        expect(layer.getCRS()).andReturn(Proj.EPSG_4326).anyTimes();
+        expect(layer.getSchema()).andReturn(schema).anyTimes();
+        if (reads > 0) {
+            expect(layer.cursor((Query) anyObject())).andReturn(Cursors.create(Arrays.asList(
+                (Feature) new ListFeature("0", 
+                    Arrays.asList((Object)Geom.point(-90, 45), "point"), schema),
+                new ListFeature("1", 
+                    Arrays.asList((Object)Geom.lineString(-90, 0, 90, 0), "line"), schema)
+            ))).times(reads);
+        }
+        replay(layer);
+        return layer;
+    }
+
+    NanoJeoServer createServer(VectorData layer) throws Exception {
+        Workspace ws = createMock(Workspace.class);
+        expect(ws.get("bar")).andReturn(layer).anyTimes();
+        replay(ws);
+
+        Registry reg = createMock(Registry.class);
+        expect(reg.get("foo")).andReturn(ws).anyTimes();
+        replay(reg);
+
+        NanoJeoServer server = createMock(NanoJeoServer.class);
+        expect(server.getRegistry()).andReturn(reg).anyTimes();
+        replay(server);
+        return server;
+    }
+}
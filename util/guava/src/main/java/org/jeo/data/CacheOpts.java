@@ -0,0 +1,119 @@
+package org.jeo.data;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options for {@link CachedRegistry}.
+ * <p>
+ * The size of the cache is bounded by the total weight of its entries. By default every entry
+ * weighs one, making the maximum weight the maximum number of cached objects. A {@link Weigher}
+ * can account for objects that hold more resources than others, for example weighing a
+ * workspace by the number of connections it pools.
+ * </p>
+ * @author Justin Deoliveira, OpenGeo
+ */
+public class CacheOpts {
+
+    /**
+     * Computes the weight of a cached object.
+     */
+    public static interface Weigher {
+        /**
+         * Returns the weight of an object obtained from the registry, must not be negative.
+         */
+        int weigh(String key, Object obj);
+    }
+
+    long maxWeight = 20;
+    Weigher weigher;
+    long expireAfterAccess = 0;
+    int layerCacheSize = 20;
+    long listExpiry = TimeUnit.SECONDS.toMillis(30);
+    TileCache tileCache = new TileCache();
+
+    /**
+     * Sets the maximum total weight of cached objects.
+     */
+    public CacheOpts maxWeight(long maxWeight) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("max weight must be positive");
+        }
+        this.maxWeight = maxWeight;
+        return this;
+    }
+
+    /**
+     * Sets the weigher for cached objects, <code>null</code> to weigh every object as one.
+     */
+    public CacheOpts weigher(Weigher weigher) {
+        this.weigher = weigher;
+        return this;
+    }
+
+    /**
+     * Sets the time after which an object not accessed is evicted, <tt>0</tt> to only evict
+     * objects to respect the maximum weight.
+     */
+    public CacheOpts expireAfterAccess(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("expiry must not be negative");
+        }
+        this.expireAfterAccess = unit.toMillis(duration);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of datasets cached per workspace.
+     */
+    public CacheOpts layerCacheSize(int layerCacheSize) {
+        if (layerCacheSize < 1) {
+            throw new IllegalArgumentException("layer cache size must be positive");
+        }
+        this.layerCacheSize = layerCacheSize;
+        return this;
+    }
+
+    /**
+     * Sets the time the listing of the registry is cached for, <tt>0</tt> to not cache it.
+     */
+    public CacheOpts listExpiry(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("expiry must not be negative");
+        }
+        this.listExpiry = unit.toMillis(duration);
+        return this;
+    }
+
+    /**
+     * Sets the cache for tiles of tile sets obtained from the registry, <code>null</code> to not
+     * cache tiles.
+     */
+    public CacheOpts tileCache(TileCache tileCache) {
+        this.tileCache = tileCache;
+        return this;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public Weigher getWeigher() {
+        return weigher;
+    }
+
+    public long getExpireAfterAccess() {
+        return expireAfterAccess;
+    }
+
+    public int getLayerCacheSize() {
+        return layerCacheSize;
+    }
+
+    public long getListExpiry() {
+        return listExpiry;
+    }
+
+    public TileCache getTileCache() {
+        return tileCache;
+    }
+}
@@ -1,88 +1,378 @@
 package org.jeo.data;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.jeo.feature.Feature;
 import org.jeo.feature.Schema;
 import org.jeo.util.Key;
+import org.jeo.util.Optional;
+import org.osgeo.proj4j.CoordinateReferenceSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.vividsolutions.jts.geom.Envelope;
 
+/**
+ * Registry that caches the objects, and the datasets of workspaces, of another registry.
+ * <p>
+ * Cached objects are closed when evicted, either to respect the maximum weight of the cache or
+ * because they have not been accessed for the configured time, see {@link CacheOpts}. Objects
+ * are reference counted: cursors opened on cached datasets, and calls in progress on them, keep
+ * their workspace open until they complete even if the workspace is evicted in the meantime.
+ * </p>
+ * <p>
+ * Workspaces obtained from this registry are shared, closing them has no effect.
+ * </p>
+ */
 public class CachedRegistry implements Registry {
 
     static Logger LOG = LoggerFactory.getLogger(CachedRegistry.class);
 
     Registry reg;
-    LoadingCache<String, Object> wsCache;
+    CacheOpts opts;
+    LoadingCache<String, Entry> wsCache;
+    TileCache tileCache;
+    volatile Supplier<List<Item>> list;
 
     public CachedRegistry(Registry reg) {
         this(reg, 20);
     }
 
     public CachedRegistry(Registry reg, final int cacheSize) {
+        this(reg, cacheSize, new TileCache());
+    }
+
+    /**
+     * Creates a cached registry.
+     *
+     * @param reg The registry to cache.
+     * @param cacheSize The maximum number of workspaces, and layers per workspace, to cache.
+     * @param tileCache Cache for tiles of tile sets obtained from the registry, may be
+     *   <code>null</code> to not cache tiles.
+     */
+    public CachedRegistry(Registry reg, final int cacheSize, final TileCache tileCache) {
+        this(reg, new CacheOpts().maxWeight(cacheSize).layerCacheSize(cacheSize)
+            .tileCache(tileCache));
+    }
+
+    /**
+     * Creates a cached registry.
+     *
+     * @param reg The registry to cache.
+     * @param opts The cache options.
+     */
+    public CachedRegistry(Registry reg, final CacheOpts opts) {
         this.reg = reg;
-        wsCache = CacheBuilder.newBuilder().maximumSize(cacheSize)
-            .removalListener(new RemovalListener<String, Object>() {
+        this.opts = opts;
+        this.tileCache = opts.getTileCache();
+
+        CacheBuilder<Object,Object> b = CacheBuilder.newBuilder().recordStats()
+            .maximumWeight(opts.getMaxWeight());
+        if (opts.getExpireAfterAccess() > 0) {
+            b.expireAfterAccess(opts.getExpireAfterAccess(), TimeUnit.MILLISECONDS);
+        }
+
+        wsCache = b.weigher(new Weigher<String, Entry>() {
                 @Override
-                public void onRemoval(RemovalNotification<String, Object> n) {
-                    Object val = n.getValue();
-                    if (val instanceof Disposable) {
-                        ((Disposable) val).close();
+                public int weigh(String key, Entry e) {
+                    if (e == Entry.MISSING) {
+                        return 0;
                     }
+                    CacheOpts.Weigher w = opts.getWeigher();
+                    return w != null ? w.weigh(key, e.ref.obj) : 1;
                 }
-            }).build(new CacheLoader<String, Object>() {
+            })
+            .removalListener(new RemovalListener<String, Entry>() {
                 @Override
-                public Object load(String key) throws Exception {
-                    Object obj = CachedRegistry.this.reg.get(key);
-                    if (obj instanceof Workspace) {
-                        return new CachedWorkspace((Workspace) obj, cacheSize);
+                public void onRemoval(RemovalNotification<String, Entry> n) {
+                    // drop the reference held by the cache, the object is closed once no
+                    // longer in use
+                    Entry e = n.getValue();
+                    if (e != Entry.MISSING) {
+                        e.ref.release();
                     }
-                    return obj;
+                }
+            }).build(new CacheLoader<String, Entry>() {
+                @Override
+                public Entry load(String key) throws Exception {
+                    return entry(key, CachedRegistry.this.reg.get(key));
                 }
             });
+
+        list = lister();
+    }
+
+    Entry entry(String key, Object obj) {
+        if (obj == null) {
+            // guava caches don't hold nulls
+            return Entry.MISSING;
+        }
+
+        Ref ref = new Ref(key, obj);
+        if (obj instanceof Workspace) {
+            return new Entry(new CachedWorkspace((Workspace) obj, ref, key), ref);
+        }
+        if (obj instanceof Dataset) {
+            return new Entry(track((Dataset) obj, ref, key, tileCache), ref);
+        }
+        return new Entry(obj, ref);
     }
 
     @Override
     public Iterable<Item> list() {
-        //TODO: might want to cache this
-        return reg.list();
+        return list.get();
     }
 
+    /**
+     * Returns the cached object for the key, loading it from the underlying registry if need be.
+     * <p>
+     * Keys the registry has no object for are not cached. Should loading fail the object is
+     * obtained from the registry directly, uncached and owned by the caller.
+     * </p>
+     */
     @Override
     public Object get(String key) throws IOException {
+        Entry e;
         try {
-            return wsCache.get(key);
-        } catch (ExecutionException e) {
-            LOG.warn("Error loading object from cache", e);
+            e = wsCache.get(key);
+        } catch (Exception ex) {
+            LOG.warn("Error loading " + key + " into cache", ex);
             return reg.get(key);
         }
+
+        if (e == Entry.MISSING) {
+            // unless the object has been loaded since
+            wsCache.asMap().remove(key, Entry.MISSING);
+            return null;
+        }
+        return e.value;
+    }
+
+    /**
+     * The cache options.
+     */
+    public CacheOpts getOpts() {
+        return opts;
+    }
+
+    /**
+     * The tile cache, or <code>null</code> if tiles are not cached.
+     */
+    public TileCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * Statistics of the cache of objects obtained from the registry.
+     */
+    public CacheStats getStats() {
+        return wsCache.stats();
+    }
+
+    /**
+     * The number of objects currently cached.
+     */
+    public long size() {
+        return wsCache.size();
+    }
+
+    /**
+     * Evicts all cached objects and the cached listing of the registry.
+     */
+    public void invalidate() {
+        wsCache.invalidateAll();
+        list = lister();
+    }
+
+    /**
+     * Creates the supplier of the registry listing, cached if configured.
+     */
+    Supplier<List<Item>> lister() {
+        Supplier<List<Item>> s = new Supplier<List<Item>>() {
+            @Override
+            public List<Item> get() {
+                List<Item> items = new ArrayList<Item>();
+                for (Item it : reg.list()) {
+                    items.add(it);
+                }
+                return Collections.unmodifiableList(items);
+            }
+        };
+        if (opts.getListExpiry() > 0) {
+            s = Suppliers.memoizeWithExpiration(s, opts.getListExpiry(), TimeUnit.MILLISECONDS);
+        }
+        return s;
     }
 
     @Override
     public void close() {
         wsCache.invalidateAll();
+        if (tileCache != null) {
+            tileCache.clear();
+        }
         reg.close();
     }
 
-    static class CachedWorkspace implements Workspace {
+    /**
+     * Wraps a dataset so that its use holds a reference to the object it came from.
+     */
+    static Dataset track(Dataset data, Ref ref, String key, TileCache tileCache) {
+        if (data instanceof VectorData) {
+            return new TrackedVectorData((VectorData) data, ref);
+        }
+        if (data instanceof TileSet) {
+            TileSet ts = new TrackedTileSet((TileSet) data, ref);
+            return tileCache != null ? new CachedTileSet(ts, tileCache, key) : ts;
+        }
+        return data;
+    }
+
+    /**
+     * Cache entry, the object handed out along with the reference to the underlying object.
+     */
+    static class Entry {
+        /** marks a key the registry has no object for */
+        static final Entry MISSING = new Entry(null, null);
+
+        final Object value;
+        final Ref ref;
+
+        Entry(Object value, Ref ref) {
+            this.value = value;
+            this.ref = ref;
+        }
+    }
+
+    /**
+     * Reference count of an object obtained from the registry.
+     * <p>
+     * The cache holds one reference for as long as the object is cached, and every use of the
+     * object holds another. The object is closed when the count drops to zero, after which it
+     * can no longer be acquired.
+     * </p>
+     */
+    static class Ref {
+        final String key;
+        final Object obj;
+        final AtomicInteger count = new AtomicInteger(1);
+
+        Ref(String key, Object obj) {
+            this.key = key;
+            this.obj = obj;
+        }
+
+        void acquire() throws IOException {
+            for (;;) {
+                int c = count.get();
+                if (c <= 0) {
+                    throw new IOException(key + " has been closed");
+                }
+                if (count.compareAndSet(c, c+1)) {
+                    return;
+                }
+            }
+        }
+
+        void release() {
+            if (count.decrementAndGet() == 0 && obj instanceof Disposable) {
+                try {
+                    ((Disposable) obj).close();
+                }
+                catch(Exception e) {
+                    LOG.debug("Error closing " + key, e);
+                }
+            }
+        }
+
+        boolean isClosed() {
+            return count.get() <= 0;
+        }
+    }
+
+    /**
+     * Cursor releasing a reference when closed.
+     */
+    static class TrackedCursor<T> extends Cursor<T> {
+        Cursor<T> delegate;
+        Ref ref;
+        boolean closed;
+
+        TrackedCursor(Cursor<T> delegate, Ref ref) {
+            super(delegate.getMode());
+            this.delegate = delegate;
+            this.ref = ref;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public T next() throws IOException {
+            return delegate.next();
+        }
+
+        @Override
+        protected void doWrite() throws IOException {
+            delegate.write();
+        }
+
+        @Override
+        protected void doRemove() throws IOException {
+            delegate.remove();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                delegate.close();
+            }
+            finally {
+                ref.release();
+            }
+        }
+    }
+
+    static <T> Cursor<T> track(Cursor<T> cursor, Ref ref) {
+        return new TrackedCursor<T>(cursor, ref);
+    }
+
+    class CachedWorkspace implements Workspace {
 
         Workspace ws;
-        LoadingCache<String,Dataset> layerCache;
+        Ref ref;
+        LoadingCache<String,Optional<Dataset>> layerCache;
 
-        CachedWorkspace(Workspace ws, int cacheSize) {
+        CachedWorkspace(Workspace ws, final Ref ref, final String wsKey) {
             this.ws = ws;
-            layerCache = CacheBuilder.newBuilder().maximumSize(cacheSize)
-                .build(new CacheLoader<String, Dataset>() {
+            this.ref = ref;
+            layerCache = CacheBuilder.newBuilder().maximumSize(opts.getLayerCacheSize())
+                .build(new CacheLoader<String, Optional<Dataset>>() {
                     @Override
-                    public Dataset load(String key) throws Exception {
-                        return CachedWorkspace.this.ws.get(key);
+                    public Optional<Dataset> load(String key) throws Exception {
+                        Dataset data = CachedWorkspace.this.ws.get(key);
+                        return Optional.of(
+                            data != null ? track(data, ref, wsKey + "/" + key, tileCache) : null);
                     }
             });
         }
@@ -99,22 +389,48 @@ public class CachedRegistry implements Registry {
 
         @Override
         public VectorData create(Schema schema) throws IOException {
-            return ws.create(schema);
+            ref.acquire();
+            try {
+                return ws.create(schema);
+            }
+            finally {
+                ref.release();
+            }
         }
 
         @Override
         public Iterable<DataRef<Dataset>> list() throws IOException {
-            return ws.list();
+            ref.acquire();
+            try {
+                return ws.list();
+            }
+            finally {
+                ref.release();
+            }
         }
 
         @Override
         public Dataset get(String layer) throws IOException {
+            if (ref.isClosed()) {
+                // evicted and closed since it was handed out, go through the registry again
+                Object obj = CachedRegistry.this.get(ref.key);
+                return obj instanceof Workspace ? ((Workspace) obj).get(layer) : null;
+            }
+
+            Optional<Dataset> data;
             try {
-                return layerCache.get(layer);
-            } catch (ExecutionException e) {
-                LOG.warn("Error loading layer from cache", e);
+                data = layerCache.get(layer);
+            } catch (Exception e) {
+                LOG.warn("Error loading layer " + layer + " into cache", e);
                 return ws.get(layer);
             }
+
+            if (!data.has()) {
+                // missing layers are not cached
+                layerCache.asMap().remove(layer, data);
+                return null;
+            }
+            return data.get();
         }
 
         @Override
@@ -122,4 +438,233 @@ public class CachedRegistry implements Registry {
             //do nothing, we wait for the entry to expire before disposing
         }
     }
+
+    /**
+     * Vector dataset holding a reference to its workspace while in use.
+     */
+    static class TrackedVectorData implements VectorData {
+        VectorData data;
+        Ref ref;
+
+        TrackedVectorData(VectorData data, Ref ref) {
+            this.data = data;
+            this.ref = ref;
+        }
+
+        @Override
+        public Driver<?> getDriver() {
+            return data.getDriver();
+        }
+
+        @Override
+        public Map<Key<?>, Object> getDriverOptions() {
+            return data.getDriverOptions();
+        }
+
+        @Override
+        public String getName() {
+            return data.getName();
+        }
+
+        @Override
+        public String getTitle() {
+            return data.getTitle();
+        }
+
+        @Override
+        public String getDescription() {
+            return data.getDescription();
+        }
+
+        @Override
+        public CoordinateReferenceSystem getCRS() throws IOException {
+            ref.acquire();
+            try {
+                return data.getCRS();
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public Envelope bounds() throws IOException {
+            ref.acquire();
+            try {
+                return data.bounds();
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public Schema getSchema() throws IOException {
+            ref.acquire();
+            try {
+                return data.getSchema();
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public long count(Query q) throws IOException {
+            ref.acquire();
+            try {
+                return data.count(q);
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public Cursor<Feature> cursor(Query q) throws IOException {
+            ref.acquire();
+            try {
+                return track(data.cursor(q), ref);
+            }
+            catch(IOException e) {
+                ref.release();
+                throw e;
+            }
+            catch(RuntimeException e) {
+                ref.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            //do nothing, closed along with its workspace
+        }
+    }
+
+    /**
+     * Tile set holding a reference to its workspace while in use.
+     */
+    static class TrackedTileSet implements TileSet {
+        TileSet tiles;
+        Ref ref;
+
+        TrackedTileSet(TileSet tiles, Ref ref) {
+            this.tiles = tiles;
+            this.ref = ref;
+        }
+
+        @Override
+        public Driver<?> getDriver() {
+            return tiles.getDriver();
+        }
+
+        @Override
+        public Map<Key<?>, Object> getDriverOptions() {
+            return tiles.getDriverOptions();
+        }
+
+        @Override
+        public String getName() {
+            return tiles.getName();
+        }
+
+        @Override
+        public String getTitle() {
+            return tiles.getTitle();
+        }
+
+        @Override
+        public String getDescription() {
+            return tiles.getDescription();
+        }
+
+        @Override
+        public CoordinateReferenceSystem getCRS() throws IOException {
+            ref.acquire();
+            try {
+                return tiles.getCRS();
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public Envelope bounds() throws IOException {
+            ref.acquire();
+            try {
+                return tiles.bounds();
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public TilePyramid getPyramid() throws IOException {
+            ref.acquire();
+            try {
+                return tiles.getPyramid();
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public Tile read(long z, long x, long y) throws IOException {
+            ref.acquire();
+            try {
+                return tiles.read(z, x, y);
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public Cursor<Tile> read(long z1, long z2, long x1, long x2, long y1, long y2)
+            throws IOException {
+            ref.acquire();
+            try {
+                return track(tiles.read(z1, z2, x1, x2, y1, y2), ref);
+            }
+            catch(IOException e) {
+                ref.release();
+                throw e;
+            }
+            catch(RuntimeException e) {
+                ref.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void put(Tile t) throws IOException {
+            ref.acquire();
+            try {
+                tiles.put(t);
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public long putAll(Cursor<Tile> cursor) throws IOException {
+            ref.acquire();
+            try {
+                return tiles.putAll(cursor);
+            }
+            finally {
+                ref.release();
+            }
+        }
+
+        @Override
+        public void close() {
+            //do nothing, closed along with its workspace
+        }
+    }
 }
@@ -4,9 +4,16 @@ import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.util.Arrays;
 
+import org.jeo.data.mem.MemVector;
+import org.jeo.data.mem.MemWorkspace;
+import org.jeo.feature.Feature;
+import org.jeo.feature.Schema;
 import org.junit.Test;
 
+import com.vividsolutions.jts.geom.Point;
+
 public class CachedRegistryTest {
 
     @Test
@@ -45,4 +52,164 @@ public class CachedRegistryTest {
 
         verify(l, ws, reg);
     }
+
+    @Test
+    public void testTileSet() throws IOException {
+        Tile t = new Tile(1, 2, 3, new byte[]{1,2,3}, "image/png");
+
+        TileSet ts = createMock(TileSet.class);
+        expect(ts.read(1, 2, 3)).andReturn(t).once();
+        expect(ts.read(1, 2, 4)).andReturn(null).once();
+
+        Workspace ws = createMock(Workspace.class);
+        expect(ws.get("bar")).andReturn(ts).once();
+
+        Registry reg = createMock(Registry.class);
+        expect(reg.get("foo")).andReturn(ws).once();
+
+        replay(ts, ws, reg);
+
+        CachedRegistry cached = new CachedRegistry(reg);
+        for (int i = 0; i < 3; i++) {
+            TileSet tiles = (TileSet) ((Workspace)cached.get("foo")).get("bar");
+            assertTrue(tiles instanceof CachedTileSet);
+            assertArrayEquals(t.getData(), tiles.read(1, 2, 3).getData());
+            assertNull(tiles.read(1, 2, 4));
+        }
+
+        assertEquals(4, cached.getTileCache().getHitCount());
+        assertEquals(2, cached.getTileCache().getMissCount());
+        verify(ts, ws, reg);
+    }
+
+    @Test
+    public void testEvictWaitsForCursor() throws IOException {
+        TestWorkspace foo = new TestWorkspace();
+        TestWorkspace baz = new TestWorkspace();
+
+        Registry reg = createMock(Registry.class);
+        expect(reg.get("foo")).andReturn(foo).once();
+        expect(reg.get("baz")).andReturn(baz).once();
+        reg.close();
+        expectLastCall().once();
+        replay(reg);
+
+        CachedRegistry cached = new CachedRegistry(reg, new CacheOpts().maxWeight(1));
+
+        VectorData data = (VectorData) ((Workspace) cached.get("foo")).get("bar");
+        Cursor<Feature> c = data.cursor(new Query());
+
+        // evicts foo, which stays open until the cursor is closed
+        assertNotNull(cached.get("baz"));
+        assertEquals(1, cached.size());
+        assertEquals(0, foo.closed);
+
+        c.close();
+        assertEquals(1, foo.closed);
+        assertEquals(0, baz.closed);
+
+        try {
+            data.cursor(new Query());
+            fail("cursor on closed workspace");
+        }
+        catch(IOException e) {
+        }
+
+        cached.close();
+        assertEquals(1, baz.closed);
+        verify(reg);
+    }
+
+    @Test
+    public void testWeigher() throws IOException {
+        Registry reg = createMock(Registry.class);
+        expect(reg.get("foo")).andReturn(new TestWorkspace()).once();
+        expect(reg.get("bar")).andReturn(new TestWorkspace()).once();
+        expect(reg.get("baz")).andReturn(new TestWorkspace()).once();
+        replay(reg);
+
+        CachedRegistry cached = new CachedRegistry(reg, new CacheOpts().maxWeight(4)
+            .weigher(new CacheOpts.Weigher() {
+                @Override
+                public int weigh(String key, Object obj) {
+                    return "foo".equals(key) ? 3 : 1;
+                }
+            }));
+
+        cached.get("foo");
+        cached.get("bar");
+        assertEquals(2, cached.size());
+
+        cached.get("baz");
+        assertEquals(2, cached.size());
+        verify(reg);
+    }
+
+    @Test
+    public void testList() throws IOException {
+        Registry reg = createMock(Registry.class);
+        expect(reg.list()).andReturn(Arrays.asList(new Registry.Item("foo", null))).once();
+        expect(reg.list()).andReturn(Arrays.asList(new Registry.Item("bar", null))).once();
+        replay(reg);
+
+        CachedRegistry cached = new CachedRegistry(reg);
+        assertEquals("foo", cached.list().iterator().next().getName());
+        assertEquals("foo", cached.list().iterator().next().getName());
+
+        cached.invalidate();
+        assertEquals("bar", cached.list().iterator().next().getName());
+        verify(reg);
+    }
+
+    @Test
+    public void testStats() throws IOException {
+        Registry reg = createMock(Registry.class);
+        expect(reg.get("foo")).andReturn(new TestWorkspace()).once();
+        expect(reg.get("bar")).andReturn(null).once();
+        replay(reg);
+
+        CachedRegistry cached = new CachedRegistry(reg);
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(cached.get("foo"));
+        }
+        assertNull(cached.get("bar"));
+
+        assertEquals(2, cached.getStats().hitCount());
+        assertEquals(2, cached.getStats().missCount());
+        verify(reg);
+    }
+
+    @Test
+    public void testMissing() throws IOException {
+        Registry reg = createMock(Registry.class);
+        expect(reg.get("foo")).andReturn(null).once();
+        expect(reg.get("foo")).andReturn(new TestWorkspace()).once();
+        replay(reg);
+
+        CachedRegistry cached = new CachedRegistry(reg);
+        assertNull(cached.get("foo"));
+        assertEquals(0, cached.size());
+
+        // missing objects are not cached, picked up once they exist
+        Workspace ws = (Workspace) cached.get("foo");
+        assertNotNull(ws);
+        assertEquals(1, cached.size());
+
+        assertNull(ws.get("baz"));
+        assertNotNull(ws.get("bar"));
+        verify(reg);
+    }
+
+    static class TestWorkspace extends MemWorkspace {
+        int closed;
+
+        TestWorkspace() {
+            put("bar", new MemVector(Schema.build("bar").field("geom", Point.class).schema()));
+        }
+
+        @Override
+        public void close() {
+            closed++;
+        }
+    }
 }
@@ -5,12 +5,14 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
+import org.jeo.data.QueryPlan;
 import org.jeo.feature.Field;
 import org.jeo.feature.Schema;
 import org.jeo.filter.All;
 import org.jeo.filter.Comparison;
 import org.jeo.filter.Expression;
 import org.jeo.filter.Filter;
+import org.jeo.filter.FilterOptimizer;
 import org.jeo.filter.FilterVisitor;
 import org.jeo.filter.Function;
 import org.jeo.filter.Id;
@@ -91,6 +93,29 @@ public class FilterSQLEncoder extends FilterVisitor {
         return sql.toString();
     }
 
+    /**
+     * Splits a filter into the part that can be encoded as sql and the residual part that can not.
+     * <p>
+     * The first filter of the result should be passed to {@link #encode(Filter, Object)} and the 
+     * second evaluated in memory, see {@link QueryPlan#filtered(Filter)}.
+     * </p>
+     * @see FilterOptimizer#split(Filter, FilterOptimizer.Capabilities)
+     */
+    public Pair<Filter,Filter> split(Filter filter) {
+        return FilterOptimizer.split(filter, new FilterOptimizer.Capabilities() {
+            @Override
+            public boolean supports(Filter filter) {
+                try {
+                    encode(filter, null);
+                    return true;
+                }
+                catch(FilterSQLException e) {
+                    return false;
+                }
+            }
+        });
+    }
+
     protected void abort(Object obj, String reason) {
         throw new FilterSQLException(
             String.format("Unable to encode %s as sql, %s @ %s", obj, reason, sql.toString())); 
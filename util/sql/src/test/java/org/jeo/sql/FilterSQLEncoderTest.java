@@ -2,8 +2,13 @@ package org.jeo.sql;
 
 import static org.junit.Assert.*;
 
+import org.jeo.filter.Comparison;
 import org.jeo.filter.Filter;
+import org.jeo.filter.Literal;
+import org.jeo.filter.Mixed;
+import org.jeo.filter.Property;
 import org.jeo.geom.GeomBuilder;
+import org.jeo.util.Pair;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -60,6 +65,22 @@ public class FilterSQLEncoderTest {
         assertEncoded(f, "ST_Intersects(\"geom\", ST_GeomFromText(?,?))", geo.toText(), 4326);
     }
 
+    @Test
+    public void testSplit() throws Exception {
+        Filter a = Filter.build().property("foo").literal("bar").eq().filter();
+        Filter b = new Comparison(Comparison.Type.EQUAL, new Mixed(new Property("foo")), 
+            new Literal("bar"));
+
+        Pair<Filter,Filter> split = sqle.split(b.and(a));
+        assertEquals(a, split.first());
+        assertEquals(b, split.second());
+        assertEncoded(split.first(), "\"foo\" = ?", "bar");
+
+        split = sqle.split(b.or(a));
+        assertEquals(Filter.TRUE, split.first());
+        assertEquals(b.or(a), split.second());
+    }
+
     void assertEncoded(Filter f, String sql, Object... args) {
         assertEquals(sql, sqle.encode(f, null));
         assertEquals(args.length, sqle.getArgs().size());